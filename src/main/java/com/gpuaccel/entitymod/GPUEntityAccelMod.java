@@ -7,9 +7,19 @@ import com.gpuaccel.entitymod.config.GPUAccelConfig;
 import com.gpuaccel.entitymod.config.SwarmConfig;
 import com.gpuaccel.entitymod.config.VoxelConfig;
 import com.gpuaccel.entitymod.example.ExampleCommands;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner;
 import com.gpuaccel.entitymod.gpu.GPUManager;
+import com.gpuaccel.entitymod.gpu.GpuWatchdog;
+import com.gpuaccel.entitymod.gpu.HostArena;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import com.gpuaccel.entitymod.gpu.driver.JoclDriver;
+import com.gpuaccel.entitymod.gpu.driver.RecordingClDriver;
+import com.gpuaccel.entitymod.gpu.driver.ThreadedClDriver;
+import com.gpuaccel.entitymod.gpu.sidecar.SidecarClDriver;
+import com.gpuaccel.entitymod.gpu.sidecar.SidecarHost;
 import com.gpuaccel.entitymod.physics.PhysicsSimulation;
 import com.mojang.logging.LogUtils;
+import net.minecraft.server.MinecraftServer;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.server.ServerStoppingEvent;
@@ -18,12 +28,15 @@ import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
+import net.minecraftforge.fml.loading.FMLPaths;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
 /**
@@ -43,8 +56,18 @@ public class GPUEntityAccelMod {
     private static SwarmAISystem swarmAISystem;
     private static PhysicsSimulation physicsSimulation;
     private static ClimateSystem climateSystem;
+    /** 设备健康看门狗，在上下文重建之间保留 */
+    private static GpuWatchdog watchdog;
+    /** CPU / GPU 调度器，代价模型在上下文重建之间保留 */
+    private static DispatchPlanner dispatchPlanner;
+    /** 进程内的计算边车宿主，首次使用时启动，在上下文重建之间保留 */
+    private static SidecarHost sidecarHost;
     private static boolean nativesLoaded = false;
 
+    /** 回收线程等待旧管理器空闲的上限 */
+    private static final long REAP_TIMEOUT_MS = 30_000;
+    private static final long REAP_POLL_MS = 50;
+
     /**
      * 构造函数：执行早期的初始化工作。
      */
@@ -109,13 +132,11 @@ public class GPUEntityAccelMod {
      */
     private void commonSetup(final FMLCommonSetupEvent event) {
         LOGGER.info("初始化 GPU 加速模块...");
-        
+        watchdog = new GpuWatchdog(GPUAccelConfig.GPU_FRAME_TIMEOUT_MS.get(), GPUAccelConfig.GPU_RECOVERY_COOLDOWN_SECONDS.get());
+        dispatchPlanner = new DispatchPlanner(GPUAccelConfig.MIN_ENTITIES_FOR_GPU.get());
+
         try {
-            gpuManager = new GPUManager();
-            if (gpuManager.isGPUAvailable()) {
-                swarmAISystem = new SwarmAISystem(gpuManager);
-                physicsSimulation = new PhysicsSimulation(gpuManager);
-                climateSystem = new ClimateSystem(gpuManager);
+            if (initGpu()) {
                 VoxelManager.init();
                 LOGGER.info("GPU 系统就绪: {}", gpuManager.getDeviceName());
             } else {
@@ -125,6 +146,161 @@ public class GPUEntityAccelMod {
             LOGGER.error("无法初始化 GPU 系统。", t);
             gpuManager = null;
         }
+
+        // 没有 OpenCL 时由 CPU 后端接管群体 AI
+        if (swarmAISystem == null && GPUAccelConfig.ENABLE_CPU_BACKEND.get()) {
+            try {
+                swarmAISystem = new SwarmAISystem(gpuManager);
+                VoxelManager.init();
+            } catch (Throwable t) {
+                LOGGER.error("无法初始化 CPU 计算后端。", t);
+                swarmAISystem = null;
+            }
+        }
+    }
+
+    /**
+     * 创建驱动、GPU 管理器与各 GPU 子系统。
+     *
+     * @return 设备是否可用；不可用时各子系统保持为 null
+     */
+    private static boolean initGpu() {
+        Path kernelCache = GPUAccelConfig.ENABLE_KERNEL_CACHE.get()
+            ? FMLPaths.GAMEDIR.get().resolve(MOD_ID).resolve("kernel-cache") : null;
+        ClDriver driver = createDriver(kernelCache);
+        gpuManager = new GPUManager(driver, GPUAccelConfig.PIPELINE_SLOTS.get(),
+            GPUAccelConfig.GPU_MEMORY_BUDGET_PERCENT.get(), GPUAccelConfig.GPU_MEMORY_BUDGET_MB.get(),
+            GPUAccelConfig.ZERO_COPY_BUFFERS.get());
+        if (!gpuManager.isGPUAvailable()) return false;
+
+        gpuManager.setWatchdog(watchdog);
+        gpuManager.setDispatchPlanner(dispatchPlanner);
+        // 工作组调优结果与程序二进制放在同一目录，按设备与驱动版本区分
+        gpuManager.getWorkGroupTuner().open(kernelCache, GPUAccelConfig.AUTO_TUNE_WORK_GROUPS.get());
+        swarmAISystem = new SwarmAISystem(gpuManager);
+        physicsSimulation = new PhysicsSimulation(gpuManager);
+        climateSystem = new ClimateSystem(gpuManager);
+        return true;
+    }
+
+    /**
+     * 按配置创建驱动：本地的 JOCL / 记录型驱动 (可套驱动线程)，或连接计算边车的驱动。
+     * 边车的请求环本身就是异步的，宿主在另一端执行命令，因此不再包装驱动线程。
+     */
+    private static ClDriver createDriver(Path kernelCache) {
+        if (GPUAccelConfig.USE_COMPUTE_SIDECAR.get()) {
+            Path dir = sidecarDirectory();
+            boolean inProcess = GPUAccelConfig.SIDECAR_IN_PROCESS.get();
+            if (inProcess && sidecarHost == null) {
+                boolean recording = GPUAccelConfig.USE_RECORDING_DRIVER.get();
+                try {
+                    sidecarHost = SidecarHost.startInProcess(dir,
+                        () -> recording ? new RecordingClDriver() : new JoclDriver(kernelCache));
+                } catch (IOException e) {
+                    LOGGER.error("无法启动进程内计算边车宿主", e);
+                }
+            }
+            String classpath = GPUAccelConfig.SIDECAR_CLASSPATH.get();
+            return new SidecarClDriver(dir, !inProcess, classpath.isBlank() ? null : classpath, kernelCache);
+        }
+
+        ClDriver driver = GPUAccelConfig.USE_RECORDING_DRIVER.get()
+            ? new RecordingClDriver() : new JoclDriver(kernelCache);
+        if (driver.isAvailable() && GPUAccelConfig.USE_DRIVER_THREAD.get()) {
+            driver = new ThreadedClDriver(driver);
+        }
+        return driver;
+    }
+
+    /** @return 计算边车的通道目录，未配置时优先放在内存文件系统上 */
+    private static Path sidecarDirectory() {
+        String configured = GPUAccelConfig.SIDECAR_DIRECTORY.get();
+        if (!configured.isBlank()) return Path.of(configured);
+        Path shm = Path.of("/dev/shm");
+        Path base = Files.isDirectory(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+        return base.resolve("gpuaccel-sidecar");
+    }
+
+    /**
+     * 熔断冷却结束后重建 OpenCL 上下文与各 GPU 子系统。
+     * <p>
+     * CPU 通道的线程池总是立即关闭；旧管理器及其子系统交给后台回收线程，
+     * 待旧设备上的命令全部完成 (或超过 {@link #REAP_TIMEOUT_MS}) 后再释放内核、显存、Host 缓冲区与驱动线程。
+     * 旧设备挂起时释放调用可能永远不返回，此时只有回收线程阻塞，服务器线程不受影响。实体交回原版逻辑后由新的群体 AI 系统重新接管，
+     * 实体行通过新的行流重新上传；体素地图标记为脏后整体重传，流场与吸引点在下一次刷新时重新写入。
+     * </p>
+     *
+     * @param server 当前服务器
+     */
+    public static void rebuildGpu(MinecraftServer server) {
+        GPUManager old = gpuManager;
+        LOGGER.info("正在重建 OpenCL 上下文...");
+
+        if (swarmAISystem != null) {
+            swarmAISystem.clearGpuTags(server);
+            swarmAISystem.cleanupHost();
+        }
+        if (old != null) reapLater(old, swarmAISystem, physicsSimulation, climateSystem);
+        gpuManager = null;
+        swarmAISystem = null;
+        physicsSimulation = null;
+        climateSystem = null;
+
+        String failure = null;
+        try {
+            if (!initGpu()) failure = "设备不可用";
+        } catch (Throwable t) {
+            LOGGER.error("重建 OpenCL 上下文失败", t);
+            failure = t.toString();
+        }
+
+        if (failure == null) {
+            VoxelManager.markDirty();
+            watchdog.onRebuilt();
+            return;
+        }
+        // 熔断器保持断开，重试之前群体 AI 交给 CPU 后端
+        if (swarmAISystem == null && GPUAccelConfig.ENABLE_CPU_BACKEND.get()) {
+            try {
+                swarmAISystem = new SwarmAISystem(null);
+            } catch (Throwable t) {
+                LOGGER.error("无法初始化 CPU 计算后端。", t);
+                swarmAISystem = null;
+            }
+        }
+        watchdog.onRebuildFailed(failure);
+    }
+
+    /**
+     * 在后台守护线程上释放旧的 GPU 管理器及其子系统。
+     * 旧管理器与子系统此后只由回收线程访问；等待期间只做非阻塞的 {@link GPUManager#isIdle()} 查询。
+     */
+    private static void reapLater(GPUManager old, SwarmAISystem swarm, PhysicsSimulation physics, ClimateSystem climate) {
+        Thread reaper = new Thread(() -> {
+            long deadline = System.currentTimeMillis() + REAP_TIMEOUT_MS;
+            boolean idle;
+            try {
+                while (!(idle = old.isIdle()) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(REAP_POLL_MS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                idle = false;
+            }
+            if (!idle) LOGGER.warn("旧的 OpenCL 上下文在 {} ms 内仍未空闲，强制释放其资源", REAP_TIMEOUT_MS);
+            try {
+                if (swarm != null) swarm.cleanupDevice();
+                if (physics != null) physics.cleanup();
+                if (climate != null) climate.cleanup();
+                old.cleanup();
+                LOGGER.info("旧的 OpenCL 上下文已释放");
+            } catch (Exception e) {
+                LOGGER.warn("释放旧的 OpenCL 上下文时出错", e);
+            }
+        }, "GPUAccel-CL-Reaper");
+        reaper.setDaemon(true);
+        reaper.start();
     }
 
     /** @return 全局 GPU 管理器实例 */
@@ -139,6 +315,12 @@ public class GPUEntityAccelMod {
     /** @return 气候系统实例 */
     public static ClimateSystem getClimateSystem() { return climateSystem; }
 
+    /** @return 设备健康看门狗，通用设置阶段之前为 null */
+    public static GpuWatchdog getWatchdog() { return watchdog; }
+
+    /** @return CPU / GPU 调度器，通用设置阶段之前为 null */
+    public static DispatchPlanner getDispatchPlanner() { return dispatchPlanner; }
+
     /**
      * 注册服务器命令。
      *
@@ -163,10 +345,19 @@ public class GPUEntityAccelMod {
             } catch (Exception e) {
                 LOGGER.warn("停止时清理标签失败", e);
             }
-            swarmAISystem.cleanup();
         }
-        if (physicsSimulation != null) physicsSimulation.cleanup();
-        if (climateSystem != null) climateSystem.cleanup();
-        if (gpuManager != null) gpuManager.cleanup();
+        // 设备挂起时释放资源的调用会阻塞，直接放弃 GPU 侧的清理
+        boolean deviceHung = gpuManager != null && watchdog != null && watchdog.isAnyOpen() && !gpuManager.isIdle();
+        if (deviceHung) {
+            LOGGER.warn("GPU 仍有未完成的命令，跳过 OpenCL 资源释放");
+        } else {
+            if (swarmAISystem != null) swarmAISystem.cleanup();
+            if (physicsSimulation != null) physicsSimulation.cleanup();
+            if (climateSystem != null) climateSystem.cleanup();
+            if (gpuManager != null) gpuManager.cleanup();
+        }
+        VoxelManager.release();
+        // 此时所有子系统都已释放 Host 缓冲区，剩余的即为泄漏
+        HostArena.shutdown();
     }
 }
@@ -1,9 +1,12 @@
 package com.gpuaccel.entitymod.ai;
 
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
 import com.gpuaccel.entitymod.gpu.GPUManager;
+import com.gpuaccel.entitymod.gpu.GpuWatchdog;
+import com.gpuaccel.entitymod.gpu.HostArena;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
 import net.minecraft.server.level.ServerLevel;
 import org.jocl.*;
-import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
@@ -27,6 +30,11 @@ public class ClimateSystem {
     private cl_mem latitudeMem;
     private cl_mem outputMem;
 
+    /** 最近一次气候计算的完成事件，下一次计算前由看门狗检查 */
+    private cl_event lastRun;
+    /** 最早的未完成计算的提交时间 (队列有序，最近一次完成即全部完成) */
+    private long lastRunNanos;
+
     // 堆外内存缓冲 (Direct Buffers)
     private FloatBuffer baseTempBuf;
     private FloatBuffer seasonModBuf;
@@ -81,7 +89,43 @@ public class ClimateSystem {
 
     public void computeForLevel(ServerLevel level) {
         if (climateKernel == null || !gpuManager.isGPUAvailable()) return;
+        GpuWatchdog watchdog = gpuManager.getWatchdog();
+        if (!watchdog.allows(GpuWatchdog.Breaker.CLIMATE)) return;
+
+        ClDriver driver = gpuManager.getDriver();
+        boolean pending = false;
+        if (lastRun != null) {
+            try {
+                pending = !driver.isComplete(lastRun);
+            } catch (RuntimeException e) {
+                // 上一轮内核执行出错，结果作废
+                driver.releaseEvent(lastRun);
+                lastRun = null;
+                if (!watchdog.onError(GpuWatchdog.Breaker.CLIMATE, e)) throw e;
+                return;
+            }
+            if (pending) {
+                watchdog.checkPending(GpuWatchdog.Breaker.CLIMATE, System.nanoTime() - lastRunNanos);
+                if (!watchdog.allows(GpuWatchdog.Breaker.CLIMATE)) {
+                    // 设备可能已挂起，事件随上下文一起丢弃
+                    lastRun = null;
+                    return;
+                }
+            }
+            driver.releaseEvent(lastRun);
+            lastRun = null;
+        }
+        long submitNanos = pending ? lastRunNanos : System.nanoTime();
+
+        try {
+            enqueueClimate(level, driver);
+            lastRunNanos = submitNanos;
+        } catch (RuntimeException e) {
+            if (!watchdog.onError(GpuWatchdog.Breaker.CLIMATE, e)) throw e;
+        }
+    }
 
+    private void enqueueClimate(ServerLevel level, ClDriver driver) {
         int width = 64;
         int height = 64;
         int size = width * height;
@@ -114,15 +158,16 @@ public class ClimateSystem {
         gpuManager.writeBufferAsync(latitudeMem, (long)size * 4, latitudeModBuf);
 
         // 执行内核
-        clSetKernelArg(climateKernel, 0, Sizeof.cl_mem, Pointer.to(baseTempMem));
-        clSetKernelArg(climateKernel, 1, Sizeof.cl_mem, Pointer.to(seasonModMem));
-        clSetKernelArg(climateKernel, 2, Sizeof.cl_mem, Pointer.to(latitudeMem));
-        clSetKernelArg(climateKernel, 3, Sizeof.cl_mem, Pointer.to(outputMem));
-        clSetKernelArg(climateKernel, 4, Sizeof.cl_int, Pointer.to(new int[]{width}));
-        clSetKernelArg(climateKernel, 5, Sizeof.cl_int, Pointer.to(new int[]{height}));
+        driver.setArg(climateKernel, 0, baseTempMem);
+        driver.setArg(climateKernel, 1, seasonModMem);
+        driver.setArg(climateKernel, 2, latitudeMem);
+        driver.setArg(climateKernel, 3, outputMem);
+        driver.setArg(climateKernel, 4, width);
+        driver.setArg(climateKernel, 5, height);
 
         long[] global = new long[]{width, height};
-        gpuManager.executeKernel(climateKernel, 2, global, null);
+        lastRun = driver.enqueueKernelAsync(climateKernel, 2, global, null, null);
+        driver.flush();
 
         // 读取结果 (这里可以用 MapBuffer 优化读取速度)
         // 简单示例：仅读取中心点
@@ -132,41 +177,46 @@ public class ClimateSystem {
     private void ensureBuffers(int size) {
         if (size == allocatedSize && baseTempMem != null) return;
 
-        // 释放 GPU 内存
-        if (baseTempMem != null) gpuManager.releaseMemObject(baseTempMem);
-        if (seasonModMem != null) gpuManager.releaseMemObject(seasonModMem);
-        if (latitudeMem != null) gpuManager.releaseMemObject(latitudeMem);
-        if (outputMem != null) gpuManager.releaseMemObject(outputMem);
-        
         // 释放堆外内存
-        if (baseTempBuf != null) MemoryUtil.memFree(baseTempBuf);
-        if (seasonModBuf != null) MemoryUtil.memFree(seasonModBuf);
-        if (latitudeModBuf != null) MemoryUtil.memFree(latitudeModBuf);
+        if (baseTempBuf != null) HostArena.free(baseTempBuf);
+        if (seasonModBuf != null) HostArena.free(seasonModBuf);
+        if (latitudeModBuf != null) HostArena.free(latitudeModBuf);
+        baseTempBuf = seasonModBuf = latitudeModBuf = null;
 
         // 重新分配
         long byteSize = (long)size * 4;
-        baseTempBuf = MemoryUtil.memAllocFloat(size);
-        seasonModBuf = MemoryUtil.memAllocFloat(size);
-        latitudeModBuf = MemoryUtil.memAllocFloat(size);
+        baseTempBuf = HostArena.allocFloat(Subsystem.CLIMATE, size);
+        seasonModBuf = HostArena.allocFloat(Subsystem.CLIMATE, size);
+        latitudeModBuf = HostArena.allocFloat(Subsystem.CLIMATE, size);
 
-        // 使用 COPY_HOST_PTR 可能更高效，但为了灵活性这里分开创建
-        baseTempMem = gpuManager.createBuffer(CL_MEM_READ_WRITE, byteSize, null);
-        seasonModMem = gpuManager.createBuffer(CL_MEM_READ_WRITE, byteSize, null);
-        latitudeMem = gpuManager.createBuffer(CL_MEM_READ_WRITE, byteSize, null);
-        outputMem = gpuManager.createBuffer(CL_MEM_READ_WRITE, byteSize, null);
+        // 在设备内存池中扩容 (容量足够时沿用原缓冲区)，内容每次都会重新写入
+        baseTempMem = gpuManager.growBuffer(baseTempMem, Subsystem.CLIMATE, CL_MEM_READ_WRITE, byteSize, 0);
+        seasonModMem = gpuManager.growBuffer(seasonModMem, Subsystem.CLIMATE, CL_MEM_READ_WRITE, byteSize, 0);
+        latitudeMem = gpuManager.growBuffer(latitudeMem, Subsystem.CLIMATE, CL_MEM_READ_WRITE, byteSize, 0);
+        outputMem = gpuManager.growBuffer(outputMem, Subsystem.CLIMATE, CL_MEM_READ_WRITE, byteSize, 0);
 
         allocatedSize = size;
     }
 
     public void cleanup() {
-        if (climateKernel != null) clReleaseKernel(climateKernel);
+        if (lastRun != null) {
+            try {
+                gpuManager.getDriver().waitFor(lastRun);
+            } catch (RuntimeException ignored) {
+                // 关闭时不再关心结果，出错的命令同样已结束
+            } finally {
+                gpuManager.getDriver().releaseEvent(lastRun);
+                lastRun = null;
+            }
+        }
+        gpuManager.releaseKernel(climateKernel);
         if (baseTempMem != null) gpuManager.releaseMemObject(baseTempMem);
         if (seasonModMem != null) gpuManager.releaseMemObject(seasonModMem);
         if (latitudeMem != null) gpuManager.releaseMemObject(latitudeMem);
         if (outputMem != null) gpuManager.releaseMemObject(outputMem);
         
-        if (baseTempBuf != null) MemoryUtil.memFree(baseTempBuf);
-        if (seasonModBuf != null) MemoryUtil.memFree(seasonModBuf);
-        if (latitudeModBuf != null) MemoryUtil.memFree(latitudeModBuf);
+        if (baseTempBuf != null) HostArena.free(baseTempBuf);
+        if (seasonModBuf != null) HostArena.free(seasonModBuf);
+        if (latitudeModBuf != null) HostArena.free(latitudeModBuf);
     }
 }
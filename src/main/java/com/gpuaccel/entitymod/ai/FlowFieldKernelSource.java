@@ -10,6 +10,10 @@ import com.gpuaccel.entitymod.ai.kernel.KernelCommon;
  * 2. 波前传播/洪水填充 (Spread BFS)
  * 3. 生成向量场 (Generate Vector Field)
  * </p>
+ * <p>
+ * 流场可以相对体素地图降采样 (见 {@link #getSource(int)})：每个流场单元覆盖 2^shift 格，
+ * 通行性取单元中心的体素，显存占用随之降为 1/8^shift。
+ * </p>
  */
 public class FlowFieldKernelSource {
 
@@ -17,9 +21,9 @@ public class FlowFieldKernelSource {
     // Kernel 1: 初始化/重置代价场
     // =========================================================
     public static final String RESET_COST_SRC = """
-        #define MAP_SIZE 128
-        #define MAP_SIZE_SQ (128*128)
-        #define MAP_VOL (128*128*128)
+        #define MAP_SIZE (VOXEL_MAP_SIZE >> FLOW_SHIFT)
+        #define MAP_SIZE_SQ (MAP_SIZE*MAP_SIZE)
+        #define MAP_VOL (MAP_SIZE*MAP_SIZE*MAP_SIZE)
 
         #define COST_IMPASSABLE 65535  // 无穷大 (不可通行)
         #define COST_SOLID 255
@@ -75,8 +79,12 @@ public class FlowFieldKernelSource {
             int z = rem / MAP_SIZE;
             int x = rem % MAP_SIZE;
 
-            // 2. 检查通行性
-            uchar blockID = voxelMap[gid];
+            // 2. 检查通行性 (降采样时取单元中心的体素)
+            int half = (1 << FLOW_SHIFT) >> 1;
+            int vx = (x << FLOW_SHIFT) + half;
+            int vy = (y << FLOW_SHIFT) + half;
+            int vz = (z << FLOW_SHIFT) + half;
+            uchar blockID = voxelMap[vx + vz * VOXEL_MAP_SIZE + vy * VOXEL_MAP_SIZE * VOXEL_MAP_SIZE];
             // 固体(1), 栅栏(3), 危险(4) 视为不可通行
             if (blockID == 1 || blockID == 3 || blockID == 4) {
                 costField[gid] = COST_IMPASSABLE;
@@ -177,7 +185,12 @@ public class FlowFieldKernelSource {
         }
     """;
 
-    public static String getSource() {
-        return RESET_COST_SRC + "\n" + SPREAD_COST_SRC + "\n" + GENERATE_VECTOR_SRC;
+    /**
+     * @param flowShift 流场相对体素地图的降采样位移 (0 = 同分辨率)
+     */
+    public static String getSource(int flowShift) {
+        return "#define VOXEL_MAP_SIZE " + VoxelManager.VOXEL_SIZE + "\n" +
+               "#define FLOW_SHIFT " + flowShift + "\n" +
+               RESET_COST_SRC + "\n" + SPREAD_COST_SRC + "\n" + GENERATE_VECTOR_SRC;
     }
 }
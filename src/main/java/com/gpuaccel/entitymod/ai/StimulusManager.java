@@ -1,6 +1,6 @@
 package com.gpuaccel.entitymod.ai;
 
-import com.gpuaccel.entitymod.gpu.GPUManager;
+import com.gpuaccel.entitymod.gpu.ComputeBackend;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.Entity;
@@ -9,8 +9,6 @@ import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.phys.AABB;
-import org.jocl.cl_kernel;
-import org.jocl.cl_mem;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,22 +17,20 @@ import java.util.List;
  * 刺激源管理器。
  * <p>
  * 扫描世界中的玩家、掉落物等实体，并将其转换为“气味源” (Stimuli)，
- * 注入到 GPU 的费洛蒙网格中。
+ * 注入到计算后端的费洛蒙网格中。
  * </p>
  */
 public class StimulusManager {
 
     /**
-     * 扫描周边实体并注入刺激源到 GPU。
+     * 扫描周边实体并注入刺激源到当前费洛蒙网格。
      *
      * @param level 服务器维度
      * @param center 扫描中心
-     * @param gpuManager GPU 管理器
-     * @param injectKernel 注入内核
-     * @param targetBuffer 目标费洛蒙缓冲区
+     * @param backend 计算后端
      */
-    public static void scanAndInject(ServerLevel level, BlockPos center, GPUManager gpuManager, cl_kernel injectKernel, cl_mem targetBuffer) {
-        if (injectKernel == null || !gpuManager.isGPUAvailable()) return;
+    public static void scanAndInject(ServerLevel level, BlockPos center, ComputeBackend backend) {
+        if (backend == null || !backend.isAvailable()) return;
 
         int maxCount = 1024;
         float[] stimPos = new float[maxCount * 3];
@@ -76,7 +72,7 @@ public class StimulusManager {
         }
 
         if (count > 0) {
-             gpuManager.injectStimuli(stimPos, stimChannel, stimValue, count, injectKernel, targetBuffer);
+             backend.injectStimuli(stimPos, stimChannel, stimValue, count);
         }
     }
 
@@ -2,10 +2,21 @@ package com.gpuaccel.entitymod.ai;
 
 import com.gpuaccel.entitymod.config.GPUAccelConfig;
 import com.gpuaccel.entitymod.config.SwarmConfig;
+import com.gpuaccel.entitymod.gpu.ComputeBackend;
+import com.gpuaccel.entitymod.gpu.CpuComputeBackend;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner.Stage;
+import com.gpuaccel.entitymod.gpu.EntityRowStream;
+import com.gpuaccel.entitymod.gpu.EntitySlotTable;
 import com.gpuaccel.entitymod.gpu.GPUManager;
+import com.gpuaccel.entitymod.gpu.GpuWatchdog;
+import com.gpuaccel.entitymod.gpu.OpenCLComputeBackend;
+import com.gpuaccel.entitymod.gpu.SwarmFrameParams;
+import com.gpuaccel.entitymod.gpu.SwarmOutputs;
+import com.gpuaccel.entitymod.gpu.TypeBuckets;
+import com.gpuaccel.entitymod.gpu.WorkSplitter;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.util.Mth;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.Mob;
 import net.minecraft.world.entity.ExperienceOrb;
@@ -20,14 +31,9 @@ import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.phys.Vec3;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jocl.*;
-
-import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.*;
 
-import static org.jocl.CL.*;
-
 /**
  * 群体智能 AI 系统核心。
  * <p>
@@ -35,7 +41,8 @@ import static org.jocl.CL.*;
  * <ul>
  *   <li>实体筛选与分类</li>
  *   <li>流场 (Flow Field) 更新调度</li>
- *   <li>OpenCL 内核参数组装与执行</li>
+ *   <li>通过 {@link ComputeBackend} 提交内核，由 {@link DispatchPlanner} 按实测代价在 OpenCL 与 CPU 后端之间选择，
+ *       实体较多时由 {@link WorkSplitter} 拆给两者同时处理</li>
  *   <li>计算结果的回读与应用</li>
  * </ul>
  * </p>
@@ -50,24 +57,60 @@ public class SwarmAISystem {
     private static final int TYPE_QUEEN = 3;   // 蜂后 (引导者)
     private static final int TYPE_WALKER = 4;  // 陆行生物
     private static final int TYPE_SWIMMER = 5; // 水生生物
+    private static final int TYPE_NONE = -1;   // 空闲槽位
 
-    private final GPUManager gpuManager;
-    private cl_kernel swarmKernel;
-    private cl_kernel diffuseKernel;
-    private cl_kernel injectKernel;
+    /** OpenCL 后端的看门狗，没有 OpenCL 后端时为 null */
+    private final GpuWatchdog watchdog;
+    /** 熔断时换下的 OpenCL 后端，随本系统一起释放 */
+    private ComputeBackend trippedBackend;
+    /** CPU / GPU 调度器 (没有 OpenCL 设备时只记录样本，不参与选择) */
+    private final DispatchPlanner planner;
 
-    // 流场相关内核
-    private cl_kernel resetCostKernel;
-    private cl_kernel spreadCostKernel;
-    private cl_kernel genVectorKernel;
-    
-    // 异步回读状态
-    private List<Entity> pendingEntities = null;
-    private int pendingEntityCount = 0;
+    /**
+     * 已提交、等待回读的帧 (按提交顺序)。
+     *
+     * @param slotEntities 提交时每个槽位上的实体 (空洞为 null)，按输出记录中的槽位查找
+     * @param count 提交时的槽位数量
+     * @param entities 本帧交给该后端的实体数
+     * @param sample 本帧的阶段计时，回读与应用完成后交给调度器
+     */
+    private record PendingFrame(Entity[] slotEntities, int count, int entities, DispatchPlanner.Sample sample) {}
+
+    /**
+     * 一个计算后端及其槽位表与在途帧。通常只有一条通道处理实体；
+     * 协同执行时 GPU 通道处理本帧实体列表的前缀、CPU 通道同时处理后缀，两者的逐实体状态与费洛蒙各自独立。
+     * 划分按列表位置而非空间进行，两条通道之间的邻居互不可见，因此协同执行默认关闭 (见 coExecution 配置)。
+     */
+    private static final class Lane {
+        final DispatchPlanner.Target target;
+        /** OpenCL 通道在设备不可用或熔断后为 null；CPU 通道在首次启用时创建 */
+        ComputeBackend backend;
+        /** 实体 -> 稳定设备槽位，逐实体状态 (蜜蜂状态、防卡死计时) 按槽位常驻后端 */
+        final EntitySlotTable slotTable = new EntitySlotTable();
+        final Deque<PendingFrame> pendingFrames = new ArrayDeque<>();
+        /** 最近一帧是否分到了实体 */
+        boolean active = false;
+
+        Lane(DispatchPlanner.Target target) {
+            this.target = target;
+        }
+
+        /** 丢弃在途帧与槽位表，所有实体下次分到本通道时重新分配槽位并清零状态 */
+        void reset() {
+            pendingFrames.clear();
+            slotTable.clear();
+        }
+    }
+
+    private final Lane gpuLane = new Lane(DispatchPlanner.Target.GPU);
+    private final Lane cpuLane = new Lane(DispatchPlanner.Target.CPU);
 
-    private final Map<UUID, Integer> beeStateMap = new HashMap<>();
     private Set<Integer> currentActiveEntityIds = new HashSet<>();
     private int cleanupTickCounter = 0;
+    /** 更新轮次：每轮对各维度各调用一次 computeSwarmBehavior，槽位表按轮次判定实体离开 */
+    private int updateRound = 0;
+    /** 最近一次 fillBuffers 中会写入自身气味的实体数 */
+    private int scentEmitters = 0;
 
     // 传感器冷却计时器：限制 BeeSensor 的高开销扫描频率
     private int sensorCooldown = 0;
@@ -75,35 +118,54 @@ public class SwarmAISystem {
     // 寻路冷却计时器
     private int pathfindingCooldown = 0;
 
-    // 费洛蒙 Ping-Pong 双缓冲开关
-    private boolean usePingForRead = true;
-
     /**
-     * 构造函数：初始化 AI 系统并编译 OpenCL 内核。
+     * 构造函数：初始化 AI 系统并选择计算后端。
+     * <p>
+     * 优先使用 OpenCL；设备不可用或内核编译失败时，若配置允许则回退到多线程 CPU 后端。
+     * 两者都可用时由调度器逐帧选择或拆分，CPU 后端在首次被选中时才创建。
+     * </p>
+     *
+     * @param gpuManager GPU 管理器，可为 null
      */
     public SwarmAISystem(GPUManager gpuManager) {
-        this.gpuManager = gpuManager;
-        initializeKernel();
+        gpuLane.backend = createGpuBackend(gpuManager);
+        if (gpuLane.backend == null && GPUAccelConfig.ENABLE_CPU_BACKEND.get()) {
+            cpuLane.backend = new CpuComputeBackend(GPUAccelConfig.CPU_BACKEND_THREADS.get());
+        }
+        this.watchdog = gpuLane.backend != null ? gpuManager.getWatchdog() : null;
+        this.planner = gpuLane.backend != null ? gpuManager.getDispatchPlanner() : new DispatchPlanner(GPUAccelConfig.MIN_ENTITIES_FOR_GPU.get());
+        ComputeBackend backend = getBackend();
+        if (backend != null) LOGGER.info("群体 AI 计算后端: {}", backend.getName());
     }
 
-    private void initializeKernel() {
-        if (!gpuManager.isGPUAvailable()) return;
-        try {
-            String source = SwarmKernelSource.getSource();
-            swarmKernel = gpuManager.compileKernel(source, "calculateSwarmBehavior");
-            diffuseKernel = gpuManager.compileKernel(source, "diffuse_pheromones");
-            injectKernel = gpuManager.compileKernel(source, "inject_stimuli");
-
-            // 编译流场内核 (现在包含在同一源码中或单独加载)
-            String flowSrc = FlowFieldKernelSource.getSource();
-            resetCostKernel = gpuManager.compileKernel(flowSrc, "k_resetCostField");
-            spreadCostKernel = gpuManager.compileKernel(flowSrc, "k_spreadCostField");
-            genVectorKernel = gpuManager.compileKernel(flowSrc, "k_generateVectorField");
-
-            LOGGER.info("Swarm AI 内核编译成功。");
-        } catch (Exception e) {
-            LOGGER.error("Swarm AI 内核编译失败", e);
-        }
+    private static ComputeBackend createGpuBackend(GPUManager gpuManager) {
+        if (gpuManager == null || !gpuManager.isGPUAvailable()) return null;
+        OpenCLComputeBackend cl = new OpenCLComputeBackend(gpuManager,
+            GPUAccelConfig.SCENT_TRAILS.get(), GPUAccelConfig.FLYER_OBSTACLE_RAYS.get(), GPUAccelConfig.FAST_MATH_KERNELS.get());
+        if (cl.isAvailable()) return cl;
+        cl.cleanup();
+        return null;
+    }
+
+    /** @return 当前计算后端 (协同执行时为 OpenCL 后端)，未启用时返回 null */
+    public ComputeBackend getBackend() {
+        if (gpuLane.active || (!cpuLane.active && gpuLane.backend != null)) return gpuLane.backend;
+        return cpuLane.backend;
+    }
+
+    /** @return 最近一帧是否只有 OpenCL 后端在处理实体 (此时体素可以提前上传并清除脏标记) */
+    public boolean isGpuOnly() {
+        return gpuLane.active && !cpuLane.active;
+    }
+
+    /** @return 最近一帧是否由 GPU 与 CPU 协同处理 */
+    public boolean isCoExecuting() {
+        return gpuLane.active && cpuLane.active;
+    }
+
+    /** 开始新一轮更新，需在本轮处理各维度之前调用 */
+    public void beginRound() {
+        updateRound++;
     }
 
     /**
@@ -114,9 +176,13 @@ public class SwarmAISystem {
      */
     public void computeSwarmBehavior(ServerLevel level, List<Entity> entities) {
         if (entities.isEmpty()) return;
+        if (watchdog != null && gpuLane.backend != null && !watchdog.allows(GpuWatchdog.Breaker.SWARM)) {
+            onSwarmTripped();
+        }
 
         // 应用上一帧的计算结果 (异步回读)
-        applyPendingResults(level);
+        applyPendingResults(level, gpuLane);
+        applyPendingResults(level, cpuLane);
 
         // 定期清理残留标签
         if (++cleanupTickCounter > 40) {
@@ -171,17 +237,99 @@ public class SwarmAISystem {
             fallbackToCPU(level, farEntities, farTypes);
         }
 
-        int entityCount = nearEntities.size();
-        if (!shouldRunOnGPU(entityCount)) {
+        int count = nearEntities.size();
+        int gpuCount = planFrame(count, nearTypes);
+        if (gpuCount < 0) {
             fallbackToCPU(level, nearEntities, nearTypes);
             return;
         }
+        setActive(gpuLane, gpuCount > 0);
+        setActive(cpuLane, gpuCount < count);
 
         // 4. 更新流场 (低频更新)
         updateFlowFields(level, nearEntities);
 
-        // 5. 提交近距离实体到 GPU
-        dispatchToGPU(level, nearEntities, nearTypes);
+        // 如果包含飞行生物，执行环境扫描 (花朵/蜂巢)，结果写入每条通道的吸引点
+        boolean sensorRefresh = false;
+        for (int t : nearTypes) {
+            if (t == TYPE_FLYER || t == TYPE_QUEEN) {
+                if (sensorCooldown-- <= 0) {
+                    sensorCooldown = 40;
+                    BeeSensor.scan(level, nearEntities.get(0).blockPosition());
+                    sensorRefresh = true;
+                }
+                break;
+            }
+        }
+
+        currentActiveEntityIds.clear();
+        for (Entity e : nearEntities) currentActiveEntityIds.add(e.getId());
+
+        // 5. 提交近距离实体到计算后端；两条通道共用体素脏标记，先同步的通道清除后为另一条恢复
+        boolean voxelsDirty = VoxelManager.isDirty();
+        if (gpuCount > 0) {
+            dispatchToBackend(level, gpuLane, nearEntities.subList(0, gpuCount), nearTypes.subList(0, gpuCount), sensorRefresh);
+        }
+        if (gpuCount < count) {
+            // 有损：后缀实体只在 CPU 通道内互为邻居，看不到前缀中的实体
+            if (voxelsDirty) VoxelManager.markDirty();
+            dispatchToBackend(level, cpuLane, nearEntities.subList(gpuCount, count), nearTypes.subList(gpuCount, count), sensorRefresh);
+        }
+    }
+
+    /**
+     * 规划本帧的后端。
+     * <p>
+     * OpenCL 与 CPU 后端都可用且开启自适应调度时：实体足够多并开启协同执行时按实测吞吐量拆分，
+     * 否则由调度器整批选择。没有 CPU 后端时另一侧是原版 AI，其耗时无法测量，仍按固定的实体数阈值决定是否加速。
+     * </p>
+     *
+     * @return 交给 GPU 的前缀长度，其余实体交给 CPU 后端；为 -1 时实体交回原版 AI
+     */
+    private int planFrame(int count, List<Integer> types) {
+        if (!GPUAccelConfig.ENABLE_GPU.get() || !GPUAccelConfig.ENABLE_SWARM_AI_GPU.get()) return -1;
+        boolean gpuUsable = gpuLane.backend != null && gpuLane.backend.isAvailable();
+        boolean cpuUsable = GPUAccelConfig.ENABLE_CPU_BACKEND.get();
+        if (gpuUsable && cpuUsable && GPUAccelConfig.ADAPTIVE_DISPATCH.get()) {
+            if (GPUAccelConfig.CO_EXECUTION.get() && WorkSplitter.canSplit(count)) {
+                return planner.getSplitter().split(DispatchPlanner.Workload.SWARM, count);
+            }
+            DispatchPlanner.Target target = planner.choose(DispatchPlanner.Workload.SWARM, countBuckets(types), true, true);
+            return target == DispatchPlanner.Target.GPU ? count : 0;
+        }
+        if (gpuUsable) return count >= GPUAccelConfig.MIN_ENTITIES_FOR_GPU.get() ? count : -1;
+        return cpuUsable ? 0 : -1;
+    }
+
+    private static int[] countBuckets(List<Integer> types) {
+        int[] counts = new int[TypeBuckets.COUNT];
+        for (int t : types) {
+            int b = TypeBuckets.bucketOf(t);
+            if (b >= 0) counts[b]++;
+        }
+        return counts;
+    }
+
+    /**
+     * 启用或停用一条通道。
+     * <p>
+     * 停用时在途帧按旧的槽位表提交，直接丢弃；逐实体状态不在后端之间搬移，
+     * 之后分到该通道的实体重新分配槽位并清零。重新启用的后端上体素、流场与吸引点可能已过期，本帧起重新同步。
+     * </p>
+     */
+    private void setActive(Lane lane, boolean active) {
+        if (lane.active == active) return;
+        lane.active = active;
+        if (active) {
+            if (lane.backend == null) lane.backend = new CpuComputeBackend(GPUAccelConfig.CPU_BACKEND_THREADS.get());
+            VoxelManager.markDirty();
+            pathfindingCooldown = 0;
+            sensorCooldown = 0;
+            LOGGER.debug("群体 AI 启用计算后端 {}", lane.backend.getName());
+        } else {
+            if (lane.backend != null) lane.backend.discardPendingFrames();
+            lane.reset();
+        }
     }
 
     private void updateFlowFields(ServerLevel level, List<Entity> entities) {
@@ -228,193 +376,175 @@ public class SwarmAISystem {
         // 食物/水源目标
         // 目前简化处理，或者留空以节省性能。完整实现需要扫描 VoxelMap 寻找特定的 BlockState。
 
-        // 执行流场更新
+        // 执行流场更新，每条启用的通道各自生成一份
+        if (cpuLane.active) updateFlowFields(cpuLane.backend, playerTargets, livestockTargets);
+        if (!gpuLane.active) return;
+        // 流场熔断期间沿用设备上已有的流场
+        if (watchdog != null && !watchdog.allows(GpuWatchdog.Breaker.FLOW_FIELD)) return;
+        try {
+            updateFlowFields(gpuLane.backend, playerTargets, livestockTargets);
+        } catch (RuntimeException e) {
+            if (watchdog == null || !watchdog.onError(GpuWatchdog.Breaker.FLOW_FIELD, e)) throw e;
+        }
+    }
+
+    private static void updateFlowFields(ComputeBackend backend, List<Integer> playerTargets, List<Integer> livestockTargets) {
         if (!playerTargets.isEmpty()) {
-             gpuManager.updateFlowField(GPUManager.FIELD_PLAYER, playerTargets, resetCostKernel, spreadCostKernel, genVectorKernel);
+             backend.updateFlowField(GPUManager.FIELD_PLAYER, playerTargets);
         }
         if (!livestockTargets.isEmpty()) {
-             gpuManager.updateFlowField(GPUManager.FIELD_LIVESTOCK, livestockTargets, resetCostKernel, spreadCostKernel, genVectorKernel);
+             backend.updateFlowField(GPUManager.FIELD_LIVESTOCK, livestockTargets);
         }
     }
 
-    private void dispatchToGPU(ServerLevel level, List<Entity> filteredEntities, List<Integer> entityTypes) {
+    private void dispatchToBackend(ServerLevel level, Lane lane, List<Entity> filteredEntities, List<Integer> entityTypes, boolean sensorRefresh) {
+        ComputeBackend backend = lane.backend;
+        EntitySlotTable slotTable = lane.slotTable;
+        DispatchPlanner.Sample sample = planner.begin(DispatchPlanner.Workload.SWARM, lane.target, countBuckets(entityTypes));
         try {
             int entityCount = filteredEntities.size();
-            boolean hasFlyers = false;
-            for(int t : entityTypes) if(t == TYPE_FLYER || t == TYPE_QUEEN) { hasFlyers = true; break; }
-
-            // 如果包含飞行生物，执行环境扫描 (花朵/蜂巢)
-            if (hasFlyers) {
-                if (sensorCooldown-- <= 0) {
-                    sensorCooldown = 40;
-                    BlockPos center = filteredEntities.get(0).blockPosition();
-                    BeeSensor.scan(level, center);
-                    gpuManager.writeAttrFromSensor();
-                }
+            if (sensorRefresh) backend.writeAttrFromSensor();
+
+            // 准备缓冲区 (流水线槽位全部在途时跳过本帧，实体保持上一帧的速度)
+            // 必须在改动槽位表之前确认能提交，否则本帧生成的重映射操作会丢失；
+            // 本帧的槽位上界不会超过 "当前上界 + 实体数"
+            GPUManager.SwarmBuffers buffers = backend.ensureSwarmBuffers(slotTable.getHighWater() + entityCount);
+            if (buffers == null) {
+                sample.markLate();
+                planner.record(sample);
+                return;
             }
 
-            // 准备缓冲区
-            GPUManager.SwarmBuffers buffers = gpuManager.ensureSwarmBuffers(entityCount);
-            gpuManager.ensureBeeStates(entityCount);
-            fillBuffers(filteredEntities, entityTypes, buffers);
+            // 分配 / 回收槽位，之后再查询每个实体的最终槽位 (压缩可能移动槽位)
+            slotTable.beginFrame(updateRound);
+            for (Entity e : filteredEntities) slotTable.acquire(e);
+            slotTable.endFrame();
+            int slotCount = slotTable.getHighWater();
+            int[] slots = new int[entityCount];
+            for (int i = 0; i < entityCount; i++) slots[i] = slotTable.slotOf(filteredEntities.get(i));
+
+            fillBuffers(filteredEntities, entityTypes, slotTable, slots, slotCount, buffers);
             
             Vec3 playerPos = level.players().isEmpty() ? Vec3.ZERO : level.players().get(0).position();
             buffers.playerPos().put(0, (float)playerPos.x).put(1, (float)playerPos.y).put(2, (float)playerPos.z);
+            sample.lap(Stage.PACK);
 
-            // 上传数据到 GPU
-            uploadBuffersToGPU(entityCount, buffers, filteredEntities);
+            // 提交实体数据，并在主内核之前搬移 / 清零逐实体状态
+            backend.uploadEntities(buffers);
+            backend.remapEntitySlots(slotTable);
 
-            // 如果体素地图有变动，上传新数据
-            if (VoxelManager.isDirty()) {
-                gpuManager.writeVoxelBuffer(VoxelManager.getVoxelBuffer());
-                VoxelManager.clearDirty();
-            }
+            // 如果体素地图有变动，同步新数据
+            backend.syncVoxels();
             
-            // 费洛蒙扩散与刺激源注入
-            if (diffuseKernel != null) {
-                cl_mem inputMap = usePingForRead ? gpuManager.getPheromoneMemA() : gpuManager.getPheromoneMemB();
-                cl_mem outputMap = usePingForRead ? gpuManager.getPheromoneMemB() : gpuManager.getPheromoneMemA();
-                
-                if (injectKernel != null) {
-                    BlockPos center = filteredEntities.get(0).blockPosition();
-                    StimulusManager.scanAndInject(level, center, gpuManager, injectKernel, inputMap);
-                }
-
-                int argIdx = 0;
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_mem, Pointer.to(inputMap));
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_mem, Pointer.to(outputMap));
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_XZ}));
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_Y}));
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_XZ})); 
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_float, Pointer.to(new float[]{0.1f})); // 扩散率
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_float, Pointer.to(new float[]{0.99f})); // 衰减率
-                clSetKernelArg(diffuseKernel, argIdx++, Sizeof.cl_float, Pointer.to(new float[]{0.05f})); 
-
-                long[] diffuseWorkSize = new long[]{VoxelManager.PHERO_VOLUME};
-                gpuManager.executeKernelAsync(diffuseKernel, 1, diffuseWorkSize, null);
-                
-                // 交换 Ping-Pong 缓冲区
-                usePingForRead = !usePingForRead;
-            }
+            // 费洛蒙刺激源注入与扩散
+            BlockPos center = filteredEntities.get(0).blockPosition();
+            StimulusManager.scanAndInject(level, center, backend);
+            backend.diffusePheromones(0.1f, 0.99f, 0.05f); // 扩散率, 衰减率, 时间步长
+            sample.lap(Stage.UPLOAD);
 
-            // 🚀 执行主计算内核
-            cl_mem currentPheroMap = usePingForRead ? gpuManager.getPheromoneMemA() : gpuManager.getPheromoneMemB();
-            setKernelArguments(entityCount, buffers, level, currentPheroMap);
+            // 🚀 执行主计算内核 (内部推进流水线槽位)
+            backend.dispatchSwarm(slotCount, buffers, buildFrameParams(level));
+            sample.lap(Stage.KERNEL);
 
-            long[] globalWorkSize = new long[]{entityCount};
-            gpuManager.executeKernelAsync(swarmKernel, 1, globalWorkSize, null);
-            
-            // 交换双缓冲，准备下一帧
-            gpuManager.swapEntityBuffers();
-
-            // 记录挂起的实体列表，用于下一帧回读
-            pendingEntities = new ArrayList<>(filteredEntities);
-            pendingEntityCount = entityCount;
+            // 记录挂起帧的 槽位 -> 实体 映射，用于之后按输出记录回写
+            Entity[] slotEntities = new Entity[slotCount];
+            for (int i = 0; i < entityCount; i++) slotEntities[slots[i]] = filteredEntities.get(i);
+            lane.pendingFrames.addLast(new PendingFrame(slotEntities, slotCount, entityCount, sample));
 
         } catch (Exception e) {
-            LOGGER.error("GPU 调度失败", e);
-            pendingEntities = null;
-            pendingEntityCount = 0;
+            LOGGER.error("群体 AI 调度失败 ({})", backend.getName(), e);
+            // 设备故障时在途命令可能永远不会完成，不再等待，下一帧起由熔断逻辑接管
+            boolean deviceFault = lane == gpuLane && watchdog != null && watchdog.onError(GpuWatchdog.Breaker.SWARM, e);
+            if (!deviceFault) backend.discardPendingFrames();
+            // 重映射操作可能没有应用，丢弃整张表，所有实体重新分配槽位并清零状态
+            lane.reset();
             fallbackToCPU(level, filteredEntities, entityTypes);
         }
     }
     
-    private void setKernelArguments(int count, GPUManager.SwarmBuffers buffers, ServerLevel level, cl_mem pheroMem) {
-        int argIndex = 0;
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.positionsMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.velocitiesMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.outputsMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.entityTypesMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.playerPosMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{count}));
-        // 填充占位参数
-        for(int i=0; i<12; i++) clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{0f}));
-        
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getAttrXMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getAttrYMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getAttrZMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getAttrTypeMem()));
-        int attrCount = BeeSensor.flowerCount + BeeSensor.hiveCount;
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{attrCount}));
-        
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.prevPositionsMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.stuckTimerMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(pheroMem));
-        
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{GPUManager.currentMapOrigin[0]}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{GPUManager.currentMapOrigin[1]}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{GPUManager.currentMapOrigin[2]}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_XZ}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_Y}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getVoxelMem()));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getOriginX()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getOriginY()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getOriginZ()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getMapSize()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getBeeStatesMem()));
+    private SwarmFrameParams buildFrameParams(ServerLevel level) {
         float now = (System.nanoTime() / 1_000_000_000.0f);
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{now}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{SwarmConfig.ATTRACTION_FORCE.get().floatValue()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{SwarmConfig.ARRIVE_RADIUS.get().floatValue()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{SwarmConfig.GATHER_CHANCE.get().floatValue()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{SwarmConfig.HOVER_FREQ.get().floatValue()}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{SwarmConfig.HOVER_AMP.get().floatValue()}));
         float worldTime = (float)(level.getDayTime() % 24000);
-        int isRaining = level.isRaining() ? 1 : 0;
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{worldTime}));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_int, Pointer.to(new int[]{isRaining}));
 
         // 计算风力参数 (根据雨量)
-        float[] wind = new float[]{0f, 0f, 0f};
+        float windX = 0f, windZ = 0f;
         float rainIntensity = level.getRainLevel(1.0f);
         if (level.isThundering()) rainIntensity = 1.0f;
         if (rainIntensity > 0) {
-            wind[0] = 0.05f * rainIntensity;
-            wind[2] = 0.05f * rainIntensity;
+            windX = 0.05f * rainIntensity;
+            windZ = 0.05f * rainIntensity;
         }
 
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float3, Pointer.to(wind));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_float, Pointer.to(new float[]{rainIntensity}));
-
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(buffers.paramsMem()));
-
-        // --- 传递流场缓冲区 ---
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getVectorFieldMem(GPUManager.FIELD_PLAYER)));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getVectorFieldMem(GPUManager.FIELD_LIVESTOCK)));
-        clSetKernelArg(swarmKernel, argIndex++, Sizeof.cl_mem, Pointer.to(gpuManager.getVectorFieldMem(GPUManager.FIELD_FOOD)));
+        return new SwarmFrameParams(
+            now,
+            SwarmConfig.ATTRACTION_FORCE.get().floatValue(),
+            SwarmConfig.ARRIVE_RADIUS.get().floatValue(),
+            SwarmConfig.GATHER_CHANCE.get().floatValue(),
+            SwarmConfig.HOVER_FREQ.get().floatValue(),
+            SwarmConfig.HOVER_AMP.get().floatValue(),
+            worldTime, level.isRaining(),
+            windX, 0f, windZ, rainIntensity,
+            BeeSensor.flowerCount + BeeSensor.hiveCount,
+            scentEmitters
+        );
     }
 
-    private void applyPendingResults(ServerLevel level) {
-        if (pendingEntities == null || pendingEntityCount == 0 || !gpuManager.isGPUAvailable()) return;
-        boolean hasData = gpuManager.syncOutputsFromPending(pendingEntityCount);
-        if (!hasData) return;
+    /**
+     * 按提交顺序应用一条通道上所有已完成的帧；最早的帧尚未完成时立即返回，不等待设备。
+     * 每帧的异步执行时长同时交给协同执行的划分器，使闲置的划分比例也随负载更新。
+     * 帧在设备上执行出错时丢弃该通道的全部挂起帧与槽位表，错误交给看门狗。
+     */
+    private void applyPendingResults(ServerLevel level, Lane lane) {
+        ComputeBackend backend = lane.backend;
+        if (backend == null) return;
+        // 后端因扩容等原因丢弃的帧总是最早的那些
+        while (lane.pendingFrames.size() > backend.getInFlightFrames()) lane.pendingFrames.pollFirst();
+
+        while (!lane.pendingFrames.isEmpty()) {
+            PendingFrame frame = lane.pendingFrames.peekFirst();
+            DispatchPlanner.Sample sample = frame.sample();
+            // CPU 后端在此等待工作线程，GPU 后端只是非阻塞地查询事件
+            sample.restart();
+            boolean ready;
+            try {
+                ready = backend.syncOutputsFromPending();
+            } catch (RuntimeException e) {
+                LOGGER.error("群体 AI 帧执行失败 ({})", backend.getName(), e);
+                // 出错的帧已由后端释放，其余在途帧的处理方式与调度失败相同
+                boolean deviceFault = lane == gpuLane && watchdog != null && watchdog.onError(GpuWatchdog.Breaker.SWARM, e);
+                if (!deviceFault) backend.discardPendingFrames();
+                lane.reset();
+                return;
+            }
+            sample.lap(Stage.READBACK);
+            if (!ready) return;
+            lane.pendingFrames.pollFirst();
+            applyFrame(backend, frame);
+            sample.lap(Stage.APPLY);
+            planner.record(sample);
+            planner.getSplitter().record(DispatchPlanner.Workload.SWARM, lane.target, frame.entities(), backend.getLastFrameNanos());
+        }
+    }
 
-        FloatBuffer outputBuf = gpuManager.getOutputBuffer();
-        int[] newStates = gpuManager.readBeeStates(pendingEntityCount);
+    /**
+     * 应用一帧的输出记录。记录已在后端完成 NaN 归零、限幅与微小速度过滤，
+     * 只包含速度发生变化的实体，其余实体保持当前速度。
+     */
+    private void applyFrame(ComputeBackend backend, PendingFrame frame) {
+        IntBuffer records = backend.getOutputRecords();
+        int recordCount = backend.getOutputRecordCount();
+        Entity[] slotEntities = frame.slotEntities();
         
-        for (int i = 0; i < pendingEntityCount; i++) {
-            if (i >= pendingEntities.size()) break;
-            Entity entity = pendingEntities.get(i);
+        for (int r = 0; r < recordCount; r++) {
+            int slot = SwarmOutputs.slot(records, r);
+            if (slot < 0 || slot >= frame.count()) continue;
+            Entity entity = slotEntities[slot];
             if (entity == null || entity.isRemoved()) continue;
 
             try {
-                int idx = i * 3;
-                double vx = outputBuf.get(idx);
-                double vy = outputBuf.get(idx+1);
-                double vz = outputBuf.get(idx+2);
-                
-                // 数据安全性检查
-                if (!Double.isFinite(vx)) { vx=0; vy=0; vz=0; }
-                else {
-                    vx = Mth.clamp(vx, -2.0, 2.0);
-                    vy = Mth.clamp(vy, -2.0, 2.0);
-                    vz = Mth.clamp(vz, -2.0, 2.0);
-                }
-                
-                // 微小速度过滤，防止抖动
-                if (Math.abs(vx) < 0.001 && Math.abs(vy) < 0.001 && Math.abs(vz) < 0.001) {
-                     vx=0; vy=0; vz=0;
-                }
+                double vx = SwarmOutputs.vx(records, r);
+                double vy = SwarmOutputs.vy(records, r);
+                double vz = SwarmOutputs.vz(records, r);
                 entity.setDeltaMovement(vx, vy, vz);
 
                 // 更新朝向 (Yaw) 以匹配移动方向
@@ -434,24 +564,10 @@ public class SwarmAISystem {
                     entity.setYHeadRot(smoothYaw);
                     if (entity instanceof Mob mob) mob.yBodyRot = smoothYaw;
                 }
-
-                if (newStates != null && i < newStates.length) {
-                    int state = newStates[i];
-                    beeStateMap.put(entity.getUUID(), state);
-                }
             } catch (Throwable t) {}
         }
-        pendingEntities = null;
-        pendingEntityCount = 0;
     }
     
-    private boolean shouldRunOnGPU(int count) {
-        if (!gpuManager.isGPUAvailable() || swarmKernel == null) return false;
-        if (!GPUAccelConfig.ENABLE_GPU.get()) return false;
-        if (!GPUAccelConfig.ENABLE_SWARM_AI_GPU.get()) return false;
-        return count >= GPUAccelConfig.MIN_ENTITIES_FOR_GPU.get();
-    }
-
     /**
      * 回退到 CPU 模式：移除 GPU 标签，恢复重力，减速。
      */
@@ -491,46 +607,37 @@ public class SwarmAISystem {
         }
     }
 
-    private void fillBuffers(List<Entity> entities, List<Integer> types, GPUManager.SwarmBuffers buffers) {
-        FloatBuffer posBuf = buffers.positions();
-        FloatBuffer velBuf = buffers.velocities();
-        IntBuffer typeBuf = buffers.entityTypes();
-        FloatBuffer paramsBuf = buffers.params(); 
-        currentActiveEntityIds.clear();
+    /**
+     * 按槽位把实体数据写入增量流，只有与上次发送不同的行才会上传；
+     * 本帧出现的槽位记入活动掩码，其余槽位 (空闲或属于其他维度) 由内核按空洞跳过；
+     * 只有空闲槽位的登记类型改写为 -1，其他维度的实体保留描述行，轮到其维度时不需要重新发送。
+     */
+    private void fillBuffers(List<Entity> entities, List<Integer> types, EntitySlotTable slotTable, int[] slots, int slotCount, GPUManager.SwarmBuffers buffers) {
+        EntityRowStream rows = buffers.rows();
+        scentEmitters = 0;
+        rows.beginMask(slotCount);
+        for (int s = 0; s < slotCount; s++) {
+            if (slotTable.isFree(s)) rows.putDescriptor(s, TYPE_NONE, null);
+        }
         for (int i = 0; i < entities.size(); i++) {
             Entity e = entities.get(i);
-            currentActiveEntityIds.add(e.getId());
             Vec3 pos = e.position();
             Vec3 vel = e.getDeltaMovement();
-            int idx3 = i * 3;
-            posBuf.put(idx3, (float)pos.x).put(idx3+1, (float)pos.y).put(idx3+2, (float)pos.z);
-            velBuf.put(idx3, (float)vel.x).put(idx3+1, (float)vel.y).put(idx3+2, (float)vel.z);
-            typeBuf.put(i, types.get(i));
-            float[] p = EntityParams.getParams(e, types.get(i));
-            int idxP = i * 12; 
-            for(int k=0; k<12; k++) {
-                if (k < p.length) paramsBuf.put(idxP + k, p[k]);
-                else paramsBuf.put(idxP + k, 0f);
+            int slot = slots[i];
+            rows.markActive(slot);
+            rows.putMotion(slot, (float)pos.x, (float)pos.y, (float)pos.z, (float)vel.x, (float)vel.y, (float)vel.z);
+            float[] params = EntityParams.getParams(e, types.get(i));
+            rows.putDescriptor(slot, types.get(i), params);
+            int aiType = (int) params[11];
+            if (aiType == EntityParams.AI_PREDATOR || aiType == EntityParams.AI_LIVESTOCK || aiType == EntityParams.AI_PREY_SKITTISH) {
+                scentEmitters++;
             }
             if (e instanceof Mob m && !m.getTags().contains("gpu_active")) {
                 m.addTag("gpu_active");
                 try { m.setNoGravity(true); } catch (Exception ex) {}
             }
         }
-        posBuf.position(0); velBuf.position(0); typeBuf.position(0); 
-        buffers.playerPos().position(0); paramsBuf.position(0); 
-    }
-
-    private void uploadBuffersToGPU(int count, GPUManager.SwarmBuffers buffers, List<Entity> entities) {
-        long size3 = (long)count * 3 * Sizeof.cl_float;
-        long size1 = (long)count * Sizeof.cl_int;
-        long sizeP = (long)count * 12 * Sizeof.cl_float; 
-        gpuManager.writeBuffer(buffers.positionsMem(), size3, Pointer.to(buffers.positions()));
-        gpuManager.writeBuffer(buffers.velocitiesMem(), size3, Pointer.to(buffers.velocities()));
-        gpuManager.writeBuffer(buffers.entityTypesMem(), size1, Pointer.to(buffers.entityTypes()));
-        gpuManager.writeBuffer(buffers.playerPosMem(), 3 * Sizeof.cl_float, Pointer.to(buffers.playerPos()));
-        gpuManager.writeBuffer(buffers.paramsMem(), sizeP, Pointer.to(buffers.params())); 
-        gpuManager.writeBeeStatesFromEntities(entities, beeStateMap);
+        buffers.playerPos().position(0);
     }
 
     private float rotLerp(float start, float end, float factor) {
@@ -541,12 +648,34 @@ public class SwarmAISystem {
     }
 
     public void cleanup() {
-        if (swarmKernel != null) clReleaseKernel(swarmKernel);
-        if (diffuseKernel != null) clReleaseKernel(diffuseKernel);
-        if (injectKernel != null) clReleaseKernel(injectKernel);
-        if (resetCostKernel != null) clReleaseKernel(resetCostKernel);
-        if (spreadCostKernel != null) clReleaseKernel(spreadCostKernel);
-        if (genVectorKernel != null) clReleaseKernel(genVectorKernel);
+        cleanupHost();
+        cleanupDevice();
+    }
+
+    /** 关闭 CPU 通道的工作线程池并释放其 Host 缓冲区，不向设备发出任何命令 */
+    public void cleanupHost() {
+        if (cpuLane.backend != null) cpuLane.backend.cleanup();
+        cpuLane.backend = null;
+    }
+
+    /** 释放 OpenCL 通道 (含熔断时摘下的后端) 的内核，设备可能挂起时只应在后台线程上调用 */
+    public void cleanupDevice() {
+        if (gpuLane.backend != null) gpuLane.backend.cleanup();
+        if (trippedBackend != null) trippedBackend.cleanup();
+        gpuLane.backend = null;
+        trippedBackend = null;
+    }
+
+    /**
+     * 群体 AI 熔断：不再向设备发出任何命令 (包括等待在途帧)，丢弃 GPU 通道的挂起帧与槽位表。
+     * 允许 CPU 后端时下一帧起全部实体由其接管，否则交回原版 AI；看门狗重建上下文时会重新创建本系统。
+     */
+    private void onSwarmTripped() {
+        trippedBackend = gpuLane.backend;
+        gpuLane.backend = null;
+        gpuLane.active = false;
+        gpuLane.reset();
+        LOGGER.warn("群体 AI 熔断，改由 {} 处理", GPUAccelConfig.ENABLE_CPU_BACKEND.get() ? "CPU 后端" : "原版 AI");
     }
 
     public void cleanupStragglers(ServerLevel level) {
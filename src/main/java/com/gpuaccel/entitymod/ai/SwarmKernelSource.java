@@ -5,6 +5,10 @@ import com.gpuaccel.entitymod.ai.kernel.FlyerLogic;
 import com.gpuaccel.entitymod.ai.kernel.WalkerLogic;
 import com.gpuaccel.entitymod.ai.kernel.SwimmerLogic;
 import com.gpuaccel.entitymod.ai.kernel.TFCLogic;
+import com.gpuaccel.entitymod.gpu.NeighbourList;
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+import com.gpuaccel.entitymod.gpu.SwarmUniforms;
+import com.gpuaccel.entitymod.gpu.TypeBuckets;
 
 /**
  * OpenCL 内核源代码组装器。
@@ -14,13 +18,37 @@ import com.gpuaccel.entitymod.ai.kernel.TFCLogic;
  * <ul>
  *   <li>刺激源注入 (Inject)</li>
  *   <li>费洛蒙扩散 (Diffusion)</li>
+ *   <li>实体槽位重映射 (Remap)</li>
+ *   <li>实体增量行写回 (Scatter)</li>
+ *   <li>空间哈希网格构建 (Grid，见 {@link SpatialGrid})</li>
  *   <li>流场查询 (Flow Lookup)</li>
- *   <li>主入口 (Main Entry)</li>
+ *   <li>主入口 (Main Entry)：混合内核与按类型分桶的专用内核</li>
  * </ul>
+ * 网格尺寸与可选行为可以在构建时以 {@code -D} 选项特化 (见 {@link com.gpuaccel.entitymod.gpu.KernelVariant})，
+ * 未指定的开关取 {@link #VARIANT_DEFAULTS} 中的默认值。
  * </p>
  */
 public class SwarmKernelSource {
 
+    // ---------------------------------------------------------
+    // 编译期特化开关 (见 KernelVariant)
+    // 以 -D 传入时覆盖这里的默认值；不带选项构建时就是完整的运行时版本
+    // ---------------------------------------------------------
+    private static final String VARIANT_DEFAULTS = """
+        #ifndef PHERO_CHANNELS
+        #define PHERO_CHANNELS %d
+        #endif
+        #ifndef ENABLE_SCENT_TRAILS
+        #define ENABLE_SCENT_TRAILS 1
+        #endif
+        #ifndef ENABLE_ATTRACTORS
+        #define ENABLE_ATTRACTORS 1
+        #endif
+        #ifndef ENABLE_OBSTACLE_RAYS
+        #define ENABLE_OBSTACLE_RAYS 1
+        #endif
+    """.formatted(VoxelManager.PHERO_CHANNELS);
+
     // ---------------------------------------------------------
     // 刺激源注入内核
     // 将 CPU 收集的实体信息 (玩家、食物) 注入到费洛蒙网格中
@@ -73,7 +101,7 @@ public class SwarmKernelSource {
         ) {
             int gid = get_global_id(0);
             int volume = sizeX * sizeY * sizeZ;
-            int totalSize = volume * 8; // 8 个通道
+            int totalSize = volume * PHERO_CHANNELS; // 全部通道
             if (gid >= totalSize) return;
 
             int channel = gid / volume;
@@ -125,6 +153,173 @@ public class SwarmKernelSource {
         }
     """;
 
+    // ---------------------------------------------------------
+    // 实体槽位重映射内核
+    // 按 EntitySlotTable 生成的操作搬移或清零逐实体状态 (同一批操作互不冲突)
+    // ---------------------------------------------------------
+    private static final String REMAP_SRC = """
+        __kernel void remap_entity_slots(
+            __global const int2* ops, // (源槽位, 目标槽位)，源为 -1 表示清零
+            const int count,
+            __global float* prevPositions,
+            __global int* stuckTimer,
+            __global int* beeStates
+        ) {
+            int gid = get_global_id(0);
+            if (gid >= count) return;
+
+            int2 op = ops[gid];
+            int src = op.x, dst = op.y;
+            if (src < 0) {
+                prevPositions[dst*3] = 0.0f; prevPositions[dst*3+1] = 0.0f; prevPositions[dst*3+2] = 0.0f;
+                stuckTimer[dst] = 0;
+                beeStates[dst] = 0;
+            } else {
+                prevPositions[dst*3]   = prevPositions[src*3];
+                prevPositions[dst*3+1] = prevPositions[src*3+1];
+                prevPositions[dst*3+2] = prevPositions[src*3+2];
+                stuckTimer[dst] = stuckTimer[src];
+                beeStates[dst] = beeStates[src];
+            }
+        }
+    """;
+
+    // ---------------------------------------------------------
+    // 实体增量行写回内核
+    // 把 EntityRowStream 打包的 (槽位, 数据) 行写回常驻的实体缓冲区
+    // ---------------------------------------------------------
+    private static final String SCATTER_SRC = """
+        __kernel void scatter_entity_rows(
+            __global const int* motionRows, const int motionCount, // 槽位, pos xyz, vel xyz
+            __global const int* descRows, const int descCount,     // 槽位, 类型, params[12]
+            __global float* positions,
+            __global float* velocities,
+            __global int* baseTypes,           // 槽位的登记类型，本帧实际类型由 apply_slot_mask 生成
+            __global float* params
+        ) {
+            int gid = get_global_id(0);
+            if (gid < motionCount) {
+                __global const int* r = &motionRows[gid * 7];
+                int slot = r[0];
+                positions[slot*3]    = as_float(r[1]);
+                positions[slot*3+1]  = as_float(r[2]);
+                positions[slot*3+2]  = as_float(r[3]);
+                velocities[slot*3]   = as_float(r[4]);
+                velocities[slot*3+1] = as_float(r[5]);
+                velocities[slot*3+2] = as_float(r[6]);
+            } else if (gid < motionCount + descCount) {
+                __global const int* r = &descRows[(gid - motionCount) * 14];
+                int slot = r[0];
+                baseTypes[slot] = r[1];
+                for (int k = 0; k < 12; k++) params[slot*12 + k] = as_float(r[2 + k]);
+            }
+        }
+    """;
+
+    // ---------------------------------------------------------
+    // 槽位活动掩码内核
+    // 本帧未出现的槽位 (空闲或属于其他维度) 类型记为 -1，其余内核按空洞跳过
+    // ---------------------------------------------------------
+    private static final String MASK_SRC = """
+        __kernel void apply_slot_mask(
+            __global const int* baseTypes,
+            __global const uint* activeMask,   // 每个槽位 1 位
+            const int count,
+            __global int* entityTypes
+        ) {
+            int gid = get_global_id(0);
+            if (gid >= count) return;
+            entityTypes[gid] = ((activeMask[gid >> 5] >> (gid & 31)) & 1u) ? baseTypes[gid] : -1;
+        }
+    """;
+
+    // ---------------------------------------------------------
+    // 空间哈希网格的分格内核 (见 SpatialGrid)
+    // 求格子哈希并原子领取桶内序号；前缀和与写入槽位表的内核见 SpatialGrid.CL_BUILD
+    // ---------------------------------------------------------
+    private static final String GRID_SRC = """
+        __kernel void grid_assign_cells(
+            __global const float* positions,
+            __global const int* entityTypes,
+            const int count,
+            __global int* cellOf,              // 槽位所在的哈希桶，空闲槽位为 -1
+            __global int* cellRank,            // 槽位在桶内的序号
+            volatile __global int* cellCount   // 每桶实体数，入队前清零
+        ) {
+            int gid = get_global_id(0);
+            if (gid >= count) return;
+            if (entityTypes[gid] < 0) { cellOf[gid] = -1; return; }
+            int h = grid_hash(grid_cell(vload3(gid, positions)));
+            cellOf[gid] = h;
+            cellRank[gid] = atomic_inc(&cellCount[h]);
+        }
+    """;
+
+    // ---------------------------------------------------------
+    // 输出压缩内核
+    // 过滤主内核的新速度，只为运动发生变化的实体输出 (槽位, vel xyz) 记录 (见 SwarmOutputs)；
+    // 工作组内做前缀和得到组内偏移，每组一次原子加领取全局写入位置
+    // ---------------------------------------------------------
+    private static final String COMPACT_SRC = """
+        #define COMPACT_GROUP 256
+
+        __kernel __attribute__((reqd_work_group_size(COMPACT_GROUP, 1, 1)))
+        void compact_outputs(
+            __global const float* newVelocities,
+            __global const float* velocities,   // 本帧输入速度，用于判断是否变化
+            __global const int* entityTypes,
+            const int count,
+            const float jitter,
+            const float maxSpeed,
+            __global int* records,              // 槽位, vel xyz (float 位模式)
+            volatile __global int* recordCount
+        ) {
+            __local int scan[COMPACT_GROUP];
+            __local int base;
+            int gid = get_global_id(0);
+            int lid = get_local_id(0);
+
+            float3 v = (float3)(0.0f);
+            int keep = 0;
+            if (gid < count && entityTypes[gid] >= 0) {
+                float3 cur = vload3(gid, velocities);
+                v = vload3(gid, newVelocities);
+                v = select(v, (float3)(0.0f), isnan(v));
+                v = clamp(v, -maxSpeed, maxSpeed);
+                int rest = all(fabs(v) < jitter);
+                if (rest) v = (float3)(0.0f);
+                // 变化不足 jitter 的实体不输出记录，但归零与限幅必须落到 Host，
+                // 否则衰减到阈值以下的速度会一直停留在 Host 上
+                keep = (any(fabs(v - cur) > jitter)
+                        || (rest && any(cur != 0.0f))
+                        || any(fabs(cur) > maxSpeed)) ? 1 : 0;
+            }
+
+            // Hillis-Steele 包含式前缀和
+            scan[lid] = keep;
+            barrier(CLK_LOCAL_MEM_FENCE);
+            for (int off = 1; off < COMPACT_GROUP; off <<= 1) {
+                int add = lid >= off ? scan[lid - off] : 0;
+                barrier(CLK_LOCAL_MEM_FENCE);
+                scan[lid] += add;
+                barrier(CLK_LOCAL_MEM_FENCE);
+            }
+            if (lid == COMPACT_GROUP - 1) {
+                int total = scan[lid];
+                base = total > 0 ? atomic_add(recordCount, total) : 0;
+            }
+            barrier(CLK_LOCAL_MEM_FENCE);
+
+            if (keep) {
+                int o = (base + scan[lid] - 1) * 4;
+                records[o]     = gid;
+                records[o + 1] = as_int(v.x);
+                records[o + 2] = as_int(v.y);
+                records[o + 3] = as_int(v.z);
+            }
+        }
+    """;
+
     // ---------------------------------------------------------
     // 流场查询辅助函数
     // ---------------------------------------------------------
@@ -142,14 +337,16 @@ public class SwarmKernelSource {
             __global float4* ffPlayer,
             __global float4* ffLivestock,
             __global float4* ffFood,
-            int ox, int oy, int oz, int size
+            int ox, int oy, int oz, int size,
+            int shift // 流场降采样位移，流场边长 = size >> shift
         ) {
             int ix = (int)floor(pos.x) - ox;
             int iy = (int)floor(pos.y) - oy;
             int iz = (int)floor(pos.z) - oz;
             if (ix < 0 || ix >= size || iy < 0 || iy >= size || iz < 0 || iz >= size) return (float3)(0);
 
-            int idx = ix + iz*size + iy*size*size;
+            int fs = size >> shift;
+            int idx = (ix >> shift) + (iz >> shift)*fs + (iy >> shift)*fs*fs;
 
             // 策略选择：根据 AI 类型决定听从哪个向量场的指挥
             // float4 的 .xyz 分量是方向向量
@@ -182,42 +379,59 @@ public class SwarmKernelSource {
 
     // ---------------------------------------------------------
     // 计算主入口
+    // 混合内核 calculateSwarmBehavior 按槽位遍历并在工作项内按类型分支；
+    // 分桶内核 (见 TypeBuckets) 只处理排序后连续的一种类型，只链接该类型的逻辑，
+    // 避免混合批次的分支发散，飞行逻辑的寄存器占用也不再拖累其他类型的占用率
     // ---------------------------------------------------------
-    private static final String MAIN_ENTRY = """
-        __kernel void calculateSwarmBehavior(
+    private static final String MAIN_ARGS = """
             __global const float* positions,     
             __global const float* velocities,    
             __global float* newVelocities,       
             __global const int* entityTypes,     
             __global const float* playerPos,     
-            const int entityCount,
-            // 占位参数
-            const float p1, const float p2, const float p3, const float p4, const float p5, const float p6,
-            const float p7, const float p8, const float p9, const float p10, const float p11, const float p12,
-            __global const float* attrX, __global const float* attrY, __global const float* attrZ, __global const int* attrType, const int attrCount,
+            __constant SwarmUniforms* uni,       // 标量参数块 (见 SwarmUniforms.java)
+            __global const float* attrX, __global const float* attrY, __global const float* attrZ, __global const int* attrType,
             __global float* prevPositions, __global int* stuckTimer,
             __global float* pheromones, // Size: Volume * 8
-            const int mapOX, const int mapOY, const int mapOZ, const int pSizeXZ, const int pSizeY,
             __global const char* voxels, 
-            const int voxOX, const int voxOY, const int voxOZ, const int voxSize,
             __global int* beeStates,
-            const float time,
-            const float attractionForce, const float arriveRadius, const float gatherChance, const float hoverFreq, const float hoverAmp,
-            const float worldTime, const int isRaining,
-            const float3 windForce, const float rainIntensity,
             __global const float* params,
             // 流场缓冲区
             __global float4* ffPlayer,
             __global float4* ffLivestock,
-            __global float4* ffFood
-        ) {
-            int gid = get_global_id(0);
-            if (gid >= entityCount) return;
+            __global float4* ffFood,
+            // Verlet 邻居表 (见 NeighbourList)
+            __global const int* nbrList,
+            __global const int* nbrCount
+    """;
+
+    /** 展开参数块并读取 gid 槽位的实体；之前需已定义 gid 与 entityCount */
+    private static final String MAIN_PROLOGUE = """
+            // 展开参数块
+            const int attrCount = uni->attrCount;
+            const int mapOX = uni->mapOX, mapOY = uni->mapOY, mapOZ = uni->mapOZ;
+        #ifdef PHERO_XZ
+            const int pSizeXZ = PHERO_XZ, pSizeY = PHERO_Y; // 编译期常量
+        #else
+            const int pSizeXZ = uni->pSizeXZ, pSizeY = uni->pSizeY;
+        #endif
+            const int voxOX = uni->voxOX, voxOY = uni->voxOY, voxOZ = uni->voxOZ;
+        #ifdef VOXEL_SIZE
+            const int voxSize = VOXEL_SIZE;
+        #else
+            const int voxSize = uni->voxSize;
+        #endif
+            const float time = uni->time;
+            const float worldTime = uni->worldTime;
+            const int isRaining = uni->isRaining;
+            const float3 windForce = (float3)(uni->windX, uni->windY, uni->windZ);
+            const float rainIntensity = uni->rainIntensity;
             
             int idx = gid * 3;
             float3 pos = (float3)(positions[idx], positions[idx+1], positions[idx+2]);
             float3 vel = (float3)(velocities[idx], velocities[idx+1], velocities[idx+2]);
             int type = entityTypes[gid];
+            if (type < 0) return; // 空闲槽位
             
             float3 pPos3 = (float3)(playerPos[0], playerPos[1], playerPos[2]);
             float distToPlayerSq = dot(pos - pPos3, pos - pPos3);
@@ -231,10 +445,11 @@ public class SwarmKernelSource {
             // 提取打包的 AI 类型
             float packedAI = myParams[11];
             int aiType = (int)packedAI; // 整数部分为类型
+    """;
 
-            if (type == 4) { // WALKER (陆行生物)
+    private static final String WALKER_BODY = """
                 // 采样流场
-                float3 flowDir = get_flow_force(pos, aiType, ffPlayer, ffLivestock, ffFood, voxOX, voxOY, voxOZ, voxSize);
+                float3 flowDir = get_flow_force(pos, aiType, ffPlayer, ffLivestock, ffFood, voxOX, voxOY, voxOZ, voxSize, uni->flowShift);
 
                 finalVel = update_walker(
                     gid, idx, type, pos, vel, time, 
@@ -245,39 +460,44 @@ public class SwarmKernelSource {
                     windForce,
                     flowDir // 传入流场向量
                 );
-            }
-            else if (type == 5) { // SWIMMER (水生生物)
+    """;
+
+    private static final String SWIMMER_BODY = """
                 finalVel = update_swimmer(
                     gid, idx, type, pos, vel, time, 
-                    positions, velocities, entityCount, entityTypes,
+                    positions, velocities, entityTypes,
+                    nbrList, nbrCount,
                     myParams,
                     voxels, voxOX, voxOY, voxOZ, voxSize,
                     prevPositions, stuckTimer, lodActive, pPos3,
                     windForce
                 );
-            }
-            else if (type == 1) { // ITEM (掉落物)
+    """;
+
+    private static final String ITEM_BODY = """
                 vel.y -= 0.04f; 
                 char vBelow = get_voxel(pos + (float3)(0, -0.2f, 0), voxels, voxOX, voxOY, voxOZ, voxSize);
                 if (vBelow == 1) { vel.y = 0; vel.x *= 0.5f; vel.z *= 0.5f; } // 地面摩擦
                 else vel *= 0.6f; // 空气阻力
                 finalVel = vel;
-            }
-            else if (type == 2) { // XP (经验球)
+    """;
+
+    private static final String XP_BODY = """
                 vel.y -= 0.03f;
                 // 自动吸附玩家
                 if (!lodActive && distToPlayerSq < 64.0f) 
                     finalVel += normalize(pPos3 + (float3)(0,1,0) - pos) * 0.15f;
                 finalVel *= 0.95f;
-            }
-            else { 
-                // FLYER (飞行生物)
+    """;
+
+    private static final String FLYER_BODY = """
                 int state = beeStates[gid];
                 finalVel = update_flyer(
                     gid, idx, type, state, pos, vel, 
                     prevPositions, stuckTimer, beeStates, 
                     time, worldTime, isRaining,
-                    positions, velocities, entityTypes, entityCount,
+                    positions, velocities, entityTypes,
+                    nbrList, nbrCount,
                     attrX, attrY, attrZ, attrType, attrCount,
                     myParams,
                     lodActive,
@@ -285,8 +505,11 @@ public class SwarmKernelSource {
                     voxels, voxOX, voxOY, voxOZ, voxSize,
                     windForce, rainIntensity, pPos3
                 );
-            }
-            
+    """;
+
+    /** 写入自身气味并输出新速度 */
+    private static final String MAIN_EPILOGUE = """
+        #if ENABLE_SCENT_TRAILS
             // 写入自身气味 (Self Scent Trail)
             if (!lodActive) {
                 int px = (int)floor(pos.x) - mapOX;
@@ -306,22 +529,72 @@ public class SwarmKernelSource {
                     }
                 }
             }
+        #endif
 
             newVelocities[idx]   = finalVel.x;
             newVelocities[idx+1] = finalVel.y;
             newVelocities[idx+2] = finalVel.z;
-        }
     """;
 
+    private static String mainEntry() {
+        return "__kernel void calculateSwarmBehavior(\n" + MAIN_ARGS + ") {\n"
+            + """
+                const int entityCount = uni->entityCount;
+                int gid = get_global_id(0);
+                if (gid >= entityCount) return;
+            """
+            + MAIN_PROLOGUE
+            + "    if (type == 4) { // WALKER (陆行生物)\n" + WALKER_BODY
+            + "    } else if (type == 5) { // SWIMMER (水生生物)\n" + SWIMMER_BODY
+            + "    } else if (type == 1) { // ITEM (掉落物)\n" + ITEM_BODY
+            + "    } else if (type == 2) { // XP (经验球)\n" + XP_BODY
+            + "    } else { // FLYER (飞行生物)\n" + FLYER_BODY
+            + "    }\n"
+            + MAIN_EPILOGUE
+            + "}\n";
+    }
+
+    /**
+     * 生成一个分桶内核：第 i 个工作项处理 order[bucketStart[bucket] + i] 号槽位。
+     */
+    private static String bucketEntry(int bucket, String body) {
+        return "__kernel void " + TypeBuckets.KERNELS[bucket] + "(\n" + MAIN_ARGS
+            + "    , __global const int* order // 按类型排序的槽位 (见 TypeBuckets)\n) {\n"
+            + "    const int entityCount = uni->entityCount;\n"
+            + "    const int first = uni->bucketStart[" + bucket + "];\n"
+            + "    int b = get_global_id(0);\n"
+            + "    if (b >= uni->bucketStart[" + (bucket + 1) + "] - first) return;\n"
+            + "    int gid = order[first + b];\n"
+            + MAIN_PROLOGUE
+            + "    {\n" + body + "    }\n"
+            + MAIN_EPILOGUE
+            + "}\n";
+    }
+
     public static String getSource() {
-        return KernelCommon.SRC + "\n" + 
-               TFCLogic.SRC + "\n" +
+        return VARIANT_DEFAULTS + "\n" +
+               KernelCommon.SRC + "\n" + 
+               SpatialGrid.CL_COMMON + "\n" +
+               NeighbourList.CL_SRC + "\n" +
+               "#if ENABLE_SCENT_TRAILS\n" + TFCLogic.SRC + "\n#endif\n" +
                FlyerLogic.SRC + "\n" + 
                WalkerLogic.SRC + "\n" + 
                SwimmerLogic.SRC + "\n" + 
                INJECT_SRC + "\n" +
                DIFFUSION_SRC + "\n" +
+               REMAP_SRC + "\n" +
+               SCATTER_SRC + "\n" +
+               MASK_SRC + "\n" +
+               GRID_SRC + "\n" +
+               SpatialGrid.CL_BUILD + "\n" +
+               COMPACT_SRC + "\n" +
                FLOW_LOOKUP + "\n" +
-               MAIN_ENTRY;
+               SwarmUniforms.CL_STRUCT + "\n" +
+               mainEntry() + "\n" +
+               bucketEntry(TypeBuckets.WALKER, WALKER_BODY) + "\n" +
+               bucketEntry(TypeBuckets.SWIMMER, SWIMMER_BODY) + "\n" +
+               bucketEntry(TypeBuckets.FLYER, FLYER_BODY) + "\n" +
+               bucketEntry(TypeBuckets.ITEM, ITEM_BODY) + "\n" +
+               bucketEntry(TypeBuckets.XP, XP_BODY);
     }
 }
@@ -1,5 +1,7 @@
 package com.gpuaccel.entitymod.ai;
 
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.HostArena;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.server.level.ServerLevel;
@@ -36,6 +38,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * </p>
  */
 public class VoxelManager {
+    // 费洛蒙网格的最大尺寸；GPU 上的实际尺寸由 GPUManager 按显存预算选择 (见 DeviceMemoryBudget)
     public static final int PHERO_SIZE_XZ = 512;
     public static final int PHERO_SIZE_Y = 128;
     public static final int PHERO_CHANNELS = 8; // 谷物, 肉类, 鱼类, 盐, 捕食者, 猎物, 兽群, 玩家
@@ -69,11 +72,19 @@ public class VoxelManager {
      * 初始化体素缓冲区。
      */
     public static void init() {
-        if (voxelBuffer != null) MemoryUtil.memFree(voxelBuffer);
-        voxelBuffer = MemoryUtil.memAlloc(VOXEL_VOLUME);
+        if (voxelBuffer != null) HostArena.free(voxelBuffer);
+        voxelBuffer = HostArena.alloc(Subsystem.VOXEL, VOXEL_VOLUME);
         clear();
     }
 
+    /**
+     * 释放体素缓冲区 (服务器停止时调用)。
+     */
+    public static void release() {
+        HostArena.free(voxelBuffer);
+        voxelBuffer = null;
+    }
+
     /**
      * 执行增量更新。每 Tick 仅更新少量 Chunk，避免卡顿。
      * 如果中心点移动过大，则会触发全量重置。
@@ -251,6 +262,8 @@ public class VoxelManager {
     public static ByteBuffer getVoxelBuffer() { return voxelBuffer; }
     public static boolean isDirty() { return isDirty.get(); }
     public static void clearDirty() { isDirty.set(false); }
+    /** 设备端体素缓冲区需要整体重新上传 (如 OpenCL 上下文重建后) */
+    public static void markDirty() { isDirty.set(true); }
     public static int getOriginX() { return originX; }
     public static int getOriginY() { return originY; }
     public static int getOriginZ() { return originZ; }
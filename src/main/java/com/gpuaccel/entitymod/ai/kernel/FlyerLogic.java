@@ -12,7 +12,8 @@ public class FlyerLogic {
             int gid, int idx, int type, int state, float3 pos, float3 vel,
             __global float* prevPositions, __global int* stuckTimer, __global int* beeStates,
             float time, float worldTime, int isRaining,
-            __global const float* positions, __global const float* velocities, __global const int* entityTypes, int entityCount,
+            __global const float* positions, __global const float* velocities, __global const int* entityTypes,
+            __global const int* nbrList, __global const int* nbrCount,
             __global const float* attrX, __global const float* attrY, __global const float* attrZ, __global const int* attrType, int attrCount,
             __global const float* params, 
             bool lodActive,
@@ -20,7 +21,7 @@ public class FlyerLogic {
             __global const char* voxels, int voxOX, int voxOY, int voxOZ, int voxSize,
             float3 windForce, float rainIntensity, float3 playerPos
         ) {
-            int pBase = gid * 12;
+            int pBase = 0; // params 已是本实体的参数行 (myParams)
             float maxSpeed       = params[pBase + 0];
             float wanderStrength = params[pBase + 1];
             float separationWeight = params[pBase + 2];
@@ -67,13 +68,15 @@ public class FlyerLogic {
                 int targetType = (state == STATE_IDLE && !goHome) ? 1 : 2; 
                 int closest = -1; float minScore = 1e18f; float realMinDSq = 1e18f;
 
-                // 搜索最近目标 (暴力搜索，可优化)
+                // 搜索最近目标 (暴力搜索，可优化)；不含吸引点的变体不搜索，closest 保持 -1
+            #if ENABLE_ATTRACTORS
                 for (int i=0; i<attrCount; i++) {
                     if (attrType[i] != targetType) continue;
                     float3 tPos = (float3)(attrX[i], attrY[i], attrZ[i]);
                     float dSq = dot(tPos - pos, tPos - pos);
                     if (dSq < minScore) { minScore = dSq; closest = i; realMinDSq = dSq; }
                 }
+            #endif
                 
                 if (state == STATE_IDLE) {
                     // 闲逛噪声
@@ -111,14 +114,14 @@ public class FlyerLogic {
             if (!lodActive) {
                 float3 sep=(float3)(0), ali=(float3)(0), coh=(float3)(0);
                 int count = 0; float sepSq = separationRadius * separationRadius;
-                uint seed = gid + (uint)(time * 100);
-                int samples = (entityCount < 32) ? entityCount : 32; // 采样优化
 
-                for (int k=0; k<samples; k++) {
-                    int i;
-                    if (entityCount < 32) i = k;
-                    else { seed = next_rand(seed); i = seed % entityCount; }
-                    if (i == gid) continue;
+                // 遍历 Verlet 邻居表 (见 NeighbourList)，表中已收录作用半径 + skin 内的候选
+                int n = nbrCount[gid];
+                __global const int* nbrs = &nbrList[gid * NBR_MAX];
+                for (int k = 0; k < n; k++) {
+                    int i = nbrs[k];
+                    int oType = entityTypes[i];
+                    if (oType < 0) continue; // 构建后离开或本帧未出现的槽位
 
                     int oIdx = i * 3;
                     float3 oPos = (float3)(positions[oIdx], positions[oIdx+1], positions[oIdx+2]);
@@ -128,7 +131,7 @@ public class FlyerLogic {
                     if (dSq < 64.0f && dSq > 1e-5f) {
                         if (in_fov(safe_normalize(vel), diff, fovCos)) {
                             if (dSq < sepSq) sep -= safe_normalize(diff) / dSq; // 分离
-                            if (entityTypes[i] == type) {
+                            if (oType == type) {
                                 float3 oVel = (float3)(velocities[oIdx], velocities[oIdx+1], velocities[oIdx+2]);
                                 ali += oVel; coh += oPos;
                             }
@@ -151,6 +154,7 @@ public class FlyerLogic {
             vel *= 0.98f; // 阻力
             
             // 4. 避障 (Raycasting Avoidance)
+        #if ENABLE_OBSTACLE_RAYS
             float speedSq = dot(vel, vel);
             if (speedSq > 0.0001f && !lodActive) {
                 float speed = sqrt(speedSq);
@@ -165,6 +169,7 @@ public class FlyerLogic {
                 }
                 vel += avoidance * 0.8f / mass; 
             }
+        #endif
             return limit_vec(vel, maxSpeed);
         }
     """;
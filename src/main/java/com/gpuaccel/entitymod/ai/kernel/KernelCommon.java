@@ -121,7 +121,7 @@ public class KernelCommon {
             return get_voxel(p, voxels, oX, oY, oZ, size) == VOXEL_SOLID;
         }
 
-        // 射线检测 (Raycast)：简单的 3D DDA 算法
+        // 射线检测 (Raycast)：3D DDA，借助体素之后的占用金字塔 (见 OccupancyPyramid) 跳过空砖块的体素读取
         float cast_ray(float3 start, float3 dir, float maxDist, __global const char* voxels, int oX, int oY, int oZ, int size) {
             int mx = (int)floor(start.x); int my = (int)floor(start.y); int mz = (int)floor(start.z);
             float3 dDist = (float3)(fabs(1.0f/dir.x), fabs(1.0f/dir.y), fabs(1.0f/dir.z));
@@ -130,8 +130,15 @@ public class KernelCommon {
             float sideY = dir.y < 0 ? (start.y - my) * dDist.y : (my + 1.0f - start.y) * dDist.y;
             float sideZ = dir.z < 0 ? (start.z - mz) * dDist.z : (mz + 1.0f - start.z) * dDist.z;
 
+            int d1 = size >> 2, d2 = size >> 4;
+            __global const char* occ1 = voxels + size*size*size;   // 4³ 砖块
+            __global const char* occ2 = occ1 + d1*d1*d1;            // 16³ 砖块
+
             float dist = 0.0f;
+            int skip = 0; // 非 0 时表示正位于边长为 (1 << skip) 的空砖块 (bx, by, bz) 内
+            int bx = 0, by = 0, bz = 0;
             while (dist < maxDist) {
+                // 步进算术与逐格遍历相同，保证结果逐位一致
                 if (sideX < sideY) {
                     if (sideX < sideZ) { dist = sideX; sideX += dDist.x; mx += stepX; }
                     else { dist = sideZ; sideZ += dDist.z; mz += stepZ; }
@@ -140,8 +147,15 @@ public class KernelCommon {
                     else { dist = sideZ; sideZ += dDist.z; mz += stepZ; }
                 }
                 int lx = mx - oX; int ly = my - oY; int lz = mz - oZ;
+                if (skip) {
+                    if ((lx >> skip) == bx && (ly >> skip) == by && (lz >> skip) == bz) continue; // 仍在空砖块内
+                    skip = 0;
+                }
                 if (lx >= 0 && lx < size && ly >= 0 && ly < size && lz >= 0 && lz < size) {
-                    if (voxels[lx + lz*size + ly*size*size] == VOXEL_SOLID) return dist;
+                    if (occ2[(lx >> 4) + (lz >> 4)*d2 + (ly >> 4)*d2*d2] == 0) skip = 4;
+                    else if (occ1[(lx >> 2) + (lz >> 2)*d1 + (ly >> 2)*d1*d1] == 0) skip = 2;
+                    else if (voxels[lx + lz*size + ly*size*size] == VOXEL_SOLID) return dist;
+                    if (skip) { bx = lx >> skip; by = ly >> skip; bz = lz >> skip; }
                 }
             }
             return maxDist;
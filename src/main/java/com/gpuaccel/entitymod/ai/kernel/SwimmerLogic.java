@@ -11,7 +11,8 @@ public class SwimmerLogic {
         float3 update_swimmer(
             int gid, int idx, int type, float3 pos, float3 vel,
             float time,
-            __global const float* positions, __global const float* velocities, int entityCount, __global const int* entityTypes,
+            __global const float* positions, __global const float* velocities, __global const int* entityTypes,
+            __global const int* nbrList, __global const int* nbrCount,
             __global const float* params, 
             __global const char* voxels, int mapOX, int mapOY, int mapOZ, int mapSize,
             __global float* prevPositions, __global int* stuckTimer,
@@ -19,7 +20,7 @@ public class SwimmerLogic {
             float3 playerPos,
             float3 windForce
         ) {
-            int pBase = gid * 12;
+            int pBase = 0; // params 已是本实体的参数行 (myParams)
             float maxSpeed       = params[pBase + 0];
             float wanderStrength = params[pBase + 1];
             float separationWeight = params[pBase + 2];
@@ -82,21 +83,19 @@ public class SwimmerLogic {
 
                 // 群体行为 (Boids)
                 float3 sep=(float3)(0), ali=(float3)(0), coh=(float3)(0);
-                int count = 0; float visRadSq = 16.0f; 
-                uint seed = gid + (uint)(time * 150);
-                int samples = (entityCount < 32) ? entityCount : 32;
+                int count = 0; float visRadSq = 16.0f;
+
+                // 遍历 Verlet 邻居表 (见 NeighbourList)，表中只收录水生生物
+                int n = nbrCount[gid];
+                __global const int* nbrs = &nbrList[gid * NBR_MAX];
+                for (int k = 0; k < n; k++) {
+                    int i = nbrs[k];
+                    if (entityTypes[i] != 5) continue; // 构建后离开或本帧未出现的槽位
 
-                for (int k=0; k<samples; k++) {
-                    int i;
-                    if (entityCount < 32) i = k;
-                    else { seed = next_rand(seed); i = seed % entityCount; }
-                    if (i==gid) continue;
-                    if (entityTypes[i] != 5) continue; // 仅与水生生物互动
-                    
                     int oIdx = i * 3;
                     float3 oPos = (float3)(positions[oIdx], positions[oIdx+1], positions[oIdx+2]);
                     float dSq = dot(pos - oPos, pos - oPos);
-                    
+
                     if (dSq < visRadSq && dSq > 1e-5f) {
                         coh += oPos;
                         float3 oVel = (float3)(velocities[oIdx], velocities[oIdx+1], velocities[oIdx+2]);
@@ -89,7 +89,7 @@ public class WalkerLogic {
             float3 windForce,
             float3 flowFieldDir // 新增：流场向量输入
         ) {
-            int pBase = gid * 12; 
+            int pBase = 0; // params 已是本实体的参数行 (myParams)
             float maxSpeed    = params[pBase + 0];
             float commandState = params[pBase + 1]; 
             float3 goalPos     = (float3)(params[pBase+2], params[pBase+3], params[pBase+4]);
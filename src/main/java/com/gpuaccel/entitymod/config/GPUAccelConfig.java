@@ -19,8 +19,46 @@ public class GPUAccelConfig {
     // GPU 配置
     /** 是否启用 GPU 加速 */
     public static final ForgeConfigSpec.BooleanValue ENABLE_GPU;
-    /** 启用 GPU 加速所需的最小实体数量 */
+    /** 调度器尚无实测数据时的初始 CPU / GPU 分界 (关闭自适应调度时为固定阈值) */
     public static final ForgeConfigSpec.IntValue MIN_ENTITIES_FOR_GPU;
+    /** 是否按实测代价在 CPU 与 GPU 之间自适应调度 */
+    public static final ForgeConfigSpec.BooleanValue ADAPTIVE_DISPATCH;
+    /** 实体较多时是否把同一帧拆给 GPU 与 CPU 同时处理 */
+    public static final ForgeConfigSpec.BooleanValue CO_EXECUTION;
+    /** OpenCL 不可用时是否使用多线程 CPU 后端运行群体 AI */
+    public static final ForgeConfigSpec.BooleanValue ENABLE_CPU_BACKEND;
+    /** CPU 后端工作线程数 (0 = 自动) */
+    public static final ForgeConfigSpec.IntValue CPU_BACKEND_THREADS;
+    /** 使用记录型替身驱动代替真实 OpenCL 设备 (用于统计传输开销) */
+    public static final ForgeConfigSpec.BooleanValue USE_RECORDING_DRIVER;
+    /** 是否把编译后的 OpenCL 程序二进制缓存到磁盘 */
+    public static final ForgeConfigSpec.BooleanValue ENABLE_KERNEL_CACHE;
+    /** 群体 AI 流水线槽位数量 (同时在途的帧数上限) */
+    public static final ForgeConfigSpec.IntValue PIPELINE_SLOTS;
+    /** 是否在独立驱动线程上执行 OpenCL 调用 */
+    public static final ForgeConfigSpec.BooleanValue USE_DRIVER_THREAD;
+    /** 是否把 OpenCL 上下文放到独立的计算边车进程中 */
+    public static final ForgeConfigSpec.BooleanValue USE_COMPUTE_SIDECAR;
+    /** 计算边车宿主运行在服务器进程内 (替身，不启动独立进程) */
+    public static final ForgeConfigSpec.BooleanValue SIDECAR_IN_PROCESS;
+    /** 计算边车的通道目录 (空 = 自动) */
+    public static final ForgeConfigSpec.ConfigValue<String> SIDECAR_DIRECTORY;
+    /** 计算边车进程的类路径 (空 = 自动) */
+    public static final ForgeConfigSpec.ConfigValue<String> SIDECAR_CLASSPATH;
+    /** 显存预算占设备全局显存的百分比 */
+    public static final ForgeConfigSpec.IntValue GPU_MEMORY_BUDGET_PERCENT;
+    /** 显式显存预算 (MB，0 = 按百分比) */
+    public static final ForgeConfigSpec.IntValue GPU_MEMORY_BUDGET_MB;
+    /** 是否在共享内存的设备上使用映射的 Host 缓冲区 (零复制) */
+    public static final ForgeConfigSpec.BooleanValue ZERO_COPY_BUFFERS;
+    /** 是否自动调优尚无结果的内核的工作组大小 */
+    public static final ForgeConfigSpec.BooleanValue AUTO_TUNE_WORK_GROUPS;
+    /** 是否以 -cl-fast-relaxed-math 构建群体行为内核 (通过校验后才使用) */
+    public static final ForgeConfigSpec.BooleanValue FAST_MATH_KERNELS;
+    /** 完成事件的超时时间 (毫秒)，超时视为设备挂起 */
+    public static final ForgeConfigSpec.IntValue GPU_FRAME_TIMEOUT_MS;
+    /** 熔断后重建 OpenCL 上下文前的冷却时间 (秒) */
+    public static final ForgeConfigSpec.IntValue GPU_RECOVERY_COOLDOWN_SECONDS;
     
     // 算法选择
     /** 是否启用 GPU 加速的群体 AI */
@@ -49,6 +87,10 @@ public class GPUAccelConfig {
     public static final ForgeConfigSpec.DoubleValue COHESION_WEIGHT;
     /** 最大速度 */
     public static final ForgeConfigSpec.DoubleValue MAX_SPEED;
+    /** 实体是否在费洛蒙网格中留下自身气味 */
+    public static final ForgeConfigSpec.BooleanValue SCENT_TRAILS;
+    /** 飞行生物是否使用射线避障 */
+    public static final ForgeConfigSpec.BooleanValue FLYER_OBSTACLE_RAYS;
     
     // 物理模拟配置
     /** 启用物理模拟 */
@@ -88,8 +130,67 @@ public class GPUAccelConfig {
             .comment("启用 GPU 加速（需要兼容 OpenCL 的设备）")
             .define("enableGPU", true);
         MIN_ENTITIES_FOR_GPU = BUILDER
-            .comment("使用 GPU 的最小实体数量（少于此数量时使用 CPU 回退）")
+            .comment("使用 GPU 的最小实体数量（少于此数量时使用 CPU 回退）。开启自适应调度时只作为尚无实测数据时的初始分界")
             .defineInRange("minEntitiesForGPU", 10, 1, 10000);
+        ADAPTIVE_DISPATCH = BUILDER
+            .comment("按各阶段（打包、上传、内核、回读、应用）的实测耗时为群体 AI 与物理分别选择 CPU 或 GPU，带迟滞避免频繁切换。群体 AI 需同时启用 CPU 后端")
+            .define("adaptiveDispatch", true);
+        CO_EXECUTION = BUILDER
+            .comment("实体较多时把同一帧拆成两段，GPU 处理前一段、CPU 同时处理后一段，划分比例按两侧实测的单实体耗时调整。需同时启用自适应调度与 CPU 后端",
+                     "有损：按实体列表位置而非空间划分，两段之间的群体邻居 (分离、对齐、费洛蒙) 与实体碰撞互不可见",
+                     "物理的 CPU 段调用 Entity#move，在服务器线程上同步执行，与 GPU 段重叠但计入服务器 Tick 耗时")
+            .define("coExecution", false);
+        ENABLE_CPU_BACKEND = BUILDER
+            .comment("当 OpenCL 不可用时，使用纯 Java 多线程后端运行群体 AI 内核")
+            .define("enableCPUBackend", true);
+        CPU_BACKEND_THREADS = BUILDER
+            .comment("CPU 后端的工作线程数（0 = 自动，使用 CPU 核心数 - 1）")
+            .defineInRange("cpuBackendThreads", 0, 0, 256);
+        USE_RECORDING_DRIVER = BUILDER
+            .comment("使用记录型 OpenCL 替身驱动：不访问显卡，用 Java 参考实现执行内核并统计每 Tick 的阻塞调用与传输量（仅用于性能分析）")
+            .define("useRecordingDriver", false);
+        ENABLE_KERNEL_CACHE = BUILDER
+            .comment("将编译好的 OpenCL 程序二进制缓存到 gpuaccel/kernel-cache，下次启动直接加载（按源码、设备和驱动版本区分）")
+            .define("enableKernelCache", true);
+        PIPELINE_SLOTS = BUILDER
+            .comment("群体 AI 传输流水线的槽位数量（默认 3 = 三缓冲）。越大越能容忍 GPU 延迟，但结果最多滞后相应的 Tick 数")
+            .defineInRange("pipelineSlots", 3, 2, 8);
+        USE_DRIVER_THREAD = BUILDER
+            .comment("在独立的驱动线程上执行全部 OpenCL 调用，服务器主线程只把命令写入无锁队列，避免驱动卡顿拖慢 MSPT")
+            .define("useDriverThread", true);
+        USE_COMPUTE_SIDECAR = BUILDER
+            .comment("由独立的计算边车进程持有 OpenCL 上下文，服务器通过共享内存环形队列提交命令。驱动崩溃只会带走边车进程，看门狗重建时自动重新连接；同一台机器上的多个服务器可共用一个边车和一块显卡（显存预算各自计算，不相互协调）")
+            .define("useComputeSidecar", false);
+        SIDECAR_IN_PROCESS = BUILDER
+            .comment("计算边车宿主运行在服务器进程内的守护线程上，不启动独立进程。与 useRecordingDriver 一起使用时可在没有显卡的机器上验证边车通道")
+            .define("sidecarInProcess", false);
+        SIDECAR_DIRECTORY = BUILDER
+            .comment("计算边车的通道文件目录，共用同一边车的服务器需指向同一目录（留空 = /dev/shm/gpuaccel-sidecar，不存在时使用系统临时目录）")
+            .define("sidecarDirectory", "");
+        SIDECAR_CLASSPATH = BUILDER
+            .comment("启动计算边车进程使用的类路径，需包含本模组、JOCL 与 log4j 的 jar（留空 = 按已加载类的位置自动推断）")
+            .define("sidecarClasspath", "");
+        GPU_MEMORY_BUDGET_PERCENT = BUILDER
+            .comment("本模组可使用的显存占设备全局显存的百分比。费洛蒙网格与流场会按预算自动选择能放下的最大分辨率")
+            .defineInRange("gpuMemoryBudgetPercent", 70, 10, 95);
+        GPU_MEMORY_BUDGET_MB = BUILDER
+            .comment("显式指定显存预算（MB，0 = 按上面的百分比计算）。与其他占用显存的程序共用显卡时可调低")
+            .defineInRange("gpuMemoryBudgetMB", 0, 0, 1048576);
+        ZERO_COPY_BUFFERS = BUILDER
+            .comment("集成显卡 / APU 等与主机共享内存的设备上，实体行直接打包进映射的缓冲区、输出记录直接从映射区读取，省去全部复制。独立显卡上不生效")
+            .define("zeroCopyBuffers", true);
+        AUTO_TUNE_WORK_GROUPS = BUILDER
+            .comment("首次在某块显卡 / 驱动上运行时逐个内核测量候选工作组大小并保存到 kernel-cache 目录，之后的启动直接复用。调优期间的若干帧不做流水线重叠。也可用 /gpuaccel tune 手动重新调优")
+            .define("autoTuneWorkGroups", true);
+        FAST_MATH_KERNELS = BUILDER
+            .comment("以 -cl-fast-relaxed-math 构建群体行为内核。首次使用前会在同一帧输入上与精确构建比对输出，偏差超出容差时本次运行退回精确构建")
+            .define("fastMathKernels", true);
+        GPU_FRAME_TIMEOUT_MS = BUILDER
+            .comment("GPU 命令超过该时间（毫秒）仍未完成，或驱动返回 CL_OUT_OF_RESOURCES 等错误时，对应子系统熔断，实体交回 CPU / 原版逻辑处理")
+            .defineInRange("gpuFrameTimeoutMs", 2000, 100, 60000);
+        GPU_RECOVERY_COOLDOWN_SECONDS = BUILDER
+            .comment("熔断后等待多少秒重建 OpenCL 上下文并恢复 GPU 加速。重建后很快再次熔断时等待时间逐次翻倍")
+            .defineInRange("gpuRecoveryCooldownSeconds", 30, 5, 3600);
         BUILDER.pop();
         
         BUILDER.push("Algorithm Selection");
@@ -129,6 +230,12 @@ public class GPUAccelConfig {
         MAX_SPEED = BUILDER
             .comment("实体最大移动速度")
             .defineInRange("maxSpeed", 0.5, 0.1, 5.0);
+        SCENT_TRAILS = BUILDER
+            .comment("捕食者、家畜与猎物在费洛蒙网格中留下自身气味（TFC 嗅觉逻辑）。关闭，或世界中没有这类生物时，GPU 内核以不含气味写入的变体构建")
+            .define("scentTrails", true);
+        FLYER_OBSTACLE_RAYS = BUILDER
+            .comment("飞行生物向前方发射探测射线避开方块。关闭后内核以不含射线避障的变体构建，大量飞行生物时可明显降低 GPU 负载")
+            .define("flyerObstacleRays", true);
         BUILDER.pop();
         
         BUILDER.push("Physics Settings");
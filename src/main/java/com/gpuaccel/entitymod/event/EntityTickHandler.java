@@ -2,6 +2,7 @@ package com.gpuaccel.entitymod.event;
 
 import com.gpuaccel.entitymod.GPUEntityAccelMod;
 import com.gpuaccel.entitymod.gpu.GPUManager;
+import com.gpuaccel.entitymod.gpu.GpuWatchdog;
 import com.gpuaccel.entitymod.config.GPUAccelConfig;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.MinecraftServer;
@@ -36,6 +37,7 @@ import net.minecraft.world.entity.EntityType;
  *   <li>扫描世界中的实体，筛选出适合 GPU 处理的候选实体。</li>
  *   <li>处理“安全区”逻辑，排除受保护实体附近的生物。</li>
  *   <li>触发体素地图的增量更新。</li>
+ *   <li>驱动 GPU 看门狗：检查在途帧是否超时，冷却结束后重建 OpenCL 上下文。</li>
  * </ul>
  * </p>
  */
@@ -43,15 +45,18 @@ import net.minecraft.world.entity.EntityType;
 public class EntityTickHandler {
 
     private static int tickCounter = 0;
-    private static int pheromoneCheckCounter = 0;
     private static boolean hasCrashed = false;
     private static boolean errorLogged = false;
 
     private static final List<Entity> REUSABLE_ENTITY_LIST = new ArrayList<>(512);
     /** 受保护实体类型的缓存，减少字符串匹配开销 */
     private static final Map<EntityType<?>, Boolean> PROTECTED_CACHE = new HashMap<>();
+    /** 各维度的安全区索引，跨轮次增量维护 */
+    private static final Map<String, SafetyZoneIndex> SAFETY_ZONES = new HashMap<>();
     private static BlockPos lastVoxelOrigin = BlockPos.ZERO;
     private static String lastDimensionKey = "";
+    /** 本轮计算循环提交给群体 AI 的实体总数 (用于驱动统计) */
+    private static int submittedEntities = 0;
 
     /**
      * 服务器 Tick 事件。
@@ -69,8 +74,9 @@ public class EntityTickHandler {
         }
 
         try {
+            checkSystemHealth(event.getServer());
+
             tickCounter++;
-            pheromoneCheckCounter++;
             
             // 检查更新间隔
             int interval = GPUAccelConfig.UPDATE_INTERVAL.get();
@@ -78,17 +84,26 @@ public class EntityTickHandler {
             tickCounter = 0;
 
             MinecraftServer server = event.getServer();
+            submittedEntities = 0;
+            if (GPUEntityAccelMod.getSwarmAISystem() != null) GPUEntityAccelMod.getSwarmAISystem().beginRound();
             for (ServerLevel level : server.getAllLevels()) {
                 if (level != null && !level.isClientSide) {
                     processLevel(level);
                 }
             }
 
-            if (pheromoneCheckCounter >= 100) {
-                pheromoneCheckCounter = 0;
-                checkSystemHealth();
+            // 结算本轮的 OpenCL 命令统计
+            GPUManager gm = GPUEntityAccelMod.getGPUManager();
+            if (gm != null && gm.isGPUAvailable()) {
+                gm.getDriver().getStats().endTick(submittedEntities);
             }
         } catch (Exception e) {
+            // 设备故障交给看门狗熔断并择机重建，其他错误仍然停用模组
+            GpuWatchdog watchdog = GPUEntityAccelMod.getWatchdog();
+            if (watchdog != null && watchdog.onError(GpuWatchdog.Breaker.SWARM, e)) {
+                GPUEntityAccelMod.LOGGER.error("GPU 加速循环中发生设备错误", e);
+                return;
+            }
             hasCrashed = true;
             GPUEntityAccelMod.LOGGER.error("严重错误: GPU 加速循环失败，正在紧急停用模组。", e);
         }
@@ -151,19 +166,22 @@ public class EntityTickHandler {
         int minY = vY + 2; int maxY = vY + vSize - 2;
         int minZ = vZ + 2; int maxZ = vZ + vSize - 2;
 
-        // --- 第一阶段：收集受保护实体（如女仆）的位置，建立安全区 ---
-        List<BlockPos> safetyZones = new ArrayList<>();
+        // --- 第一阶段：更新受保护实体（如女仆）的安全区索引 (按区块分桶，只移动位置变化的实体) ---
+        SafetyZoneIndex safetyZones = SAFETY_ZONES.computeIfAbsent(dimKey, k -> new SafetyZoneIndex());
         List<? extends String> protectedEntities = GPUAccelConfig.PROTECTED_ENTITIES.get();
         double safetyRadius = GPUAccelConfig.INTERACTION_SAFETY_RADIUS.get();
-        double safetyRadiusSq = safetyRadius * safetyRadius;
 
         // 仅在有保护需求时执行扫描
         if (!protectedEntities.isEmpty() && safetyRadius > 0) {
+            safetyZones.beginScan();
             for (Entity entity : level.getAllEntities()) {
                 if (isEntityProtected(entity.getType(), protectedEntities)) {
-                    safetyZones.add(entity.blockPosition());
+                    safetyZones.update(entity);
                 }
             }
+            safetyZones.endScan();
+        } else {
+            safetyZones.clear();
         }
 
         // --- 第二阶段：筛选候选实体 ---
@@ -206,19 +224,9 @@ public class EntityTickHandler {
 
             if (!isCandidate) continue;
 
-            // --- 安全区检测 (Smart Exclusion) ---
-            boolean inSafetyZone = false;
-            if (!safetyZones.isEmpty()) {
-                double eX = entity.getX();
-                double eY = entity.getY();
-                double eZ = entity.getZ();
-                for (BlockPos zone : safetyZones) {
-                    if (zone.distToCenterSqr(eX, eY, eZ) < safetyRadiusSq) {
-                        inSafetyZone = true;
-                        break;
-                    }
-                }
-            }
+            // --- 安全区检测 (Smart Exclusion)：只检查安全半径覆盖到的区块 ---
+            boolean inSafetyZone = !safetyZones.isEmpty()
+                && safetyZones.contains(entity.getX(), entity.getY(), entity.getZ(), safetyRadius);
 
             if (inSafetyZone) {
                 // 在安全区内，强制回退 CPU，模拟“不在地图内”的处理逻辑
@@ -258,13 +266,16 @@ public class EntityTickHandler {
         if (!REUSABLE_ENTITY_LIST.isEmpty() && GPUEntityAccelMod.getSwarmAISystem() != null) {
             try {
                 GPUManager gm = GPUEntityAccelMod.getGPUManager();
-                // 如果体素地图有变更，先上传体素数据
-                if (com.gpuaccel.entitymod.ai.VoxelManager.isDirty() && gm != null) {
+                // 如果体素地图有变更，先上传体素数据 (熔断、调度到 CPU 后端或协同执行期间保留脏标记，由各后端自行同步)
+                if (com.gpuaccel.entitymod.ai.VoxelManager.isDirty() && gm != null && gm.isGPUAvailable()
+                    && gm.getWatchdog().allows(GpuWatchdog.Breaker.SWARM)
+                    && GPUEntityAccelMod.getSwarmAISystem().isGpuOnly()) {
                     gm.writeVoxelBuffer(com.gpuaccel.entitymod.ai.VoxelManager.getVoxelBuffer());
                     com.gpuaccel.entitymod.ai.VoxelManager.clearDirty();
                 }
                 
                 // 执行群体 AI 计算
+                submittedEntities += REUSABLE_ENTITY_LIST.size();
                 GPUEntityAccelMod.getSwarmAISystem().computeSwarmBehavior(level, REUSABLE_ENTITY_LIST);
             } catch (Exception e) {
                 GPUEntityAccelMod.LOGGER.error("向 GPU 发送数据时出错", e);
@@ -287,11 +298,28 @@ public class EntityTickHandler {
         }
     }
 
-    private static void checkSystemHealth() {
+    /**
+     * 每 Tick 推进看门狗：群体 AI 最早的在途帧超时则熔断，冷却结束后重建 OpenCL 上下文。
+     * 物理、流场与气候在各自提交命令前自行检查。
+     */
+    private static void checkSystemHealth(MinecraftServer server) {
+        GpuWatchdog watchdog = GPUEntityAccelMod.getWatchdog();
+        if (watchdog == null) return;
         try {
+            watchdog.tick();
             GPUManager gm = GPUEntityAccelMod.getGPUManager();
-            if (gm != null && gm.isGPUAvailable()) {
-                // 占位符：执行 GPU 心跳检查
+            if (gm != null && gm.isGPUAvailable() && watchdog.allows(GpuWatchdog.Breaker.SWARM)) {
+                watchdog.checkPending(GpuWatchdog.Breaker.SWARM, gm.getOldestFrameAgeNanos());
+            }
+            if (gm != null && gm.isGPUAvailable() && watchdog.allows(GpuWatchdog.Breaker.FLOW_FIELD)) {
+                try {
+                    watchdog.checkPending(GpuWatchdog.Breaker.FLOW_FIELD, gm.getFlowFieldAgeNanos());
+                } catch (RuntimeException e) {
+                    if (!watchdog.onError(GpuWatchdog.Breaker.FLOW_FIELD, e)) throw e;
+                }
+            }
+            if (watchdog.isRebuildDue()) {
+                GPUEntityAccelMod.rebuildGpu(server);
             }
         } catch (Exception e) {
             GPUEntityAccelMod.LOGGER.warn("系统健康检查失败", e);
@@ -0,0 +1,115 @@
+package com.gpuaccel.entitymod.event;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * 安全区索引 (每个维度一份)。
+ * <p>
+ * 受保护实体 (如女仆) 的方块坐标按所在区块分桶，键为 {@link ChunkPos#asLong}。
+ * 查询只检查安全半径覆盖到的区块 (默认半径下为自身及相邻区块)，开销与受保护实体总数无关。
+ * 索引跨轮次保留：每轮扫描只移动方块坐标发生变化的实体，本轮未出现的实体在扫描结束时移除。
+ * </p>
+ */
+final class SafetyZoneIndex {
+    /** 已登记的受保护实体 */
+    private static final class Zone {
+        long pos;
+        int generation;
+    }
+
+    /** 区块 -> 该区块内受保护实体的方块坐标 (BlockPos#asLong，可重复) */
+    private final Long2ObjectOpenHashMap<LongArrayList> buckets = new Long2ObjectOpenHashMap<>();
+    /** 实体 ID -> 登记信息 */
+    private final Int2ObjectOpenHashMap<Zone> zones = new Int2ObjectOpenHashMap<>();
+    private int generation = 0;
+
+    /** 开始新一轮扫描 */
+    void beginScan() {
+        generation++;
+    }
+
+    /** 登记或移动一个受保护实体 */
+    void update(Entity entity) {
+        update(entity.getId(), entity.blockPosition().asLong());
+    }
+
+    /** 按实体 ID 与方块坐标 (BlockPos#asLong) 登记或移动 */
+    void update(int id, long pos) {
+        Zone zone = zones.get(id);
+        if (zone == null) {
+            zone = new Zone();
+            zones.put(id, zone);
+        } else if (zone.pos == pos) {
+            zone.generation = generation;
+            return;
+        } else {
+            unlink(zone.pos);
+        }
+        zone.pos = pos;
+        zone.generation = generation;
+        buckets.computeIfAbsent(chunkKey(pos), k -> new LongArrayList(4)).add(pos);
+    }
+
+    /** 结束本轮扫描，移除未再出现的实体 (已卸载、死亡或不再受保护) */
+    void endScan() {
+        ObjectIterator<Zone> it = zones.values().iterator();
+        while (it.hasNext()) {
+            Zone zone = it.next();
+            if (zone.generation != generation) {
+                unlink(zone.pos);
+                it.remove();
+            }
+        }
+    }
+
+    void clear() {
+        buckets.clear();
+        zones.clear();
+    }
+
+    boolean isEmpty() {
+        return zones.isEmpty();
+    }
+
+    /**
+     * @return 坐标是否位于任一受保护实体的安全区内 (与 {@link BlockPos#distToCenterSqr} 的判定一致)
+     */
+    boolean contains(double x, double y, double z, double radius) {
+        double radiusSq = radius * radius;
+        // 方块中心 = 方块坐标 + 0.5，只有落在这些区块内的方块中心才可能进入半径
+        int minCX = (int) Math.floor(x - radius - 0.5) >> 4, maxCX = (int) Math.floor(x + radius - 0.5) >> 4;
+        int minCZ = (int) Math.floor(z - radius - 0.5) >> 4, maxCZ = (int) Math.floor(z + radius - 0.5) >> 4;
+        for (int cx = minCX; cx <= maxCX; cx++) {
+            for (int cz = minCZ; cz <= maxCZ; cz++) {
+                LongArrayList bucket = buckets.get(ChunkPos.asLong(cx, cz));
+                if (bucket == null) continue;
+                for (int i = 0; i < bucket.size(); i++) {
+                    long p = bucket.getLong(i);
+                    double dx = BlockPos.getX(p) + 0.5 - x;
+                    double dy = BlockPos.getY(p) + 0.5 - y;
+                    double dz = BlockPos.getZ(p) + 0.5 - z;
+                    if (dx * dx + dy * dy + dz * dz < radiusSq) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void unlink(long pos) {
+        long key = chunkKey(pos);
+        LongArrayList bucket = buckets.get(key);
+        if (bucket == null) return;
+        bucket.rem(pos);
+        if (bucket.isEmpty()) buckets.remove(key);
+    }
+
+    private static long chunkKey(long pos) {
+        return ChunkPos.asLong(BlockPos.getX(pos) >> 4, BlockPos.getZ(pos) >> 4);
+    }
+}
@@ -1,6 +1,17 @@
 package com.gpuaccel.entitymod.example;
 
 import com.gpuaccel.entitymod.GPUEntityAccelMod;
+import com.gpuaccel.entitymod.gpu.DeviceArena;
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner;
+import com.gpuaccel.entitymod.gpu.GpuWatchdog;
+import com.gpuaccel.entitymod.gpu.HostArena;
+import com.gpuaccel.entitymod.gpu.TypeBuckets;
+import com.gpuaccel.entitymod.gpu.WorkGroupTuner;
+import com.gpuaccel.entitymod.gpu.WorkSplitter;
+import com.gpuaccel.entitymod.gpu.driver.ClDriverStats;
+import com.gpuaccel.entitymod.gpu.driver.ClTickStats;
+import com.gpuaccel.entitymod.gpu.driver.ThreadedClDriver;
 import com.mojang.brigadier.CommandDispatcher;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
@@ -17,8 +28,8 @@ import java.util.List;
 /**
  * 示例命令类。
  * <p>
- * 提供了 /gpuaccel info 和 /gpuaccel spawn_swarm 命令，
- * 用于测试 GPU 状态和生成测试实体群。
+ * 提供了 /gpuaccel info、/gpuaccel clstats、/gpuaccel tune 和 /gpuaccel spawn_swarm 命令，
+ * 用于测试 GPU 状态、查看 OpenCL 命令统计、调优工作组大小和生成测试实体群。
  * </p>
  */
 public class ExampleCommands {
@@ -47,13 +58,159 @@ public class ExampleCommands {
                             Component.literal("计算单元: " + gpuManager.getMaxComputeUnits()), false);
                         context.getSource().sendSuccess(() -> 
                             Component.literal("显存: " + gpuManager.getGlobalMemorySize() / 1024 / 1024 + " MB"), false);
+
+                        DeviceMemoryBudget memory = gpuManager.getMemoryBudget();
+                        DeviceMemoryBudget.FieldPlan fields = gpuManager.getFieldPlan();
+                        context.getSource().sendSuccess(() ->
+                            Component.literal(String.format("显存预算: 已用 %d / %d MB (峰值 %d MB，单次分配上限 %d MB)",
+                                memory.getUsed() >> 20, memory.getBudget() >> 20, memory.getPeak() >> 20, memory.getMaxAlloc() >> 20)), false);
+                        StringBuilder usage = new StringBuilder("  ");
+                        for (DeviceMemoryBudget.Subsystem sub : DeviceMemoryBudget.Subsystem.values()) {
+                            long used = memory.getUsed(sub);
+                            if (used > 0) usage.append(String.format("%s %.1f MB  ", sub.label(), used / 1048576.0));
+                        }
+                        context.getSource().sendSuccess(() -> Component.literal(usage.toString().stripTrailing()), false);
+                        DeviceArena arena = gpuManager.getArena();
+                        context.getSource().sendSuccess(() ->
+                            Component.literal(String.format("设备内存池: 已切分 %.1f / 保留 %.1f MB，扩容复制 %d 次",
+                                arena.getInUse() / 1048576.0, arena.getReserved() / 1048576.0, arena.getGrowCopies())), false);
+                        context.getSource().sendSuccess(() ->
+                            Component.literal("费洛蒙网格: " + fields.pheroSizeXZ() + "x" + fields.pheroSizeY() + "x" + fields.pheroSizeXZ()
+                                + "，流场: " + fields.flowSize() + "^3"), false);
                     } else {
                         context.getSource().sendFailure(
                             Component.literal("§cGPU 不可用，使用 CPU 计算"));
                     }
+
+                    var swarm = GPUEntityAccelMod.getSwarmAISystem();
+                    if (swarm != null && swarm.getBackend() != null) {
+                        String name = swarm.getBackend().getName() + (swarm.isCoExecuting() ? " + CPU 协同" : "");
+                        context.getSource().sendSuccess(() ->
+                            Component.literal("群体 AI 后端: " + name), false);
+                    }
+
+                    DispatchPlanner planner = GPUEntityAccelMod.getDispatchPlanner();
+                    if (planner != null) {
+                        StringBuilder plan = new StringBuilder("调度:");
+                        for (DispatchPlanner.Workload w : DispatchPlanner.Workload.values()) {
+                            DispatchPlanner.Target current = planner.getCurrent(w);
+                            if (current == null) continue;
+                            plan.append(String.format(" %s → %s (预估 GPU %.2f / CPU %.2f ms，切换 %d 次)", w.label(), current,
+                                planner.getLastPredictionMillis(w, DispatchPlanner.Target.GPU),
+                                planner.getLastPredictionMillis(w, DispatchPlanner.Target.CPU), planner.getSwitches(w)));
+                        }
+                        context.getSource().sendSuccess(() -> Component.literal(plan.toString()), false);
+
+                        WorkSplitter splitter = planner.getSplitter();
+                        StringBuilder split = new StringBuilder("协同划分:");
+                        for (DispatchPlanner.Workload w : DispatchPlanner.Workload.values()) {
+                            split.append(String.format(" %s GPU %.0f%% (单实体 GPU %.2f / CPU %.2f us)", w.label(),
+                                splitter.getShare(w) * 100,
+                                splitter.getPerEntityMicros(w, DispatchPlanner.Target.GPU),
+                                splitter.getPerEntityMicros(w, DispatchPlanner.Target.CPU)));
+                        }
+                        context.getSource().sendSuccess(() -> Component.literal(split.toString()), false);
+                    }
+
+                    GpuWatchdog watchdog = GPUEntityAccelMod.getWatchdog();
+                    if (watchdog != null && (watchdog.isAnyOpen() || watchdog.getRebuilds() > 0)) {
+                        StringBuilder health = new StringBuilder("GPU 熔断器:");
+                        for (GpuWatchdog.Breaker b : GpuWatchdog.Breaker.values()) {
+                            health.append(' ').append(b.label()).append(watchdog.allows(b) ? " 正常" : " §c断开§r")
+                                .append(" (").append(watchdog.getTrips(b)).append(" 次)");
+                        }
+                        health.append("，重建 ").append(watchdog.getRebuilds()).append(" 次");
+                        if (watchdog.isAnyOpen()) {
+                            health.append("，").append(watchdog.getTicksUntilRebuild() / 20).append(" 秒后重建");
+                        }
+                        context.getSource().sendSuccess(() -> Component.literal(health.toString()), false);
+                    }
+
+                    context.getSource().sendSuccess(() ->
+                        Component.literal(String.format("本地内存: 使用 %.1f MB，占用 %.1f MB (峰值 %.1f MB)，分配 %d 次 / 复用 %d 次",
+                            HostArena.getLive() / 1048576.0, HostArena.getPinned() / 1048576.0, HostArena.getPeak() / 1048576.0,
+                            HostArena.getAllocations(), HostArena.getReuses())), false);
+                    StringBuilder hostUsage = new StringBuilder("  ");
+                    for (DeviceMemoryBudget.Subsystem sub : DeviceMemoryBudget.Subsystem.values()) {
+                        long live = HostArena.getLive(sub);
+                        if (live > 0) hostUsage.append(String.format("%s %.1f MB  ", sub.label(), live / 1048576.0));
+                    }
+                    context.getSource().sendSuccess(() -> Component.literal(hostUsage.toString().stripTrailing()), false);
                     return 1;
                 })
             )
+            .then(Commands.literal("clstats")
+                .executes(context -> {
+                    var gpuManager = GPUEntityAccelMod.getGPUManager();
+                    if (gpuManager == null || !gpuManager.isGPUAvailable()) {
+                        context.getSource().sendFailure(Component.literal("§cOpenCL 驱动未启用"));
+                        return 0;
+                    }
+                    ClDriverStats stats = gpuManager.getDriver().getStats();
+                    ClTickStats t = stats.getLastTick();
+                    context.getSource().sendSuccess(() ->
+                        Component.literal("§e[GPUACCEL] 驱动: " + gpuManager.getDriver().getName()
+                            + "，已统计 " + stats.getTotalTicks() + " 个周期"), false);
+                    context.getSource().sendSuccess(() ->
+                        Component.literal("上一周期: 实体 " + t.entities()
+                            + "，内核入队 " + t.kernelEnqueues()
+                            + "，参数设置 " + t.kernelArgSets()
+                            + "，阻塞调用 " + t.blockingCalls()), false);
+                    context.getSource().sendSuccess(() ->
+                        Component.literal(String.format("传输: 写 %d 次 / 读 %d 次 / 映射 %d 次，共 %.2f MB，%.3f MB/千实体；设备内复制 %d 次 / %.2f MB",
+                            t.writes(), t.reads(), t.maps(), t.transferredMB(), t.mbPer1000Entities(),
+                            t.copies(), t.bytesCopied() / (1024.0 * 1024.0))), false);
+                    context.getSource().sendSuccess(() ->
+                        Component.literal(String.format("平均: 阻塞调用 %.1f 次/周期，%.3f MB/千实体",
+                            stats.getAvgBlockingCalls(), stats.getAvgMBPer1000Entities())), false);
+                    context.getSource().sendSuccess(() ->
+                        Component.literal("流水线: 在途 " + gpuManager.getInFlightFrames() + "/" + gpuManager.getPipelineSlots()
+                            + " 帧，因槽位占满跳过 " + gpuManager.getPipelineSkips() + " 帧"
+                            + (gpuManager.isZeroCopy() ? "，零复制" : "")), false);
+                    TypeBuckets buckets = gpuManager.getTypeBuckets();
+                    context.getSource().sendSuccess(() ->
+                        Component.literal("类型分桶: 陆行 " + buckets.size(TypeBuckets.WALKER)
+                            + " / 水生 " + buckets.size(TypeBuckets.SWIMMER)
+                            + " / 飞行 " + buckets.size(TypeBuckets.FLYER)
+                            + " / 掉落物 " + buckets.size(TypeBuckets.ITEM)
+                            + " / 经验球 " + buckets.size(TypeBuckets.XP)), false);
+                    if (gpuManager.getDriver() instanceof ThreadedClDriver threaded) {
+                        context.getSource().sendSuccess(() ->
+                            Component.literal("驱动线程: 待执行命令 " + threaded.getPendingCommands()
+                                + "，命令环占满等待 " + threaded.getRingStalls() + " 次"), false);
+                    }
+                    return 1;
+                })
+            )
+            .then(Commands.literal("tune")
+                // 丢弃已有结果，之后各内核的入队依次测量候选工作组大小
+                .executes(context -> {
+                    var gpuManager = GPUEntityAccelMod.getGPUManager();
+                    if (gpuManager == null || !gpuManager.isGPUAvailable()) {
+                        context.getSource().sendFailure(Component.literal("§cOpenCL 驱动未启用"));
+                        return 0;
+                    }
+                    gpuManager.getWorkGroupTuner().start();
+                    context.getSource().sendSuccess(() ->
+                        Component.literal("§e[GPUACCEL] 开始工作组调优，各内核测完后结果自动保存；用 /gpuaccel tune show 查看"), false);
+                    return 1;
+                })
+                .then(Commands.literal("show")
+                    .executes(context -> {
+                        var gpuManager = GPUEntityAccelMod.getGPUManager();
+                        if (gpuManager == null || !gpuManager.isGPUAvailable()) {
+                            context.getSource().sendFailure(Component.literal("§cOpenCL 驱动未启用"));
+                            return 0;
+                        }
+                        WorkGroupTuner tuner = gpuManager.getWorkGroupTuner();
+                        StringBuilder lines = new StringBuilder("§e[GPUACCEL] 工作组调优: 正在调优 " + tuner.getPendingKernels() + " 个内核\n");
+                        tuner.getResults().forEach((name, r) -> lines.append(String.format("%s: %s (%.3f ns/项)%n",
+                            name, r.local() == 0 ? "驱动自选" : String.valueOf(r.local()), r.nsPerItem())));
+                        context.getSource().sendSuccess(() -> Component.literal(lines.toString().stripTrailing()), false);
+                        return 1;
+                    })
+                )
+            )
             .then(Commands.literal("spawn_swarm")
                 .executes(context -> {
                     context.getSource().sendSuccess(() ->
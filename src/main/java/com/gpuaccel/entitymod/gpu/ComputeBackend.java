@@ -0,0 +1,100 @@
+package com.gpuaccel.entitymod.gpu;
+
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * 群体 AI 计算后端。
+ * <p>
+ * 抽象出 SwarmAISystem 所需的全部设备操作：实体缓冲区、费洛蒙注入与扩散、
+ * 流场生成以及主行为内核。实现方包括基于 OpenCL 的 {@link OpenCLComputeBackend}
+ * 和纯 Java 的 {@link CpuComputeBackend}，两者共用 {@link GPUManager.SwarmBuffers} 的内存布局。
+ * </p>
+ * <p>
+ * 所有方法均只在服务器主线程调用。主内核以异步方式执行，可能同时有多帧在途，
+ * 结果按提交顺序通过 {@link #syncOutputsFromPending()} 取回，
+ * 只包含运动发生变化的实体 (压缩记录格式见 {@link SwarmOutputs})。
+ * </p>
+ * <p>
+ * 实体按 {@link EntitySlotTable} 分配的稳定槽位写入缓冲区，逐实体状态 (防卡死计时、蜜蜂状态)
+ * 由后端按槽位常驻保存，只通过 {@link #remapEntitySlots} 搬移或清零。
+ * </p>
+ */
+public interface ComputeBackend {
+
+    /** @return 后端名称，用于日志和 /gpuaccel info */
+    String getName();
+
+    /** @return 后端是否已就绪 (内核编译成功 / 线程池已创建) */
+    boolean isAvailable();
+
+    /**
+     * 确保当前槽位的实体缓冲区足够大。
+     *
+     * @param entityCount 当前帧需要的槽位数量
+     * @return 当前帧可写入的缓冲区；没有空闲槽位时返回 null，调用方应跳过本帧
+     */
+    GPUManager.SwarmBuffers ensureSwarmBuffers(int entityCount);
+
+    /**
+     * 提交本帧写入 {@link GPUManager.SwarmBuffers#rows()} 的增量行、活动掩码及玩家位置。
+     */
+    void uploadEntities(GPUManager.SwarmBuffers buffers);
+
+    /**
+     * 在下一次主内核之前应用槽位表的重映射操作 (新实体清零、压缩搬移)，并清空表中的操作。
+     */
+    void remapEntitySlots(EntitySlotTable table);
+
+    /** 如果体素地图有变动，同步到后端 */
+    void syncVoxels();
+
+    /** 将 BeeSensor 扫描到的花朵和蜂巢写入吸引点缓冲区 */
+    void writeAttrFromSensor();
+
+    /** 向当前可读的费洛蒙网格注入刺激源 */
+    void injectStimuli(float[] positions, int[] channels, float[] values, int count);
+
+    /** 执行一次费洛蒙扩散，并交换 Ping-Pong 缓冲区 */
+    void diffusePheromones(float diffusionRate, float decayRate, float dt);
+
+    /**
+     * 重新生成指定流场。
+     *
+     * @param fieldID 流场 ID (见 GPUManager.FIELD_*)
+     * @param targets 体素地图内的目标坐标列表 [x, y, z, ...]
+     */
+    void updateFlowField(int fieldID, List<Integer> targets);
+
+    /**
+     * 提交主行为内核、输出压缩及结果回读，并推进到下一个槽位。
+     */
+    void dispatchSwarm(int count, GPUManager.SwarmBuffers buffers, SwarmFrameParams frame);
+
+    /**
+     * 取回最早在途帧的计算结果。
+     *
+     * @return 如果最早在途帧已完成并取回则返回 true；尚未完成时返回 false，不会等待
+     */
+    boolean syncOutputsFromPending();
+
+    /** @return 已提交但尚未取回的帧数 */
+    int getInFlightFrames();
+
+    /**
+     * @return 最近取回的一帧在后端上异步执行的时长 (纳秒)：GPU 为提交到回读完成，CPU 为工作线程上的执行时间
+     */
+    long getLastFrameNanos();
+
+    /** 等待并丢弃所有在途帧 (仅用于出错恢复) */
+    void discardPendingFrames();
+
+    /** @return 最近取回帧的输出记录 (每条 {@link SwarmOutputs#WORDS} 个 int)，尚无结果时为 null */
+    IntBuffer getOutputRecords();
+
+    /** @return 最近取回帧的输出记录条数 */
+    int getOutputRecordCount();
+
+    /** 释放后端持有的全部资源 */
+    void cleanup();
+}
@@ -0,0 +1,530 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.ai.BeeSensor;
+import com.gpuaccel.entitymod.ai.VoxelManager;
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.cpu.CpuFlowFieldKernels;
+import com.gpuaccel.entitymod.gpu.cpu.CpuNeighbourList;
+import com.gpuaccel.entitymod.gpu.cpu.CpuOccupancyPyramid;
+import com.gpuaccel.entitymod.gpu.cpu.CpuParallel;
+import com.gpuaccel.entitymod.gpu.cpu.CpuSpatialGrid;
+import com.gpuaccel.entitymod.gpu.cpu.CpuSwarmKernels;
+import com.gpuaccel.entitymod.gpu.cpu.Float3;
+import com.gpuaccel.entitymod.gpu.cpu.SwarmKernelArgs;
+import net.minecraft.core.BlockPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 纯 Java 的并行群体计算后端。
+ * <p>
+ * 在没有可用 OpenCL 设备时代替 {@link OpenCLComputeBackend}，
+ * 逐内核复用 {@code gpu.cpu} 包中的移植实现，并通过 ForkJoin 线程池按实体区间并行执行。
+ * 主内核与 GPU 路径一样异步提交，结果在下一帧取回。
+ * </p>
+ * <p>
+ * 费洛蒙网格缩小为与体素地图对齐的 128x32x128 (8 通道)，避免在堆外分配 GPU 版本的 1 GiB 网格。
+ * </p>
+ */
+public class CpuComputeBackend implements ComputeBackend {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 双缓冲槽位数量 */
+    private static final int SWAP_SLOTS = 2;
+
+    // CPU 费洛蒙网格尺寸 (水平方向与体素地图一致，垂直方向取地图中部)
+    public static final int PHERO_SIZE_XZ = VoxelManager.VOXEL_SIZE;
+    public static final int PHERO_SIZE_Y = 32;
+    private static final int PHERO_Y_OFFSET = (VoxelManager.VOXEL_SIZE - PHERO_SIZE_Y) / 2;
+    private static final int PHERO_VOLUME = PHERO_SIZE_XZ * PHERO_SIZE_XZ * PHERO_SIZE_Y;
+
+    /** 流场传播轮数，与 GPU 的 64 次 spread 对应 */
+    private static final int FLOW_FIELD_ROUNDS = 64;
+
+    // 单个任务处理的最小区间长度
+    private static final int SWARM_GRAIN = 64;
+    private static final int VOLUME_GRAIN = 16384;
+
+    private final ForkJoinPool pool;
+    private final int threadCount;
+
+    // 每帧缓冲区 (Host-only，cl_mem 字段为 null)
+    private final FloatBuffer[] outputsBuffers = new FloatBuffer[SWAP_SLOTS];
+    private final FloatBuffer[] playerPosBuffers = new FloatBuffer[SWAP_SLOTS];
+    private final IntBuffer[] recordBuffers = new IntBuffer[SWAP_SLOTS];
+    private final IntBuffer[] recordCountBuffers = new IntBuffer[SWAP_SLOTS];
+    private IntBuffer motionRows, descRows;
+    private int bufferCapacity = 0;
+
+    private int activeBuffer = 0;
+    private int pendingIndex = -1;
+    private ForkJoinTask<Void> pendingTask;
+    /** 在途任务的执行时长，由工作线程在压缩输出后写入 */
+    private final long[] pendingNanos = new long[1];
+    private long lastFrameNanos = 0;
+
+    // 实体数据与逐实体状态 (按槽位索引常驻，扩容时保留原有内容)
+    private FloatBuffer positions, velocities, params;
+    /** 登记类型 (描述行写入) 与按本帧活动掩码生成的类型 (各内核读取) */
+    private IntBuffer baseTypes, entityTypes;
+    private FloatBuffer prevPositions;
+    private IntBuffer stuckTimer;
+    private IntBuffer beeStates;
+    private int entityStateCapacity = 0;
+    // 空间哈希网格 (见 SpatialGrid)，每帧在主内核之前重建
+    private IntBuffer gridCellOf, gridRank, gridOrder;
+    private final IntBuffer gridCount, gridStart, gridEnd;
+    // 飞行与水生生物的 Verlet 邻居表 (见 NeighbourList)，最大位移超过半个 skin 时才重建
+    private IntBuffer nbrList, nbrCount, nbrRefTag;
+    private FloatBuffer nbrRefPos;
+    private boolean neighbourListsStale = true;
+    private int neighbourListCount = -1;
+    /** 与 GPU 路径共用的增量行格式，这里直接写回常驻数组 */
+    private final EntityRowStream rowStream = new EntityRowStream();
+
+    // 吸引点
+    private FloatBuffer attrX, attrY, attrZ;
+    private IntBuffer attrType;
+    private int attrCount = 0;
+
+    // 费洛蒙 Ping-Pong
+    private FloatBuffer pheromoneA, pheromoneB;
+    private boolean usePingForRead = true;
+    private int pheroOX, pheroOY, pheroOZ;
+
+    // 体素快照，保证异步任务读取到的数据与原点一致
+    private ByteBuffer voxelSnapshot;
+    private int voxOX, voxOY, voxOZ;
+
+    // 流场 (按需分配)
+    private final ShortBuffer[] costFields = new ShortBuffer[GPUManager.FIELD_COUNT];
+    private final FloatBuffer[] vectorFields = new FloatBuffer[GPUManager.FIELD_COUNT];
+    private IntBuffer targetPosBuffer;
+
+    private final SwarmKernelArgs args = new SwarmKernelArgs();
+
+    public CpuComputeBackend(int threads) {
+        this.threadCount = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.pool = new ForkJoinPool(threadCount, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("GPUAccel-CPU-Worker-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+
+        long pheroFloats = (long) PHERO_VOLUME * VoxelManager.PHERO_CHANNELS;
+        pheromoneA = HostArena.callocFloat(Subsystem.PHEROMONE, (int) pheroFloats);
+        pheromoneB = HostArena.callocFloat(Subsystem.PHEROMONE, (int) pheroFloats);
+        voxelSnapshot = HostArena.calloc(Subsystem.VOXEL, OccupancyPyramid.VOXEL_BUFFER_BYTES);
+        gridCount = HostArena.allocInt(Subsystem.ENTITY, SpatialGrid.CELLS);
+        gridStart = HostArena.allocInt(Subsystem.ENTITY, SpatialGrid.CELLS);
+        gridEnd = HostArena.allocInt(Subsystem.ENTITY, SpatialGrid.CELLS);
+
+        LOGGER.info("CPU 计算后端已启动: {} 个工作线程", threadCount);
+    }
+
+    @Override
+    public String getName() {
+        return "CPU (" + threadCount + " 线程)";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !pool.isShutdown();
+    }
+
+    /** 等待上一帧仍在执行的主内核，避免与其共享的缓冲区被改写 */
+    private void awaitPending() {
+        if (pendingTask == null) return;
+        try {
+            pendingTask.join();
+        } catch (Exception e) {
+            LOGGER.error("CPU 群体内核执行失败", e);
+        }
+    }
+
+    @Override
+    public GPUManager.SwarmBuffers ensureSwarmBuffers(int entityCount) {
+        awaitPending();
+        if (entityCount > bufferCapacity || bufferCapacity == 0) {
+            freeSwarmBuffers();
+            int newCount = (int)(entityCount * 1.5) + 128;
+            if (newCount < 4096) newCount = 4096;
+            bufferCapacity = newCount;
+
+            for (int i = 0; i < SWAP_SLOTS; i++) {
+                outputsBuffers[i] = HostArena.allocFloat(Subsystem.ENTITY, newCount * 3);
+                playerPosBuffers[i] = HostArena.allocFloat(Subsystem.ENTITY, 3);
+                recordBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, newCount * SwarmOutputs.WORDS);
+                recordCountBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, 1);
+            }
+            motionRows = HostArena.allocInt(Subsystem.ENTITY, newCount * EntityRowStream.MOTION_WORDS);
+            descRows = HostArena.allocInt(Subsystem.ENTITY, newCount * EntityRowStream.DESC_WORDS);
+            pendingIndex = -1;
+            pendingTask = null;
+        }
+        if (entityCount > entityStateCapacity) growEntityState((int)(entityCount * 1.5) + 128);
+        int idx = activeBuffer;
+        rowStream.begin(motionRows, descRows);
+        return new GPUManager.SwarmBuffers(rowStream, outputsBuffers[idx], playerPosBuffers[idx], null, null);
+    }
+
+    /**
+     * 与 GPU 路径相同的重建条件：本帧出现的实体最大位移超过半个 skin，或槽位换了实体。
+     * 邻居表失效 (扩容、重映射、实体重新出现或槽位上界变化) 时先清除全部构建标记。
+     */
+    private void updateNeighbourLists(int count) {
+        if (count != neighbourListCount) neighbourListsStale = true;
+        if (neighbourListsStale) {
+            for (int i = 0; i < entityStateCapacity; i++) nbrRefTag.put(i, 0);
+        }
+        neighbourListsStale = false;
+        neighbourListCount = count;
+        if (CpuNeighbourList.maxDisplacement(positions, entityTypes, count, nbrRefPos, nbrRefTag, 0, count) > NeighbourList.REBUILD_DISP_SQ) {
+            CpuParallel.invoke(pool, count, SWARM_GRAIN, (from, to) -> CpuNeighbourList.build(positions, entityTypes, count,
+                gridStart, gridEnd, gridOrder, nbrRefPos, nbrRefTag, nbrList, nbrCount, from, to));
+        }
+    }
+
+    private void growEntityState(int capacity) {
+        positions = grow(positions, capacity * 3);
+        velocities = grow(velocities, capacity * 3);
+        params = grow(params, capacity * EntityRowStream.PARAM_COUNT);
+        baseTypes = grow(baseTypes, capacity);
+        entityTypes = grow(entityTypes, capacity);
+        prevPositions = grow(prevPositions, capacity * 3);
+        stuckTimer = grow(stuckTimer, capacity);
+        beeStates = grow(beeStates, capacity);
+        gridCellOf = grow(gridCellOf, capacity);
+        gridRank = grow(gridRank, capacity);
+        gridOrder = grow(gridOrder, capacity);
+        nbrList = grow(nbrList, capacity * NeighbourList.MAX_NEIGHBOURS);
+        nbrCount = grow(nbrCount, capacity);
+        nbrRefPos = grow(nbrRefPos, capacity * 3);
+        nbrRefTag = grow(nbrRefTag, capacity);
+        neighbourListsStale = true;
+        entityStateCapacity = capacity;
+        rowStream.ensureCapacity(capacity);
+    }
+
+    private static FloatBuffer grow(FloatBuffer old, int size) {
+        FloatBuffer b = HostArena.callocFloat(Subsystem.ENTITY, size);
+        if (old != null) {
+            MemoryUtil.memCopy(old, b);
+            HostArena.free(old);
+        }
+        return b;
+    }
+
+    private static IntBuffer grow(IntBuffer old, int size) {
+        IntBuffer b = HostArena.callocInt(Subsystem.ENTITY, size);
+        if (old != null) {
+            MemoryUtil.memCopy(old, b);
+            HostArena.free(old);
+        }
+        return b;
+    }
+
+    private void freeEntityState() {
+        for (Buffer b : new Buffer[]{positions, velocities, params, baseTypes, entityTypes, prevPositions, stuckTimer, beeStates,
+                gridCellOf, gridRank, gridOrder, nbrList, nbrCount, nbrRefPos, nbrRefTag}) {
+            if (b != null) HostArena.free(b);
+        }
+        positions = null; velocities = null; params = null; baseTypes = null; entityTypes = null;
+        prevPositions = null; stuckTimer = null; beeStates = null;
+        gridCellOf = null; gridRank = null; gridOrder = null;
+        nbrList = null; nbrCount = null; nbrRefPos = null; nbrRefTag = null;
+        entityStateCapacity = 0;
+    }
+
+    @Override
+    public void uploadEntities(GPUManager.SwarmBuffers buffers) {
+        EntityRowStream rows = buffers.rows();
+        int total = rows.getMotionCount() + rows.getDescCount();
+        int count = rows.getMaskSlots();
+        if (total + count == 0) return;
+        awaitPending();
+        if (total > 0) {
+            CpuParallel.invoke(pool, total, SWARM_GRAIN, (from, to) ->
+                CpuSwarmKernels.scatterEntityRows(rows.getMotionRows(), rows.getMotionCount(), rows.getDescRows(), rows.getDescCount(),
+                    positions, velocities, baseTypes, params, from, to));
+        }
+        IntBuffer mask = IntBuffer.wrap(rows.getActiveMask());
+        CpuParallel.invoke(pool, count, SWARM_GRAIN, (from, to) ->
+            CpuSwarmKernels.applySlotMask(baseTypes, mask, count, entityTypes, from, to));
+    }
+
+    @Override
+    public void remapEntitySlots(EntitySlotTable table) {
+        int count = table.getRemapCount();
+        if (count > 0 || table.getReturningCount() > 0) neighbourListsStale = true;
+        if (count == 0) return;
+        awaitPending();
+        CpuSwarmKernels.remapEntitySlots(IntBuffer.wrap(table.getRemapOps()), count, prevPositions, stuckTimer, beeStates, 0, count);
+        table.clearRemap();
+    }
+
+    @Override
+    public void syncVoxels() {
+        ByteBuffer src = VoxelManager.getVoxelBuffer();
+        if (src == null || !VoxelManager.isDirty()) return;
+        awaitPending();
+        MemoryUtil.memCopy(src, voxelSnapshot);
+        CpuOccupancyPyramid.build(voxelSnapshot, VoxelManager.getMapSize());
+        voxOX = VoxelManager.getOriginX();
+        voxOY = VoxelManager.getOriginY();
+        voxOZ = VoxelManager.getOriginZ();
+        VoxelManager.clearDirty();
+
+        // 费洛蒙网格跟随体素地图移动，原点变化时清空旧数据
+        int nOX = voxOX, nOY = voxOY + PHERO_Y_OFFSET, nOZ = voxOZ;
+        if (nOX != pheroOX || nOY != pheroOY || nOZ != pheroOZ) {
+            pheroOX = nOX; pheroOY = nOY; pheroOZ = nOZ;
+            MemoryUtil.memSet(pheromoneA, 0);
+            MemoryUtil.memSet(pheromoneB, 0);
+        }
+    }
+
+    @Override
+    public void writeAttrFromSensor() {
+        int fc = BeeSensor.flowerCount;
+        int hc = BeeSensor.hiveCount;
+        int total = fc + hc;
+        if (total == 0) return;
+        awaitPending();
+
+        float[] ax = new float[total]; float[] ay = new float[total]; float[] az = new float[total]; int[] at = new int[total];
+        for (int i = 0; i < fc; i++) {
+            long pos = BeeSensor.flowerPositions[i];
+            ax[i] = BlockPos.getX(pos) + 0.5f; ay[i] = BlockPos.getY(pos) + 0.5f; az[i] = BlockPos.getZ(pos) + 0.5f; at[i] = 1;
+        }
+        for (int i = 0; i < hc; i++) {
+            long pos = BeeSensor.hivePositions[i];
+            ax[fc + i] = BlockPos.getX(pos) + 0.5f; ay[fc + i] = BlockPos.getY(pos) + 0.5f; az[fc + i] = BlockPos.getZ(pos) + 0.5f; at[fc + i] = 2;
+        }
+        attrX = FloatBuffer.wrap(ax);
+        attrY = FloatBuffer.wrap(ay);
+        attrZ = FloatBuffer.wrap(az);
+        attrType = IntBuffer.wrap(at);
+        attrCount = total;
+    }
+
+    private FloatBuffer currentPheromones() {
+        return usePingForRead ? pheromoneA : pheromoneB;
+    }
+
+    @Override
+    public void injectStimuli(float[] positions, int[] channels, float[] values, int count) {
+        if (count == 0) return;
+        awaitPending();
+        // 刺激源数量很少且可能落在同一体素上，串行执行以保证累加结果确定
+        CpuSwarmKernels.injectStimuli(currentPheromones(), positions, channels, values, count,
+            pheroOX, pheroOY, pheroOZ, PHERO_SIZE_XZ, PHERO_SIZE_Y, 0, count);
+    }
+
+    @Override
+    public void diffusePheromones(float diffusionRate, float decayRate, float dt) {
+        awaitPending();
+        FloatBuffer in = currentPheromones();
+        FloatBuffer out = usePingForRead ? pheromoneB : pheromoneA;
+        CpuParallel.invoke(pool, PHERO_VOLUME * VoxelManager.PHERO_CHANNELS, VOLUME_GRAIN, (from, to) ->
+            CpuSwarmKernels.diffusePheromones(in, out, PHERO_SIZE_XZ, PHERO_SIZE_Y, PHERO_SIZE_XZ, diffusionRate, decayRate, dt, from, to));
+
+        // 交换 Ping-Pong 缓冲区
+        usePingForRead = !usePingForRead;
+    }
+
+    @Override
+    public void updateFlowField(int fieldID, List<Integer> targets) {
+        if (fieldID < 0 || fieldID >= GPUManager.FIELD_COUNT) return;
+        int targetCount = targets.size() / 3;
+        if (targetCount == 0) return;
+        awaitPending();
+
+        if (costFields[fieldID] == null) {
+            costFields[fieldID] = HostArena.allocShort(Subsystem.FLOW_FIELD, VoxelManager.VOXEL_VOLUME);
+            vectorFields[fieldID] = HostArena.callocFloat(Subsystem.FLOW_FIELD, VoxelManager.VOXEL_VOLUME * 4);
+        }
+        if (targetPosBuffer == null || targetPosBuffer.capacity() < targets.size()) {
+            if (targetPosBuffer != null) HostArena.free(targetPosBuffer);
+            targetPosBuffer = HostArena.allocInt(Subsystem.AUX, (targetCount + 256) * 3);
+        }
+        for (int i = 0; i < targets.size(); i++) targetPosBuffer.put(i, targets.get(i));
+
+        ShortBuffer cost = costFields[fieldID];
+        FloatBuffer vec = vectorFields[fieldID];
+        int size = VoxelManager.VOXEL_SIZE;
+        IntBuffer tgt = targetPosBuffer;
+
+        CpuParallel.invoke(pool, VoxelManager.VOXEL_VOLUME, VOLUME_GRAIN, (from, to) ->
+            CpuFlowFieldKernels.resetCostField(cost, tgt, targetCount, size, from, to));
+        CpuFlowFieldKernels.propagate(cost, voxelSnapshot, tgt, targetCount, size, FLOW_FIELD_ROUNDS);
+        CpuParallel.invoke(pool, VoxelManager.VOXEL_VOLUME, VOLUME_GRAIN, (from, to) ->
+            CpuFlowFieldKernels.generateVectorField(cost, vec, size, from, to));
+    }
+
+    @Override
+    public void dispatchSwarm(int count, GPUManager.SwarmBuffers buffers, SwarmFrameParams frame) {
+        awaitPending();
+        SwarmKernelArgs a = args;
+        a.positions = positions;
+        a.velocities = velocities;
+        a.newVelocities = buffers.outputs();
+        a.entityTypes = entityTypes;
+        a.playerPos = buffers.playerPos();
+        a.entityCount = count;
+
+        a.attrX = attrX; a.attrY = attrY; a.attrZ = attrZ; a.attrType = attrType;
+        a.attrCount = Math.min(frame.attrCount(), attrCount);
+
+        a.prevPositions = prevPositions;
+        a.stuckTimer = stuckTimer;
+
+        a.pheromones = currentPheromones();
+        a.mapOX = pheroOX; a.mapOY = pheroOY; a.mapOZ = pheroOZ;
+        a.pSizeXZ = PHERO_SIZE_XZ; a.pSizeY = PHERO_SIZE_Y;
+
+        a.voxels = voxelSnapshot;
+        a.voxOX = voxOX; a.voxOY = voxOY; a.voxOZ = voxOZ;
+        a.voxSize = VoxelManager.getMapSize();
+
+        a.beeStates = beeStates;
+        a.time = frame.time();
+        a.attractionForce = frame.attractionForce();
+        a.arriveRadius = frame.arriveRadius();
+        a.gatherChance = frame.gatherChance();
+        a.hoverFreq = frame.hoverFreq();
+        a.hoverAmp = frame.hoverAmp();
+        a.worldTime = frame.worldTime();
+        a.isRaining = frame.raining() ? 1 : 0;
+        a.windForce = new Float3(frame.windX(), frame.windY(), frame.windZ());
+        a.rainIntensity = frame.rainIntensity();
+        a.params = params;
+
+        a.ffPlayer = vectorFields[GPUManager.FIELD_PLAYER];
+        a.ffLivestock = vectorFields[GPUManager.FIELD_LIVESTOCK];
+        a.ffFood = vectorFields[GPUManager.FIELD_FOOD];
+
+        // 网格构建是 O(实体数 + 桶数) 的串行计数排序，直接在提交线程上完成；邻居表随后按需重建
+        CpuSpatialGrid.build(positions, entityTypes, count, gridCellOf, gridRank, gridCount, gridStart, gridEnd, gridOrder);
+        updateNeighbourLists(count);
+        a.nbrList = nbrList;
+        a.nbrCount = nbrCount;
+
+        // 输出压缩与主内核放在同一任务中，保证比较用的输入速度尚未被下一帧改写
+        FloatBuffer outputs = buffers.outputs();
+        IntBuffer records = recordBuffers[activeBuffer];
+        IntBuffer recordCount = recordCountBuffers[activeBuffer];
+        long[] elapsed = pendingNanos;
+        long start = System.nanoTime();
+        pendingTask = CpuParallel.submit(pool, count, SWARM_GRAIN, (from, to) -> CpuSwarmKernels.calculateSwarmBehavior(a, from, to), () -> {
+            recordCount.put(0, 0);
+            CpuSwarmKernels.compactOutputs(outputs, velocities, entityTypes, count,
+                SwarmOutputs.JITTER, SwarmOutputs.MAX_SPEED, records, recordCount, 0, count);
+            elapsed[0] = System.nanoTime() - start;
+        });
+
+        // 交换双缓冲，准备下一帧
+        pendingIndex = activeBuffer;
+        activeBuffer = (activeBuffer + 1) % SWAP_SLOTS;
+    }
+
+    @Override
+    public boolean syncOutputsFromPending() {
+        if (pendingTask == null || pendingIndex == -1) return false;
+        try {
+            pendingTask.join();
+            lastFrameNanos = pendingNanos[0];
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("CPU 群体内核执行失败", e);
+            return false;
+        } finally {
+            pendingTask = null;
+        }
+    }
+
+    @Override
+    public int getInFlightFrames() {
+        return pendingTask == null ? 0 : 1;
+    }
+
+    @Override
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    @Override
+    public void discardPendingFrames() {
+        awaitPending();
+        // 出错的帧可能已更新镜像却没有写回
+        rowStream.invalidate();
+        pendingTask = null;
+        pendingIndex = -1;
+    }
+
+    @Override
+    public IntBuffer getOutputRecords() {
+        return pendingIndex == -1 ? null : recordBuffers[pendingIndex];
+    }
+
+    @Override
+    public int getOutputRecordCount() {
+        return pendingIndex == -1 ? 0 : recordCountBuffers[pendingIndex].get(0);
+    }
+
+    private void freeSwarmBuffers() {
+        for (int i = 0; i < SWAP_SLOTS; i++) {
+            if (outputsBuffers[i] != null) HostArena.free(outputsBuffers[i]);
+            if (playerPosBuffers[i] != null) HostArena.free(playerPosBuffers[i]);
+            if (recordBuffers[i] != null) HostArena.free(recordBuffers[i]);
+            if (recordCountBuffers[i] != null) HostArena.free(recordCountBuffers[i]);
+            outputsBuffers[i] = null; playerPosBuffers[i] = null;
+            recordBuffers[i] = null; recordCountBuffers[i] = null;
+        }
+        if (motionRows != null) HostArena.free(motionRows);
+        if (descRows != null) HostArena.free(descRows);
+        motionRows = null; descRows = null;
+    }
+
+    @Override
+    public void cleanup() {
+        awaitPending();
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        freeSwarmBuffers();
+        bufferCapacity = 0;
+        freeEntityState();
+        if (pheromoneA != null) HostArena.free(pheromoneA);
+        if (pheromoneB != null) HostArena.free(pheromoneB);
+        pheromoneA = null; pheromoneB = null;
+        if (voxelSnapshot != null) HostArena.free(voxelSnapshot);
+        voxelSnapshot = null;
+        HostArena.free(gridCount);
+        HostArena.free(gridStart);
+        HostArena.free(gridEnd);
+        for (int i = 0; i < GPUManager.FIELD_COUNT; i++) {
+            if (costFields[i] != null) HostArena.free(costFields[i]);
+            if (vectorFields[i] != null) HostArena.free(vectorFields[i]);
+            costFields[i] = null; vectorFields[i] = null;
+        }
+        if (targetPosBuffer != null) HostArena.free(targetPosBuffer);
+        targetPosBuffer = null;
+    }
+}
@@ -0,0 +1,208 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.cl_mem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.jocl.CL.*;
+
+/**
+ * 随实体数量增长的设备缓冲区的子分配器。
+ * <p>
+ * 每个子系统 (以及需要 CL_MEM_ALLOC_HOST_PTR 的缓冲区) 各有一个池：池从 {@link DeviceMemoryBudget}
+ * 申请 {@link #CHUNK_BYTES} 大小的块，再用 clCreateSubBuffer 切出 2 的幂大小的子缓冲区。
+ * 释放的子缓冲区按大小等级进入空闲链表，之后同等级的申请直接复用，块本身直到 {@link #release()} 才归还。
+ * 不小于一整块的申请单独占一块，释放后同样按等级复用。
+ * </p>
+ * <p>
+ * {@link #grow} 在新子缓冲区上用 clEnqueueCopyBuffer 保留原有内容，因此扩容不会丢失设备上的状态；
+ * 申请量仍在原等级之内时直接返回原缓冲区。
+ * 复制与复用都依赖命令队列按序执行：释放后被复用的区间，其新写入总排在旧命令之后。
+ * </p>
+ * <p>
+ * 只在服务器主线程使用。
+ * </p>
+ */
+public class DeviceArena {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 池块大小 */
+    public static final long CHUNK_BYTES = 16L * 1024 * 1024;
+    /** 最小子缓冲区大小 (同时保证起始偏移满足设备对齐要求) */
+    private static final long MIN_BLOCK_BYTES = 4096;
+    /** 只能在创建父缓冲区时指定、由子缓冲区继承的标志 */
+    private static final long HOST_FLAGS = CL_MEM_ALLOC_HOST_PTR | CL_MEM_USE_HOST_PTR | CL_MEM_COPY_HOST_PTR;
+
+    /** 子缓冲区在池中的位置 */
+    private record Block(Pool pool, cl_mem parent, long origin, int sizeClass, long flags) {
+        long size() { return 1L << sizeClass; }
+    }
+
+    private static final class Pool {
+        final Subsystem subsystem;
+        final long parentFlags;
+        final List<cl_mem> chunks = new ArrayList<>();
+        /** 按大小等级 (log2) 的空闲区间 */
+        final List<ArrayDeque<Block>> free = new ArrayList<>();
+        cl_mem current;
+        long offset;
+
+        Pool(Subsystem subsystem, long parentFlags) {
+            this.subsystem = subsystem;
+            this.parentFlags = parentFlags;
+            for (int i = 0; i < 64; i++) free.add(new ArrayDeque<>());
+        }
+    }
+
+    private final ClDriver driver;
+    private final DeviceMemoryBudget memory;
+    private final long minBlock;
+    private final long chunkBytes;
+    /** 下标：子系统序号 * 2 + (是否 ALLOC_HOST_PTR) */
+    private final Pool[] pools = new Pool[Subsystem.values().length * 2];
+    private final Map<cl_mem, Block> blocks = new IdentityHashMap<>();
+    private long inUse = 0;
+    private long reserved = 0;
+    private long growCopies = 0;
+
+    public DeviceArena(ClDriver driver, DeviceMemoryBudget memory) {
+        this.driver = driver;
+        this.memory = memory;
+        this.minBlock = Long.highestOneBit(Math.max(MIN_BLOCK_BYTES, driver.getMemBaseAddrAlign()) * 2 - 1);
+        // 块不能超过设备单次分配上限
+        this.chunkBytes = Math.min(CHUNK_BYTES, Long.highestOneBit(memory.getMaxAlloc()));
+    }
+
+    /**
+     * 从子系统的池中切出至少 bytes 字节的子缓冲区，内容未定义。
+     *
+     * @param flags 访问标志；CL_MEM_ALLOC_HOST_PTR 决定使用哪个池
+     * @throws IllegalStateException 需要新块而显存预算不足
+     */
+    public cl_mem allocate(Subsystem subsystem, long flags, long bytes) {
+        int sizeClass = sizeClass(bytes);
+        long size = 1L << sizeClass;
+        Pool pool = pool(subsystem, flags & CL_MEM_ALLOC_HOST_PTR);
+
+        Block block = pool.free.get(sizeClass).poll();
+        if (block == null) block = carve(pool, sizeClass);
+        cl_mem mem = driver.createSubBuffer(block.parent(), flags & ~HOST_FLAGS, block.origin(), size);
+        blocks.put(mem, new Block(pool, block.parent(), block.origin(), sizeClass, flags));
+        inUse += size;
+        return mem;
+    }
+
+    /**
+     * 确保缓冲区至少有 bytes 字节。容量足够时原样返回；否则切出新子缓冲区，
+     * 入队复制前 keepBytes 字节的内容并释放旧子缓冲区。
+     *
+     * @param old 原缓冲区，为 null 时等同于 {@link #allocate}
+     * @param keepBytes 需要保留的字节数，0 表示不复制
+     */
+    public cl_mem grow(cl_mem old, Subsystem subsystem, long flags, long bytes, long keepBytes) {
+        Block block = old == null ? null : blocks.get(old);
+        if (block != null && block.size() >= bytes) return old;
+        cl_mem mem = allocate(subsystem, flags, bytes);
+        if (block != null) {
+            long keep = Math.min(keepBytes, block.size());
+            if (keep > 0) {
+                driver.copy(old, mem, 0, 0, keep);
+                growCopies++;
+            }
+            free(old);
+        }
+        return mem;
+    }
+
+    /**
+     * 释放子缓冲区，其区间进入空闲链表。
+     *
+     * @return mem 不是由本池分配时返回 false
+     */
+    public boolean free(cl_mem mem) {
+        if (mem == null) return false;
+        Block block = blocks.remove(mem);
+        if (block == null) return false;
+        driver.releaseMem(mem);
+        block.pool().free.get(block.sizeClass()).push(block);
+        inUse -= block.size();
+        return true;
+    }
+
+    /** 释放全部子缓冲区与池块 */
+    public void release() {
+        for (cl_mem mem : blocks.keySet()) driver.releaseMem(mem);
+        blocks.clear();
+        for (int i = 0; i < pools.length; i++) {
+            if (pools[i] == null) continue;
+            for (cl_mem chunk : pools[i].chunks) memory.release(chunk);
+            pools[i] = null;
+        }
+        inUse = reserved = 0;
+    }
+
+    private Pool pool(Subsystem subsystem, long hostFlags) {
+        int index = subsystem.ordinal() * 2 + (hostFlags != 0 ? 1 : 0);
+        Pool pool = pools[index];
+        if (pool == null) pools[index] = pool = new Pool(subsystem, CL_MEM_READ_WRITE | hostFlags);
+        return pool;
+    }
+
+    /** 从池的当前块切出新区间，必要时申请新块 */
+    private Block carve(Pool pool, int sizeClass) {
+        long size = 1L << sizeClass;
+        if (size >= chunkBytes) {
+            // 大缓冲区单独占一块，释放后按等级复用
+            return new Block(pool, newChunk(pool, size), 0, sizeClass, 0);
+        }
+        if (pool.current == null || pool.offset + size > chunkBytes) {
+            if (pool.current != null) recycleTail(pool);
+            pool.current = newChunk(pool, chunkBytes);
+            pool.offset = 0;
+        }
+        // 所有区间都是 2 的幂且不小于 minBlock，偏移天然满足对齐
+        Block block = new Block(pool, pool.current, pool.offset, sizeClass, 0);
+        pool.offset += size;
+        return block;
+    }
+
+    /** 把当前块剩余的尾部按 2 的幂拆分放入空闲链表，避免浪费 */
+    private void recycleTail(Pool pool) {
+        long remaining = chunkBytes - pool.offset;
+        while (remaining >= minBlock) {
+            long piece = Long.highestOneBit(remaining);
+            int sizeClass = Long.numberOfTrailingZeros(piece);
+            pool.free.get(sizeClass).push(new Block(pool, pool.current, pool.offset, sizeClass, 0));
+            pool.offset += piece;
+            remaining -= piece;
+        }
+    }
+
+    private cl_mem newChunk(Pool pool, long bytes) {
+        cl_mem chunk = memory.allocate(pool.subsystem, pool.parentFlags, bytes);
+        pool.chunks.add(chunk);
+        reserved += bytes;
+        LOGGER.debug("{} 设备内存池新增 {} KB 块 (共保留 {} MB)", pool.subsystem.label(), bytes / 1024, reserved / 1024 / 1024);
+        return chunk;
+    }
+
+    private int sizeClass(long bytes) {
+        long size = Math.max(minBlock, bytes);
+        return 64 - Long.numberOfLeadingZeros(size - 1);
+    }
+
+    /** @return 已切出的子缓冲区字节数 */
+    public long getInUse() { return inUse; }
+    /** @return 池块占用的显存字节数 */
+    public long getReserved() { return reserved; }
+    /** @return 扩容时执行设备内复制的次数 */
+    public long getGrowCopies() { return growCopies; }
+}
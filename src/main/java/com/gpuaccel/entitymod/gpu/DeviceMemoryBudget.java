@@ -0,0 +1,175 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.ai.VoxelManager;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.Sizeof;
+import org.jocl.cl_mem;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 设备显存预算与分配记账。
+ * <p>
+ * GPUManager 以及物理、气候等子系统的全部 cl_mem 都经由这里创建和释放，按子系统累计字节数，
+ * 并与由 CL_DEVICE_GLOBAL_MEM_SIZE 推导出的预算比较。超出预算或超过 CL_DEVICE_MAX_MEM_ALLOC_SIZE 的分配
+ * 直接抛出异常，由调用方按出错处理 (群体 AI 回退到 CPU)，而不是交给驱动在显存不足时失败或换页。
+ * </p>
+ * <p>
+ * 初始化时由 {@link #planFields()} 为费洛蒙网格与流场选出能放进预算的最大分辨率：
+ * 先为实体等动态缓冲区预留空间，流场最多占剩余部分的 1/4，其余留给费洛蒙的两块 Ping-Pong 缓冲区。
+ * </p>
+ * <p>
+ * 只在服务器主线程使用。
+ * </p>
+ */
+public class DeviceMemoryBudget {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 显存使用方，用于分类统计 */
+    public enum Subsystem {
+        PHEROMONE("费洛蒙"),
+        FLOW_FIELD("流场"),
+        VOXEL("体素"),
+        ENTITY("实体"),
+        AUX("参数与刺激源"),
+        PHYSICS("物理"),
+        CLIMATE("气候"),
+        /** 只用于 Host 内存：驱动线程上阻塞写入的暂存区 */
+        STAGING("驱动暂存");
+
+        private final String label;
+
+        Subsystem(String label) {
+            this.label = label;
+        }
+
+        public String label() { return label; }
+    }
+
+    /** 费洛蒙网格的候选水平边长 (从大到小)，垂直方向取其 1/4 */
+    private static final int[] PHERO_SIZES = {512, 384, 256, 192, 128, 64};
+    /** 流场相对体素地图的最大降采样位移 (2 = 每 4 格一个流场单元) */
+    private static final int MAX_FLOW_SHIFT = 2;
+    /** 为实体、参数与物理等动态缓冲区预留的最小字节数 */
+    private static final long MIN_DYNAMIC_RESERVE = 64L * 1024 * 1024;
+
+    /**
+     * 选定的场分辨率。
+     *
+     * @param pheroSizeXZ 费洛蒙网格水平边长
+     * @param pheroSizeY 费洛蒙网格高度
+     * @param flowShift 流场降采样位移，流场边长为 体素地图边长 >> flowShift
+     */
+    public record FieldPlan(int pheroSizeXZ, int pheroSizeY, int flowShift) {
+        /** 与 VoxelManager 常量一致的最大分辨率 */
+        public static final FieldPlan FULL = new FieldPlan(VoxelManager.PHERO_SIZE_XZ, VoxelManager.PHERO_SIZE_Y, 0);
+
+        public int pheroVolume() { return pheroSizeXZ * pheroSizeXZ * pheroSizeY; }
+        /** @return 单块费洛蒙缓冲区的字节数 (全部通道) */
+        public long pheroBytes() { return (long) pheroVolume() * VoxelManager.PHERO_CHANNELS * Sizeof.cl_float; }
+        public int flowSize() { return VoxelManager.VOXEL_SIZE >> flowShift; }
+        public int flowVolume() { int s = flowSize(); return s * s * s; }
+        /** @return 单个流场的字节数 (ushort 代价场 + float4 向量场) */
+        public long flowBytes() { return (long) flowVolume() * (Sizeof.cl_ushort + 4 * Sizeof.cl_float); }
+    }
+
+    private record Allocation(Subsystem subsystem, long bytes) {}
+
+    private final ClDriver driver;
+    private final long budget;
+    private final long maxAlloc;
+    private final Map<cl_mem, Allocation> allocations = new IdentityHashMap<>();
+    private final long[] usedBySubsystem = new long[Subsystem.values().length];
+    private long used = 0;
+    private long peak = 0;
+
+    /**
+     * @param driver 用于创建缓冲区与查询设备容量的驱动
+     * @param budgetPercent 预算占设备全局显存的百分比
+     * @param budgetMB 显式预算 (MB)，大于 0 时代替百分比 (仍不超过设备显存)
+     */
+    public DeviceMemoryBudget(ClDriver driver, int budgetPercent, int budgetMB) {
+        this.driver = driver;
+        long global = driver.getGlobalMemorySize();
+        long limit = budgetMB > 0 ? (long) budgetMB * 1024 * 1024 : global / 100 * budgetPercent;
+        this.budget = global > 0 ? Math.min(limit, global) : limit;
+        long deviceMaxAlloc = driver.getMaxMemAllocSize();
+        this.maxAlloc = deviceMaxAlloc > 0 ? deviceMaxAlloc : budget;
+    }
+
+    /**
+     * 创建缓冲区并计入指定子系统。
+     *
+     * @throws IllegalStateException 超过单次分配上限或总预算
+     */
+    public cl_mem allocate(Subsystem subsystem, long flags, long bytes) {
+        if (bytes > maxAlloc) {
+            throw new IllegalStateException(String.format("%s 缓冲区 %.1f MB 超过设备单次分配上限 %.1f MB",
+                subsystem.label(), mb(bytes), mb(maxAlloc)));
+        }
+        if (used + bytes > budget) {
+            throw new IllegalStateException(String.format("显存预算不足: %s 申请 %.1f MB，已用 %.1f / %.1f MB",
+                subsystem.label(), mb(bytes), mb(used), mb(budget)));
+        }
+        cl_mem mem = driver.createBuffer(flags, bytes);
+        allocations.put(mem, new Allocation(subsystem, bytes));
+        usedBySubsystem[subsystem.ordinal()] += bytes;
+        used += bytes;
+        peak = Math.max(peak, used);
+        return mem;
+    }
+
+    /** 释放缓冲区并从账目中扣除；null 忽略 */
+    public void release(cl_mem mem) {
+        if (mem == null) return;
+        Allocation a = allocations.remove(mem);
+        if (a != null) {
+            usedBySubsystem[a.subsystem().ordinal()] -= a.bytes();
+            used -= a.bytes();
+        }
+        driver.releaseMem(mem);
+    }
+
+    /**
+     * 在当前剩余预算内选出最大的费洛蒙与流场分辨率。应在分配场缓冲区之前调用。
+     */
+    public FieldPlan planFields() {
+        long reserve = Math.max(MIN_DYNAMIC_RESERVE, budget / 8);
+        long available = Math.max(0, budget - used - reserve);
+
+        int flowShift = MAX_FLOW_SHIFT;
+        for (int shift = 0; shift <= MAX_FLOW_SHIFT; shift++) {
+            if (new FieldPlan(0, 0, shift).flowBytes() * GPUManager.FIELD_COUNT <= available / 4) {
+                flowShift = shift;
+                break;
+            }
+        }
+        long flowTotal = new FieldPlan(0, 0, flowShift).flowBytes() * GPUManager.FIELD_COUNT;
+
+        for (int size : PHERO_SIZES) {
+            FieldPlan plan = new FieldPlan(size, size / 4, flowShift);
+            if (plan.pheroBytes() <= maxAlloc && plan.pheroBytes() * 2 + flowTotal <= available) return plan;
+        }
+        int smallest = PHERO_SIZES[PHERO_SIZES.length - 1];
+        LOGGER.warn("显存预算 {} MB 过小，费洛蒙网格使用最低分辨率", (long) mb(budget));
+        return new FieldPlan(smallest, smallest / 4, MAX_FLOW_SHIFT);
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    /** @return 预算字节数 */
+    public long getBudget() { return budget; }
+    /** @return 单个缓冲区的最大字节数 */
+    public long getMaxAlloc() { return maxAlloc; }
+    /** @return 当前已分配字节数 */
+    public long getUsed() { return used; }
+    /** @return 历史最高已分配字节数 */
+    public long getPeak() { return peak; }
+    /** @return 指定子系统当前已分配的字节数 */
+    public long getUsed(Subsystem subsystem) { return usedBySubsystem[subsystem.ordinal()]; }
+}
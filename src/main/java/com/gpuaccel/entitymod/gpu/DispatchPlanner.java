@@ -0,0 +1,353 @@
+package com.gpuaccel.entitymod.gpu;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * 基于代价模型的 CPU / GPU 调度器。
+ * <p>
+ * 按子系统与目标后端各维护一个代价模型：打包、上传、内核、回读、应用五个阶段分别以
+ * "固定开销 + 各类型桶实体数 x 单实体开销" 拟合服务器线程上的实测耗时。
+ * 拟合使用带遗忘因子的递推最小二乘，相当于对每项系数取指数滑动平均，驱动更新或负载变化后几十帧内即可跟上。
+ * 异步执行的部分 (GPU 内核、CPU 后端的工作线程) 只在阻塞等待时计入；流水线占满或回读未完成而丢弃的帧
+ * 按另一侧完成同样工作的预估耗时计入回读阶段，设备跟不上时 GPU 的代价随之上升。
+ * </p>
+ * <p>
+ * 每帧按本批实体的类型构成预估两侧代价，选择较便宜的后端，并带有迟滞：切换后至少保持
+ * {@link #MIN_DWELL} 帧，另一侧需连续 {@link #SWITCH_STREAK} 帧便宜 {@link #SWITCH_MARGIN} 以上才切换。
+ * 未被选中的一侧没有新样本，其模型超过 {@link #PROBE_INTERVAL} 帧未更新时切过去试运行一段时间重新测量。
+ * 两侧都尚无足够样本时按配置的实体数阈值做初始选择。
+ * </p>
+ * <p>
+ * 调度器在上下文重建之间保留，只在服务器线程上使用。
+ * </p>
+ */
+public final class DispatchPlanner {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 没有配置时的初始 CPU / GPU 分界 (实体数) */
+    public static final int DEFAULT_PRIOR_THRESHOLD = 10;
+
+    /** 特征数：常数项 + 各类型桶的实体数 */
+    private static final int DIM = 1 + TypeBuckets.COUNT;
+    /** 实体数特征的缩放 (千个实体)，使各系数量级接近 */
+    private static final double ENTITY_SCALE = 1e-3;
+    /** 遗忘因子，有效窗口约 1 / (1 - LAMBDA) 个样本 */
+    private static final double LAMBDA = 0.98;
+    /** 协方差初值 (微秒^2 量级)，越大初期越信任新样本 */
+    private static final double INITIAL_COVARIANCE = 1e4;
+    /** 协方差迹的上限，长期缺少激励的方向不会无限膨胀 */
+    private static final double MAX_COVARIANCE_TRACE = 1e7;
+    /** 模型可用于比较所需的最少样本数 */
+    private static final int MIN_SAMPLES = 8;
+    /** 模型成熟后，超过预估值该倍数的样本 (GC、区块加载等) 按该倍数截断 */
+    private static final double OUTLIER_FACTOR = 8.0;
+
+    /** 切换后至少保持的帧数，也是试运行的长度 */
+    static final int MIN_DWELL = 40;
+    /** 另一侧需便宜的比例 */
+    static final double SWITCH_MARGIN = 0.15;
+    /** 另一侧需连续便宜的帧数 */
+    static final int SWITCH_STREAK = 20;
+    /** 未选中一侧的模型超过该帧数未更新时重新试运行 */
+    static final int PROBE_INTERVAL = 2400;
+
+    /** 参与调度的子系统 */
+    public enum Workload {
+        SWARM("群体 AI"),
+        PHYSICS("物理");
+
+        private final String label;
+
+        Workload(String label) {
+            this.label = label;
+        }
+
+        public String label() { return label; }
+    }
+
+    /** 目标后端 */
+    public enum Target {
+        GPU, CPU;
+
+        Target other() { return this == GPU ? CPU : GPU; }
+    }
+
+    /** 计时阶段 */
+    public enum Stage {
+        PACK, UPLOAD, KERNEL, READBACK, APPLY
+    }
+
+    /**
+     * 一帧的实测耗时。各阶段可能分布在不同的 Tick (异步回读)，全部阶段结束后交给 {@link #record}。
+     */
+    public static final class Sample {
+        private final Workload workload;
+        private final Target target;
+        private final int[] counts;
+        private final long[] nanos = new long[Stage.values().length];
+        private long lapStart = System.nanoTime();
+        private boolean late = false;
+
+        private Sample(Workload workload, Target target, int[] counts) {
+            this.workload = workload;
+            this.target = target;
+            this.counts = counts.clone();
+        }
+
+        /** 从现在开始计时下一阶段 */
+        public void restart() {
+            lapStart = System.nanoTime();
+        }
+
+        /** 把自上次计时点以来的耗时计入 stage，并开始计时下一阶段 */
+        public void lap(Stage stage) {
+            long now = System.nanoTime();
+            nanos[stage.ordinal()] += now - lapStart;
+            lapStart = now;
+        }
+
+        /** 把一段单独测得的耗时计入 stage */
+        public void add(Stage stage, long elapsedNanos) {
+            nanos[stage.ordinal()] += elapsedNanos;
+        }
+
+        /** 本帧的结果因流水线占满或回读未完成而被丢弃 */
+        public void markLate() {
+            late = true;
+        }
+
+        public Target target() { return target; }
+    }
+
+    /** 一个阶段的递推最小二乘拟合，时间单位为微秒 */
+    private static final class StageModel {
+        final double[] theta = new double[DIM];
+        final double[][] cov = new double[DIM][DIM];
+        private final double[] px = new double[DIM];
+
+        StageModel() {
+            resetCovariance();
+        }
+
+        void resetCovariance() {
+            for (int i = 0; i < DIM; i++) {
+                Arrays.fill(cov[i], 0.0);
+                cov[i][i] = INITIAL_COVARIANCE;
+            }
+        }
+
+        double predict(double[] x) {
+            double y = 0;
+            for (int i = 0; i < DIM; i++) y += theta[i] * x[i];
+            return y;
+        }
+
+        void update(double[] x, double y) {
+            double denom = LAMBDA;
+            for (int i = 0; i < DIM; i++) {
+                double s = 0;
+                for (int j = 0; j < DIM; j++) s += cov[i][j] * x[j];
+                px[i] = s;
+                denom += x[i] * s;
+            }
+            double err = y - predict(x);
+            double trace = 0;
+            for (int i = 0; i < DIM; i++) {
+                double k = px[i] / denom;
+                theta[i] += k * err;
+                for (int j = 0; j < DIM; j++) cov[i][j] = (cov[i][j] - k * px[j]) / LAMBDA;
+                trace += cov[i][i];
+            }
+            if (trace > MAX_COVARIANCE_TRACE || Double.isNaN(trace)) resetCovariance();
+        }
+    }
+
+    /** 一个子系统在一个目标后端上的代价模型 */
+    private static final class CostModel {
+        final StageModel[] stages = new StageModel[Stage.values().length];
+        int samples = 0;
+        long lastSampleFrame = Long.MIN_VALUE / 2;
+
+        CostModel() {
+            for (int i = 0; i < stages.length; i++) stages[i] = new StageModel();
+        }
+
+        boolean isReady() {
+            return samples >= MIN_SAMPLES;
+        }
+
+        /** @return 整帧预估耗时 (微秒)，各阶段不低于 0 */
+        double predict(double[] x) {
+            double total = 0;
+            for (StageModel s : stages) total += Math.max(0, s.predict(x));
+            return total;
+        }
+    }
+
+    /** 一个子系统的调度状态 */
+    private static final class Plan {
+        final CostModel[] models = {new CostModel(), new CostModel()};
+        Target current;
+        long frame = 0;
+        int dwell = 0;
+        int streak = 0;
+        int switches = 0;
+        double lastGpuMicros = Double.NaN;
+        double lastCpuMicros = Double.NaN;
+
+        CostModel model(Target t) {
+            return models[t.ordinal()];
+        }
+    }
+
+    private final int priorThreshold;
+    private final Plan[] plans = new Plan[Workload.values().length];
+    private final double[] features = new double[DIM];
+    /** 协同执行时的工作划分，随调度器一起保留 */
+    private final WorkSplitter splitter = new WorkSplitter();
+
+    /**
+     * @param priorThreshold 两侧都尚无足够样本时，实体数不低于该值选择 GPU
+     */
+    public DispatchPlanner(int priorThreshold) {
+        this.priorThreshold = priorThreshold;
+        for (int i = 0; i < plans.length; i++) plans[i] = new Plan();
+    }
+
+    /**
+     * 选择本帧的后端。每帧每个子系统调用一次。
+     *
+     * @param counts 本批实体按 {@link TypeBuckets} 分桶的数量
+     * @param gpuUsable GPU 路径当前是否可用
+     * @param cpuUsable CPU 路径当前是否可用
+     * @return 选定的后端，两侧都不可用时为 null
+     */
+    public Target choose(Workload workload, int[] counts, boolean gpuUsable, boolean cpuUsable) {
+        Plan plan = plans[workload.ordinal()];
+        plan.frame++;
+        plan.dwell++;
+        Target wanted;
+        if (!gpuUsable || !cpuUsable) {
+            wanted = gpuUsable ? Target.GPU : cpuUsable ? Target.CPU : null;
+            if (wanted == null) return null;
+        } else {
+            wanted = plan(workload, plan, counts);
+        }
+        if (wanted != plan.current) {
+            if (plan.current != null) plan.switches++;
+            plan.current = wanted;
+            plan.dwell = 0;
+            plan.streak = 0;
+        }
+        return wanted;
+    }
+
+    private Target plan(Workload workload, Plan plan, int[] counts) {
+        double[] x = featuresOf(counts);
+        CostModel gpu = plan.model(Target.GPU);
+        CostModel cpu = plan.model(Target.CPU);
+        plan.lastGpuMicros = gpu.isReady() ? gpu.predict(x) : Double.NaN;
+        plan.lastCpuMicros = cpu.isReady() ? cpu.predict(x) : Double.NaN;
+
+        Target current = plan.current;
+        if (current == null) return priorChoice(counts);
+        if (plan.dwell < MIN_DWELL) return current;
+
+        Target other = current.other();
+        CostModel cm = plan.model(current);
+        CostModel om = plan.model(other);
+        if (!cm.isReady()) return current;
+
+        // 另一侧没有测量或测量已过期：试运行一段时间
+        if (!om.isReady() || plan.frame - om.lastSampleFrame > PROBE_INTERVAL) {
+            LOGGER.debug("{} 调度: 试运行 {} 以更新代价模型", workload.label(), other);
+            return other;
+        }
+
+        double currentCost = cm.predict(x);
+        double otherCost = om.predict(x);
+        if (otherCost < currentCost * (1 - SWITCH_MARGIN)) {
+            if (++plan.streak >= SWITCH_STREAK) {
+                LOGGER.info("{} 调度切换到 {}: 预估 {} {} us / {} {} us", workload.label(), other,
+                    other, String.format("%.0f", otherCost), current, String.format("%.0f", currentCost));
+                return other;
+            }
+        } else {
+            plan.streak = 0;
+        }
+        return current;
+    }
+
+    private Target priorChoice(int[] counts) {
+        int total = 0;
+        for (int c : counts) total += c;
+        return total >= priorThreshold ? Target.GPU : Target.CPU;
+    }
+
+    /**
+     * 开始记录一帧。
+     *
+     * @param counts 本批实体按 {@link TypeBuckets} 分桶的数量
+     */
+    public Sample begin(Workload workload, Target target, int[] counts) {
+        return new Sample(workload, target, counts);
+    }
+
+    /** 以一帧的实测耗时更新对应的代价模型 */
+    public void record(Sample sample) {
+        Plan plan = plans[sample.workload.ordinal()];
+        CostModel model = plan.model(sample.target);
+        double[] x = featuresOf(sample.counts);
+        if (sample.late) {
+            // 丢弃的帧按另一侧完成同样工作的代价计入
+            CostModel other = plan.model(sample.target.other());
+            if (other.isReady()) sample.add(Stage.READBACK, (long) (other.predict(x) * 1000));
+        }
+        for (Stage stage : Stage.values()) {
+            StageModel s = model.stages[stage.ordinal()];
+            double y = sample.nanos[stage.ordinal()] / 1000.0;
+            if (model.isReady()) {
+                double cap = Math.max(1000.0, s.predict(x)) * OUTLIER_FACTOR;
+                if (y > cap) y = cap;
+            }
+            s.update(x, y);
+        }
+        model.samples++;
+        model.lastSampleFrame = plan.frame;
+    }
+
+    private double[] featuresOf(int[] counts) {
+        features[0] = 1.0;
+        for (int b = 0; b < TypeBuckets.COUNT; b++) features[1 + b] = counts[b] * ENTITY_SCALE;
+        return features;
+    }
+
+    /** @return 子系统当前选定的后端，尚未调度时为 null */
+    public Target getCurrent(Workload workload) { return plans[workload.ordinal()].current; }
+
+    /** @return 最近一次调度时该后端的整帧预估耗时 (毫秒)，模型尚未就绪时为 NaN */
+    public double getLastPredictionMillis(Workload workload, Target target) {
+        Plan plan = plans[workload.ordinal()];
+        return (target == Target.GPU ? plan.lastGpuMicros : plan.lastCpuMicros) / 1000.0;
+    }
+
+    /**
+     * @return 该后端上某类型桶的单实体预估耗时 (微秒，各阶段之和)，模型尚未就绪时为 NaN
+     */
+    public double getPerEntityMicros(Workload workload, Target target, int bucket) {
+        CostModel model = plans[workload.ordinal()].model(target);
+        if (!model.isReady()) return Double.NaN;
+        double total = 0;
+        for (StageModel s : model.stages) total += s.theta[1 + bucket] * ENTITY_SCALE;
+        return total;
+    }
+
+    /** @return 该子系统累计切换后端的次数 */
+    public int getSwitches(Workload workload) { return plans[workload.ordinal()].switches; }
+
+    /** @return CPU + GPU 协同执行时的工作划分 */
+    public WorkSplitter getSplitter() { return splitter; }
+}
@@ -0,0 +1,176 @@
+package com.gpuaccel.entitymod.gpu;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * 实体数据的增量上传流。
+ * <p>
+ * 设备上的 positions / velocities / entityTypes / params 按 {@link EntitySlotTable} 的槽位常驻，
+ * 这里为每个槽位保留一份最后发送值的镜像。每帧只把与镜像不同的行追加到打包流中，
+ * 由 scatter_entity_rows 内核写回各自的槽位：
+ * <ul>
+ *   <li>运动行 ({@link #MOTION_WORDS} 个字)：槽位、位置 xyz、速度 xyz</li>
+ *   <li>描述行 ({@link #DESC_WORDS} 个字)：槽位、实体类型、12 个行为参数</li>
+ * </ul>
+ * float 以原始位模式写入 int 流，内核端用 {@code as_float} 还原。
+ * 静止的实体不产生运动行，类型与参数不变的实体不产生描述行，上传量只随变化的实体增长。
+ * </p>
+ * <p>
+ * 描述行写入的是槽位的登记类型。本帧实际参与计算的槽位另由活动掩码 (每槽位 1 位) 标出，
+ * apply_slot_mask 据此把未出现的槽位 (如其他维度的实体) 的类型记为 -1，这些槽位不需要改写描述行。
+ * </p>
+ * <p>
+ * 镜像必须始终与设备内容一致：设备缓冲区重新分配或某一帧的流没有送达时调用 {@link #invalidate()}，
+ * 之后每个槽位都会重新发送一次。
+ * </p>
+ */
+public class EntityRowStream {
+    /** 每个实体的行为参数个数 */
+    public static final int PARAM_COUNT = 12;
+    /** 运动行字数：槽位 + 位置 3 + 速度 3 */
+    public static final int MOTION_WORDS = 7;
+    /** 描述行字数：槽位 + 类型 + 参数 12 */
+    public static final int DESC_WORDS = 2 + PARAM_COUNT;
+
+    /** 镜像中表示 "设备内容未知" 的类型值 */
+    private static final int UNKNOWN_TYPE = Integer.MIN_VALUE;
+
+    // 最后发送到设备的值 (NaN / UNKNOWN_TYPE 表示未知，与任何新值比较都不相等)
+    private float[] motionMirror = new float[0];
+    private int[] typeMirror = new int[0];
+    private float[] paramsMirror = new float[0];
+    private int capacity = 0;
+
+    private IntBuffer motionRows;
+    private IntBuffer descRows;
+    private int motionCount = 0;
+    private int descCount = 0;
+
+    /** 本帧的活动掩码，第 s 位对应槽位 s */
+    private int[] activeMask = new int[0];
+    private int maskSlots = 0;
+
+    /**
+     * 确保镜像覆盖指定槽位数，新增部分标记为未知；已有内容保留。
+     */
+    public void ensureCapacity(int slots) {
+        if (slots <= capacity) return;
+        motionMirror = Arrays.copyOf(motionMirror, slots * 6);
+        typeMirror = Arrays.copyOf(typeMirror, slots);
+        paramsMirror = Arrays.copyOf(paramsMirror, slots * PARAM_COUNT);
+        Arrays.fill(motionMirror, capacity * 6, slots * 6, Float.NaN);
+        Arrays.fill(typeMirror, capacity, slots, UNKNOWN_TYPE);
+        Arrays.fill(paramsMirror, capacity * PARAM_COUNT, slots * PARAM_COUNT, Float.NaN);
+        capacity = slots;
+    }
+
+    /** 丢弃全部镜像，之后每个槽位都会重新发送 */
+    public void invalidate() {
+        Arrays.fill(motionMirror, Float.NaN);
+        Arrays.fill(typeMirror, UNKNOWN_TYPE);
+        Arrays.fill(paramsMirror, Float.NaN);
+    }
+
+    /**
+     * 开始新的一帧，把行写入指定的 Host 缓冲区。
+     *
+     * @param motionOut 至少 槽位数 * {@link #MOTION_WORDS} 个 int
+     * @param descOut 至少 槽位数 * {@link #DESC_WORDS} 个 int
+     */
+    public void begin(IntBuffer motionOut, IntBuffer descOut) {
+        this.motionRows = motionOut;
+        this.descRows = descOut;
+        this.motionCount = 0;
+        this.descCount = 0;
+        this.maskSlots = 0;
+    }
+
+    /**
+     * 开始本帧的活动掩码，全部槽位先记为未出现。
+     *
+     * @param slotCount 本帧的槽位上界
+     */
+    public void beginMask(int slotCount) {
+        int words = maskWords(slotCount);
+        if (activeMask.length < words) activeMask = new int[Math.max(words, activeMask.length * 2)];
+        else Arrays.fill(activeMask, 0, words, 0);
+        maskSlots = slotCount;
+    }
+
+    /** 标记槽位在本帧出现 */
+    public void markActive(int slot) {
+        activeMask[slot >>> 5] |= 1 << (slot & 31);
+    }
+
+    /** @return 槽位在本帧是否出现 */
+    public boolean isActive(int slot) {
+        return (activeMask[slot >>> 5] & (1 << (slot & 31))) != 0;
+    }
+
+    /**
+     * 写入实体的位置与速度，与上次发送的值完全相同时跳过。
+     */
+    public void putMotion(int slot, float px, float py, float pz, float vx, float vy, float vz) {
+        int m = slot * 6;
+        float[] mir = motionMirror;
+        if (mir[m] == px && mir[m + 1] == py && mir[m + 2] == pz
+            && mir[m + 3] == vx && mir[m + 4] == vy && mir[m + 5] == vz) return;
+        mir[m] = px; mir[m + 1] = py; mir[m + 2] = pz;
+        mir[m + 3] = vx; mir[m + 4] = vy; mir[m + 5] = vz;
+
+        int o = motionCount * MOTION_WORDS;
+        motionRows.put(o, slot);
+        for (int k = 0; k < 6; k++) motionRows.put(o + 1 + k, Float.floatToRawIntBits(mir[m + k]));
+        motionCount++;
+    }
+
+    /**
+     * 写入实体的类型与行为参数，与上次发送的值完全相同时跳过。
+     *
+     * @param params 行为参数，不足 {@link #PARAM_COUNT} 个时补 0；为 null 时保留设备上的参数，只比较类型
+     */
+    public void putDescriptor(int slot, int type, float[] params) {
+        int p = slot * PARAM_COUNT;
+        boolean changed = typeMirror[slot] != type;
+        if (params != null) {
+            for (int k = 0; k < PARAM_COUNT; k++) {
+                float v = k < params.length ? params[k] : 0f;
+                if (paramsMirror[p + k] != v) {
+                    paramsMirror[p + k] = v;
+                    changed = true;
+                }
+            }
+        }
+        if (!changed) return;
+        typeMirror[slot] = type;
+
+        int o = descCount * DESC_WORDS;
+        descRows.put(o, slot);
+        descRows.put(o + 1, type);
+        for (int k = 0; k < PARAM_COUNT; k++) {
+            float v = paramsMirror[p + k];
+            // 参数未知时 (只改类型的空洞) 发送 0，保证设备端不读到 NaN
+            descRows.put(o + 2 + k, Float.floatToRawIntBits(Float.isNaN(v) ? 0f : v));
+        }
+        descCount++;
+    }
+
+    /** @return 最后发送到设备的槽位类型，未知时为负数 */
+    public int typeOf(int slot) { return typeMirror[slot]; }
+
+    /** @return 覆盖指定槽位数的掩码字数 */
+    public static int maskWords(int slots) { return (slots + 31) >>> 5; }
+
+    /** @return 本帧的活动掩码 (只有前 {@link #maskWords}({@link #getMaskSlots()}) 个字有效) */
+    public int[] getActiveMask() { return activeMask; }
+    /** @return 活动掩码覆盖的槽位数 */
+    public int getMaskSlots() { return maskSlots; }
+
+    public IntBuffer getMotionRows() { return motionRows; }
+    public IntBuffer getDescRows() { return descRows; }
+    /** @return 本帧的运动行数 */
+    public int getMotionCount() { return motionCount; }
+    /** @return 本帧的描述行数 */
+    public int getDescCount() { return descCount; }
+}
@@ -0,0 +1,245 @@
+package com.gpuaccel.entitymod.gpu;
+
+import net.minecraft.world.entity.Entity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 加速实体的持久设备槽位表。
+ * <p>
+ * 每个实体在首次加入加速集合时分配一个稳定的槽位，之后每帧都写在同一位置，
+ * 因此 prevPositions / stuckTimer / beeStates 这类逐实体状态可以一直留在设备上，
+ * 不需要按 UUID 查找或每帧重新上传。连续一整轮更新未出现的实体释放槽位，空闲槽位进入空闲链表复用。
+ * </p>
+ * <p>
+ * 空洞过多时执行压缩：把高位的存活槽位搬到低位空洞，使调度规模 ({@link #getHighWater()}) 回落。
+ * 新分配与搬移都会生成重映射操作 ({@link #getRemapOps()})，由后端在下一次主内核之前
+ * 应用到设备上的逐实体状态：新实体的状态清零，被搬移实体的状态随之移动。
+ * 同一帧内生成的操作互不冲突 (源槽位都是存活槽位，目标槽位都是原先的空洞)，可以并行执行。
+ * </p>
+ * <p>
+ * 只在服务器主线程使用。多个维度共用同一张表：每轮更新中各维度各占一帧，离开判定按轮次而不是服务器 Tick 计算，
+ * 否则更新间隔大于 1 时其他维度的实体会在每帧被释放并清零。本帧未出现的槽位由活动掩码
+ * (见 {@link EntityRowStream#beginMask}) 按空洞处理，只有空闲槽位 ({@link #isFree}) 才改写登记类型。
+ * </p>
+ */
+public class EntitySlotTable {
+    /** 重映射操作中表示 "清零目标槽位" 的源槽位 */
+    public static final int RESET = -1;
+
+    /** 空洞数达到 max(该值, 存活数 / 4) 时触发压缩 */
+    private static final int MIN_COMPACT_HOLES = 64;
+
+    private final Map<Integer, Integer> slotByEntity = new HashMap<>();
+
+    /** 槽位 -> 实体 ID，空闲槽位为 -1 */
+    private int[] slotEntity = new int[0];
+    /** 槽位最后一次出现的更新轮次 */
+    private int[] seenRound = new int[0];
+    /** 槽位最后一次出现的帧序号 (用于判断本帧是否出现) */
+    private int[] seenFrame = new int[0];
+    /** 槽位分配时的帧序号 (用于识别本帧新加入的实体) */
+    private int[] joinFrame = new int[0];
+
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+    private int highWater = 0;
+
+    private int frame = 0;
+    private int round = 0;
+    /** 本帧重新出现 (上一轮缺席但尚未释放) 的实体数 */
+    private int returning = 0;
+
+    /** 待应用的重映射操作，每个操作两个 int: (源槽位或 RESET, 目标槽位) */
+    private int[] remapOps = new int[128];
+    private int remapCount = 0;
+
+    private long compactions = 0;
+
+    /**
+     * 开始新的一帧。
+     *
+     * @param updateRound 当前的更新轮次 (每轮对各维度各调度一次)，用于判定实体是否已离开
+     */
+    public void beginFrame(int updateRound) {
+        frame++;
+        round = updateRound;
+        returning = 0;
+    }
+
+    /**
+     * 标记实体在本帧出现，必要时为其分配槽位。
+     *
+     * @return 实体当前的槽位 (本帧压缩后可能变化，应在 {@link #endFrame()} 之后以 {@link #slotOf} 重新查询)
+     */
+    public int acquire(Entity entity) {
+        return acquire(entity.getId());
+    }
+
+    /** 按实体 ID 标记出现，见 {@link #acquire(Entity)} */
+    int acquire(int id) {
+        Integer existing = slotByEntity.get(id);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+            if (round - seenRound[slot] > 1) returning++;
+        } else {
+            slot = freeCount > 0 ? freeSlots[--freeCount] : highWater++;
+            ensureCapacity(highWater);
+            slotEntity[slot] = id;
+            joinFrame[slot] = frame;
+            slotByEntity.put(id, slot);
+            addOp(RESET, slot);
+        }
+        seenRound[slot] = round;
+        seenFrame[slot] = frame;
+        return slot;
+    }
+
+    /**
+     * 结束本帧：释放上一轮起就未再出现的实体，空洞过多时压缩槽位。
+     */
+    public void endFrame() {
+        for (int s = 0; s < highWater; s++) {
+            if (slotEntity[s] >= 0 && round - seenRound[s] > 1) release(s);
+        }
+        // 高位的空闲槽位直接收回
+        while (highWater > 0 && slotEntity[highWater - 1] < 0) highWater--;
+        int live = slotByEntity.size();
+        if (highWater - live >= Math.max(MIN_COMPACT_HOLES, live / 4)) compact(live);
+        else rebuildFreeList();
+    }
+
+    /**
+     * 把 [live, highWater) 中的存活槽位搬到 [0, live) 的空洞，之后槽位恰好占满 [0, live)。
+     */
+    private void compact(int live) {
+        int dst = 0;
+        for (int src = live; src < highWater; src++) {
+            int id = slotEntity[src];
+            if (id < 0) continue;
+            while (slotEntity[dst] >= 0) dst++;
+
+            slotEntity[dst] = id;
+            seenRound[dst] = seenRound[src];
+            seenFrame[dst] = seenFrame[src];
+            joinFrame[dst] = joinFrame[src];
+            slotByEntity.put(id, dst);
+            slotEntity[src] = -1;
+
+            if (joinFrame[dst] == frame) {
+                // 本帧新加入的实体没有需要保留的状态，把对源槽位的清零改写为对目标槽位的清零
+                retargetReset(src, dst);
+            } else {
+                addOp(src, dst);
+            }
+        }
+        highWater = live;
+        freeCount = 0;
+        compactions++;
+    }
+
+    private void release(int slot) {
+        slotByEntity.remove(slotEntity[slot]);
+        slotEntity[slot] = -1;
+    }
+
+    private void rebuildFreeList() {
+        freeCount = 0;
+        // 倒序压栈，使低位槽位优先被复用
+        for (int s = highWater - 1; s >= 0; s--) {
+            if (slotEntity[s] >= 0) continue;
+            if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            freeSlots[freeCount++] = s;
+        }
+    }
+
+    private void retargetReset(int from, int to) {
+        for (int i = 0; i < remapCount; i++) {
+            if (remapOps[i * 2] == RESET && remapOps[i * 2 + 1] == from) {
+                remapOps[i * 2 + 1] = to;
+                return;
+            }
+        }
+        addOp(RESET, to);
+    }
+
+    private void addOp(int src, int dst) {
+        if ((remapCount + 1) * 2 > remapOps.length) remapOps = Arrays.copyOf(remapOps, remapOps.length * 2);
+        remapOps[remapCount * 2] = src;
+        remapOps[remapCount * 2 + 1] = dst;
+        remapCount++;
+    }
+
+    private void ensureCapacity(int slots) {
+        if (slots <= slotEntity.length) return;
+        int cap = Math.max(256, Math.max(slots, slotEntity.length * 2));
+        int old = slotEntity.length;
+        slotEntity = Arrays.copyOf(slotEntity, cap);
+        Arrays.fill(slotEntity, old, cap, -1);
+        seenRound = Arrays.copyOf(seenRound, cap);
+        seenFrame = Arrays.copyOf(seenFrame, cap);
+        joinFrame = Arrays.copyOf(joinFrame, cap);
+    }
+
+    /** @return 实体当前的槽位，未分配时返回 -1 */
+    public int slotOf(Entity entity) {
+        return slotOf(entity.getId());
+    }
+
+    /** @return 实体 ID 当前的槽位，未分配时返回 -1 */
+    int slotOf(int id) {
+        Integer slot = slotByEntity.get(id);
+        return slot == null ? -1 : slot;
+    }
+
+    /** @return 槽位是否空闲 (未分配给任何实体) */
+    public boolean isFree(int slot) {
+        return slotEntity[slot] < 0;
+    }
+
+    /** @return 槽位是否由本帧出现的实体占用；其余槽位 (空闲或属于其他维度) 在本帧按空洞处理 */
+    public boolean isActiveThisFrame(int slot) {
+        return slotEntity[slot] >= 0 && seenFrame[slot] == frame;
+    }
+
+    /**
+     * 用 "清零全部存活槽位" 替换待应用的重映射操作。
+     * 后端的逐实体状态缓冲区被重新分配 (内容丢失) 时调用。
+     */
+    public void resetAllLive() {
+        remapCount = 0;
+        for (int s = 0; s < highWater; s++) {
+            if (slotEntity[s] >= 0) addOp(RESET, s);
+        }
+    }
+
+    /** 后端应用重映射操作后调用 */
+    public void clearRemap() {
+        remapCount = 0;
+    }
+
+    /** 清空整张表 (出错恢复时调用)，之后所有实体都会重新分配槽位并清零状态 */
+    public void clear() {
+        slotByEntity.clear();
+        Arrays.fill(slotEntity, -1);
+        freeCount = 0;
+        highWater = 0;
+        remapCount = 0;
+    }
+
+    /** @return 槽位上界，即本帧的调度规模 */
+    public int getHighWater() { return highWater; }
+    /** @return 存活实体数量 */
+    public int getLiveCount() { return slotByEntity.size(); }
+    /** @return 本帧重新出现的实体数，这些实体缺席期间构建的邻居表中没有它们 (见 {@link NeighbourList}) */
+    public int getReturningCount() { return returning; }
+    /** @return 待应用的重映射操作数 */
+    public int getRemapCount() { return remapCount; }
+    /** @return 重映射操作数组 (只有前 {@link #getRemapCount()} * 2 个元素有效) */
+    public int[] getRemapOps() { return remapOps; }
+    /** @return 累计压缩次数 */
+    public long getCompactions() { return compactions; }
+}
@@ -1,84 +1,184 @@
 package com.gpuaccel.entitymod.gpu;
 
 import com.gpuaccel.entitymod.ai.VoxelManager;
-import net.minecraft.world.entity.Entity;
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import com.gpuaccel.entitymod.gpu.driver.ClMapping;
+import com.gpuaccel.entitymod.gpu.driver.JoclDriver;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.lwjgl.system.MemoryUtil;
 import org.jocl.*;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
 
 import static org.jocl.CL.*;
 
 /**
  * GPU 资源管理器。
  * <p>
- * 负责 OpenCL 上下文的创建、命令队列管理、显存 (Buffer) 分配与释放，
- * 以及 Host-Device 之间的数据传输。
+ * 负责显存 (Buffer) 分配与释放，以及 Host-Device 之间的数据传输。
+ * 所有 OpenCL 调用都经由 {@link ClDriver} 发出，上下文与命令队列由驱动持有。
+ * </p>
+ * <p>
+ * 群体实体缓冲区组织为 N 槽位的环形流水线：每帧的上传、主内核与回读以事件链的方式
+ * 非阻塞入队，回读完成事件记录在槽位上。主线程只查询最早在途帧的事件，
+ * 未完成时直接跳过本 Tick 的应用；所有槽位都在途时跳过新帧的提交，从不在 PCIe 传输上等待。
+ * </p>
+ * <p>
+ * 在与主机共享内存的设备上 (零复制模式)，行缓冲区与记录缓冲区以 CL_MEM_ALLOC_HOST_PTR 创建并保持映射：
+ * 增量行直接打包进映射区域，解除映射后由 scatter 读取，随即重新映射供该槽位下一轮使用；
+ * 输出记录在 compact_outputs 之后映射，应用循环直接读取映射区域，整条路径不再有 Host 侧复制。
  * </p>
  */
 public class GPUManager {
     private static final Logger LOGGER = LogManager.getLogger();
     
-    private cl_context context;
-    private cl_command_queue commandQueue;
-    private cl_device_id device;
+    private final ClDriver driver;
     private boolean gpuAvailable = false;
 
-    /** 双缓冲槽位数量 */
-    private static final int SWAP_SLOTS = 2;
+    /** 默认流水线槽位数量 (三缓冲) */
+    public static final int DEFAULT_PIPELINE_SLOTS = 3;
+
+    /** 默认显存预算 (设备全局显存的百分比) */
+    public static final int DEFAULT_MEMORY_BUDGET_PERCENT = 70;
+
+    /** 流水线槽位数量，即同时在途的帧数上限 */
+    private final int slotCount;
+    /** 是否使用映射的 Host 缓冲区上传实体行、读取输出记录 (零复制) */
+    private final boolean zeroCopy;
     
     // ==========================================
     // Java 端缓冲区 (Host Buffers)
     // ==========================================
-    private FloatBuffer[] positionsBuffers = new FloatBuffer[SWAP_SLOTS];
-    private FloatBuffer[] velocitiesBuffers = new FloatBuffer[SWAP_SLOTS];
-    private FloatBuffer[] outputsBuffers = new FloatBuffer[SWAP_SLOTS];
-    private IntBuffer[] entityTypesBuffers = new IntBuffer[SWAP_SLOTS];
-    private FloatBuffer[] playerPosBuffers = new FloatBuffer[SWAP_SLOTS];
-    private FloatBuffer[] paramsBuffers = new FloatBuffer[SWAP_SLOTS];
+    /** 压缩后的输出记录 (见 SwarmOutputs) 及其条数 */
+    private final IntBuffer[] recordBuffers;
+    private final IntBuffer[] recordCountBuffers;
+    private final FloatBuffer[] playerPosBuffers;
+    /** 增量上传的运动行与描述行 (见 EntityRowStream) */
+    private final IntBuffer[] motionRowBuffers;
+    private final IntBuffer[] descRowBuffers;
+    /**
+     * 零复制模式下行缓冲区与记录缓冲区的当前映射；此时上面的行 / 记录缓冲区只是映射区域的视图，
+     * 不由 HostArena 分配。行缓冲区的视图为 null 表示映射尚未取用 (其事件尚未释放)
+     */
+    private final ClMapping[] motionRowMaps;
+    private final ClMapping[] descRowMaps;
+    private final ClMapping[] recordMaps;
     
     // ==========================================
     // GPU 端缓冲区 (Device Buffers / cl_mem)
     // ==========================================
-    private cl_mem[] positionsMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] velocitiesMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] outputsMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] entityTypesMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] playerPosMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] paramsMems = new cl_mem[SWAP_SLOTS];
-    
-    // 防卡死机制 (Unstuck)
-    private FloatBuffer[] prevPositionsBuffers = new FloatBuffer[SWAP_SLOTS];
-    private cl_mem[] prevPositionsMems = new cl_mem[SWAP_SLOTS];
-    private IntBuffer[] stuckTimerBuffers = new IntBuffer[SWAP_SLOTS];
-    private cl_mem[] stuckTimerMems = new cl_mem[SWAP_SLOTS];
+    /** 主内核输出的新速度，只在设备上由 compact_outputs 读取，不回读 */
+    private final cl_mem[] outputsMems;
+    private final cl_mem[] recordMems;
+    private final cl_mem[] recordCountMems;
+    private final cl_mem[] playerPosMems;
+    private final cl_mem[] motionRowMems;
+    private final cl_mem[] descRowMems;
+
+    // 实体数据，按槽位常驻设备，所有流水线槽位共用；每帧只由 scatter_entity_rows 写入变化的行
+    private cl_mem positionsMem;
+    private cl_mem velocitiesMem;
+    /** 槽位的登记类型 (描述行写入)；各内核读取的 entityTypes 由它与本帧的活动掩码生成 */
+    private cl_mem baseTypesMem;
+    private cl_mem entityTypesMem;
+    private cl_mem paramsMem;
+    /** 设备实体数据的镜像与增量流 */
+    private final EntityRowStream rowStream = new EntityRowStream();
+    /** 按类型排序的槽位表，各分桶内核从中读取自己的区间 */
+    private final TypeBuckets buckets = new TypeBuckets();
+    /** 排序后的槽位表，所有流水线槽位共用；只在重新排序的帧上传 */
+    private cl_mem bucketOrderMem;
+    /** 槽位表的上传源 (按流水线槽位索引，在途期间不改写) */
+    private final IntBuffer[] bucketOrderBuffers;
+    /** 本帧活动掩码的上传源与设备副本 (按流水线槽位索引，见 EntityRowStream#beginMask) */
+    private final IntBuffer[] activeMaskBuffers;
+    private final cl_mem[] activeMaskMems;
+
+    // 空间哈希网格 (见 SpatialGrid)，每帧在主内核之前由位置缓冲区重建，所有流水线槽位共用
+    /** 每个槽位所在的哈希桶与桶内序号 (随实体容量增长) */
+    private cl_mem gridCellOfMem, gridRankMem;
+    /** 按桶排序的槽位表 (随实体容量增长) */
+    private cl_mem gridOrderMem;
+    /** 每桶实体数与各桶在槽位表中的 [start, end) (固定 SpatialGrid.CELLS 项) */
+    private cl_mem gridCountMem, gridStartMem, gridEndMem;
+
+    // 飞行与水生生物的 Verlet 邻居表 (见 NeighbourList)，跨帧缓存，所有流水线槽位共用
+    /** 每槽位 MAX_NEIGHBOURS 项的邻居表、实际条数、上次构建时的位置与类型标记 (随实体容量增长) */
+    private cl_mem nbrListMem, nbrCountMem, nbrRefPosMem, nbrRefTagMem;
+    /** 最大位移平方的归约结果 (单个 float 的位模式) */
+    private cl_mem nbrMaxDispMem;
+    /** 邻居表中的槽位号不再可信 (扩容、重映射或实体重新出现)，下一帧清除全部构建标记 */
+    private boolean neighbourListsStale = true;
+    private int neighbourListCount = -1;
     
-    // 蜜蜂状态相关
+    // 标量参数块 (每槽位一份，随帧上传，见 SwarmUniforms)
+    private final ByteBuffer[] uniformBuffers;
+    private final cl_mem[] uniformMems;
+
+    // 逐实体状态 (防卡死与蜜蜂状态)，按 EntitySlotTable 的槽位索引常驻设备，
+    // 所有流水线槽位共用一份；队列按序执行，相邻帧对它的读写自然串行
+    private cl_mem prevPositionsMem;
+    private cl_mem stuckTimerMem;
     private cl_mem beeStatesMem;
-    private int beeStatesCapacity = 0;
-    private int[] beeStatesCache = null;
+    /** 逐实体状态缓冲区新建 (而非扩容) 后置位，下一次重映射时清零全部存活槽位 */
+    private boolean entityStateLost = false;
+
+    // 槽位重映射操作 (按流水线槽位索引，见 remapEntitySlots)
+    private final IntBuffer[] remapBuffers;
+    private final cl_mem[] remapMems;
+    private final int[] remapCapacity;
+
+    // ==========================================
+    // 流水线状态
+    // ==========================================
+    /** 每个槽位最后一条回读命令的完成事件 */
+    private final cl_event[] slotEvents;
+    /** 每个槽位提交时的 System.nanoTime()，供看门狗计算等待时长 */
+    private final long[] slotSubmitNanos;
+    /** 每个槽位提交时的实体数量 */
+    private final int[] slotCounts;
+    /** 每个槽位已回读的记录条数 (提交时按预估窗口读取，超出部分在取回时补读) */
+    private final int[] slotWindows;
+    /** 最近一次取回的记录条数，用于预估下一帧的回读窗口 */
+    private int recordWindowHint = 0;
+    /** 最近交付的一帧从提交到回读完成的时长 */
+    private long lastFrameNanos = 0;
+    /** 当前帧上传命令的事件，提交主内核时作为等待列表 */
+    private final List<cl_event> uploadEvents = new ArrayList<>();
+    /** 最早的在途槽位 */
+    private int pendingHead = 0;
+    /** 在途帧数量 */
+    private int inFlight = 0;
+    /** 最近一次取回结果的槽位 */
+    private int readySlot = -1;
+    /** 最近一次取回结果的记录条数 */
+    private int readyCount = 0;
+    /** 因槽位全部在途而跳过的帧数 */
+    private long pipelineSkips = 0;
 
     // 属性缓冲区 (用于传感器数据等)
     private cl_mem attrXMem, attrYMem, attrZMem, attrTypeMem;
+    private FloatBuffer attrXBuffer, attrYBuffer, attrZBuffer;
+    private IntBuffer attrTypeBuffer;
+    /** 上一次属性上传的完成事件，改写 Host 缓冲区前需确认已完成 */
+    private cl_event attrWriteEvent;
     private int attrCapacity = 0;
 
-    // 刺激源注入缓冲区
-    private cl_mem[] stimPosMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] stimChannelMems = new cl_mem[SWAP_SLOTS];
-    private cl_mem[] stimValueMems = new cl_mem[SWAP_SLOTS];
+    // 刺激源注入缓冲区 (按流水线槽位索引)
+    private final cl_mem[] stimPosMems;
+    private final cl_mem[] stimChannelMems;
+    private final cl_mem[] stimValueMems;
 
-    private FloatBuffer[] stimPosBuffers = new FloatBuffer[SWAP_SLOTS];
-    private IntBuffer[] stimChannelBuffers = new IntBuffer[SWAP_SLOTS];
-    private FloatBuffer[] stimValueBuffers = new FloatBuffer[SWAP_SLOTS];
-    private int stimCapacity = 0;
+    private final FloatBuffer[] stimPosBuffers;
+    private final IntBuffer[] stimChannelBuffers;
+    private final FloatBuffer[] stimValueBuffers;
+    private final int[] stimCapacity;
     
     // 费洛蒙乒乓缓冲区 (Ping-Pong)
     private cl_mem pheromoneMemA;
@@ -94,38 +194,136 @@ public class GPUManager {
 
     private cl_mem[] costFieldMems = new cl_mem[FIELD_COUNT];
     private cl_mem[] vectorFieldMems = new cl_mem[FIELD_COUNT];
-    private IntBuffer targetPosBuffer; // 用于上传目标位置的可复用缓冲区
-    private cl_mem targetPosMem;
-    private int targetPosCapacity = 0;
-
-    // 体素地图缓冲区
+    // 目标位置按流场分开暂存：同一轮的多个流场的上传可以同时在途
+    private final IntBuffer[] targetPosBuffers = new IntBuffer[FIELD_COUNT];
+    private final cl_mem[] targetPosMems = new cl_mem[FIELD_COUNT];
+    private final int[] targetPosCapacity = new int[FIELD_COUNT];
+    /** 各流场上一次目标上传的完成事件，改写 Host 缓冲区前需确认已完成 */
+    private final cl_event[] targetWriteEvents = new cl_event[FIELD_COUNT];
+    /** 最近一次流场更新的向量场生成事件，供看门狗检查流场命令是否卡住 */
+    private cl_event flowFieldEvent;
+    /** 最早的未完成流场更新的提交时刻 */
+    private long flowFieldSubmitNanos;
+
+    // 体素地图缓冲区 (末尾附带占用金字塔，见 OccupancyPyramid)
     private cl_mem voxelMem;
+    /** 占用金字塔构建内核，首次上传体素时编译 */
+    private cl_kernel occupancyL1Kernel, occupancyL2Kernel;
+    /** 体素上传的 Host 暂存区 (双缓冲)，异步写入期间 VoxelManager 可继续修改自己的缓冲区 */
+    private final ByteBuffer[] voxelStaging = new ByteBuffer[2];
+    /** 各暂存区最近一次写入的事件，复用暂存区前等待 */
+    private final cl_event[] voxelStagingEvents = new cl_event[2];
+    private int voxelStage = 0;
+    /** 最近一次占用金字塔重建的完成事件 (仍在 uploadEvents 中时有效) */
+    private cl_event voxelReady;
+
+    /** 全部 cl_mem 的分配记账与显存预算 */
+    private final DeviceMemoryBudget memory;
+    /** 随实体数量增长的缓冲区的子分配池 */
+    private final DeviceArena arena;
+    /** 一维内核的工作组大小选择 */
+    private final WorkGroupTuner tuner;
+    /** 设备健康看门狗；重建上下文时新的管理器沿用同一个实例 (见 {@link #setWatchdog}) */
+    private GpuWatchdog watchdog = new GpuWatchdog(GpuWatchdog.DEFAULT_FRAME_TIMEOUT_MS, GpuWatchdog.DEFAULT_COOLDOWN_SECONDS);
+    /** CPU / GPU 调度器；与看门狗一样在重建上下文时沿用同一个实例 (见 {@link #setDispatchPlanner}) */
+    private DispatchPlanner planner = new DispatchPlanner(DispatchPlanner.DEFAULT_PRIOR_THRESHOLD);
+    /** 按显存预算选定的费洛蒙 / 流场分辨率 */
+    private DeviceMemoryBudget.FieldPlan fields = DeviceMemoryBudget.FieldPlan.FULL;
     
     public static int[] currentMapOrigin = new int[3];
 
-    // 回读缓冲区 (Readback)
-    public FloatBuffer readBackX, readBackY, readBackZ;
-    private FloatBuffer outHost; 
-    
-    private int bufferCapacityFloats = 0;
+    /** 常驻实体缓冲区的槽位容量 */
     private int bufferCapacityInts = 0;
-    private int bufferCapacityParams = 0;
+    /** 每个流水线槽位的行 / 输出 / 记录缓冲区的容量 */
+    private final int[] slotCapacity;
     
-    // 设备信息
-    private String deviceName = "未知";
-    private long maxComputeUnits = 0;
-    private long globalMemorySize = 0;
-
+    /** 正在填充的槽位 */
     private int activeBuffer = 0;
-    private int pendingIndex = -1;
-    private boolean hasPendingFrame = false;
 
     /**
-     * 构造函数：初始化 OpenCL 环境。
+     * 构造函数：使用 JOCL 驱动初始化 OpenCL 环境。
      */
     public GPUManager() {
+        this(new JoclDriver(), DEFAULT_PIPELINE_SLOTS);
+    }
+
+    /**
+     * 构造函数：使用指定驱动初始化设备缓冲区，显存预算取默认比例。
+     *
+     * @param driver OpenCL 驱动 (真实设备或记录型替身)
+     * @param pipelineSlots 流水线槽位数量 (至少 2)
+     */
+    public GPUManager(ClDriver driver, int pipelineSlots) {
+        this(driver, pipelineSlots, DEFAULT_MEMORY_BUDGET_PERCENT, 0);
+    }
+
+    /**
+     * 构造函数：使用指定驱动与显存预算初始化设备缓冲区，共享内存的设备上启用零复制。
+     *
+     * @param driver OpenCL 驱动 (真实设备或记录型替身)
+     * @param pipelineSlots 流水线槽位数量 (至少 2)
+     * @param memoryBudgetPercent 显存预算占设备全局显存的百分比
+     * @param memoryBudgetMB 显式显存预算 (MB)，0 表示按百分比计算
+     */
+    public GPUManager(ClDriver driver, int pipelineSlots, int memoryBudgetPercent, int memoryBudgetMB) {
+        this(driver, pipelineSlots, memoryBudgetPercent, memoryBudgetMB, true);
+    }
+
+    /**
+     * 构造函数：使用指定驱动与显存预算初始化设备缓冲区。
+     *
+     * @param driver OpenCL 驱动 (真实设备或记录型替身)
+     * @param pipelineSlots 流水线槽位数量 (至少 2)
+     * @param memoryBudgetPercent 显存预算占设备全局显存的百分比
+     * @param memoryBudgetMB 显式显存预算 (MB)，0 表示按百分比计算
+     * @param zeroCopy 是否允许零复制；只在设备与主机共享内存时生效
+     */
+    public GPUManager(ClDriver driver, int pipelineSlots, int memoryBudgetPercent, int memoryBudgetMB, boolean zeroCopy) {
+        this.driver = driver;
+        this.slotCount = Math.max(2, pipelineSlots);
+        // 独立显卡上映射 ALLOC_HOST_PTR 缓冲区仍要经过 PCIe，且内核访问的是 Host 内存，不如显式传输
+        this.zeroCopy = zeroCopy && driver.isAvailable() && driver.isHostUnifiedMemory();
+        this.memory = new DeviceMemoryBudget(driver, memoryBudgetPercent, memoryBudgetMB);
+        this.arena = new DeviceArena(driver, memory);
+        this.tuner = new WorkGroupTuner(driver);
+
+        recordBuffers = new IntBuffer[slotCount];
+        recordCountBuffers = new IntBuffer[slotCount];
+        playerPosBuffers = new FloatBuffer[slotCount];
+        motionRowBuffers = new IntBuffer[slotCount];
+        descRowBuffers = new IntBuffer[slotCount];
+        bucketOrderBuffers = new IntBuffer[slotCount];
+        activeMaskBuffers = new IntBuffer[slotCount];
+        activeMaskMems = new cl_mem[slotCount];
+        motionRowMaps = new ClMapping[slotCount];
+        descRowMaps = new ClMapping[slotCount];
+        recordMaps = new ClMapping[slotCount];
+        outputsMems = new cl_mem[slotCount];
+        recordMems = new cl_mem[slotCount];
+        recordCountMems = new cl_mem[slotCount];
+        playerPosMems = new cl_mem[slotCount];
+        motionRowMems = new cl_mem[slotCount];
+        descRowMems = new cl_mem[slotCount];
+        uniformBuffers = new ByteBuffer[slotCount];
+        uniformMems = new cl_mem[slotCount];
+        remapBuffers = new IntBuffer[slotCount];
+        remapMems = new cl_mem[slotCount];
+        slotEvents = new cl_event[slotCount];
+        slotSubmitNanos = new long[slotCount];
+        slotCounts = new int[slotCount];
+        slotWindows = new int[slotCount];
+        slotCapacity = new int[slotCount];
+        remapCapacity = new int[slotCount];
+        stimCapacity = new int[slotCount];
+        stimPosMems = new cl_mem[slotCount];
+        stimChannelMems = new cl_mem[slotCount];
+        stimValueMems = new cl_mem[slotCount];
+        stimPosBuffers = new FloatBuffer[slotCount];
+        stimChannelBuffers = new IntBuffer[slotCount];
+        stimValueBuffers = new FloatBuffer[slotCount];
+
         try {
-            initializeOpenCL();
+            if (driver.isAvailable()) initializeBuffers();
         } catch (Exception e) {
             LOGGER.error("OpenCL 初始化失败", e);
             gpuAvailable = false;
@@ -133,167 +331,662 @@ public class GPUManager {
     }
 
     /**
-     * 初始化 OpenCL 平台、设备、上下文和命令队列。
+     * 分配常驻的费洛蒙、体素与流场缓冲区。
      */
-    private void initializeOpenCL() {
-        CL.setExceptionsEnabled(true);
-        int[] numPlatforms = new int[1];
-        clGetPlatformIDs(0, null, numPlatforms);
-        if (numPlatforms[0] == 0) return;
-
-        cl_platform_id[] platforms = new cl_platform_id[numPlatforms[0]];
-        clGetPlatformIDs(platforms.length, platforms, null);
-        cl_platform_id chosenPlatform = platforms[0]; 
-
-        int[] numDevices = new int[1];
-        clGetDeviceIDs(chosenPlatform, CL_DEVICE_TYPE_GPU, 0, null, numDevices);
-        if (numDevices[0] == 0) return;
-        
-        cl_device_id[] devices = new cl_device_id[numDevices[0]];
-        clGetDeviceIDs(chosenPlatform, CL_DEVICE_TYPE_GPU, numDevices[0], devices, null);
-        device = devices[0];
-
-        cl_context_properties contextProperties = new cl_context_properties();
-        contextProperties.addProperty(CL_CONTEXT_PLATFORM, chosenPlatform);
-        context = clCreateContext(contextProperties, 1, new cl_device_id[]{device}, null, null, null);
-        commandQueue = clCreateCommandQueue(context, device, 0, null);
-
-        // 获取设备信息
-        byte[] nameBuf = new byte[256];
-        long[] size = new long[1];
-        clGetDeviceInfo(device, CL_DEVICE_NAME, 256, Pointer.to(nameBuf), size);
-        deviceName = new String(nameBuf, 0, (int)size[0]-1, StandardCharsets.UTF_8).trim();
-        
-        long[] val = new long[1];
-        clGetDeviceInfo(device, CL_DEVICE_MAX_COMPUTE_UNITS, Sizeof.cl_long, Pointer.to(val), null);
-        maxComputeUnits = val[0];
-        clGetDeviceInfo(device, CL_DEVICE_GLOBAL_MEM_SIZE, Sizeof.cl_long, Pointer.to(val), null);
-        globalMemorySize = val[0];
-
+    private void initializeBuffers() {
         // 初始化缓冲区 (扩展为多通道费洛蒙)
-        long pheroBytes = (long)VoxelManager.PHERO_VOLUME * VoxelManager.PHERO_CHANNELS * Sizeof.cl_float;
-
-        pheromoneMemA = clCreateBuffer(context, CL_MEM_READ_WRITE, pheroBytes, null, null);
-        pheromoneMemB = clCreateBuffer(context, CL_MEM_READ_WRITE, pheroBytes, null, null);
+        voxelMem = memory.allocate(Subsystem.VOXEL, CL_MEM_READ_WRITE, OccupancyPyramid.VOXEL_BUFFER_BYTES);
+        for (int i = 0; i < slotCount; i++) {
+            uniformBuffers[i] = HostArena.calloc(Subsystem.AUX, SwarmUniforms.BYTES);
+            uniformMems[i] = memory.allocate(Subsystem.AUX, CL_MEM_READ_ONLY, SwarmUniforms.BYTES);
+        }
+        long gridBytes = (long) SpatialGrid.CELLS * 4;
+        gridCountMem = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, gridBytes);
+        gridStartMem = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, gridBytes);
+        gridEndMem = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, gridBytes);
+        nbrMaxDispMem = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, 4);
+
+        // 按显存预算选择费洛蒙网格与流场的分辨率
+        fields = memory.planFields();
+        long pheroBytes = fields.pheroBytes();
+
+        pheromoneMemA = memory.allocate(Subsystem.PHEROMONE, CL_MEM_READ_WRITE, pheroBytes);
+        pheromoneMemB = memory.allocate(Subsystem.PHEROMONE, CL_MEM_READ_WRITE, pheroBytes);
         
-        float[] zeros = new float[]{0f}; 
-        clEnqueueFillBuffer(commandQueue, pheromoneMemA, Pointer.to(zeros), 4, 0, pheroBytes, 0, null, null);
-        clEnqueueFillBuffer(commandQueue, pheromoneMemB, Pointer.to(zeros), 4, 0, pheroBytes, 0, null, null);
-
-        voxelMem = clCreateBuffer(context, CL_MEM_READ_ONLY, VoxelManager.VOXEL_VOLUME, null, null);
+        driver.fill(pheromoneMemA, 0f, pheroBytes);
+        driver.fill(pheromoneMemB, 0f, pheroBytes);
         
         // 初始化流场缓冲区
-        long costBytes = (long)VoxelManager.VOXEL_VOLUME * Sizeof.cl_ushort;
-        long vecBytes = (long)VoxelManager.VOXEL_VOLUME * 4 * Sizeof.cl_float; // float4
+        long costBytes = (long)fields.flowVolume() * Sizeof.cl_ushort;
+        long vecBytes = (long)fields.flowVolume() * 4 * Sizeof.cl_float; // float4
 
         for(int i=0; i<FIELD_COUNT; i++) {
-            costFieldMems[i] = clCreateBuffer(context, CL_MEM_READ_WRITE, costBytes, null, null);
-            vectorFieldMems[i] = clCreateBuffer(context, CL_MEM_READ_WRITE, vecBytes, null, null);
+            costFieldMems[i] = memory.allocate(Subsystem.FLOW_FIELD, CL_MEM_READ_WRITE, costBytes);
+            vectorFieldMems[i] = memory.allocate(Subsystem.FLOW_FIELD, CL_MEM_READ_WRITE, vecBytes);
         }
 
         gpuAvailable = true;
-        LOGGER.info("OpenCL 初始化成功: {}", deviceName);
+        LOGGER.info("OpenCL 初始化成功: {} [{}]{}", driver.getDeviceName(), driver.getName(), zeroCopy ? "，零复制传输" : "");
+        LOGGER.info("显存预算 {} MB: 费洛蒙网格 {}x{}x{}，流场 {}^3，已分配 {} MB",
+            memory.getBudget() / 1024 / 1024, fields.pheroSizeXZ(), fields.pheroSizeY(), fields.pheroSizeXZ(),
+            fields.flowSize(), memory.getUsed() / 1024 / 1024);
     }
 
+    /**
+     * 当前帧可写入的缓冲区。
+     *
+     * @param rows 实体数据的增量流，已绑定到当前槽位的行缓冲区
+     * @param outputs 主内核输出的 Host 缓冲区；GPU 路径的输出只留在设备上，为 null
+     */
     public record SwarmBuffers(
-        FloatBuffer positions, FloatBuffer velocities, FloatBuffer outputs, IntBuffer entityTypes, FloatBuffer playerPos, FloatBuffer params,
-        cl_mem positionsMem, cl_mem velocitiesMem, cl_mem outputsMem, cl_mem entityTypesMem, cl_mem playerPosMem, cl_mem paramsMem,
-        FloatBuffer prevPositions, IntBuffer stuckTimer, cl_mem prevPositionsMem, cl_mem stuckTimerMem
+        EntityRowStream rows, FloatBuffer outputs, FloatBuffer playerPos,
+        cl_mem outputsMem, cl_mem playerPosMem
     ) {}
 
     /**
-     * 确保存储实体数据的缓冲区足够大。如果需要扩容，则释放旧内存并分配新内存。
+     * 确保存储实体数据的缓冲区足够大。
+     * <p>
+     * 按槽位常驻的实体数据与逐实体状态经由 {@link DeviceArena} 扩容，旧内容在设备内复制到新缓冲区，
+     * 因此增量流的镜像与防卡死 / 蜜蜂状态在扩容后仍然有效，在途帧也不需要等待或丢弃。
+     * 逐槽位的行、输出与记录缓冲区只在该槽位轮到填充时 (其上一帧已取回) 才扩容，内容无需保留。
+     * </p>
      *
-     * @param entityCount 当前实体数量
-     * @return 包含当前帧可用缓冲区的记录对象
+     * @param entityCount 当前帧需要的槽位数量
+     * @return 包含当前帧可用缓冲区的记录对象；所有槽位都在途时返回 null，本帧应跳过
      */
     public SwarmBuffers ensureSwarmBuffers(int entityCount) {
         if (!gpuAvailable) return null;
+        if (inFlight >= slotCount) {
+            pipelineSkips++;
+            return null;
+        }
         if (entityCount > bufferCapacityInts || bufferCapacityInts == 0) {
-            cleanupSwarmBuffers();
             int newCount = (int)(entityCount * 1.5) + 128;
             if (newCount < 4096) newCount = 4096;
-            
-            bufferCapacityInts = newCount;
-            bufferCapacityFloats = newCount * 3;
-            bufferCapacityParams = newCount * 12;
-            
-            for (int i = 0; i < SWAP_SLOTS; i++) {
-                positionsBuffers[i] = MemoryUtil.memAllocFloat(bufferCapacityFloats);
-                velocitiesBuffers[i] = MemoryUtil.memAllocFloat(bufferCapacityFloats);
-                outputsBuffers[i] = MemoryUtil.memAllocFloat(bufferCapacityFloats);
-                entityTypesBuffers[i] = MemoryUtil.memAllocInt(bufferCapacityInts);
-                playerPosBuffers[i] = MemoryUtil.memAllocFloat(3);
-                paramsBuffers[i] = MemoryUtil.memAllocFloat(bufferCapacityParams);
-                prevPositionsBuffers[i] = MemoryUtil.memAllocFloat(bufferCapacityFloats);
-                stuckTimerBuffers[i] = MemoryUtil.memAllocInt(bufferCapacityInts);
-                
-                positionsMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, (long)bufferCapacityFloats * 4, Pointer.to(positionsBuffers[i]), null);
-                velocitiesMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, (long)bufferCapacityFloats * 4, Pointer.to(velocitiesBuffers[i]), null);
-                entityTypesMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, (long)bufferCapacityInts * 4, Pointer.to(entityTypesBuffers[i]), null);
-                playerPosMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, 3 * 4, Pointer.to(playerPosBuffers[i]), null);
-                paramsMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, (long)bufferCapacityParams * 4, Pointer.to(paramsBuffers[i]), null);
-                
-                outputsMems[i] = clCreateBuffer(context, CL_MEM_READ_WRITE | CL_MEM_ALLOC_HOST_PTR, (long)bufferCapacityFloats * 4, null, null);
-                
-                prevPositionsMems[i] = clCreateBuffer(context, CL_MEM_READ_WRITE, (long)bufferCapacityFloats * 4, null, null);
-                stuckTimerMems[i] = clCreateBuffer(context, CL_MEM_READ_WRITE, (long)bufferCapacityInts * 4, null, null);
-            }
-            outHost = MemoryUtil.memAllocFloat(bufferCapacityFloats);
-            readBackX = MemoryUtil.memAllocFloat(newCount);
-            readBackY = MemoryUtil.memAllocFloat(newCount);
-            readBackZ = MemoryUtil.memAllocFloat(newCount);
+            growEntityBuffers(newCount);
+        }
+        int idx = activeBuffer;
+        if (slotCapacity[idx] < bufferCapacityInts) allocateSlotBuffers(idx, bufferCapacityInts);
+        if (zeroCopy) {
+            // 该槽位上一帧的记录已经应用，compact_outputs 再次写入之前必须解除映射
+            unmapRecords(idx);
+            resolveRows(idx);
+        }
+        rowStream.begin(motionRowBuffers[idx], descRowBuffers[idx]);
+        return new SwarmBuffers(rowStream, null, playerPosBuffers[idx], outputsMems[idx], playerPosMems[idx]);
+    }
+
+    /**
+     * 扩容按槽位常驻的实体缓冲区，保留已有槽位的内容。
+     * 首次分配时增量流的镜像失效 (下一帧发送全部行)，逐实体状态在下一次 {@link #remapEntitySlots} 时清零。
+     */
+    private void growEntityBuffers(int newCount) {
+        boolean fresh = positionsMem == null;
+        long oldCount = bufferCapacityInts;
+        positionsMem = growEntityBuffer(positionsMem, newCount * 3L * 4, oldCount * 3 * 4);
+        velocitiesMem = growEntityBuffer(velocitiesMem, newCount * 3L * 4, oldCount * 3 * 4);
+        baseTypesMem = growEntityBuffer(baseTypesMem, newCount * 4L, oldCount * 4);
+        // 每帧由 apply_slot_mask 重新生成，不保留内容
+        entityTypesMem = growEntityBuffer(entityTypesMem, newCount * 4L, 0);
+        paramsMem = growEntityBuffer(paramsMem, newCount * (long)EntityRowStream.PARAM_COUNT * 4, oldCount * EntityRowStream.PARAM_COUNT * 4);
+        prevPositionsMem = growEntityBuffer(prevPositionsMem, newCount * 3L * 4, oldCount * 3 * 4);
+        stuckTimerMem = growEntityBuffer(stuckTimerMem, newCount * 4L, oldCount * 4);
+        beeStatesMem = growEntityBuffer(beeStatesMem, newCount * 4L, oldCount * 4);
+        bucketOrderMem = arena.grow(bucketOrderMem, Subsystem.ENTITY, CL_MEM_READ_ONLY, newCount * 4L, 0);
+        // 网格每帧重建，扩容时不保留内容
+        gridCellOfMem = arena.grow(gridCellOfMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * 4L, 0);
+        gridRankMem = arena.grow(gridRankMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * 4L, 0);
+        gridOrderMem = arena.grow(gridOrderMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * 4L, 0);
+        // 邻居表扩容后整体重建，同样不保留内容
+        nbrListMem = arena.grow(nbrListMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * (long) NeighbourList.MAX_NEIGHBOURS * 4, 0);
+        nbrCountMem = arena.grow(nbrCountMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * 4L, 0);
+        nbrRefPosMem = arena.grow(nbrRefPosMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * 3L * 4, 0);
+        nbrRefTagMem = arena.grow(nbrRefTagMem, Subsystem.ENTITY, CL_MEM_READ_WRITE, newCount * 4L, 0);
+        neighbourListsStale = true;
+        buckets.invalidate();
+        bufferCapacityInts = newCount;
+
+        rowStream.ensureCapacity(newCount);
+        if (fresh) {
+            rowStream.invalidate();
+            entityStateLost = true;
+        }
+    }
+
+    private cl_mem growEntityBuffer(cl_mem old, long bytes, long keepBytes) {
+        return arena.grow(old, Subsystem.ENTITY, CL_MEM_READ_WRITE, bytes, keepBytes);
+    }
+
+    /** 按容量重新分配一个流水线槽位的缓冲区；调用时该槽位不能在途 */
+    private void allocateSlotBuffers(int i, int count) {
+        if (zeroCopy) {
+            unmapRows(i);
+            unmapRecords(i);
+        } else {
+            if (recordBuffers[i] != null) HostArena.free(recordBuffers[i]);
+            if (motionRowBuffers[i] != null) HostArena.free(motionRowBuffers[i]);
+            if (descRowBuffers[i] != null) HostArena.free(descRowBuffers[i]);
+            recordBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, count * SwarmOutputs.WORDS);
+            motionRowBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, count * EntityRowStream.MOTION_WORDS);
+            descRowBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, count * EntityRowStream.DESC_WORDS);
+        }
+        if (bucketOrderBuffers[i] != null) HostArena.free(bucketOrderBuffers[i]);
+        bucketOrderBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, count);
+        if (activeMaskBuffers[i] != null) HostArena.free(activeMaskBuffers[i]);
+        activeMaskBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, EntityRowStream.maskWords(count));
+        if (recordCountBuffers[i] == null) recordCountBuffers[i] = HostArena.allocInt(Subsystem.ENTITY, 1);
+        if (playerPosBuffers[i] == null) playerPosBuffers[i] = HostArena.allocFloat(Subsystem.ENTITY, 3);
+
+        if (playerPosMems[i] == null) playerPosMems[i] = arena.allocate(Subsystem.ENTITY, CL_MEM_READ_ONLY, 3 * 4);
+        if (recordCountMems[i] == null) recordCountMems[i] = arena.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, 4);
+        long rowFlags = CL_MEM_READ_ONLY | (zeroCopy ? CL_MEM_ALLOC_HOST_PTR : 0);
+        motionRowMems[i] = arena.grow(motionRowMems[i], Subsystem.ENTITY, rowFlags, (long)count * EntityRowStream.MOTION_WORDS * 4, 0);
+        descRowMems[i] = arena.grow(descRowMems[i], Subsystem.ENTITY, rowFlags, (long)count * EntityRowStream.DESC_WORDS * 4, 0);
+        activeMaskMems[i] = arena.grow(activeMaskMems[i], Subsystem.ENTITY, CL_MEM_READ_ONLY, EntityRowStream.maskWords(count) * 4L, 0);
+        outputsMems[i] = arena.grow(outputsMems[i], Subsystem.ENTITY, CL_MEM_READ_WRITE, (long)count * 3 * 4, 0);
+        recordMems[i] = arena.grow(recordMems[i], Subsystem.ENTITY, CL_MEM_WRITE_ONLY | CL_MEM_ALLOC_HOST_PTR, (long)count * SwarmOutputs.WORDS * 4, 0);
+        slotCapacity[i] = count;
+        if (zeroCopy) mapRows(i);
+    }
+
+    // ==========================================
+    // 零复制映射
+    // ==========================================
+
+    /** 以覆盖写方式映射槽位的行缓冲区，映射排在该槽位已入队的命令之后 */
+    private void mapRows(int i) {
+        int count = slotCapacity[i];
+        motionRowMaps[i] = driver.mapAsync(motionRowMems[i], CL_MAP_WRITE_INVALIDATE_REGION, 0, (long)count * EntityRowStream.MOTION_WORDS * 4, null);
+        descRowMaps[i] = driver.mapAsync(descRowMems[i], CL_MAP_WRITE_INVALIDATE_REGION, 0, (long)count * EntityRowStream.DESC_WORDS * 4, null);
+    }
+
+    /**
+     * 取用槽位行缓冲区的映射。映射排在该槽位上一帧的 scatter 之后、回读之前，
+     * 槽位不在途时通常早已完成，只有刚分配的缓冲区才需要等待。
+     */
+    private void resolveRows(int i) {
+        if (motionRowBuffers[i] != null) return;
+        if (motionRowMaps[i] == null) mapRows(i);
+        motionRowBuffers[i] = resolveMapping(motionRowMaps[i]);
+        descRowBuffers[i] = resolveMapping(descRowMaps[i]);
+    }
+
+    private IntBuffer resolveMapping(ClMapping mapping) {
+        if (!driver.isComplete(mapping.event())) driver.waitFor(mapping.event());
+        driver.releaseEvent(mapping.event());
+        return mapping.buffer().asIntBuffer();
+    }
+
+    /** 解除槽位行缓冲区的映射，交给设备读取 */
+    private void unmapRows(int i) {
+        if (motionRowMaps[i] == null) return;
+        if (motionRowBuffers[i] == null) {
+            driver.releaseEvent(motionRowMaps[i].event());
+            driver.releaseEvent(descRowMaps[i].event());
         }
+        driver.unmap(motionRowMems[i], motionRowMaps[i]);
+        driver.unmap(descRowMems[i], descRowMaps[i]);
+        motionRowMaps[i] = descRowMaps[i] = null;
+        motionRowBuffers[i] = descRowBuffers[i] = null;
+    }
+
+    /** 解除槽位记录缓冲区的映射；映射事件作为槽位的回读事件，由流水线释放 */
+    private void unmapRecords(int i) {
+        if (recordMaps[i] == null) return;
+        driver.unmap(recordMems[i], recordMaps[i]);
+        recordMaps[i] = null;
+        recordBuffers[i] = null;
+    }
+
+    /**
+     * 非阻塞上传当前槽位的增量行，并入队 scatter 内核把它们写回常驻的实体缓冲区，
+     * 再由 apply_slot_mask 按本帧的活动掩码生成各内核读取的 entityTypes。
+     * 事件被记录下来，作为随后主内核的等待列表。
+     * 零复制模式下行已写在映射区域中，只需解除映射；scatter 之后立即重新映射，供该槽位下一轮打包。
+     */
+    public void uploadSwarmFrame(SwarmBuffers buffers, cl_kernel scatterKernel, cl_kernel maskKernel) {
+        if (!gpuAvailable) return;
+        uploadEvents.add(driver.writeAsync(buffers.playerPosMem(), 0, 3 * Sizeof.cl_float, buffers.playerPos(), null));
+        uploadRows(buffers.rows(), scatterKernel);
+        applySlotMask(buffers.rows(), maskKernel);
+    }
+
+    private void uploadRows(EntityRowStream rows, cl_kernel scatterKernel) {
+        int motionCount = rows.getMotionCount();
+        int descCount = rows.getDescCount();
         int idx = activeBuffer;
-        return new SwarmBuffers(
-            positionsBuffers[idx], velocitiesBuffers[idx], outputsBuffers[idx], entityTypesBuffers[idx], playerPosBuffers[idx], paramsBuffers[idx],
-            positionsMems[idx], velocitiesMems[idx], outputsMems[idx], entityTypesMems[idx], playerPosMems[idx], paramsMems[idx],
-            prevPositionsBuffers[idx], stuckTimerBuffers[idx], prevPositionsMems[idx], stuckTimerMems[idx]
-        );
+        if (zeroCopy) {
+            unmapRows(idx);
+            // 队列按序执行，解除映射之后入队的 scatter 必然读到已写入的行
+            if (motionCount + descCount > 0) enqueueScatter(scatterKernel, idx, motionCount, descCount, null);
+            mapRows(idx);
+            return;
+        }
+        if (motionCount + descCount == 0) return;
+
+        List<cl_event> writes = new ArrayList<>(2);
+        if (motionCount > 0) {
+            writes.add(driver.writeAsync(motionRowMems[idx], 0, (long)motionCount * EntityRowStream.MOTION_WORDS * 4, rows.getMotionRows(), null));
+        }
+        if (descCount > 0) {
+            writes.add(driver.writeAsync(descRowMems[idx], 0, (long)descCount * EntityRowStream.DESC_WORDS * 4, rows.getDescRows(), null));
+        }
+        cl_event[] waits = writes.toArray(new cl_event[0]);
+        enqueueScatter(scatterKernel, idx, motionCount, descCount, waits);
+        for (cl_event e : waits) driver.releaseEvent(e);
+    }
+
+    private void enqueueScatter(cl_kernel scatterKernel, int idx, int motionCount, int descCount, cl_event[] waits) {
+        // void scatter_entity_rows(motionRows, motionCount, descRows, descCount, positions, velocities, baseTypes, params)
+        int argIdx = 0;
+        driver.setArg(scatterKernel, argIdx++, motionRowMems[idx]);
+        driver.setArg(scatterKernel, argIdx++, motionCount);
+        driver.setArg(scatterKernel, argIdx++, descRowMems[idx]);
+        driver.setArg(scatterKernel, argIdx++, descCount);
+        driver.setArg(scatterKernel, argIdx++, positionsMem);
+        driver.setArg(scatterKernel, argIdx++, velocitiesMem);
+        driver.setArg(scatterKernel, argIdx++, baseTypesMem);
+        driver.setArg(scatterKernel, argIdx++, paramsMem);
+        uploadEvents.add(tuner.enqueueAsync("scatter_entity_rows", scatterKernel, motionCount + descCount, waits));
     }
 
     /**
-     * 交换双缓冲区的索引。
+     * 上传本帧的活动掩码并生成 entityTypes：未出现的槽位 (空闲或属于其他维度) 记为 -1，
+     * 其余槽位取登记类型。排在 scatter 之后，事件加入主内核的等待列表。
      */
-    public void swapEntityBuffers() {
-        pendingIndex = activeBuffer;
-        hasPendingFrame = true;
-        activeBuffer = (activeBuffer + 1) % SWAP_SLOTS;
+    private void applySlotMask(EntityRowStream rows, cl_kernel maskKernel) {
+        int count = rows.getMaskSlots();
+        if (count == 0) return;
+        int idx = activeBuffer;
+        int words = EntityRowStream.maskWords(count);
+        activeMaskBuffers[idx].clear().put(rows.getActiveMask(), 0, words).flip();
+        cl_event written = driver.writeAsync(activeMaskMems[idx], 0, words * 4L, activeMaskBuffers[idx], null);
+
+        // void apply_slot_mask(baseTypes, activeMask, count, entityTypes)
+        int argIdx = 0;
+        driver.setArg(maskKernel, argIdx++, baseTypesMem);
+        driver.setArg(maskKernel, argIdx++, activeMaskMems[idx]);
+        driver.setArg(maskKernel, argIdx++, count);
+        driver.setArg(maskKernel, argIdx++, entityTypesMem);
+        uploadEvents.add(tuner.enqueueAsync("apply_slot_mask", maskKernel, count, new cl_event[]{written}));
+        driver.releaseEvent(written);
     }
 
     /**
-     * 从挂起帧（上一帧计算结果）同步输出数据到 Host。
+     * 把槽位表生成的重映射操作应用到设备上的逐实体状态 (搬移或清零)，并清空表中的操作。
+     * 重映射内核排在本帧主内核之前，其完成事件加入主内核的等待列表。
+     * 有重映射操作或实体重新出现时邻居表随之失效 (见 {@link #updateNeighbourLists})。
+     */
+    public void remapEntitySlots(EntitySlotTable table, cl_kernel remapKernel) {
+        if (!gpuAvailable) return;
+        if (entityStateLost) {
+            table.resetAllLive();
+            entityStateLost = false;
+        }
+        int count = table.getRemapCount();
+        if (count > 0 || table.getReturningCount() > 0) neighbourListsStale = true;
+        if (count == 0) return;
+
+        // 只扩容当前槽位 (其上一轮的命令均已完成)，在途槽位的缓冲区保持不变
+        int idx = activeBuffer;
+        if (count > remapCapacity[idx]) {
+            if (remapBuffers[idx] != null) HostArena.free(remapBuffers[idx]);
+            remapCapacity[idx] = count + 256;
+            remapBuffers[idx] = HostArena.allocInt(Subsystem.ENTITY, remapCapacity[idx] * 2);
+            remapMems[idx] = arena.grow(remapMems[idx], Subsystem.ENTITY, CL_MEM_READ_ONLY, (long)remapCapacity[idx] * 2 * 4, 0);
+        }
+
+        remapBuffers[idx].clear().put(table.getRemapOps(), 0, count * 2).flip();
+        table.clearRemap();
+        cl_event written = driver.writeAsync(remapMems[idx], 0, (long)count * 2 * 4, remapBuffers[idx], null);
+
+        // void remap_entity_slots(ops, count, prevPositions, stuckTimer, beeStates)
+        int argIdx = 0;
+        driver.setArg(remapKernel, argIdx++, remapMems[idx]);
+        driver.setArg(remapKernel, argIdx++, count);
+        driver.setArg(remapKernel, argIdx++, prevPositionsMem);
+        driver.setArg(remapKernel, argIdx++, stuckTimerMem);
+        driver.setArg(remapKernel, argIdx++, beeStatesMem);
+        uploadEvents.add(tuner.enqueueAsync("remap_entity_slots", remapKernel, count, new cl_event[]{written}));
+        driver.releaseEvent(written);
+    }
+
+    /**
+     * 打包并非阻塞上传当前槽位的标量参数块 (含各类型桶的区间)，事件加入主内核的等待列表。
+     * 需在本帧的增量行写入之后调用。
+     */
+    public void uploadSwarmUniforms(int count, SwarmFrameParams frame) {
+        if (!gpuAvailable) return;
+        int idx = activeBuffer;
+        updateTypeBuckets(idx, count);
+        SwarmUniforms.pack(uniformBuffers[idx], count, frame, fields, buckets);
+        uploadEvents.add(driver.writeAsync(uniformMems[idx], 0, SwarmUniforms.BYTES, uniformBuffers[idx], null));
+    }
+
+    /**
+     * 类型只随描述行变化：本帧没有描述行且槽位上界不变时沿用设备上的槽位表，
+     * 否则按镜像重新排序并上传。
+     */
+    private void updateTypeBuckets(int idx, int count) {
+        if (rowStream.getDescCount() == 0 && buckets.getSlotCount() == count) return;
+        buckets.sort(rowStream, count);
+        if (buckets.total() == 0) return;
+        buckets.writeOrder(bucketOrderBuffers[idx]);
+        uploadEvents.add(driver.writeAsync(bucketOrderMem, 0, buckets.total() * 4L, bucketOrderBuffers[idx], null));
+    }
+
+    /**
+     * 入队空间哈希网格的重建 (见 {@link SpatialGrid})：清零桶计数 -> grid_assign_cells -> grid_scan_cells -> grid_scatter。
+     * 等待本帧已入队的上传 (位置需已由 scatter 写回)，完成事件加入主内核的等待列表。
+     */
+    public void buildSpatialGrid(cl_kernel assignKernel, cl_kernel scanKernel, cl_kernel scatterKernel, int count) {
+        if (!gpuAvailable || count == 0) return;
+        cl_event[] uploads = uploadEvents.toArray(new cl_event[0]);
+        driver.fill(gridCountMem, 0f, (long) SpatialGrid.CELLS * 4);
+
+        // void grid_assign_cells(positions, entityTypes, count, cellOf, cellRank, cellCount)
+        int argIdx = 0;
+        driver.setArg(assignKernel, argIdx++, positionsMem);
+        driver.setArg(assignKernel, argIdx++, entityTypesMem);
+        driver.setArg(assignKernel, argIdx++, count);
+        driver.setArg(assignKernel, argIdx++, gridCellOfMem);
+        driver.setArg(assignKernel, argIdx++, gridRankMem);
+        driver.setArg(assignKernel, argIdx++, gridCountMem);
+        cl_event assigned = tuner.enqueueAsync("grid_assign_cells", assignKernel, count, uploads);
+
+        // void grid_scan_cells(cellCount, cellStart, cellEnd)，单个工作组
+        argIdx = 0;
+        driver.setArg(scanKernel, argIdx++, gridCountMem);
+        driver.setArg(scanKernel, argIdx++, gridStartMem);
+        driver.setArg(scanKernel, argIdx++, gridEndMem);
+        long[] group = {SpatialGrid.SCAN_GROUP};
+        cl_event scanned = driver.enqueueKernelAsync(scanKernel, 1, group, group, new cl_event[]{assigned});
+
+        // void grid_scatter(cellOf, cellRank, count, cellStart, gridOrder)
+        argIdx = 0;
+        driver.setArg(scatterKernel, argIdx++, gridCellOfMem);
+        driver.setArg(scatterKernel, argIdx++, gridRankMem);
+        driver.setArg(scatterKernel, argIdx++, count);
+        driver.setArg(scatterKernel, argIdx++, gridStartMem);
+        driver.setArg(scatterKernel, argIdx++, gridOrderMem);
+        uploadEvents.add(tuner.enqueueAsync("grid_scatter", scatterKernel, count, new cl_event[]{scanned}));
+        driver.releaseEvent(assigned);
+        driver.releaseEvent(scanned);
+    }
+
+    /**
+     * 入队 Verlet 邻居表的更新 (见 {@link NeighbourList})，需在 {@link #buildSpatialGrid} 之后调用：
+     * 清零最大位移 -> nbr_max_displacement -> nbr_build。是否真正重建由 nbr_build 在设备上读取归约结果决定；
+     * 邻居表失效 (扩容、重映射、实体重新出现或槽位上界变化) 时 Host 清除全部构建标记，使各槽位在所在维度的下一帧重建。
+     * 完成事件加入主内核的等待列表。
+     */
+    public void updateNeighbourLists(cl_kernel displacementKernel, cl_kernel buildKernel, int count) {
+        if (!gpuAvailable || count == 0) return;
+        if (count != neighbourListCount) neighbourListsStale = true;
+        if (neighbourListsStale) driver.fill(nbrRefTagMem, 0f, (long) bufferCapacityInts * 4);
+        neighbourListsStale = false;
+        neighbourListCount = count;
+        driver.fill(nbrMaxDispMem, 0f, 4);
+        cl_event[] uploads = uploadEvents.toArray(new cl_event[0]);
+
+        // void nbr_max_displacement(positions, entityTypes, count, refPos, refTag, maxDisp)，全局大小按工作组取整
+        int argIdx = 0;
+        driver.setArg(displacementKernel, argIdx++, positionsMem);
+        driver.setArg(displacementKernel, argIdx++, entityTypesMem);
+        driver.setArg(displacementKernel, argIdx++, count);
+        driver.setArg(displacementKernel, argIdx++, nbrRefPosMem);
+        driver.setArg(displacementKernel, argIdx++, nbrRefTagMem);
+        driver.setArg(displacementKernel, argIdx++, nbrMaxDispMem);
+        long group = NeighbourList.REDUCE_GROUP;
+        long[] global = {(count + group - 1) / group * group};
+        cl_event reduced = driver.enqueueKernelAsync(displacementKernel, 1, global, new long[]{group}, uploads);
+
+        // void nbr_build(positions, entityTypes, count, gridStart, gridEnd, gridOrder, maxDisp, refPos, refTag, nbrList, nbrCount)
+        argIdx = 0;
+        driver.setArg(buildKernel, argIdx++, positionsMem);
+        driver.setArg(buildKernel, argIdx++, entityTypesMem);
+        driver.setArg(buildKernel, argIdx++, count);
+        driver.setArg(buildKernel, argIdx++, gridStartMem);
+        driver.setArg(buildKernel, argIdx++, gridEndMem);
+        driver.setArg(buildKernel, argIdx++, gridOrderMem);
+        driver.setArg(buildKernel, argIdx++, nbrMaxDispMem);
+        driver.setArg(buildKernel, argIdx++, nbrRefPosMem);
+        driver.setArg(buildKernel, argIdx++, nbrRefTagMem);
+        driver.setArg(buildKernel, argIdx++, nbrListMem);
+        driver.setArg(buildKernel, argIdx++, nbrCountMem);
+        uploadEvents.add(tuner.enqueueAsync("nbr_build", buildKernel, count, new cl_event[]{reduced}));
+        driver.releaseEvent(reduced);
+    }
+
+    /**
+     * 提交当前槽位的主内核 (参数需已设置) 与输出压缩，并以事件链方式入队结果回读，随后推进环形流水线。
+     * <p>
+     * 上传 / 重映射事件 -> 主内核 -> compact_outputs -> 记录条数与记录回读，回读事件记录在槽位上。
+     * 提供分桶内核时改为每个非空的类型桶各入队一个内核 (全局大小为桶的槽位数)，互不依赖，
+     * compact_outputs 等待全部分桶内核完成。
+     * 记录条数在提交时未知，先按上一帧的条数预估一个窗口读取，超出窗口的尾部在取回时补读；
+     * 零复制模式下直接映射整段记录区，不需要窗口。
+     * 逐实体状态留在设备上，不随帧回读。
+     * </p>
+     */
+    public void submitSwarmFrame(cl_kernel kernel, cl_kernel compactKernel, int count) {
+        submitSwarmFrame(kernel, null, compactKernel, count);
+    }
+
+    /**
+     * @param bucketKernels 按 {@link TypeBuckets} 索引的分桶内核 (参数需已设置)；为 null 时使用混合内核
+     */
+    public void submitSwarmFrame(cl_kernel kernel, cl_kernel[] bucketKernels, cl_kernel compactKernel, int count) {
+        if (!gpuAvailable) return;
+        int idx = activeBuffer;
+        cl_event[] uploads = uploadEvents.toArray(new cl_event[0]);
+        uploadEvents.clear();
+
+        driver.fill(recordCountMems[idx], 0f, 4);
+        List<cl_event> behaviorDone = new ArrayList<>(TypeBuckets.COUNT);
+        if (bucketKernels == null) {
+            behaviorDone.add(tuner.enqueueAsync("calculateSwarmBehavior", kernel, count, uploads));
+        } else {
+            for (int b = 0; b < TypeBuckets.COUNT; b++) {
+                int size = buckets.size(b);
+                if (size > 0) behaviorDone.add(tuner.enqueueAsync(TypeBuckets.KERNELS[b], bucketKernels[b], size, uploads));
+            }
+        }
+        cl_event[] kernelDone = behaviorDone.isEmpty() ? uploads : behaviorDone.toArray(new cl_event[0]);
+
+        // void compact_outputs(newVelocities, velocities, entityTypes, count, jitter, maxSpeed, records, recordCount)
+        int argIdx = 0;
+        driver.setArg(compactKernel, argIdx++, outputsMems[idx]);
+        driver.setArg(compactKernel, argIdx++, velocitiesMem);
+        driver.setArg(compactKernel, argIdx++, entityTypesMem);
+        driver.setArg(compactKernel, argIdx++, count);
+        driver.setArg(compactKernel, argIdx++, SwarmOutputs.JITTER);
+        driver.setArg(compactKernel, argIdx++, SwarmOutputs.MAX_SPEED);
+        driver.setArg(compactKernel, argIdx++, recordMems[idx]);
+        driver.setArg(compactKernel, argIdx++, recordCountMems[idx]);
+        int group = SwarmOutputs.GROUP_SIZE;
+        long global = (long)(count + group - 1) / group * group;
+        cl_event compactDone = driver.enqueueKernelAsync(compactKernel, 1, new long[]{global}, new long[]{group}, kernelDone);
+
+        cl_event countRead = driver.readAsync(recordCountMems[idx], 0, 4, recordCountBuffers[idx], new cl_event[]{compactDone});
+        int window;
+        cl_event recordsRead;
+        if (zeroCopy) {
+            window = count;
+            recordMaps[idx] = driver.mapAsync(recordMems[idx], CL_MAP_READ, 0, (long)count * SwarmOutputs.WORDS * 4, new cl_event[]{compactDone});
+            recordsRead = recordMaps[idx].event();
+        } else {
+            window = Math.min(count, Math.max(group, recordWindowHint + recordWindowHint / 4 + 64));
+            recordsRead = driver.readAsync(recordMems[idx], 0, (long)window * SwarmOutputs.WORDS * 4, recordBuffers[idx], new cl_event[]{compactDone});
+        }
+        driver.flush();
+
+        // 事件链中的中间事件由驱动持有引用，这里可以直接释放；队列按序执行，记录读完时条数必然已读完
+        for (cl_event e : uploads) driver.releaseEvent(e);
+        for (cl_event e : behaviorDone) driver.releaseEvent(e);
+        driver.releaseEvent(compactDone);
+        driver.releaseEvent(countRead);
+
+        slotEvents[idx] = recordsRead;
+        slotSubmitNanos[idx] = System.nanoTime();
+        slotCounts[idx] = count;
+        slotWindows[idx] = window;
+        inFlight++;
+        activeBuffer = (activeBuffer + 1) % slotCount;
+    }
+
+    /**
+     * 非阻塞地取回最早在途帧的输出记录。
+     * 记录条数超过提交时的回读窗口时，补读尾部并返回 false，下一次调用时再交付。
      *
-     * @param count 实体数量
-     * @return 如果成功读取则返回 true
-     */
-    public boolean syncOutputsFromPending(int count) {
-        if (!gpuAvailable || !hasPendingFrame || pendingIndex == -1) return false;
-        long sizeBytes = (long) count * 3 * 4;
-        clEnqueueReadBuffer(commandQueue, outputsMems[pendingIndex], CL_TRUE, 0, sizeBytes, Pointer.to(outHost), 0, null, null);
-        for(int i=0; i<count; i++) {
-            readBackX.put(i, outHost.get(i*3));
-            readBackY.put(i, outHost.get(i*3+1));
-            readBackZ.put(i, outHost.get(i*3+2));
-        }
-        hasPendingFrame = false;
+     * @return 最早在途帧已完成时返回 true；没有在途帧或尚未完成时返回 false (本 Tick 跳过应用)
+     * @throws CLException 最早在途帧执行出错；该帧已丢弃，调用方应交给看门狗
+     */
+    public boolean syncOutputsFromPending() {
+        if (!gpuAvailable || inFlight == 0) return false;
+        int slot = pendingHead;
+        cl_event done = slotEvents[slot];
+        try {
+            if (done != null && !driver.isComplete(done)) return false;
+        } catch (CLException e) {
+            // 出错帧的输出记录不可用，丢弃后再上报
+            driver.releaseEvent(done);
+            slotEvents[slot] = null;
+            pendingHead = (pendingHead + 1) % slotCount;
+            inFlight--;
+            throw e;
+        }
+
+        long doneNanos = done != null ? driver.getCompletionNanos(done) : 0;
+        driver.releaseEvent(done);
+        slotEvents[slot] = null;
+        if (recordMaps[slot] != null) recordBuffers[slot] = recordMaps[slot].buffer().asIntBuffer();
+        int n = Math.min(recordCountBuffers[slot].get(0), slotCounts[slot]);
+        int window = slotWindows[slot];
+        if (n > window) {
+            int words = SwarmOutputs.WORDS;
+            IntBuffer tail = recordBuffers[slot].slice(window * words, (n - window) * words);
+            slotEvents[slot] = driver.readAsync(recordMems[slot], (long)window * words * 4, (long)(n - window) * words * 4, tail, null);
+            slotWindows[slot] = n;
+            driver.flush();
+            return false;
+        }
+
+        pendingHead = (pendingHead + 1) % slotCount;
+        inFlight--;
+        readySlot = slot;
+        readyCount = n;
+        recordWindowHint = n;
+        lastFrameNanos = doneNanos > 0 ? Math.max(0, doneNanos - slotSubmitNanos[slot]) : System.nanoTime() - slotSubmitNanos[slot];
         return true;
     }
+
+    /**
+     * @return 最近交付的一帧从提交到设备完成回读的时长 (纳秒)，包括在队列中等待前序帧的时间
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    /**
+     * @return 最早的在途帧自提交以来的时长 (纳秒)，没有在途帧时为 0
+     */
+    public long getOldestFrameAgeNanos() {
+        if (!gpuAvailable || inFlight == 0) return 0;
+        return System.nanoTime() - slotSubmitNanos[pendingHead];
+    }
+
+    /**
+     * 非阻塞地检查在途帧与上传是否都已完成。
+     * 熔断后重建上下文前调用：仍有命令未完成时设备可能已挂起，释放资源的阻塞调用不会返回。
+     */
+    public boolean isIdle() {
+        if (!gpuAvailable) return true;
+        for (cl_event e : slotEvents) {
+            if (e != null && !isSettled(e)) return false;
+        }
+        for (cl_event e : uploadEvents) {
+            if (!isSettled(e)) return false;
+        }
+        return flowFieldEvent == null || isSettled(flowFieldEvent);
+    }
+
+    /** @return 事件已完成或已执行出错 (出错的命令不会再占用设备) */
+    private boolean isSettled(cl_event e) {
+        try {
+            return driver.isComplete(e);
+        } catch (CLException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * 等待全部在途命令完成并丢弃其结果，使流水线回到空闲状态。
+     * 只在扩容或出错时调用；出错的帧可能已更新镜像却没有上传，因此同时使增量流的镜像失效。
+     */
+    public void discardPendingFrames() {
+        rowStream.invalidate();
+        buckets.invalidate();
+        if (inFlight > 0 || !uploadEvents.isEmpty()) driver.finish();
+        for (int i = 0; i < slotCount; i++) {
+            if (slotEvents[i] != null) driver.releaseEvent(slotEvents[i]);
+            slotEvents[i] = null;
+        }
+        for (cl_event e : uploadEvents) driver.releaseEvent(e);
+        uploadEvents.clear();
+        for (int i = 0; i < slotCount; i++) unmapRecords(i);
+        inFlight = 0;
+        pendingHead = activeBuffer;
+        readySlot = -1;
+        readyCount = 0;
+    }
     
     public void ensureAttrBuffers() {
         if (!gpuAvailable) return;
-        if (attrXMem == null) {
-            attrCapacity = 1024;
-            long size = (long)attrCapacity * 4;
-            attrXMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-            attrYMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-            attrZMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-            attrTypeMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
+        if (attrXMem == null) allocateAttrBuffers(1024);
+    }
+
+    /** 属性缓冲区容量不足时在池内扩容 (Host 缓冲区重新分配)；调用前需确认上一次上传已完成 */
+    private void allocateAttrBuffers(int capacity) {
+        freeAttrHostBuffers();
+        attrCapacity = capacity;
+        long size = (long)attrCapacity * 4;
+        attrXMem = arena.grow(attrXMem, Subsystem.AUX, CL_MEM_READ_ONLY, size, 0);
+        attrYMem = arena.grow(attrYMem, Subsystem.AUX, CL_MEM_READ_ONLY, size, 0);
+        attrZMem = arena.grow(attrZMem, Subsystem.AUX, CL_MEM_READ_ONLY, size, 0);
+        attrTypeMem = arena.grow(attrTypeMem, Subsystem.AUX, CL_MEM_READ_ONLY, size, 0);
+        attrXBuffer = HostArena.allocFloat(Subsystem.AUX, attrCapacity);
+        attrYBuffer = HostArena.allocFloat(Subsystem.AUX, attrCapacity);
+        attrZBuffer = HostArena.allocFloat(Subsystem.AUX, attrCapacity);
+        attrTypeBuffer = HostArena.allocInt(Subsystem.AUX, attrCapacity);
+    }
+
+    private void freeAttrBuffers() {
+        awaitAttrWrite();
+        if (attrXMem != null) { arena.free(attrXMem); arena.free(attrYMem); arena.free(attrZMem); arena.free(attrTypeMem); }
+        attrXMem = attrYMem = attrZMem = attrTypeMem = null;
+        freeAttrHostBuffers();
+    }
+
+    private void freeAttrHostBuffers() {
+        if (attrXBuffer != null) { HostArena.free(attrXBuffer); HostArena.free(attrYBuffer); HostArena.free(attrZBuffer); HostArena.free(attrTypeBuffer); }
+        attrXBuffer = attrYBuffer = attrZBuffer = null;
+        attrTypeBuffer = null;
+    }
+
+    /** 上一次属性上传通常早已完成 (扫描间隔 40 Tick)，这里只是防御性等待 */
+    private void awaitAttrWrite() {
+        if (attrWriteEvent == null) return;
+        try {
+            if (!driver.isComplete(attrWriteEvent)) driver.waitFor(attrWriteEvent);
+        } finally {
+            driver.releaseEvent(attrWriteEvent);
+            attrWriteEvent = null;
         }
     }
     
     /**
-     * 将花朵和蜂巢的位置信息写入 GPU 属性缓冲区。
+     * 将花朵和蜂巢的位置信息非阻塞地写入 GPU 属性缓冲区。
      */
     public void writeAttrFromSensor() {
         if (!gpuAvailable) return;
@@ -303,56 +996,23 @@ public class GPUManager {
         int total = fc + hc;
         if (total == 0) return;
         
-        if (total > attrCapacity) {
-             if (attrXMem != null) { clReleaseMemObject(attrXMem); clReleaseMemObject(attrYMem); clReleaseMemObject(attrZMem); clReleaseMemObject(attrTypeMem); }
-             attrCapacity = total + 128;
-             long size = (long)attrCapacity * 4;
-             attrXMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-             attrYMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-             attrZMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-             attrTypeMem = clCreateBuffer(context, CL_MEM_READ_ONLY, size, null, null);
-        }
+        awaitAttrWrite();
+        if (total > attrCapacity) allocateAttrBuffers(total + 128);
 
-        float[] ax = new float[total]; float[] ay = new float[total]; float[] az = new float[total]; int[] at = new int[total];
         for(int i=0; i<fc; i++) {
             long pos = com.gpuaccel.entitymod.ai.BeeSensor.flowerPositions[i];
-            ax[i] = net.minecraft.core.BlockPos.getX(pos)+0.5f; ay[i] = net.minecraft.core.BlockPos.getY(pos)+0.5f; az[i] = net.minecraft.core.BlockPos.getZ(pos)+0.5f; at[i] = 1;
+            attrXBuffer.put(i, net.minecraft.core.BlockPos.getX(pos)+0.5f); attrYBuffer.put(i, net.minecraft.core.BlockPos.getY(pos)+0.5f); attrZBuffer.put(i, net.minecraft.core.BlockPos.getZ(pos)+0.5f); attrTypeBuffer.put(i, 1);
         }
         for(int i=0; i<hc; i++) {
             long pos = com.gpuaccel.entitymod.ai.BeeSensor.hivePositions[i];
-            ax[fc+i] = net.minecraft.core.BlockPos.getX(pos)+0.5f; ay[fc+i] = net.minecraft.core.BlockPos.getY(pos)+0.5f; az[fc+i] = net.minecraft.core.BlockPos.getZ(pos)+0.5f; at[fc+i] = 2;
-        }
-        clEnqueueWriteBuffer(commandQueue, attrXMem, CL_TRUE, 0, (long)total*4, Pointer.to(ax), 0, null, null);
-        clEnqueueWriteBuffer(commandQueue, attrYMem, CL_TRUE, 0, (long)total*4, Pointer.to(ay), 0, null, null);
-        clEnqueueWriteBuffer(commandQueue, attrZMem, CL_TRUE, 0, (long)total*4, Pointer.to(az), 0, null, null);
-        clEnqueueWriteBuffer(commandQueue, attrTypeMem, CL_TRUE, 0, (long)total*4, Pointer.to(at), 0, null, null);
-    }
-
-    public void ensureBeeStates(int count) {
-        if (!gpuAvailable) return;
-        if (count > beeStatesCapacity) {
-            if (beeStatesMem != null) clReleaseMemObject(beeStatesMem);
-            int newCap = (int)(count * 1.5) + 128;
-            beeStatesCapacity = newCap;
-            beeStatesMem = clCreateBuffer(context, CL_MEM_READ_WRITE, (long)newCap * 4, null, null);
-            beeStatesCache = new int[newCap];
-        }
-    }
-    
-    public void writeBeeStatesFromEntities(List<Entity> entities, Map<UUID, Integer> map) {
-        if (!gpuAvailable || beeStatesMem == null) return;
-        int count = entities.size();
-        for (int i = 0; i < count; i++) {
-            Integer s = map.get(entities.get(i).getUUID());
-            beeStatesCache[i] = (s == null) ? 0 : s;
+            attrXBuffer.put(fc+i, net.minecraft.core.BlockPos.getX(pos)+0.5f); attrYBuffer.put(fc+i, net.minecraft.core.BlockPos.getY(pos)+0.5f); attrZBuffer.put(fc+i, net.minecraft.core.BlockPos.getZ(pos)+0.5f); attrTypeBuffer.put(fc+i, 2);
         }
-        clEnqueueWriteBuffer(commandQueue, beeStatesMem, CL_TRUE, 0, (long)count * 4, Pointer.to(beeStatesCache), 0, null, null);
-    }
-    
-    public int[] readBeeStates(int count) {
-        if (!gpuAvailable || beeStatesMem == null) return null;
-        clEnqueueReadBuffer(commandQueue, beeStatesMem, CL_TRUE, 0, (long)count * 4, Pointer.to(beeStatesCache), 0, null, null);
-        return beeStatesCache;
+        long bytes = (long)total*4;
+        cl_event x = driver.writeAsync(attrXMem, 0, bytes, attrXBuffer, null);
+        cl_event y = driver.writeAsync(attrYMem, 0, bytes, attrYBuffer, new cl_event[]{x});
+        cl_event z = driver.writeAsync(attrZMem, 0, bytes, attrZBuffer, new cl_event[]{y});
+        attrWriteEvent = driver.writeAsync(attrTypeMem, 0, bytes, attrTypeBuffer, new cl_event[]{z});
+        driver.releaseEvent(x); driver.releaseEvent(y); driver.releaseEvent(z);
     }
 
     /**
@@ -363,27 +1023,100 @@ public class GPUManager {
      * @return 编译好的 cl_kernel 对象
      */
     public cl_kernel compileKernel(String source, String name) {
-        cl_program prog = clCreateProgramWithSource(context, 1, new String[]{source}, null, null);
-        int err = clBuildProgram(prog, 0, null, null, null, null);
-        if (err != CL_SUCCESS) {
-             long[] logSize = new long[1];
-             clGetProgramBuildInfo(prog, device, CL_PROGRAM_BUILD_LOG, 0, null, logSize);
-             byte[] logData = new byte[(int)logSize[0]];
-             clGetProgramBuildInfo(prog, device, CL_PROGRAM_BUILD_LOG, logSize[0], Pointer.to(logData), null);
-             String buildLog = new String(logData, 0, logData.length - 1);
-             LOGGER.error("{} 的 OpenCL 构建错误:\n{}", name, buildLog);
-             throw new RuntimeException("OpenCL 编译失败: " + name);
-        }
-        return clCreateKernel(prog, name, null);
+        return driver.compileKernel(source, name);
     }
 
     /**
-     * 将体素数据写入 GPU 缓冲区。
+     * 以构建选项 (如 {@code -D NAME=VALUE}) 编译 OpenCL 内核，不同选项的程序各自缓存。
+     */
+    public cl_kernel compileKernel(String source, String options, String name) {
+        return driver.compileKernel(source, options, name);
+    }
+
+    /**
+     * 将体素数据异步写入 GPU 缓冲区，并在设备上重建其后的占用金字塔。
+     * <p>
+     * 数据先复制到双缓冲的 Host 暂存区再以非阻塞方式写入，服务器线程不等待传输；
+     * 写入 -> occupancy_build_l1 -> occupancy_build_l2 以事件链接，金字塔的完成事件加入本帧的上传等待列表，
+     * 群体 AI 主内核等待它完成。物理与流场内核在同一按序队列上于其后入队，同样读到新的体素与金字塔。
+     * </p>
      */
     public void writeVoxelBuffer(ByteBuffer data) {
         if (!gpuAvailable) return;
-        if (voxelMem == null) voxelMem = clCreateBuffer(context, CL_MEM_READ_ONLY, VoxelManager.VOXEL_VOLUME, null, null);
-        if (data != null) clEnqueueWriteBuffer(commandQueue, voxelMem, CL_TRUE, 0, (long)data.capacity(), Pointer.to(data), 0, null, null);
+        if (voxelMem == null) voxelMem = memory.allocate(Subsystem.VOXEL, CL_MEM_READ_WRITE, OccupancyPyramid.VOXEL_BUFFER_BYTES);
+        if (data == null) return;
+
+        int bytes = data.capacity();
+        int stage = voxelStage;
+        voxelStage ^= 1;
+        // 两次上传之前的写入通常早已完成，这里几乎不会阻塞
+        if (voxelStagingEvents[stage] != null) {
+            cl_event previous = voxelStagingEvents[stage];
+            voxelStagingEvents[stage] = null;
+            try {
+                driver.waitFor(previous);
+            } finally {
+                driver.releaseEvent(previous);
+            }
+        }
+        if (voxelStaging[stage] == null || voxelStaging[stage].capacity() < bytes) {
+            if (voxelStaging[stage] != null) HostArena.free(voxelStaging[stage]);
+            voxelStaging[stage] = HostArena.alloc(Subsystem.VOXEL, bytes);
+        }
+        ByteBuffer staging = voxelStaging[stage];
+        staging.put(0, data, 0, bytes);
+
+        // 上一次的金字塔尚未被主内核消费时由本次取代，新的写入等待它完成
+        cl_event[] waits = null;
+        if (voxelReady != null && removeUploadEvent(voxelReady)) {
+            waits = new cl_event[]{voxelReady};
+        }
+        cl_event written = driver.writeAsync(voxelMem, 0, bytes, staging, waits);
+        if (waits != null) driver.releaseEvent(voxelReady);
+        voxelReady = null;
+        voxelStagingEvents[stage] = written;
+
+        if (occupancyL1Kernel == null) {
+            occupancyL1Kernel = compileKernel(OccupancyPyramid.CL_SRC, "occupancy_build_l1");
+            occupancyL2Kernel = compileKernel(OccupancyPyramid.CL_SRC, "occupancy_build_l2");
+        }
+        int size = VoxelManager.getMapSize();
+        driver.setArg(occupancyL1Kernel, 0, voxelMem);
+        driver.setArg(occupancyL1Kernel, 1, size);
+        cl_event l1 = tuner.enqueueAsync("occupancy_build_l1", occupancyL1Kernel, OccupancyPyramid.l1Count(size), new cl_event[]{written});
+        driver.setArg(occupancyL2Kernel, 0, voxelMem);
+        driver.setArg(occupancyL2Kernel, 1, size);
+        voxelReady = tuner.enqueueAsync("occupancy_build_l2", occupancyL2Kernel, OccupancyPyramid.l2Count(size), new cl_event[]{l1});
+        driver.releaseEvent(l1);
+        uploadEvents.add(voxelReady);
+        driver.flush();
+    }
+
+    /** 按引用从上传等待列表中移除事件 (不释放) */
+    private boolean removeUploadEvent(cl_event event) {
+        for (int i = 0; i < uploadEvents.size(); i++) {
+            if (uploadEvents.get(i) == event) {
+                uploadEvents.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void freeVoxelStaging() {
+        for (int i = 0; i < voxelStaging.length; i++) {
+            if (voxelStagingEvents[i] != null) {
+                try {
+                    driver.waitFor(voxelStagingEvents[i]);
+                } catch (CLException e) {
+                    // 出错的写入同样已结束，暂存区可以照常释放
+                }
+                driver.releaseEvent(voxelStagingEvents[i]);
+                voxelStagingEvents[i] = null;
+            }
+            HostArena.free(voxelStaging[i]);
+            voxelStaging[i] = null;
+        }
     }
     
     // --- 流场管理 ---
@@ -393,6 +1126,9 @@ public class GPUManager {
      * <p>
      * 过程：上传目标 -> 重置代价场 -> 洪水填充 (Flood Fill) -> 生成向量场
      * </p>
+     * <p>
+     * 目标经暂存区非阻塞上传，重置内核以写入事件为等待列表，Tick 线程不必排在在途的群体帧之后等待队列。
+     * </p>
      */
     public void updateFlowField(int fieldID, List<Integer> targets, cl_kernel resetK, cl_kernel spreadK, cl_kernel genK) {
         if (!gpuAvailable || fieldID < 0 || fieldID >= FIELD_COUNT) return;
@@ -400,49 +1136,97 @@ public class GPUManager {
         int targetCount = targets.size() / 3;
         if (targetCount == 0) return; // 无目标，跳过
 
-        // 1. 上传目标
-        ensureTargetBuffer(targetCount);
+        // 1. 上传目标 (流场降采样时换算到流场单元坐标)
+        awaitTargetWrite(fieldID);
+        ensureTargetBuffer(fieldID, targetCount);
+        IntBuffer targetPosBuffer = targetPosBuffers[fieldID];
         targetPosBuffer.clear();
-        for(int i : targets) targetPosBuffer.put(i);
+        int shift = fields.flowShift();
+        for(int i : targets) targetPosBuffer.put(i >> shift);
         targetPosBuffer.flip();
-        clEnqueueWriteBuffer(commandQueue, targetPosMem, CL_TRUE, 0, (long)targetCount * 3 * 4, Pointer.to(targetPosBuffer), 0, null, null);
+        cl_event written = driver.writeAsync(targetPosMems[fieldID], 0, (long)targetCount * 3 * 4, targetPosBuffer, null);
+        targetWriteEvents[fieldID] = written;
 
         cl_mem costMem = costFieldMems[fieldID];
         cl_mem vecMem = vectorFieldMems[fieldID];
 
-        // 2. 重置代价场
-        clSetKernelArg(resetK, 0, Sizeof.cl_mem, Pointer.to(costMem));
-        clSetKernelArg(resetK, 1, Sizeof.cl_mem, Pointer.to(targetPosMem));
-        clSetKernelArg(resetK, 2, Sizeof.cl_int, Pointer.to(new int[]{targetCount}));
+        // 2. 重置代价场 (等待目标写入)
+        driver.setArg(resetK, 0, costMem);
+        driver.setArg(resetK, 1, targetPosMems[fieldID]);
+        driver.setArg(resetK, 2, targetCount);
 
-        long[] global = new long[]{VoxelManager.VOXEL_VOLUME};
-        clEnqueueNDRangeKernel(commandQueue, resetK, 1, null, global, null, 0, null, null);
+        long volume = fields.flowVolume();
+        cl_event reset = tuner.enqueueAsync("k_resetCostField", resetK, volume, new cl_event[]{written});
+        driver.releaseEvent(reset);
 
         // 3. 洪水填充 (多轮迭代)
-        // 64 轮允许传播 64 格远。
-        clSetKernelArg(spreadK, 0, Sizeof.cl_mem, Pointer.to(costMem));
-        clSetKernelArg(spreadK, 1, Sizeof.cl_mem, Pointer.to(voxelMem));
+        // 允许传播 64 格远，降采样后每轮跨越 2^shift 格，轮数相应减少。
+        driver.setArg(spreadK, 0, costMem);
+        driver.setArg(spreadK, 1, voxelMem);
 
-        for(int i=0; i<64; i++) {
-             clEnqueueNDRangeKernel(commandQueue, spreadK, 1, null, global, null, 0, null, null);
+        for(int i=0; i<(64 >> shift); i++) {
+             tuner.enqueue("k_spreadCostField", spreadK, volume);
         }
 
         // 4. 生成向量场
-        clSetKernelArg(genK, 0, Sizeof.cl_mem, Pointer.to(costMem));
-        clSetKernelArg(genK, 1, Sizeof.cl_mem, Pointer.to(vecMem));
-        clEnqueueNDRangeKernel(commandQueue, genK, 1, null, global, null, 0, null, null);
+        driver.setArg(genK, 0, costMem);
+        driver.setArg(genK, 1, vecMem);
+        cl_event generated = tuner.enqueueAsync("k_generateVectorField", genK, volume, null);
+
+        // 队列按序执行，只需跟踪最后一个事件；上一次更新仍未完成时保留其提交时刻
+        long submitNanos = System.nanoTime();
+        if (flowFieldEvent != null) {
+            if (!isSettled(flowFieldEvent)) submitNanos = flowFieldSubmitNanos;
+            driver.releaseEvent(flowFieldEvent);
+        }
+        flowFieldEvent = generated;
+        flowFieldSubmitNanos = submitNanos;
+
+        driver.flush();
+    }
+
+    /**
+     * 非阻塞查询流场命令的等待时长，供看门狗的 {@link GpuWatchdog#checkPending} 使用。
+     *
+     * @return 最早的未完成流场更新自提交以来的时长，全部完成时为 0
+     * @throws CLException 流场内核执行出错；事件已释放，调用方应交给看门狗
+     */
+    public long getFlowFieldAgeNanos() {
+        if (!gpuAvailable || flowFieldEvent == null) return 0;
+        boolean done;
+        try {
+            done = driver.isComplete(flowFieldEvent);
+        } catch (CLException e) {
+            driver.releaseEvent(flowFieldEvent);
+            flowFieldEvent = null;
+            throw e;
+        }
+        if (!done) return System.nanoTime() - flowFieldSubmitNanos;
+        driver.releaseEvent(flowFieldEvent);
+        flowFieldEvent = null;
+        return 0;
+    }
 
-        clFlush(commandQueue);
+    /** 上一次目标上传通常早已完成 (流场每秒更新一次)，这里只是防御性等待 */
+    private void awaitTargetWrite(int fieldID) {
+        cl_event previous = targetWriteEvents[fieldID];
+        if (previous == null) return;
+        targetWriteEvents[fieldID] = null;
+        try {
+            if (!driver.isComplete(previous)) driver.waitFor(previous);
+        } finally {
+            driver.releaseEvent(previous);
+        }
     }
 
-    private void ensureTargetBuffer(int count) {
-        if (count > targetPosCapacity) {
-             if (targetPosMem != null) clReleaseMemObject(targetPosMem);
-             if (targetPosBuffer != null) MemoryUtil.memFree(targetPosBuffer);
+    /** 调用前需确认该流场上一次目标上传已完成 */
+    private void ensureTargetBuffer(int fieldID, int count) {
+        if (count > targetPosCapacity[fieldID]) {
+             if (targetPosBuffers[fieldID] != null) HostArena.free(targetPosBuffers[fieldID]);
 
-             targetPosCapacity = count + 256;
-             targetPosBuffer = MemoryUtil.memAllocInt(targetPosCapacity * 3);
-             targetPosMem = clCreateBuffer(context, CL_MEM_READ_ONLY, (long)targetPosCapacity * 3 * 4, null, null);
+             targetPosCapacity[fieldID] = count + 256;
+             targetPosBuffers[fieldID] = HostArena.allocInt(Subsystem.AUX, targetPosCapacity[fieldID] * 3);
+             targetPosMems[fieldID] = arena.grow(targetPosMems[fieldID], Subsystem.AUX, CL_MEM_READ_ONLY, (long)targetPosCapacity[fieldID] * 3 * 4, 0);
         }
     }
 
@@ -455,28 +1239,40 @@ public class GPUManager {
     
     public void writeBufferAsync(cl_mem mem, long size, FloatBuffer buffer) {
         if (!gpuAvailable) return;
-        clEnqueueWriteBuffer(commandQueue, mem, CL_FALSE, 0, size, Pointer.to(buffer), 0, null, null);
+        driver.write(mem, false, 0, size, buffer);
     }
     
-    public void writeBuffer(cl_mem mem, long size, Pointer ptr) {
-        clEnqueueWriteBuffer(commandQueue, mem, CL_TRUE, 0, size, ptr, 0, null, null);
+    public void writeBuffer(cl_mem mem, long size, Buffer buffer) {
+        driver.write(mem, true, 0, size, buffer);
     }
     
-    public void readBuffer(cl_mem mem, long size, Pointer ptr) {
+    public void readBuffer(cl_mem mem, long size, Buffer buffer) {
         if(!gpuAvailable) return;
-        clEnqueueReadBuffer(commandQueue, mem, CL_TRUE, 0, size, ptr, 0, null, null);
+        driver.read(mem, true, 0, size, buffer);
     }
     
     public void executeKernel(cl_kernel kernel, int dim, long[] global, long[] local) {
         if (!gpuAvailable) return;
-        clEnqueueNDRangeKernel(commandQueue, kernel, dim, null, global, local, 0, null, null);
-        clFlush(commandQueue);
+        driver.enqueueKernel(kernel, dim, global, local);
+        driver.flush();
     }
     
     public void executeKernelAsync(cl_kernel kernel, int dim, long[] global, long[] local) {
         if (!gpuAvailable) return;
-        clEnqueueNDRangeKernel(commandQueue, kernel, dim, null, global, local, 0, null, null);
-        clFlush(commandQueue);
+        driver.enqueueKernel(kernel, dim, global, local);
+        driver.flush();
+    }
+
+    /**
+     * 入队一维内核，局部大小与补齐后的全局大小由 {@link WorkGroupTuner} 决定。
+     *
+     * @param name 内核名，作为调优结果的键
+     * @param n 实际工作项数量 (内核需以 gid >= n 提前返回)
+     */
+    public void executeTuned(String name, cl_kernel kernel, long n) {
+        if (!gpuAvailable) return;
+        tuner.enqueue(name, kernel, n);
+        driver.flush();
     }
 
     /**
@@ -485,135 +1281,197 @@ public class GPUManager {
     public void injectStimuli(float[] positions, int[] channels, float[] values, int count, cl_kernel injectKernel, cl_mem targetBuffer) {
         if (!gpuAvailable || count == 0) return;
 
-        if (count > stimCapacity) {
-            // 释放旧的缓冲区
-            for (int i = 0; i < SWAP_SLOTS; i++) {
-                if (stimPosMems[i] != null) clReleaseMemObject(stimPosMems[i]);
-                if (stimChannelMems[i] != null) clReleaseMemObject(stimChannelMems[i]);
-                if (stimValueMems[i] != null) clReleaseMemObject(stimValueMems[i]);
-
-                if (stimPosBuffers[i] != null) MemoryUtil.memFree(stimPosBuffers[i]);
-                if (stimChannelBuffers[i] != null) MemoryUtil.memFree(stimChannelBuffers[i]);
-                if (stimValueBuffers[i] != null) MemoryUtil.memFree(stimValueBuffers[i]);
-            }
-
-            stimCapacity = count + 256;
-
-            // 分配新的 Direct Buffers 和 OpenCL 缓冲区
-            for (int i = 0; i < SWAP_SLOTS; i++) {
-                stimPosBuffers[i] = MemoryUtil.memAllocFloat(stimCapacity * 3);
-                stimChannelBuffers[i] = MemoryUtil.memAllocInt(stimCapacity);
-                stimValueBuffers[i] = MemoryUtil.memAllocFloat(stimCapacity);
-
-                // 创建 Buffer，不需要 copy host ptr，因为马上会写入
-                stimPosMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY, (long)stimCapacity * 3 * 4, null, null);
-                stimChannelMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY, (long)stimCapacity * 4, null, null);
-                stimValueMems[i] = clCreateBuffer(context, CL_MEM_READ_ONLY, (long)stimCapacity * 4, null, null);
-            }
-        }
-
-        // 使用 activeBuffer 选择当前槽位 (双缓冲)
+        // 使用 activeBuffer 选择当前槽位 (该槽位上一轮的命令均已完成)，只扩容该槽位
         int idx = activeBuffer;
+        if (count > stimCapacity[idx]) {
+            if (stimPosBuffers[idx] != null) HostArena.free(stimPosBuffers[idx]);
+            if (stimChannelBuffers[idx] != null) HostArena.free(stimChannelBuffers[idx]);
+            if (stimValueBuffers[idx] != null) HostArena.free(stimValueBuffers[idx]);
+
+            int capacity = count + 256;
+            stimCapacity[idx] = capacity;
+            stimPosBuffers[idx] = HostArena.allocFloat(Subsystem.AUX, capacity * 3);
+            stimChannelBuffers[idx] = HostArena.allocInt(Subsystem.AUX, capacity);
+            stimValueBuffers[idx] = HostArena.allocFloat(Subsystem.AUX, capacity);
+
+            // 池内扩容，不需要保留内容，因为马上会写入
+            stimPosMems[idx] = arena.grow(stimPosMems[idx], Subsystem.AUX, CL_MEM_READ_ONLY, (long)capacity * 3 * 4, 0);
+            stimChannelMems[idx] = arena.grow(stimChannelMems[idx], Subsystem.AUX, CL_MEM_READ_ONLY, (long)capacity * 4, 0);
+            stimValueMems[idx] = arena.grow(stimValueMems[idx], Subsystem.AUX, CL_MEM_READ_ONLY, (long)capacity * 4, 0);
+        }
 
         // 填充 Buffer
         stimPosBuffers[idx].clear().put(positions, 0, count * 3).flip();
         stimChannelBuffers[idx].clear().put(channels, 0, count).flip();
         stimValueBuffers[idx].clear().put(values, 0, count).flip();
 
-        clEnqueueWriteBuffer(commandQueue, stimPosMems[idx], CL_FALSE, 0, (long)count * 3 * 4, Pointer.to(stimPosBuffers[idx]), 0, null, null);
-        clEnqueueWriteBuffer(commandQueue, stimChannelMems[idx], CL_FALSE, 0, (long)count * 4, Pointer.to(stimChannelBuffers[idx]), 0, null, null);
-        clEnqueueWriteBuffer(commandQueue, stimValueMems[idx], CL_FALSE, 0, (long)count * 4, Pointer.to(stimValueBuffers[idx]), 0, null, null);
+        driver.write(stimPosMems[idx], false, 0, (long)count * 3 * 4, stimPosBuffers[idx]);
+        driver.write(stimChannelMems[idx], false, 0, (long)count * 4, stimChannelBuffers[idx]);
+        driver.write(stimValueMems[idx], false, 0, (long)count * 4, stimValueBuffers[idx]);
 
         // 执行注入内核
         // void inject_stimuli(phero, pos, ch, val, count, ox, oy, oz, sxz, sy)
         int argIdx = 0;
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_mem, Pointer.to(targetBuffer));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_mem, Pointer.to(stimPosMems[idx]));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_mem, Pointer.to(stimChannelMems[idx]));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_mem, Pointer.to(stimValueMems[idx]));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{count}));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{GPUManager.currentMapOrigin[0]}));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{GPUManager.currentMapOrigin[1]}));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{GPUManager.currentMapOrigin[2]}));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_XZ}));
-        clSetKernelArg(injectKernel, argIdx++, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.PHERO_SIZE_Y}));
-
-        long[] globalWorkSize = new long[]{count};
-        clEnqueueNDRangeKernel(commandQueue, injectKernel, 1, null, globalWorkSize, null, 0, null, null);
+        driver.setArg(injectKernel, argIdx++, targetBuffer);
+        driver.setArg(injectKernel, argIdx++, stimPosMems[idx]);
+        driver.setArg(injectKernel, argIdx++, stimChannelMems[idx]);
+        driver.setArg(injectKernel, argIdx++, stimValueMems[idx]);
+        driver.setArg(injectKernel, argIdx++, count);
+        driver.setArg(injectKernel, argIdx++, GPUManager.currentMapOrigin[0]);
+        driver.setArg(injectKernel, argIdx++, GPUManager.currentMapOrigin[1]);
+        driver.setArg(injectKernel, argIdx++, GPUManager.currentMapOrigin[2]);
+        driver.setArg(injectKernel, argIdx++, fields.pheroSizeXZ());
+        driver.setArg(injectKernel, argIdx++, fields.pheroSizeY());
+
+        tuner.enqueue("inject_stimuli", injectKernel, count);
     }
     
     public cl_mem getStimPosMem() { return stimPosMems[activeBuffer]; }
     public cl_mem getStimChannelMem() { return stimChannelMems[activeBuffer]; }
     public cl_mem getStimValueMem() { return stimValueMems[activeBuffer]; }
 
-    public cl_mem createBuffer(long flags, long size, Pointer ptr) {
+    /**
+     * 为其他子系统 (物理、气候) 从设备内存池分配缓冲区，计入显存预算。
+     *
+     * @throws IllegalStateException 超出显存预算
+     */
+    public cl_mem createBuffer(Subsystem subsystem, long flags, long size) {
+        if (!gpuAvailable) return null;
+        return arena.allocate(subsystem, flags, size);
+    }
+
+    /**
+     * 在设备内存池中扩容缓冲区，保留前 keepBytes 字节；容量足够时返回原缓冲区。
+     *
+     * @param old 原缓冲区，可为 null
+     * @throws IllegalStateException 超出显存预算
+     */
+    public cl_mem growBuffer(cl_mem old, Subsystem subsystem, long flags, long size, long keepBytes) {
         if (!gpuAvailable) return null;
-        return clCreateBuffer(context, flags, size, ptr, null);
+        return arena.grow(old, subsystem, flags, size, keepBytes);
     }
     
     public void releaseMemObject(cl_mem mem) { 
-        if (mem != null) clReleaseMemObject(mem); 
+        if (mem != null && !arena.free(mem)) memory.release(mem); 
+    }
+
+    public void releaseKernel(cl_kernel kernel) {
+        if (kernel != null) driver.releaseKernel(kernel);
     }
 
     // --- 资源清理 ---
 
     public void cleanupSwarmBuffers() {
-        for(int i=0; i<SWAP_SLOTS; i++) {
-            if(positionsMems[i] != null) clReleaseMemObject(positionsMems[i]);
-            if(velocitiesMems[i] != null) clReleaseMemObject(velocitiesMems[i]);
-            if(outputsMems[i] != null) clReleaseMemObject(outputsMems[i]);
-            if(entityTypesMems[i] != null) clReleaseMemObject(entityTypesMems[i]);
-            if(playerPosMems[i] != null) clReleaseMemObject(playerPosMems[i]);
-            if(paramsMems[i] != null) clReleaseMemObject(paramsMems[i]);
-            if(prevPositionsMems[i] != null) clReleaseMemObject(prevPositionsMems[i]);
-            if(stuckTimerMems[i] != null) clReleaseMemObject(stuckTimerMems[i]);
+        for(int i=0; i<slotCount; i++) {
+            // 映射区域的视图不由 HostArena 分配，解除映射后置空
+            unmapRows(i);
+            unmapRecords(i);
+            arena.free(outputsMems[i]);
+            arena.free(recordMems[i]);
+            arena.free(recordCountMems[i]);
+            arena.free(playerPosMems[i]);
+            arena.free(motionRowMems[i]);
+            arena.free(descRowMems[i]);
+            arena.free(activeMaskMems[i]);
+            outputsMems[i] = recordMems[i] = recordCountMems[i] = playerPosMems[i] = motionRowMems[i] = descRowMems[i] = null;
+            activeMaskMems[i] = null;
             
-            if(positionsBuffers[i] != null) MemoryUtil.memFree(positionsBuffers[i]);
-            if(velocitiesBuffers[i] != null) MemoryUtil.memFree(velocitiesBuffers[i]);
-            if(outputsBuffers[i] != null) MemoryUtil.memFree(outputsBuffers[i]);
-            if(entityTypesBuffers[i] != null) MemoryUtil.memFree(entityTypesBuffers[i]);
-            if(playerPosBuffers[i] != null) MemoryUtil.memFree(playerPosBuffers[i]);
-            if(paramsBuffers[i] != null) MemoryUtil.memFree(paramsBuffers[i]);
-            if(prevPositionsBuffers[i] != null) MemoryUtil.memFree(prevPositionsBuffers[i]);
-            if(stuckTimerBuffers[i] != null) MemoryUtil.memFree(stuckTimerBuffers[i]);
+            if(recordBuffers[i] != null) HostArena.free(recordBuffers[i]);
+            if(recordCountBuffers[i] != null) HostArena.free(recordCountBuffers[i]);
+            if(playerPosBuffers[i] != null) HostArena.free(playerPosBuffers[i]);
+            if(motionRowBuffers[i] != null) HostArena.free(motionRowBuffers[i]);
+            if(descRowBuffers[i] != null) HostArena.free(descRowBuffers[i]);
+            if(bucketOrderBuffers[i] != null) HostArena.free(bucketOrderBuffers[i]);
+            if(activeMaskBuffers[i] != null) HostArena.free(activeMaskBuffers[i]);
+            recordBuffers[i] = recordCountBuffers[i] = motionRowBuffers[i] = descRowBuffers[i] = bucketOrderBuffers[i] = null;
+            activeMaskBuffers[i] = null;
+            playerPosBuffers[i] = null;
+            slotCapacity[i] = 0;
         }
-        if(outHost != null) MemoryUtil.memFree(outHost);
-        if(readBackX != null) MemoryUtil.memFree(readBackX);
-        if(readBackY != null) MemoryUtil.memFree(readBackY);
-        if(readBackZ != null) MemoryUtil.memFree(readBackZ);
+        arena.free(positionsMem);
+        arena.free(velocitiesMem);
+        arena.free(baseTypesMem);
+        arena.free(entityTypesMem);
+        arena.free(paramsMem);
+        positionsMem = velocitiesMem = baseTypesMem = entityTypesMem = paramsMem = null;
+        arena.free(prevPositionsMem);
+        arena.free(stuckTimerMem);
+        arena.free(beeStatesMem);
+        arena.free(bucketOrderMem);
+        prevPositionsMem = stuckTimerMem = beeStatesMem = bucketOrderMem = null;
+        arena.free(gridCellOfMem);
+        arena.free(gridRankMem);
+        arena.free(gridOrderMem);
+        gridCellOfMem = gridRankMem = gridOrderMem = null;
+        arena.free(nbrListMem);
+        arena.free(nbrCountMem);
+        arena.free(nbrRefPosMem);
+        arena.free(nbrRefTagMem);
+        nbrListMem = nbrCountMem = nbrRefPosMem = nbrRefTagMem = null;
+        neighbourListsStale = true;
+        buckets.invalidate();
+        bufferCapacityInts = 0;
     }
 
     public void cleanup() {
+        discardPendingFrames();
         cleanupSwarmBuffers();
-        if (commandQueue != null) clReleaseCommandQueue(commandQueue);
-        if (context != null) clReleaseContext(context);
-        if (pheromoneMemA != null) clReleaseMemObject(pheromoneMemA);
-        if (pheromoneMemB != null) clReleaseMemObject(pheromoneMemB);
-        if (voxelMem != null) clReleaseMemObject(voxelMem);
-        if (attrXMem != null) clReleaseMemObject(attrXMem);
-        if (attrYMem != null) clReleaseMemObject(attrYMem);
-        if (attrZMem != null) clReleaseMemObject(attrZMem);
-        if (attrTypeMem != null) clReleaseMemObject(attrTypeMem);
-        if (beeStatesMem != null) clReleaseMemObject(beeStatesMem);
+        if (pheromoneMemA != null) memory.release(pheromoneMemA);
+        if (pheromoneMemB != null) memory.release(pheromoneMemB);
+        freeVoxelStaging();
+        if (voxelMem != null) memory.release(voxelMem);
+        releaseKernel(occupancyL1Kernel);
+        releaseKernel(occupancyL2Kernel);
+        occupancyL1Kernel = occupancyL2Kernel = null;
+        if (gridCountMem != null) memory.release(gridCountMem);
+        if (gridStartMem != null) memory.release(gridStartMem);
+        if (gridEndMem != null) memory.release(gridEndMem);
+        if (nbrMaxDispMem != null) memory.release(nbrMaxDispMem);
+        freeAttrBuffers();
 
         // 清理流场资源
         for(int i=0; i<FIELD_COUNT; i++) {
-            if(costFieldMems[i] != null) clReleaseMemObject(costFieldMems[i]);
-            if(vectorFieldMems[i] != null) clReleaseMemObject(vectorFieldMems[i]);
+            if(costFieldMems[i] != null) memory.release(costFieldMems[i]);
+            if(vectorFieldMems[i] != null) memory.release(vectorFieldMems[i]);
+        }
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if (targetWriteEvents[i] != null) {
+                try {
+                    driver.waitFor(targetWriteEvents[i]);
+                } catch (CLException e) {
+                    // 出错的写入同样已结束，暂存区可以照常释放
+                }
+                driver.releaseEvent(targetWriteEvents[i]);
+                targetWriteEvents[i] = null;
+            }
+            HostArena.free(targetPosBuffers[i]);
+            arena.free(targetPosMems[i]);
+            targetPosBuffers[i] = null;
+            targetPosMems[i] = null;
+            targetPosCapacity[i] = 0;
+        }
+        driver.releaseEvent(flowFieldEvent);
+        flowFieldEvent = null;
+
+        for (int i = 0; i < slotCount; i++) {
+            if (uniformMems[i] != null) memory.release(uniformMems[i]);
+            HostArena.free(uniformBuffers[i]);
+            HostArena.free(remapBuffers[i]);
+            uniformBuffers[i] = null;
+            remapBuffers[i] = null;
         }
-        if(targetPosMem != null) clReleaseMemObject(targetPosMem);
-        if(targetPosBuffer != null) MemoryUtil.memFree(targetPosBuffer);
 
         // 清理刺激源相关缓冲区
-        for (int i = 0; i < SWAP_SLOTS; i++) {
-            if (stimPosMems[i] != null) clReleaseMemObject(stimPosMems[i]);
-            if (stimChannelMems[i] != null) clReleaseMemObject(stimChannelMems[i]);
-            if (stimValueMems[i] != null) clReleaseMemObject(stimValueMems[i]);
-
-            if (stimPosBuffers[i] != null) MemoryUtil.memFree(stimPosBuffers[i]);
-            if (stimChannelBuffers[i] != null) MemoryUtil.memFree(stimChannelBuffers[i]);
-            if (stimValueBuffers[i] != null) MemoryUtil.memFree(stimValueBuffers[i]);
+        for (int i = 0; i < slotCount; i++) {
+            HostArena.free(stimPosBuffers[i]);
+            HostArena.free(stimChannelBuffers[i]);
+            HostArena.free(stimValueBuffers[i]);
+            stimPosBuffers[i] = stimValueBuffers[i] = null;
+            stimChannelBuffers[i] = null;
         }
+        // 池内其余的子缓冲区 (刺激源、重映射、目标、物理与气候) 随池块一并释放
+        arena.release();
+        driver.release();
     }
 
     // Getters
@@ -624,10 +1482,41 @@ public class GPUManager {
     public cl_mem getAttrYMem() { ensureAttrBuffers(); return attrYMem; }
     public cl_mem getAttrZMem() { ensureAttrBuffers(); return attrZMem; }
     public cl_mem getAttrTypeMem() { ensureAttrBuffers(); return attrTypeMem; }
+    public cl_mem getPositionsMem() { return positionsMem; }
+    public cl_mem getVelocitiesMem() { return velocitiesMem; }
+    public cl_mem getEntityTypesMem() { return entityTypesMem; }
+    public cl_mem getParamsMem() { return paramsMem; }
+    public cl_mem getPrevPositionsMem() { return prevPositionsMem; }
+    public cl_mem getStuckTimerMem() { return stuckTimerMem; }
     public cl_mem getBeeStatesMem() { return beeStatesMem; }
-    public FloatBuffer getOutputBuffer() { return outHost; }
+    public cl_mem getBucketOrderMem() { return bucketOrderMem; }
+    public cl_mem getNeighbourListMem() { return nbrListMem; }
+    public cl_mem getNeighbourCountMem() { return nbrCountMem; }
+    /** @return 最近一次的类型分桶结果 */
+    public TypeBuckets getTypeBuckets() { return buckets; }
+    public cl_mem getUniformsMem() { return uniformMems[activeBuffer]; }
+    /** @return 正在填充的槽位索引 */
+    public int getActiveSlot() { return activeBuffer; }
+    public IntBuffer getOutputRecords() { return readySlot < 0 ? null : recordBuffers[readySlot]; }
+    public int getOutputRecordCount() { return readySlot < 0 ? 0 : readyCount; }
+    public int getPipelineSlots() { return slotCount; }
+    /** @return 是否使用映射的 Host 缓冲区 (零复制) 传输实体行与输出记录 */
+    public boolean isZeroCopy() { return zeroCopy; }
+    public DeviceMemoryBudget getMemoryBudget() { return memory; }
+    public DeviceArena getArena() { return arena; }
+    public WorkGroupTuner getWorkGroupTuner() { return tuner; }
+    public GpuWatchdog getWatchdog() { return watchdog; }
+    /** 接入全局看门狗，需在创建各子系统之前调用 */
+    public void setWatchdog(GpuWatchdog watchdog) { this.watchdog = watchdog; }
+    public DispatchPlanner getDispatchPlanner() { return planner; }
+    /** 接入全局调度器，需在创建各子系统之前调用 */
+    public void setDispatchPlanner(DispatchPlanner planner) { this.planner = planner; }
+    public DeviceMemoryBudget.FieldPlan getFieldPlan() { return fields; }
+    public int getInFlightFrames() { return inFlight; }
+    public long getPipelineSkips() { return pipelineSkips; }
     public boolean isGPUAvailable() { return gpuAvailable; }
-    public String getDeviceName() { return deviceName; }
-    public long getMaxComputeUnits() { return maxComputeUnits; }
-    public long getGlobalMemorySize() { return globalMemorySize; }
+    public String getDeviceName() { return driver.getDeviceName(); }
+    public long getMaxComputeUnits() { return driver.getMaxComputeUnits(); }
+    public long getGlobalMemorySize() { return driver.getGlobalMemorySize(); }
+    public ClDriver getDriver() { return driver; }
 }
@@ -0,0 +1,172 @@
+package com.gpuaccel.entitymod.gpu;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.CL;
+import org.jocl.CLException;
+
+/**
+ * GPU 健康看门狗。
+ * <p>
+ * 每个使用 OpenCL 的子系统各有一个熔断器：完成事件超过 {@code frameTimeoutMs} 仍未完成，
+ * 或调用抛出 OpenCL 错误 (如 {@code CL_OUT_OF_RESOURCES}) 时断开，该子系统随即停止向设备发出命令，
+ * 相关实体交回 CPU / 原版逻辑处理。任一熔断器断开后开始冷却，冷却结束时由
+ * {@code GPUEntityAccelMod.rebuildGpu} 重建上下文与命令队列、重新上传常驻状态，成功后全部熔断器闭合。
+ * </p>
+ * <p>
+ * 重建后短时间内再次熔断时冷却时间逐次翻倍 (有上限)，持续故障的设备不会被反复重建；
+ * 稳定运行一段时间后恢复为基础冷却时间。看门狗本身在重建之间保留，只在服务器线程上使用。
+ * </p>
+ */
+public final class GpuWatchdog {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static final long DEFAULT_FRAME_TIMEOUT_MS = 2000;
+    public static final int DEFAULT_COOLDOWN_SECONDS = 30;
+
+    /** 重建后稳定运行多少 Tick 视为恢复，之后的熔断重新从基础冷却时间开始 */
+    private static final int STABLE_TICKS = 20 * 60 * 5;
+    /** 冷却时间最多翻倍的次数 */
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    /** 受看门狗保护的子系统 */
+    public enum Breaker {
+        SWARM("群体 AI"),
+        PHYSICS("物理"),
+        FLOW_FIELD("流场"),
+        CLIMATE("气候");
+
+        private final String label;
+
+        Breaker(String label) {
+            this.label = label;
+        }
+
+        public String label() { return label; }
+    }
+
+    private final long frameTimeoutNanos;
+    private final int cooldownTicks;
+
+    private final boolean[] open = new boolean[Breaker.values().length];
+    private final String[] reasons = new String[Breaker.values().length];
+    private final int[] trips = new int[Breaker.values().length];
+
+    private long tick = 0;
+    /** 计划重建的 Tick，没有断开的熔断器时为 -1 */
+    private long rebuildAt = -1;
+    private long lastRebuildTick = Long.MIN_VALUE / 2;
+    /** 连续失败 (短时间内再次熔断或重建失败) 的次数，决定冷却翻倍 */
+    private int failureStreak = 0;
+    private int rebuilds = 0;
+
+    /**
+     * @param frameTimeoutMs 完成事件的超时时间
+     * @param cooldownSeconds 熔断后到重建上下文之间的基础冷却时间
+     */
+    public GpuWatchdog(long frameTimeoutMs, int cooldownSeconds) {
+        this.frameTimeoutNanos = frameTimeoutMs * 1_000_000L;
+        this.cooldownTicks = Math.max(1, cooldownSeconds * 20);
+    }
+
+    /** 推进看门狗时钟，每个服务器 Tick 调用一次 */
+    public void tick() {
+        tick++;
+    }
+
+    /** @return 该子系统当前是否可以使用 GPU */
+    public boolean allows(Breaker breaker) {
+        return !open[breaker.ordinal()];
+    }
+
+    /** @return 是否有熔断器断开 */
+    public boolean isAnyOpen() {
+        return rebuildAt >= 0;
+    }
+
+    /**
+     * 检查在途命令的等待时间，超过超时时间时断开熔断器。
+     *
+     * @param ageNanos 最早的未完成事件自提交以来的时长，没有在途命令时为 0
+     */
+    public void checkPending(Breaker breaker, long ageNanos) {
+        if (ageNanos > frameTimeoutNanos) {
+            trip(breaker, String.format("完成事件等待超时 (%d ms)", ageNanos / 1_000_000));
+        }
+    }
+
+    /**
+     * 按异常断开熔断器。
+     *
+     * @return 异常是否为设备故障 (已断开)；其他异常由调用方按原有方式处理
+     */
+    public boolean onError(Breaker breaker, Throwable error) {
+        CLException cl = findClException(error);
+        if (cl == null) return false;
+        trip(breaker, CL.stringFor_errorCode(cl.getStatus()));
+        return true;
+    }
+
+    /** 断开熔断器并安排重建；已断开时忽略 */
+    public void trip(Breaker breaker, String reason) {
+        int i = breaker.ordinal();
+        if (open[i]) return;
+        open[i] = true;
+        reasons[i] = reason;
+        trips[i]++;
+        if (rebuildAt < 0) {
+            if (tick - lastRebuildTick > STABLE_TICKS) failureStreak = 0;
+            rebuildAt = tick + nextCooldown();
+        }
+        LOGGER.warn("GPU 熔断: {} ({})，相关实体转由 CPU 处理，{} 秒后重建 OpenCL 上下文",
+            breaker.label(), reason, (rebuildAt - tick) / 20);
+    }
+
+    /** @return 冷却已结束、需要重建上下文 */
+    public boolean isRebuildDue() {
+        return rebuildAt >= 0 && tick >= rebuildAt;
+    }
+
+    /** 上下文重建成功：闭合全部熔断器 */
+    public void onRebuilt() {
+        for (Breaker b : Breaker.values()) {
+            open[b.ordinal()] = false;
+            reasons[b.ordinal()] = null;
+        }
+        rebuildAt = -1;
+        lastRebuildTick = tick;
+        rebuilds++;
+        LOGGER.info("OpenCL 上下文已重建，GPU 加速恢复 (第 {} 次)", rebuilds);
+    }
+
+    /** 上下文重建失败：保持断开，延长冷却后再试 */
+    public void onRebuildFailed(String reason) {
+        rebuildAt = tick + nextCooldown();
+        LOGGER.warn("OpenCL 上下文重建失败 ({})，{} 秒后重试", reason, (rebuildAt - tick) / 20);
+    }
+
+    private int nextCooldown() {
+        int delay = cooldownTicks << Math.min(failureStreak, MAX_BACKOFF_SHIFT);
+        failureStreak++;
+        return delay;
+    }
+
+    private static CLException findClException(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause()) {
+            if (c instanceof CLException cl) return cl;
+        }
+        return null;
+    }
+
+    /** @return 熔断器断开的原因，闭合时为 null */
+    public String getReason(Breaker breaker) { return reasons[breaker.ordinal()]; }
+
+    /** @return 该熔断器累计断开的次数 */
+    public int getTrips(Breaker breaker) { return trips[breaker.ordinal()]; }
+
+    /** @return 累计成功重建的次数 */
+    public int getRebuilds() { return rebuilds; }
+
+    /** @return 距离下一次重建的 Tick 数，没有计划时为 -1 */
+    public long getTicksUntilRebuild() { return rebuildAt < 0 ? -1 : Math.max(0, rebuildAt - tick); }
+}
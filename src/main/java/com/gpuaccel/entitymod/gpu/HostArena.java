@@ -0,0 +1,231 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 堆外 Host 内存的统一分配器，模组持有的所有本地缓冲区都经由这里分配和释放。
+ * <p>
+ * 申请按 2 的幂分为大小等级：小于 {@link #SLAB_BYTES} 的等级从整块 slab 中切分，
+ * 更大的等级单独分配；释放的块进入等级空闲链表，缓冲区扩容时旧块可被后续同等级的申请复用。
+ * 超过 {@link #LARGE_BYTES} 的申请 (费洛蒙网格等) 按实际大小分配、释放时直接归还。
+ * </p>
+ * <p>
+ * 按子系统统计存活字节数，并统计进程实际占用的本地内存 (slab、存活块与缓存块)，
+ * 可与 JVM 堆一起查看模组占用的内存。服务器停止时 {@link #shutdown()} 报告未释放的缓冲区。
+ * </p>
+ * <p>
+ * 线程安全：驱动线程与 CPU 后端的工作线程也会释放缓冲区。
+ * </p>
+ */
+public final class HostArena {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 最小等级 (64 字节) */
+    private static final int MIN_CLASS = 6;
+    /** slab 大小，更小的等级从 slab 中切分 */
+    public static final int SLAB_BYTES = 64 * 1024;
+    /** 超过该大小的申请不分等级、不缓存 */
+    public static final long LARGE_BYTES = 8L * 1024 * 1024;
+    /** 空闲链表中单独分配的块的总字节数上限，超出部分直接归还 */
+    private static final long CACHE_LIMIT = 64L * 1024 * 1024;
+
+    /**
+     * @param sizeClass 大小等级 (log2)，按实际大小分配的大块为 -1
+     * @param reserved 实际占用的字节数
+     */
+    private record Block(long address, int sizeClass, Subsystem subsystem, long bytes, long reserved) {}
+
+    private static final Map<Long, Block> live = new HashMap<>();
+    private static final List<ArrayDeque<Long>> free = new ArrayList<>();
+    private static final List<Long> slabs = new ArrayList<>();
+    private static final long[] liveBySubsystem = new long[Subsystem.values().length];
+    private static long liveBytes = 0;
+    private static long peakBytes = 0;
+    /** slab + 单独分配的块 (含缓存) */
+    private static long pinnedBytes = 0;
+    private static long cachedBytes = 0;
+    private static long allocations = 0;
+    private static long reuses = 0;
+
+    static {
+        for (int i = 0; i < 64; i++) free.add(new ArrayDeque<>());
+    }
+
+    private HostArena() {}
+
+    /** 分配 bytes 字节，内容未定义 */
+    public static ByteBuffer alloc(Subsystem subsystem, int bytes) {
+        return MemoryUtil.memByteBuffer(allocAddress(subsystem, bytes), bytes);
+    }
+
+    /** 分配 bytes 字节并清零 */
+    public static ByteBuffer calloc(Subsystem subsystem, int bytes) {
+        long address = allocAddress(subsystem, bytes);
+        MemoryUtil.memSet(address, 0, bytes);
+        return MemoryUtil.memByteBuffer(address, bytes);
+    }
+
+    public static FloatBuffer allocFloat(Subsystem subsystem, int count) {
+        return MemoryUtil.memFloatBuffer(allocAddress(subsystem, (long) count * 4), count);
+    }
+
+    public static FloatBuffer callocFloat(Subsystem subsystem, int count) {
+        long address = allocAddress(subsystem, (long) count * 4);
+        MemoryUtil.memSet(address, 0, (long) count * 4);
+        return MemoryUtil.memFloatBuffer(address, count);
+    }
+
+    public static IntBuffer allocInt(Subsystem subsystem, int count) {
+        return MemoryUtil.memIntBuffer(allocAddress(subsystem, (long) count * 4), count);
+    }
+
+    public static IntBuffer callocInt(Subsystem subsystem, int count) {
+        long address = allocAddress(subsystem, (long) count * 4);
+        MemoryUtil.memSet(address, 0, (long) count * 4);
+        return MemoryUtil.memIntBuffer(address, count);
+    }
+
+    public static ShortBuffer allocShort(Subsystem subsystem, int count) {
+        return MemoryUtil.memShortBuffer(allocAddress(subsystem, (long) count * 2), count);
+    }
+
+    /**
+     * 释放由本类分配的缓冲区；null 忽略。
+     *
+     * @throws IllegalArgumentException 缓冲区不是由本类分配，或已经释放
+     */
+    public static synchronized void free(Buffer buffer) {
+        if (buffer == null) return;
+        long address = MemoryUtil.memAddress0(buffer);
+        Block block = live.remove(address);
+        if (block == null) throw new IllegalArgumentException("缓冲区不是由 HostArena 分配或已释放: 0x" + Long.toHexString(address));
+        liveBySubsystem[block.subsystem().ordinal()] -= block.bytes();
+        liveBytes -= block.bytes();
+
+        if (block.sizeClass() < 0) {
+            MemoryUtil.nmemFree(address);
+            pinnedBytes -= block.reserved();
+        } else if (block.reserved() < SLAB_BYTES || cachedBytes + block.reserved() <= CACHE_LIMIT) {
+            free.get(block.sizeClass()).push(address);
+            if (block.reserved() >= SLAB_BYTES) cachedBytes += block.reserved();
+        } else {
+            MemoryUtil.nmemFree(address);
+            pinnedBytes -= block.reserved();
+        }
+    }
+
+    private static synchronized long allocAddress(Subsystem subsystem, long bytes) {
+        allocations++;
+        long address;
+        int sizeClass;
+        long reserved;
+        if (bytes > LARGE_BYTES) {
+            sizeClass = -1;
+            reserved = bytes;
+            address = nativeAlloc(bytes);
+        } else {
+            sizeClass = Math.max(MIN_CLASS, 64 - Long.numberOfLeadingZeros(Math.max(1, bytes) - 1));
+            reserved = 1L << sizeClass;
+            ArrayDeque<Long> list = free.get(sizeClass);
+            if (list.isEmpty()) {
+                if (reserved < SLAB_BYTES) {
+                    // 整块 slab 切成同一等级
+                    long slab = nativeAlloc(SLAB_BYTES);
+                    slabs.add(slab);
+                    for (long off = SLAB_BYTES - reserved; off >= 0; off -= reserved) list.push(slab + off);
+                    address = list.pop();
+                } else {
+                    address = nativeAlloc(reserved);
+                }
+            } else {
+                address = list.pop();
+                reuses++;
+                if (reserved >= SLAB_BYTES) cachedBytes -= reserved;
+            }
+        }
+        live.put(address, new Block(address, sizeClass, subsystem, bytes, reserved));
+        liveBySubsystem[subsystem.ordinal()] += bytes;
+        liveBytes += bytes;
+        peakBytes = Math.max(peakBytes, liveBytes);
+        return address;
+    }
+
+    private static long nativeAlloc(long bytes) {
+        long address = MemoryUtil.nmemAlloc(bytes);
+        if (address == 0L) throw new OutOfMemoryError("无法分配 " + bytes + " 字节的本地内存");
+        pinnedBytes += bytes;
+        return address;
+    }
+
+    /**
+     * 服务器停止时调用：报告仍未释放的缓冲区，并归还缓存的块。
+     * 存在未释放的小块时 slab 保留不动，避免其持有者访问已释放的内存。
+     */
+    public static synchronized void shutdown() {
+        if (!live.isEmpty()) {
+            long[] counts = new long[Subsystem.values().length];
+            boolean slabInUse = false;
+            for (Block b : live.values()) {
+                counts[b.subsystem().ordinal()]++;
+                if (b.reserved() < SLAB_BYTES && b.sizeClass() >= 0) slabInUse = true;
+            }
+            for (Subsystem s : Subsystem.values()) {
+                if (counts[s.ordinal()] > 0) {
+                    LOGGER.warn("本地内存泄漏: {} 仍有 {} 个缓冲区未释放，共 {} KB",
+                        s.label(), counts[s.ordinal()], liveBySubsystem[s.ordinal()] / 1024);
+                }
+            }
+            trim(!slabInUse);
+        } else {
+            trim(true);
+        }
+        LOGGER.info("本地内存: 峰值 {} MB，分配 {} 次，复用 {} 次", peakBytes / 1024 / 1024, allocations, reuses);
+    }
+
+    private static void trim(boolean releaseSlabs) {
+        for (int c = 0; c < free.size(); c++) {
+            ArrayDeque<Long> list = free.get(c);
+            long size = 1L << c;
+            if (size < SLAB_BYTES) {
+                if (releaseSlabs) list.clear();
+                continue;
+            }
+            for (long address : list) MemoryUtil.nmemFree(address);
+            pinnedBytes -= size * list.size();
+            list.clear();
+        }
+        cachedBytes = 0;
+        if (releaseSlabs) {
+            for (long slab : slabs) MemoryUtil.nmemFree(slab);
+            pinnedBytes -= (long) SLAB_BYTES * slabs.size();
+            slabs.clear();
+        }
+    }
+
+    /** @return 当前存活的申请字节数 */
+    public static synchronized long getLive() { return liveBytes; }
+    /** @return 指定子系统当前存活的申请字节数 */
+    public static synchronized long getLive(Subsystem subsystem) { return liveBySubsystem[subsystem.ordinal()]; }
+    /** @return 实际占用的本地内存 (slab、存活块与缓存块) */
+    public static synchronized long getPinned() { return pinnedBytes; }
+    /** @return 历史最高存活字节数 */
+    public static synchronized long getPeak() { return peakBytes; }
+    /** @return 累计分配次数 */
+    public static synchronized long getAllocations() { return allocations; }
+    /** @return 从空闲链表复用的次数 */
+    public static synchronized long getReuses() { return reuses; }
+}
@@ -0,0 +1,68 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.ai.VoxelManager;
+
+/**
+ * 群体行为内核的编译期特化参数。
+ * <p>
+ * 网格尺寸在一次运行中不变，以 {@code -D} 常量代替参数块中的运行时整数，编译器可以折叠下标计算；
+ * 可选行为以开关编译，世界中用不到的路径不进入生成代码。不带任何选项构建时，
+ * 内核源码中的默认值就是完整的运行时版本 (见 SwarmKernelSource)。
+ * </p>
+ * <p>
+ * {@link #options()} 同时是后端变体缓存的键，并与源码一起决定程序二进制缓存的文件名。
+ * </p>
+ *
+ * @param voxelSize 体素地图边长
+ * @param pheroSizeXZ 费洛蒙网格水平边长
+ * @param pheroSizeY 费洛蒙网格高度
+ * @param pheroChannels 费洛蒙通道数
+ * @param scentTrails 写入自身气味并编译 TFC 嗅觉逻辑
+ * @param attractors 飞行生物搜索吸引点 (花朵 / 蜂巢)
+ * @param obstacleRays 飞行生物射线避障
+ * @param fastMath 以 -cl-fast-relaxed-math 构建
+ */
+public record KernelVariant(int voxelSize, int pheroSizeXZ, int pheroSizeY, int pheroChannels,
+                            boolean scentTrails, boolean attractors, boolean obstacleRays, boolean fastMath) {
+
+    /** 按当前的费洛蒙网格规划创建变体，体素尺寸与通道数取 VoxelManager 常量 */
+    public static KernelVariant of(DeviceMemoryBudget.FieldPlan fields,
+                                   boolean scentTrails, boolean attractors, boolean obstacleRays, boolean fastMath) {
+        return new KernelVariant(VoxelManager.VOXEL_SIZE, fields.pheroSizeXZ(), fields.pheroSizeY(), VoxelManager.PHERO_CHANNELS,
+            scentTrails, attractors, obstacleRays, fastMath);
+    }
+
+    /** @return clBuildProgram 的构建选项 */
+    public String options() {
+        StringBuilder sb = new StringBuilder()
+            .append("-D VOXEL_SIZE=").append(voxelSize)
+            .append(" -D PHERO_XZ=").append(pheroSizeXZ)
+            .append(" -D PHERO_Y=").append(pheroSizeY)
+            .append(" -D PHERO_CHANNELS=").append(pheroChannels)
+            .append(" -D ENABLE_SCENT_TRAILS=").append(scentTrails ? 1 : 0)
+            .append(" -D ENABLE_ATTRACTORS=").append(attractors ? 1 : 0)
+            .append(" -D ENABLE_OBSTACLE_RAYS=").append(obstacleRays ? 1 : 0);
+        if (fastMath) sb.append(" -cl-fast-relaxed-math");
+        return sb.toString();
+    }
+
+    public KernelVariant withScentTrails(boolean on) {
+        return new KernelVariant(voxelSize, pheroSizeXZ, pheroSizeY, pheroChannels, on, attractors, obstacleRays, fastMath);
+    }
+
+    public KernelVariant withAttractors(boolean on) {
+        return new KernelVariant(voxelSize, pheroSizeXZ, pheroSizeY, pheroChannels, scentTrails, on, obstacleRays, fastMath);
+    }
+
+    public KernelVariant withFastMath(boolean on) {
+        return new KernelVariant(voxelSize, pheroSizeXZ, pheroSizeY, pheroChannels, scentTrails, attractors, obstacleRays, on);
+    }
+
+    /** @return 用于日志与统计的简短描述 */
+    public String describe() {
+        return String.format("气味=%s 吸引点=%s 射线避障=%s 快速数学=%s",
+            onOff(scentTrails), onOff(attractors), onOff(obstacleRays), onOff(fastMath));
+    }
+
+    private static String onOff(boolean b) { return b ? "开" : "关"; }
+}
@@ -0,0 +1,157 @@
+package com.gpuaccel.entitymod.gpu;
+
+/**
+ * 飞行与水生生物的 Verlet 邻居表 (跨帧缓存)。
+ * <p>
+ * 每个槽位在设备上保存一段定长的邻居表，收录构建时距离在作用半径 + {@link #SKIN} 以内的候选：
+ * 飞行生物收录任意类型 (作用半径 {@link #FLYER_RADIUS})，水生生物只收录水生生物 (作用半径 {@link #SWIMMER_RADIUS})。
+ * 每帧先以 nbr_max_displacement 归约出本帧出现的实体自上次构建以来的最大位移，只有超过半个 skin
+ * (或槽位上的实体发生变化) 时 nbr_build 才从空间哈希网格重建邻居表，否则沿用上次的结果：
+ * 任何实体移动不超过半个 skin 时，当前处于作用半径内的实体对在构建时必然处于表半径内。
+ * 是否重建的判断完全在设备上完成，Host 不需要回读。
+ * </p>
+ * <p>
+ * 飞行生物的表半径超过网格边长，构建时遍历 5x5x5 格；水生生物仍只遍历 27 格。
+ * 行为逻辑只遍历一段连续的短表，并按本帧的类型跳过构建后离开或本帧未出现的槽位。
+ * </p>
+ * <p>
+ * 多个维度共用槽位空间：本帧未出现的槽位 (类型为 -1) 不参与归约，也不重建，其邻居表留待所在维度的下一帧使用。
+ * 表中记录的是槽位号，槽位重映射、实体重新出现或槽位上界变化后由 Host 清除全部构建标记 (见 refTag)，
+ * 各槽位在所在维度的下一帧重建。
+ * </p>
+ */
+public final class NeighbourList {
+    /** 飞行生物 Boids 的作用半径 (方块)，与 FlyerLogic 中的 dSq < 64 一致 */
+    public static final float FLYER_RADIUS = 8.0f;
+    /** 水生生物 Boids 的作用半径 (方块)，与 SwimmerLogic 中的 visRadSq 一致 */
+    public static final float SWIMMER_RADIUS = 4.0f;
+    /** skin 边距 (方块) */
+    public static final float SKIN = 2.0f;
+    /** 每个槽位的邻居表长度，与网格查询原有的候选上限相同 */
+    public static final int MAX_NEIGHBOURS = SpatialGrid.MAX_CANDIDATES;
+    /** nbr_max_displacement 的工作组大小，与内核中的 NBR_REDUCE_GROUP 一致 */
+    public static final int REDUCE_GROUP = 256;
+    /** 触发重建的位移平方阈值 (半个 skin) */
+    public static final float REBUILD_DISP_SQ = (SKIN * 0.5f) * (SKIN * 0.5f);
+
+    /** 水生生物的实体类型 */
+    public static final int TYPE_SWIMMER = 5;
+
+    /** OpenCL 端的常量、位移归约与邻居表构建内核，需在 SpatialGrid.CL_COMMON 之后定义 */
+    public static final String CL_SRC = """
+        #define NBR_FLYER_LIST_RADIUS %s
+        #define NBR_SWIMMER_LIST_RADIUS %s
+        #define NBR_REBUILD_DISP_SQ %s
+        #define NBR_MAX %d
+        #define NBR_REDUCE_GROUP %d
+
+        // 表半径对应的格子遍历范围 (每个方向)
+        int nbr_cell_range(float radius) {
+            return (int)ceil(radius / GRID_CELL_SIZE);
+        }
+
+        // 各工作组在局部内存中归约出组内最大位移平方，再以 atomic_max 合并到 maxDisp
+        // (非负 float 的位模式与数值次序一致)；Host 入队前将 maxDisp 清零
+        __kernel __attribute__((reqd_work_group_size(NBR_REDUCE_GROUP, 1, 1)))
+        void nbr_max_displacement(
+            __global const float* positions,
+            __global const int* entityTypes,
+            const int count,
+            __global const float* refPos,      // 上次构建时的位置
+            __global const int* refTag,        // 上次构建时的类型 + 1，0 表示需要重建
+            volatile __global int* maxDisp
+        ) {
+            __local float part[NBR_REDUCE_GROUP];
+            int gid = get_global_id(0);
+            int lid = get_local_id(0);
+
+            float d = 0.0f;
+            if (gid < count) {
+                int type = entityTypes[gid];
+                if (type >= 0) { // 本帧未出现的槽位保留原有的表
+                    if (refTag[gid] != type + 1) d = INFINITY; // 槽位换了实体或标记已清除
+                    else {
+                        float3 diff = vload3(gid, positions) - vload3(gid, refPos);
+                        d = dot(diff, diff);
+                    }
+                }
+            }
+            part[lid] = d;
+            barrier(CLK_LOCAL_MEM_FENCE);
+            for (int s = NBR_REDUCE_GROUP / 2; s > 0; s >>= 1) {
+                if (lid < s) part[lid] = max(part[lid], part[lid + s]);
+                barrier(CLK_LOCAL_MEM_FENCE);
+            }
+            if (lid == 0) atomic_max(maxDisp, as_int(part[0]));
+        }
+
+        __kernel void nbr_build(
+            __global const float* positions,
+            __global const int* entityTypes,
+            const int count,
+            __global const int* gridStart,
+            __global const int* gridEnd,
+            __global const int* gridOrder,
+            __global const int* maxDisp,
+            __global float* refPos,
+            __global int* refTag,
+            __global int* nbrList,             // 每槽位 NBR_MAX 项
+            __global int* nbrCount
+        ) {
+            if (as_float(maxDisp[0]) <= NBR_REBUILD_DISP_SQ) return; // 沿用上次的邻居表
+            int gid = get_global_id(0);
+            if (gid >= count) return;
+            int type = entityTypes[gid];
+            if (type < 0) return;
+
+            float3 pos = vload3(gid, positions);
+            refTag[gid] = type + 1;
+            vstore3(pos, gid, refPos);
+
+            bool swimmer = type == 5;
+            bool flyer = type != 1 && type != 2 && type != 4 && !swimmer;
+            int n = 0;
+            if (flyer || swimmer) {
+                float radius = swimmer ? NBR_SWIMMER_LIST_RADIUS : NBR_FLYER_LIST_RADIUS;
+                float listSq = radius * radius;
+                int r = nbr_cell_range(radius);
+                int3 cell = grid_cell(pos);
+                for (int dz=-r; dz<=r && n<NBR_MAX; dz++)
+                for (int dy=-r; dy<=r && n<NBR_MAX; dy++)
+                for (int dx=-r; dx<=r && n<NBR_MAX; dx++) {
+                    int3 nc = cell + (int3)(dx, dy, dz);
+                    int h = grid_hash(nc);
+                    int end = gridEnd[h];
+                    for (int s = gridStart[h]; s < end && n < NBR_MAX; s++) {
+                        int i = gridOrder[s]; // 网格中只有本帧出现的槽位
+                        if (i == gid || (swimmer && entityTypes[i] != 5)) continue;
+                        float3 oPos = vload3(i, positions);
+                        if (any(grid_cell(oPos) != nc)) continue; // 哈希到同一桶的其他格子
+                        float3 diff = oPos - pos;
+                        if (dot(diff, diff) < listSq) nbrList[gid * NBR_MAX + n++] = i;
+                    }
+                }
+            }
+            nbrCount[gid] = n;
+        }
+    """.formatted((FLYER_RADIUS + SKIN) + "f", (SWIMMER_RADIUS + SKIN) + "f", REBUILD_DISP_SQ + "f",
+        MAX_NEIGHBOURS, REDUCE_GROUP);
+
+    private NeighbourList() {}
+
+    /** @return 该类型是否使用邻居表 (飞行与水生生物) */
+    public static boolean usesList(int type) {
+        return type >= 0 && type != 1 && type != 2 && type != 4;
+    }
+
+    /** @return 该类型的邻居表收录半径，类型不使用邻居表时为 0 */
+    public static float listRadius(int type) {
+        if (!usesList(type)) return 0f;
+        return (type == TYPE_SWIMMER ? SWIMMER_RADIUS : FLYER_RADIUS) + SKIN;
+    }
+
+    /** @return 表半径对应的格子遍历范围 (每个方向)，与内核中的 nbr_cell_range 一致 */
+    public static int cellRange(float radius) {
+        return (int) Math.ceil(radius / SpatialGrid.CELL_SIZE);
+    }
+}
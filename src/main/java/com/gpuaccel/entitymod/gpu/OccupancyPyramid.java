@@ -0,0 +1,81 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.ai.VoxelManager;
+
+/**
+ * 体素地图的占用金字塔。
+ * <p>
+ * 紧接在体素数据 (size³ 字节) 之后存放两级占用表：第一级每 4³ 体素一个字节，第二级每 16³ 体素一个字节，
+ * 非 0 表示砖块内有固体方块。体素上传后由 occupancy_build_l1 / occupancy_build_l2 在设备上重建。
+ * 与体素放在同一缓冲区中，cast_ray 的所有调用方无需额外参数即可读取。
+ * </p>
+ * <p>
+ * cast_ray 进入空砖块后只推进 DDA、不再读取体素，直到离开该砖块；步进算术与逐格遍历完全相同，
+ * 结果逐位一致，只是空旷区域的显存读取从每格一次降为每个砖块一次。
+ * </p>
+ */
+public final class OccupancyPyramid {
+    /** 第一级砖块边长的位移 (4³) */
+    public static final int L1_SHIFT = 2;
+    /** 第二级砖块边长的位移 (16³) */
+    public static final int L2_SHIFT = 4;
+    /** 体素缓冲区 (含占用金字塔) 的字节数 */
+    public static final int VOXEL_BUFFER_BYTES = bytes(VoxelManager.VOXEL_SIZE);
+
+    /** 体素上传后重建占用金字塔的内核，独立编译 */
+    public static final String CL_SRC = """
+        #define OCC_SOLID %d
+
+        // 每个工作项汇总一个 4³ 砖块，砖块索引布局与体素一致 (x + z*d + y*d*d)
+        __kernel void occupancy_build_l1(__global char* voxels, const int size) {
+            int b = get_global_id(0);
+            int d = size >> 2;
+            if (b >= d * d * d) return;
+            int bx = b %% d, bz = (b / d) %% d, by = b / (d * d);
+            char occ = 0;
+            for (int y = 0; y < 4; y++)
+            for (int z = 0; z < 4; z++)
+            for (int x = 0; x < 4; x++) {
+                int v = (bx * 4 + x) + (bz * 4 + z) * size + (by * 4 + y) * size * size;
+                occ |= (voxels[v] == OCC_SOLID);
+            }
+            voxels[size * size * size + b] = occ;
+        }
+
+        // 每个工作项汇总 4³ 个第一级砖块 (即 16³ 体素)
+        __kernel void occupancy_build_l2(__global char* voxels, const int size) {
+            int b = get_global_id(0);
+            int d = size >> 4;
+            if (b >= d * d * d) return;
+            int d1 = size >> 2;
+            __global const char* l1 = voxels + size * size * size;
+            int bx = b %% d, bz = (b / d) %% d, by = b / (d * d);
+            char occ = 0;
+            for (int y = 0; y < 4; y++)
+            for (int z = 0; z < 4; z++)
+            for (int x = 0; x < 4; x++) {
+                occ |= l1[(bx * 4 + x) + (bz * 4 + z) * d1 + (by * 4 + y) * d1 * d1];
+            }
+            voxels[size * size * size + d1 * d1 * d1 + b] = occ;
+        }
+    """.formatted(VoxelManager.VOXEL_SOLID);
+
+    private OccupancyPyramid() {}
+
+    /** @return 边长为 size 的体素地图连同占用金字塔的字节数 */
+    public static int bytes(int size) {
+        return size * size * size + l1Count(size) + l2Count(size);
+    }
+
+    /** @return 第一级砖块数 */
+    public static int l1Count(int size) {
+        int d = size >> L1_SHIFT;
+        return d * d * d;
+    }
+
+    /** @return 第二级砖块数 */
+    public static int l2Count(int size) {
+        int d = size >> L2_SHIFT;
+        return d * d * d;
+    }
+}
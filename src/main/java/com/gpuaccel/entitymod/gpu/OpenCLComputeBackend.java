@@ -0,0 +1,582 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.ai.FlowFieldKernelSource;
+import com.gpuaccel.entitymod.ai.SwarmKernelSource;
+import com.gpuaccel.entitymod.ai.VoxelManager;
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import com.gpuaccel.entitymod.gpu.driver.KernelArgCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.*;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jocl.CL.*;
+
+/**
+ * 基于 OpenCL 的群体计算后端。
+ * <p>
+ * 持有 Swarm 与流场内核，负责内核参数组装 (经由 {@link ClDriver}) 和费洛蒙 Ping-Pong 切换；
+ * 显存与传输仍由 {@link GPUManager} 管理。
+ * </p>
+ * <p>
+ * 主内核为每个流水线槽位各创建一个实例，标量参数通过 {@link SwarmUniforms} 参数块上传，
+ * 缓冲区参数经 {@link KernelArgCache} 绑定，只在缓冲区重新分配时才重新设置。
+ * </p>
+ * <p>
+ * 默认按 {@link TypeBuckets} 为每种移动类型各入队一个专用内核，只处理排序后属于该类型的槽位；
+ * 分桶内核编译失败时退回按槽位遍历的混合内核。
+ * </p>
+ * <p>
+ * 行为内核按 {@link KernelVariant} 以 {@code -D} 选项特化构建，已构建的变体按选项缓存。
+ * 每帧根据配置与世界内容 (是否有吸引点、是否有会留下气味的生物) 选择变体，内容消失后保持
+ * {@link #FEATURE_HOLD_FRAMES} 帧再切换，避免反复重建。快速数学变体在首次使用前与精确变体
+ * 在同一帧输入上比对一次输出 (异步进行，结果就绪前使用精确变体)，未通过时本次运行只使用精确变体。
+ * </p>
+ */
+public class OpenCLComputeBackend implements ComputeBackend {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final GPUManager gpuManager;
+    /** calculateSwarmBehavior 的参数个数 */
+    private static final int SWARM_ARG_COUNT = 21;
+    // 校验时替换为临时缓冲区的参数位置 (见 bindSwarmBuffers)
+    private static final int ARG_OUTPUTS = 2;
+    private static final int ARG_PREV_POSITIONS = 10;
+    private static final int ARG_STUCK_TIMER = 11;
+    private static final int ARG_BEE_STATES = 14;
+
+    /** 某项世界内容消失后继续使用含该路径的变体的帧数 */
+    private static final int FEATURE_HOLD_FRAMES = 600;
+    /** 快速数学校验所需的最少槽位数，实体太少时推迟校验 */
+    private static final int VALIDATION_MIN_SLOTS = 64;
+    /** 快速数学校验允许超出容差的分量比例 */
+    private static final double VALIDATION_MAX_MISMATCH = 0.01;
+
+    /**
+     * 一个构建变体的行为内核。
+     *
+     * @param mixed 每个流水线槽位一个混合内核实例及其绑定缓存
+     * @param buckets 每个流水线槽位一组分桶内核 (按 TypeBuckets 索引)，参数为主内核参数加排序后的槽位表；为 null 时使用混合内核
+     */
+    private record BehaviourKernels(KernelVariant variant, KernelArgCache[] mixed, KernelArgCache[][] buckets) {}
+
+    /**
+     * 一次在途的快速数学校验。
+     *
+     * @param options 快速数学变体的构建选项
+     * @param scratch 精确输出、快速输出、prevPositions、stuckTimer、beeStates 的临时缓冲区
+     * @param reads 两次输出回读的事件
+     */
+    private record PendingValidation(String options, int n, cl_mem[] scratch,
+                                     FloatBuffer expected, FloatBuffer actual, cl_event[] reads) {}
+
+    private final ClDriver driver;
+    // 配置决定的变体开关
+    private final boolean scentTrails;
+    private final boolean obstacleRays;
+    private final boolean fastMath;
+
+    /** 已构建的变体，按构建选项缓存 */
+    private final Map<String, BehaviourKernels> variants = new HashMap<>();
+    /** 构建失败的变体选项，不再重试 */
+    private final Set<String> failedVariants = new HashSet<>();
+    /** 快速数学变体的校验结果，按构建选项记录 */
+    private final Map<String, Boolean> fastMathChecks = new HashMap<>();
+    /** 在途的快速数学校验，同一时间最多一次 */
+    private PendingValidation pendingValidation;
+    /** 初始变体，其余变体只在世界内容相关的开关与快速数学上不同 */
+    private KernelVariant baseVariant;
+    private BehaviourKernels active;
+
+    private int frameCounter = 0;
+    private int lastAttractorFrame = 0;
+    private int lastScentFrame = 0;
+    private cl_kernel diffuseKernel;
+    private cl_kernel injectKernel;
+    private cl_kernel remapKernel;
+    private cl_kernel scatterKernel;
+    private cl_kernel maskKernel;
+    private cl_kernel compactKernel;
+    // 空间哈希网格构建内核 (见 SpatialGrid)
+    private cl_kernel gridAssignKernel;
+    private cl_kernel gridScanKernel;
+    private cl_kernel gridScatterKernel;
+    // Verlet 邻居表内核 (见 NeighbourList)
+    private cl_kernel nbrDisplacementKernel;
+    private cl_kernel nbrBuildKernel;
+
+    // 流场相关内核
+    private cl_kernel resetCostKernel;
+    private cl_kernel spreadCostKernel;
+    private cl_kernel genVectorKernel;
+
+    // 费洛蒙 Ping-Pong 双缓冲开关
+    private boolean usePingForRead = true;
+
+    /**
+     * @param scentTrails 是否允许含气味写入的变体
+     * @param obstacleRays 飞行生物是否使用射线避障
+     * @param fastMath 是否尝试快速数学变体
+     */
+    public OpenCLComputeBackend(GPUManager gpuManager, boolean scentTrails, boolean obstacleRays, boolean fastMath) {
+        this.gpuManager = gpuManager;
+        this.driver = gpuManager.getDriver();
+        this.scentTrails = scentTrails;
+        this.obstacleRays = obstacleRays;
+        this.fastMath = fastMath;
+        initializeKernels();
+    }
+
+    private void initializeKernels() {
+        if (!gpuManager.isGPUAvailable()) return;
+        try {
+            // 初始变体包含全部由世界内容决定的路径，之后按内容裁剪；辅助内核取自同一程序
+            baseVariant = KernelVariant.of(gpuManager.getFieldPlan(), scentTrails, true, obstacleRays, false);
+            active = buildVariant(baseVariant);
+            String source = SwarmKernelSource.getSource();
+            String options = baseVariant.options();
+            diffuseKernel = gpuManager.compileKernel(source, options, "diffuse_pheromones");
+            injectKernel = gpuManager.compileKernel(source, options, "inject_stimuli");
+            remapKernel = gpuManager.compileKernel(source, options, "remap_entity_slots");
+            scatterKernel = gpuManager.compileKernel(source, options, "scatter_entity_rows");
+            maskKernel = gpuManager.compileKernel(source, options, "apply_slot_mask");
+            compactKernel = gpuManager.compileKernel(source, options, "compact_outputs");
+            gridAssignKernel = gpuManager.compileKernel(source, options, "grid_assign_cells");
+            gridScanKernel = gpuManager.compileKernel(source, options, "grid_scan_cells");
+            gridScatterKernel = gpuManager.compileKernel(source, options, "grid_scatter");
+            nbrDisplacementKernel = gpuManager.compileKernel(source, options, "nbr_max_displacement");
+            nbrBuildKernel = gpuManager.compileKernel(source, options, "nbr_build");
+
+            String flowSrc = FlowFieldKernelSource.getSource(gpuManager.getFieldPlan().flowShift());
+            resetCostKernel = gpuManager.compileKernel(flowSrc, "k_resetCostField");
+            spreadCostKernel = gpuManager.compileKernel(flowSrc, "k_spreadCostField");
+            genVectorKernel = gpuManager.compileKernel(flowSrc, "k_generateVectorField");
+
+            LOGGER.info("Swarm AI 内核编译成功。");
+        } catch (Exception e) {
+            LOGGER.error("Swarm AI 内核编译失败", e);
+        }
+    }
+
+    /**
+     * 构建一个变体的混合内核与分桶内核并加入缓存。
+     *
+     * @throws RuntimeException 混合内核编译失败
+     */
+    private BehaviourKernels buildVariant(KernelVariant variant) {
+        String source = SwarmKernelSource.getSource();
+        String options = variant.options();
+        KernelArgCache[] mixed = new KernelArgCache[gpuManager.getPipelineSlots()];
+        try {
+            for (int i = 0; i < mixed.length; i++) {
+                // 同一源码与选项只构建一次程序，这里只是创建多个内核对象
+                mixed[i] = new KernelArgCache(gpuManager.compileKernel(source, options, "calculateSwarmBehavior"), SWARM_ARG_COUNT);
+            }
+        } catch (RuntimeException e) {
+            for (KernelArgCache k : mixed) if (k != null) gpuManager.releaseKernel(k.kernel());
+            throw e;
+        }
+        BehaviourKernels kernels = new BehaviourKernels(variant, mixed, compileBucketKernels(source, options));
+        variants.put(options, kernels);
+        LOGGER.info("群体内核变体已就绪: {}", variant.describe());
+        return kernels;
+    }
+
+    /** @return 变体的内核，必要时现场构建；构建失败时返回 null 且不再重试 */
+    private BehaviourKernels variantFor(KernelVariant variant) {
+        String options = variant.options();
+        BehaviourKernels kernels = variants.get(options);
+        if (kernels != null || failedVariants.contains(options)) return kernels;
+        try {
+            return buildVariant(variant);
+        } catch (RuntimeException e) {
+            LOGGER.warn("群体内核变体构建失败 ({})，继续使用当前变体", variant.describe(), e);
+            failedVariants.add(options);
+            return null;
+        }
+    }
+
+    private KernelArgCache[][] compileBucketKernels(String source, String options) {
+        KernelArgCache[][] kernels = new KernelArgCache[gpuManager.getPipelineSlots()][TypeBuckets.COUNT];
+        try {
+            for (KernelArgCache[] slot : kernels) {
+                for (int b = 0; b < TypeBuckets.COUNT; b++) {
+                    slot[b] = new KernelArgCache(gpuManager.compileKernel(source, options, TypeBuckets.KERNELS[b]), SWARM_ARG_COUNT + 1);
+                }
+            }
+            return kernels;
+        } catch (Exception e) {
+            LOGGER.warn("分桶内核创建失败，使用混合内核", e);
+            releaseBucketKernels(kernels);
+            return null;
+        }
+    }
+
+    private void releaseBucketKernels(KernelArgCache[][] kernels) {
+        for (KernelArgCache[] slot : kernels) {
+            for (KernelArgCache k : slot) if (k != null) gpuManager.releaseKernel(k.kernel());
+        }
+    }
+
+    /**
+     * 按配置与本帧的世界内容选择变体；需在本帧参数块上传之后调用 (快速数学校验会运行内核)。
+     */
+    private BehaviourKernels selectVariant(SwarmFrameParams frame, int count, GPUManager.SwarmBuffers buffers) {
+        frameCounter++;
+        if (frame.attrCount() > 0) lastAttractorFrame = frameCounter;
+        if (frame.scentEmitters() > 0) lastScentFrame = frameCounter;
+        KernelVariant wanted = baseVariant
+            .withAttractors(frameCounter - lastAttractorFrame < FEATURE_HOLD_FRAMES)
+            .withScentTrails(scentTrails && frameCounter - lastScentFrame < FEATURE_HOLD_FRAMES);
+
+        BehaviourKernels selected = variantFor(wanted);
+        if (selected == null) return active;
+        if (fastMath) {
+            pollFastMathValidation();
+            KernelVariant fastVariant = wanted.withFastMath(true);
+            Boolean verdict = fastMathChecks.get(fastVariant.options());
+            BehaviourKernels fast = Boolean.FALSE.equals(verdict) ? null : variantFor(fastVariant);
+            if (fast != null && verdict == null && pendingValidation == null && count >= VALIDATION_MIN_SLOTS) {
+                startFastMathValidation(fastVariant.options(), selected, fast, count, buffers);
+            }
+            // 结果就绪之前保持精确变体
+            if (fast != null && Boolean.TRUE.equals(verdict)) selected = fast;
+        }
+        if (selected != active) {
+            LOGGER.info("切换群体内核变体: {}", selected.variant().describe());
+            active = selected;
+        }
+        return selected;
+    }
+
+    /**
+     * 在同一帧输入上分别入队精确与快速数学的混合内核，并异步回读两者输出的新速度。
+     * <p>
+     * 逐实体状态先复制到临时缓冲区再交给内核，两次运行看到相同的输入，也不改动常驻状态。
+     * 每个快速数学变体只在首次使用前校验一次；本帧不等待结果，由之后的 {@link #pollFastMathValidation} 判定。
+     * </p>
+     */
+    private void startFastMathValidation(String options, BehaviourKernels precise, BehaviourKernels fast,
+                                         int count, GPUManager.SwarmBuffers buffers) {
+        int slot = gpuManager.getActiveSlot();
+        DeviceMemoryBudget memory = gpuManager.getMemoryBudget();
+        int n = count * 3;
+        long vecBytes = (long) n * Sizeof.cl_float;
+        long intBytes = (long) count * Sizeof.cl_int;
+        cl_mem[] scratch = new cl_mem[5];
+        FloatBuffer expected = null;
+        FloatBuffer actual = null;
+        cl_event[] reads = new cl_event[2];
+        try {
+            scratch[0] = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, vecBytes);
+            scratch[1] = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, vecBytes);
+            scratch[2] = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, vecBytes);
+            scratch[3] = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, intBytes);
+            scratch[4] = memory.allocate(Subsystem.ENTITY, CL_MEM_READ_WRITE, intBytes);
+            expected = HostArena.allocFloat(Subsystem.STAGING, n);
+            actual = HostArena.allocFloat(Subsystem.STAGING, n);
+            reads[0] = shadowRun(precise.mixed()[slot], buffers, count, scratch[0], scratch, expected);
+            reads[1] = shadowRun(fast.mixed()[slot], buffers, count, scratch[1], scratch, actual);
+            driver.flush();
+            pendingValidation = new PendingValidation(options, n, scratch, expected, actual, reads);
+        } catch (RuntimeException e) {
+            LOGGER.warn("快速数学内核校验失败，使用精确构建", e);
+            fastMathChecks.put(options, false);
+            for (cl_event ev : reads) {
+                if (ev == null) continue;
+                driver.waitFor(ev);
+                driver.releaseEvent(ev);
+            }
+            for (cl_mem mem : scratch) memory.release(mem);
+            if (expected != null) HostArena.free(expected);
+            if (actual != null) HostArena.free(actual);
+        }
+    }
+
+    /**
+     * 非阻塞地检查在途校验；两次回读都已完成时比对输出、记录结果并释放临时缓冲区。
+     */
+    private void pollFastMathValidation() {
+        PendingValidation v = pendingValidation;
+        if (v == null) return;
+        try {
+            for (cl_event e : v.reads()) {
+                if (!driver.isComplete(e)) return;
+            }
+        } catch (CLException e) {
+            // 校验内核执行出错：不再使用快速数学构建，错误交由调用方上报看门狗
+            pendingValidation = null;
+            fastMathChecks.put(v.options(), false);
+            releaseValidation(v);
+            throw e;
+        }
+        pendingValidation = null;
+        try {
+            int mismatches = 0;
+            float worst = 0f;
+            for (int i = 0; i < v.n(); i++) {
+                float a = v.expected().get(i);
+                float diff = Math.abs(a - v.actual().get(i));
+                // NaN 也计为超差
+                if (!(diff <= 1e-3f + 1e-2f * Math.abs(a))) mismatches++;
+                if (diff > worst) worst = diff;
+            }
+            boolean passed = mismatches <= v.n() * VALIDATION_MAX_MISMATCH;
+            if (passed) {
+                LOGGER.info("快速数学内核校验通过: {} / {} 个分量超出容差，最大偏差 {}", mismatches, v.n(), worst);
+            } else {
+                LOGGER.warn("快速数学内核校验未通过: {} / {} 个分量超出容差，最大偏差 {}，使用精确构建", mismatches, v.n(), worst);
+            }
+            fastMathChecks.put(v.options(), passed);
+        } finally {
+            releaseValidation(v);
+        }
+    }
+
+    private void releaseValidation(PendingValidation v) {
+        for (cl_event e : v.reads()) driver.releaseEvent(e);
+        DeviceMemoryBudget memory = gpuManager.getMemoryBudget();
+        for (cl_mem mem : v.scratch()) memory.release(mem);
+        HostArena.free(v.expected());
+        HostArena.free(v.actual());
+    }
+
+    /**
+     * 以临时的输出与逐实体状态缓冲区入队一次混合内核，并异步回读新速度。
+     *
+     * @param output 本次运行的输出缓冲区
+     * @param scratch prevPositions、stuckTimer、beeStates 的临时缓冲区位于 [2, 4]
+     * @return 回读事件
+     */
+    private cl_event shadowRun(KernelArgCache k, GPUManager.SwarmBuffers buffers, int count, cl_mem output,
+                               cl_mem[] scratch, FloatBuffer dst) {
+        long vecBytes = (long) count * 3 * Sizeof.cl_float;
+        long intBytes = (long) count * Sizeof.cl_int;
+        // 队列按序执行，第二次运行前的复制会覆盖第一次运行改动过的状态副本
+        driver.copy(gpuManager.getPrevPositionsMem(), scratch[2], 0, 0, vecBytes);
+        driver.copy(gpuManager.getStuckTimerMem(), scratch[3], 0, 0, intBytes);
+        driver.copy(gpuManager.getBeeStatesMem(), scratch[4], 0, 0, intBytes);
+        // 空闲槽位不写输出，先清零使两次运行可比
+        driver.fill(output, 0f, vecBytes);
+
+        bindSwarmBuffers(k, buffers, currentPheromoneMem());
+        k.bind(driver, ARG_OUTPUTS, output);
+        k.bind(driver, ARG_PREV_POSITIONS, scratch[2]);
+        k.bind(driver, ARG_STUCK_TIMER, scratch[3]);
+        k.bind(driver, ARG_BEE_STATES, scratch[4]);
+        cl_event ran = driver.enqueueKernelAsync(k.kernel(), 1, new long[]{count}, null, null);
+        cl_event read = driver.readAsync(output, 0, vecBytes, dst, new cl_event[]{ran});
+        driver.releaseEvent(ran);
+        return read;
+    }
+
+    @Override
+    public String getName() {
+        return "OpenCL (" + gpuManager.getDeviceName() + ")";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return gpuManager.isGPUAvailable() && active != null;
+    }
+
+    @Override
+    public GPUManager.SwarmBuffers ensureSwarmBuffers(int entityCount) {
+        return gpuManager.ensureSwarmBuffers(entityCount);
+    }
+
+    @Override
+    public void uploadEntities(GPUManager.SwarmBuffers buffers) {
+        gpuManager.uploadSwarmFrame(buffers, scatterKernel, maskKernel);
+    }
+
+    @Override
+    public void remapEntitySlots(EntitySlotTable table) {
+        gpuManager.remapEntitySlots(table, remapKernel);
+    }
+
+    @Override
+    public void syncVoxels() {
+        if (VoxelManager.isDirty()) {
+            gpuManager.writeVoxelBuffer(VoxelManager.getVoxelBuffer());
+            VoxelManager.clearDirty();
+        }
+    }
+
+    @Override
+    public void writeAttrFromSensor() {
+        gpuManager.writeAttrFromSensor();
+    }
+
+    private cl_mem currentPheromoneMem() {
+        return usePingForRead ? gpuManager.getPheromoneMemA() : gpuManager.getPheromoneMemB();
+    }
+
+    @Override
+    public void injectStimuli(float[] positions, int[] channels, float[] values, int count) {
+        if (injectKernel == null) return;
+        gpuManager.injectStimuli(positions, channels, values, count, injectKernel, currentPheromoneMem());
+    }
+
+    @Override
+    public void diffusePheromones(float diffusionRate, float decayRate, float dt) {
+        if (diffuseKernel == null) return;
+        cl_mem inputMap = currentPheromoneMem();
+        cl_mem outputMap = usePingForRead ? gpuManager.getPheromoneMemB() : gpuManager.getPheromoneMemA();
+
+        int argIdx = 0;
+        driver.setArg(diffuseKernel, argIdx++, inputMap);
+        driver.setArg(diffuseKernel, argIdx++, outputMap);
+        DeviceMemoryBudget.FieldPlan fields = gpuManager.getFieldPlan();
+        driver.setArg(diffuseKernel, argIdx++, fields.pheroSizeXZ());
+        driver.setArg(diffuseKernel, argIdx++, fields.pheroSizeY());
+        driver.setArg(diffuseKernel, argIdx++, fields.pheroSizeXZ());
+        driver.setArg(diffuseKernel, argIdx++, diffusionRate);
+        driver.setArg(diffuseKernel, argIdx++, decayRate);
+        driver.setArg(diffuseKernel, argIdx++, dt);
+
+        gpuManager.executeTuned("diffuse_pheromones", diffuseKernel, fields.pheroVolume());
+
+        // 交换 Ping-Pong 缓冲区
+        usePingForRead = !usePingForRead;
+    }
+
+    @Override
+    public void updateFlowField(int fieldID, List<Integer> targets) {
+        gpuManager.updateFlowField(fieldID, targets, resetCostKernel, spreadCostKernel, genVectorKernel);
+    }
+
+    @Override
+    public void dispatchSwarm(int count, GPUManager.SwarmBuffers buffers, SwarmFrameParams frame) {
+        int slot = gpuManager.getActiveSlot();
+        gpuManager.uploadSwarmUniforms(count, frame);
+        // 网格排在全部上传之后、行为内核 (含快速数学校验) 之前
+        gpuManager.buildSpatialGrid(gridAssignKernel, gridScanKernel, gridScatterKernel, count);
+        gpuManager.updateNeighbourLists(nbrDisplacementKernel, nbrBuildKernel, count);
+        BehaviourKernels variant = selectVariant(frame, count, buffers);
+        cl_mem pheroMem = currentPheromoneMem();
+        if (variant.buckets() == null) {
+            KernelArgCache kernel = variant.mixed()[slot];
+            bindSwarmBuffers(kernel, buffers, pheroMem);
+            // 入队主内核、输出压缩与记录回读，并推进环形流水线
+            gpuManager.submitSwarmFrame(kernel.kernel(), compactKernel, count);
+            return;
+        }
+        TypeBuckets buckets = gpuManager.getTypeBuckets();
+        KernelArgCache[] kernels = variant.buckets()[slot];
+        cl_kernel[] handles = new cl_kernel[TypeBuckets.COUNT];
+        for (int b = 0; b < TypeBuckets.COUNT; b++) {
+            handles[b] = kernels[b].kernel();
+            if (buckets.size(b) == 0) continue;
+            bindSwarmBuffers(kernels[b], buffers, pheroMem);
+            kernels[b].bind(driver, SWARM_ARG_COUNT, gpuManager.getBucketOrderMem());
+        }
+        gpuManager.submitSwarmFrame(null, handles, compactKernel, count);
+    }
+
+    /**
+     * 绑定主内核的缓冲区参数；槽位内核固定对应一组槽位缓冲区，通常每帧只有费洛蒙读缓冲区会变化。
+     */
+    private void bindSwarmBuffers(KernelArgCache k, GPUManager.SwarmBuffers buffers, cl_mem pheroMem) {
+        int argIndex = 0;
+        k.bind(driver, argIndex++, gpuManager.getPositionsMem());
+        k.bind(driver, argIndex++, gpuManager.getVelocitiesMem());
+        k.bind(driver, argIndex++, buffers.outputsMem());
+        k.bind(driver, argIndex++, gpuManager.getEntityTypesMem());
+        k.bind(driver, argIndex++, buffers.playerPosMem());
+        k.bind(driver, argIndex++, gpuManager.getUniformsMem());
+
+        k.bind(driver, argIndex++, gpuManager.getAttrXMem());
+        k.bind(driver, argIndex++, gpuManager.getAttrYMem());
+        k.bind(driver, argIndex++, gpuManager.getAttrZMem());
+        k.bind(driver, argIndex++, gpuManager.getAttrTypeMem());
+
+        k.bind(driver, argIndex++, gpuManager.getPrevPositionsMem());
+        k.bind(driver, argIndex++, gpuManager.getStuckTimerMem());
+        k.bind(driver, argIndex++, pheroMem);
+        k.bind(driver, argIndex++, gpuManager.getVoxelMem());
+        k.bind(driver, argIndex++, gpuManager.getBeeStatesMem());
+        k.bind(driver, argIndex++, gpuManager.getParamsMem());
+
+        // --- 传递流场缓冲区 ---
+        k.bind(driver, argIndex++, gpuManager.getVectorFieldMem(GPUManager.FIELD_PLAYER));
+        k.bind(driver, argIndex++, gpuManager.getVectorFieldMem(GPUManager.FIELD_LIVESTOCK));
+        k.bind(driver, argIndex++, gpuManager.getVectorFieldMem(GPUManager.FIELD_FOOD));
+
+        // --- 空间哈希网格 ---
+        k.bind(driver, argIndex++, gpuManager.getNeighbourListMem());
+        k.bind(driver, argIndex++, gpuManager.getNeighbourCountMem());
+    }
+
+    @Override
+    public boolean syncOutputsFromPending() {
+        return gpuManager.syncOutputsFromPending();
+    }
+
+    @Override
+    public int getInFlightFrames() {
+        return gpuManager.getInFlightFrames();
+    }
+
+    @Override
+    public long getLastFrameNanos() {
+        return gpuManager.getLastFrameNanos();
+    }
+
+    @Override
+    public void discardPendingFrames() {
+        gpuManager.discardPendingFrames();
+    }
+
+    @Override
+    public IntBuffer getOutputRecords() {
+        return gpuManager.getOutputRecords();
+    }
+
+    @Override
+    public int getOutputRecordCount() {
+        return gpuManager.getOutputRecordCount();
+    }
+
+    @Override
+    public void cleanup() {
+        if (pendingValidation != null) {
+            try {
+                for (cl_event e : pendingValidation.reads()) driver.waitFor(e);
+            } catch (CLException ignored) {
+                // 关闭时不再关心校验结果，出错的读回同样已结束
+            } finally {
+                releaseValidation(pendingValidation);
+                pendingValidation = null;
+            }
+        }
+        for (BehaviourKernels v : variants.values()) {
+            for (KernelArgCache k : v.mixed()) gpuManager.releaseKernel(k.kernel());
+            if (v.buckets() != null) releaseBucketKernels(v.buckets());
+        }
+        variants.clear();
+        active = null;
+        gpuManager.releaseKernel(diffuseKernel);
+        gpuManager.releaseKernel(injectKernel);
+        gpuManager.releaseKernel(remapKernel);
+        gpuManager.releaseKernel(scatterKernel);
+        gpuManager.releaseKernel(maskKernel);
+        gpuManager.releaseKernel(compactKernel);
+        gpuManager.releaseKernel(gridAssignKernel);
+        gpuManager.releaseKernel(gridScanKernel);
+        gpuManager.releaseKernel(gridScatterKernel);
+        gpuManager.releaseKernel(nbrDisplacementKernel);
+        gpuManager.releaseKernel(nbrBuildKernel);
+        gpuManager.releaseKernel(resetCostKernel);
+        gpuManager.releaseKernel(spreadCostKernel);
+        gpuManager.releaseKernel(genVectorKernel);
+    }
+}
@@ -0,0 +1,111 @@
+package com.gpuaccel.entitymod.gpu;
+
+/**
+ * 设备端的均匀空间哈希网格 (按格计数排序)。
+ * <p>
+ * 群体邻居查询与物理碰撞的粗筛共用同一套构建流程，每帧由位置缓冲区重建：
+ * 分格内核求每个实体所在格子的哈希并以原子计数领取格内序号 (群体为 grid_assign_cells，
+ * 物理为 collision_assign_cells)，grid_scan_cells 以单个工作组对计数做前缀和得到各哈希桶的 [start, end)，
+ * grid_scatter 把实体写入按格排序的槽位表。查询方只遍历自身所在格及其 26 个相邻格，每个候选都要核对实际格坐标，
+ * 哈希到同一桶的远处格子不会被误计，同一实体也不会被计两次。
+ * </p>
+ * <p>
+ * 群体网格的格子边长取飞行生物的邻居半径 (8 格)。群体逻辑不直接遍历网格，而是读取由网格构建、跨帧缓存的
+ * Verlet 邻居表 (见 {@link NeighbourList})；每个实体的邻居表长度上限为 {@link #MAX_CANDIDATES}，密集蜂群中的开销保持为常数。
+ * </p>
+ */
+public final class SpatialGrid {
+    /** 群体网格的格子边长 (方块) */
+    public static final float CELL_SIZE = 8.0f;
+    /** 哈希桶数量 (2 的幂) */
+    public static final int CELLS = 1 << 14;
+    /** grid_scan_cells 的工作组大小，与内核中的 GRID_SCAN_GROUP 一致 */
+    public static final int SCAN_GROUP = 256;
+    /** 群体逻辑中单个实体的邻居表长度上限 */
+    public static final int MAX_CANDIDATES = 96;
+
+    /** OpenCL 端的常量与格子哈希函数，需在使用网格的逻辑之前定义 */
+    public static final String CL_COMMON = """
+        #define GRID_CELL_SIZE %s
+        #define GRID_CELLS %d
+        #define GRID_SCAN_GROUP %d
+
+        int3 grid_cell_scaled(float3 p, float invCellSize) {
+            return convert_int3(floor(p * invCellSize));
+        }
+
+        int3 grid_cell(float3 p) {
+            return grid_cell_scaled(p, 1.0f / GRID_CELL_SIZE);
+        }
+
+        // 整数乘法按 32 位回绕，与 Java 的 SpatialGrid.hash 逐位一致
+        int grid_hash(int3 c) {
+            uint h = ((uint)c.x * 73856093u) ^ ((uint)c.y * 19349663u) ^ ((uint)c.z * 83492791u);
+            return (int)(h & (GRID_CELLS - 1));
+        }
+    """.formatted(CELL_SIZE + "f", CELLS, SCAN_GROUP);
+
+    /** 分格之后的两步：单工作组前缀和、按 [start + 序号] 写入槽位表 */
+    public static final String CL_BUILD = """
+        __kernel __attribute__((reqd_work_group_size(GRID_SCAN_GROUP, 1, 1)))
+        void grid_scan_cells(
+            __global const int* cellCount,
+            __global int* cellStart,
+            __global int* cellEnd
+        ) {
+            __local int scan[GRID_SCAN_GROUP];
+            const int per = GRID_CELLS / GRID_SCAN_GROUP;
+            int lid = get_local_id(0);
+            int first = lid * per;
+
+            // 每个工作项先求自己那一段的总数，再在组内做包含式前缀和
+            int local_sum = 0;
+            for (int k = 0; k < per; k++) local_sum += cellCount[first + k];
+            scan[lid] = local_sum;
+            barrier(CLK_LOCAL_MEM_FENCE);
+            for (int off = 1; off < GRID_SCAN_GROUP; off <<= 1) {
+                int add = lid >= off ? scan[lid - off] : 0;
+                barrier(CLK_LOCAL_MEM_FENCE);
+                scan[lid] += add;
+                barrier(CLK_LOCAL_MEM_FENCE);
+            }
+
+            int sum = scan[lid] - local_sum;
+            for (int k = 0; k < per; k++) {
+                cellStart[first + k] = sum;
+                sum += cellCount[first + k];
+                cellEnd[first + k] = sum;
+            }
+        }
+
+        __kernel void grid_scatter(
+            __global const int* cellOf,        // 实体所在的哈希桶，不参与的实体为 -1
+            __global const int* cellRank,      // 实体在桶内的序号
+            const int count,
+            __global const int* cellStart,
+            __global int* gridOrder            // 按桶排序的槽位表
+        ) {
+            int gid = get_global_id(0);
+            if (gid >= count) return;
+            int h = cellOf[gid];
+            if (h >= 0) gridOrder[cellStart[h] + cellRank[gid]] = gid;
+        }
+    """;
+
+    private SpatialGrid() {}
+
+    /** @return 坐标在群体网格中所在格子的整数坐标 */
+    public static int cell(float v) {
+        return cell(v, 1.0f / CELL_SIZE);
+    }
+
+    /** @return 坐标在边长为 1 / invCellSize 的网格中所在格子的整数坐标 */
+    public static int cell(float v, float invCellSize) {
+        return (int) Math.floor(v * invCellSize);
+    }
+
+    /** @return 格子坐标对应的哈希桶 */
+    public static int hash(int x, int y, int z) {
+        return ((x * 73856093) ^ (y * 19349663) ^ (z * 83492791)) & (CELLS - 1);
+    }
+}
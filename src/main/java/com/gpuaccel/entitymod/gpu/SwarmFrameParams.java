@@ -0,0 +1,19 @@
+package com.gpuaccel.entitymod.gpu;
+
+/**
+ * 单帧群体计算的标量参数 (时间、配置、天气)。
+ * <p>
+ * 由 SwarmAISystem 每帧组装一次，再由具体的 {@link ComputeBackend} 转换成内核参数。
+ * {@code attrCount} 与 {@code scentEmitters} 同时描述世界内容，OpenCL 后端据此选择内核变体 (见 {@link KernelVariant})。
+ * </p>
+ *
+ * @param scentEmitters 本帧会写入自身气味的实体数 (捕食者、家畜与易受惊猎物)
+ */
+public record SwarmFrameParams(
+    float time,
+    float attractionForce, float arriveRadius, float gatherChance, float hoverFreq, float hoverAmp,
+    float worldTime, boolean raining,
+    float windX, float windY, float windZ, float rainIntensity,
+    int attrCount,
+    int scentEmitters
+) {}
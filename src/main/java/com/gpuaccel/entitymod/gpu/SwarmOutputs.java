@@ -0,0 +1,31 @@
+package com.gpuaccel.entitymod.gpu;
+
+import java.nio.IntBuffer;
+
+/**
+ * 主内核输出的压缩记录格式。
+ * <p>
+ * compact_outputs 在设备上过滤新速度 (NaN 归零、限幅、微小速度归零)，
+ * 只为速度变化超过 {@link #JITTER} 的实体输出一条记录：槽位 + 速度 xyz (float 以原始位模式存放)。
+ * 新速度被归零而当前速度不为 0、或当前速度超出 {@link #MAX_SPEED} 时也输出记录，
+ * 保证 Host 上的速度最终与过滤结果一致，不会停留在阈值以下的残余值上。
+ * 回读量与主线程的应用循环都只与运动发生变化的实体数量成正比。
+ * </p>
+ */
+public final class SwarmOutputs {
+    /** 每条记录的字数 */
+    public static final int WORDS = 4;
+    /** 抖动阈值：各分量都小于该值的速度视为 0，变化小于该值的实体不输出记录 */
+    public static final float JITTER = 0.001f;
+    /** 速度分量上限 */
+    public static final float MAX_SPEED = 2.0f;
+    /** compact_outputs 的工作组大小，与内核中的 COMPACT_GROUP 一致 */
+    public static final int GROUP_SIZE = 256;
+
+    private SwarmOutputs() {}
+
+    public static int slot(IntBuffer records, int i) { return records.get(i * WORDS); }
+    public static float vx(IntBuffer records, int i) { return Float.intBitsToFloat(records.get(i * WORDS + 1)); }
+    public static float vy(IntBuffer records, int i) { return Float.intBitsToFloat(records.get(i * WORDS + 2)); }
+    public static float vz(IntBuffer records, int i) { return Float.intBitsToFloat(records.get(i * WORDS + 3)); }
+}
@@ -0,0 +1,150 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.ai.VoxelManager;
+import com.gpuaccel.entitymod.gpu.cpu.Float3;
+import com.gpuaccel.entitymod.gpu.cpu.SwarmKernelArgs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * calculateSwarmBehavior 的常量参数块布局。
+ * <p>
+ * 每帧变化的标量 (实体数量、时间、天气) 与很少变化的标量 (地图原点、网格尺寸、配置)
+ * 打包成一个 {@code __constant SwarmUniforms*} 缓冲区随帧上传，代替逐个 clSetKernelArg。
+ * 所有字段都是 4 字节的 int / float，结构体没有隐式填充，Java 端按字序号写入即可。
+ * </p>
+ */
+public final class SwarmUniforms {
+
+    // int 字段
+    private static final int ENTITY_COUNT = 0;
+    private static final int ATTR_COUNT = 1;
+    private static final int MAP_OX = 2;
+    private static final int MAP_OY = 3;
+    private static final int MAP_OZ = 4;
+    private static final int P_SIZE_XZ = 5;
+    private static final int P_SIZE_Y = 6;
+    private static final int VOX_OX = 7;
+    private static final int VOX_OY = 8;
+    private static final int VOX_OZ = 9;
+    private static final int VOX_SIZE = 10;
+    private static final int IS_RAINING = 11;
+    // float 字段
+    private static final int TIME = 12;
+    private static final int ATTRACTION_FORCE = 13;
+    private static final int ARRIVE_RADIUS = 14;
+    private static final int GATHER_CHANCE = 15;
+    private static final int HOVER_FREQ = 16;
+    private static final int HOVER_AMP = 17;
+    private static final int WORLD_TIME = 18;
+    private static final int WIND_X = 19;
+    private static final int WIND_Y = 20;
+    private static final int WIND_Z = 21;
+    private static final int RAIN_INTENSITY = 22;
+    // int 字段 (补在末尾)
+    private static final int FLOW_SHIFT = 23;
+    /** 各类型桶在排序槽位表中的起点，共 TypeBuckets.COUNT + 1 个 (最后一个为总数) */
+    private static final int BUCKET_START = 24;
+
+    /** 字数 (8 的倍数) */
+    private static final int WORDS = 32;
+    /** 参数块字节数 */
+    public static final int BYTES = WORDS * 4;
+
+    /** OpenCL 端的结构体定义，字段顺序必须与上面的字序号一致 */
+    public static final String CL_STRUCT = """
+        typedef struct {
+            int entityCount;
+            int attrCount;
+            int mapOX, mapOY, mapOZ, pSizeXZ, pSizeY;
+            int voxOX, voxOY, voxOZ, voxSize;
+            int isRaining;
+            float time;
+            float attractionForce, arriveRadius, gatherChance, hoverFreq, hoverAmp;
+            float worldTime;
+            float windX, windY, windZ;
+            float rainIntensity;
+            int flowShift;
+            int bucketStart[6];
+            int pad0, pad1;
+        } SwarmUniforms;
+    """;
+
+    private SwarmUniforms() {}
+
+    /**
+     * 把当前帧的标量参数写入参数块。
+     *
+     * @param dst 至少 {@link #BYTES} 字节的本机字节序缓冲区，按绝对索引写入
+     * @param entityCount 本帧实体数量
+     * @param frame 本帧参数
+     * @param fields 按显存预算选定的费洛蒙 / 流场分辨率
+     * @param buckets 按类型排序的槽位区间，混合内核不使用，可为 null
+     */
+    public static void pack(ByteBuffer dst, int entityCount, SwarmFrameParams frame, DeviceMemoryBudget.FieldPlan fields,
+                            TypeBuckets buckets) {
+        putInt(dst, ENTITY_COUNT, entityCount);
+        putInt(dst, ATTR_COUNT, frame.attrCount());
+        putInt(dst, MAP_OX, GPUManager.currentMapOrigin[0]);
+        putInt(dst, MAP_OY, GPUManager.currentMapOrigin[1]);
+        putInt(dst, MAP_OZ, GPUManager.currentMapOrigin[2]);
+        putInt(dst, P_SIZE_XZ, fields.pheroSizeXZ());
+        putInt(dst, P_SIZE_Y, fields.pheroSizeY());
+        putInt(dst, VOX_OX, VoxelManager.getOriginX());
+        putInt(dst, VOX_OY, VoxelManager.getOriginY());
+        putInt(dst, VOX_OZ, VoxelManager.getOriginZ());
+        putInt(dst, VOX_SIZE, VoxelManager.getMapSize());
+        putInt(dst, IS_RAINING, frame.raining() ? 1 : 0);
+
+        putFloat(dst, TIME, frame.time());
+        putFloat(dst, ATTRACTION_FORCE, frame.attractionForce());
+        putFloat(dst, ARRIVE_RADIUS, frame.arriveRadius());
+        putFloat(dst, GATHER_CHANCE, frame.gatherChance());
+        putFloat(dst, HOVER_FREQ, frame.hoverFreq());
+        putFloat(dst, HOVER_AMP, frame.hoverAmp());
+        putFloat(dst, WORLD_TIME, frame.worldTime());
+        putFloat(dst, WIND_X, frame.windX());
+        putFloat(dst, WIND_Y, frame.windY());
+        putFloat(dst, WIND_Z, frame.windZ());
+        putFloat(dst, RAIN_INTENSITY, frame.rainIntensity());
+        putInt(dst, FLOW_SHIFT, fields.flowShift());
+        for (int b = 0; b <= TypeBuckets.COUNT; b++) {
+            putInt(dst, BUCKET_START + b, buckets == null ? 0 : buckets.start(b));
+        }
+    }
+
+    /**
+     * 从参数块还原标量参数 (供 Java 参考实现使用)。
+     */
+    public static void unpack(ByteBuffer src, SwarmKernelArgs k) {
+        k.entityCount = getInt(src, ENTITY_COUNT);
+        k.attrCount = getInt(src, ATTR_COUNT);
+        k.mapOX = getInt(src, MAP_OX);
+        k.mapOY = getInt(src, MAP_OY);
+        k.mapOZ = getInt(src, MAP_OZ);
+        k.pSizeXZ = getInt(src, P_SIZE_XZ);
+        k.pSizeY = getInt(src, P_SIZE_Y);
+        k.voxOX = getInt(src, VOX_OX);
+        k.voxOY = getInt(src, VOX_OY);
+        k.voxOZ = getInt(src, VOX_OZ);
+        k.voxSize = getInt(src, VOX_SIZE);
+        k.isRaining = getInt(src, IS_RAINING);
+
+        k.time = getFloat(src, TIME);
+        k.attractionForce = getFloat(src, ATTRACTION_FORCE);
+        k.arriveRadius = getFloat(src, ARRIVE_RADIUS);
+        k.gatherChance = getFloat(src, GATHER_CHANCE);
+        k.hoverFreq = getFloat(src, HOVER_FREQ);
+        k.hoverAmp = getFloat(src, HOVER_AMP);
+        k.worldTime = getFloat(src, WORLD_TIME);
+        k.windForce = new Float3(getFloat(src, WIND_X), getFloat(src, WIND_Y), getFloat(src, WIND_Z));
+        k.rainIntensity = getFloat(src, RAIN_INTENSITY);
+        k.flowShift = getInt(src, FLOW_SHIFT);
+        for (int b = 0; b <= TypeBuckets.COUNT; b++) k.bucketStart[b] = getInt(src, BUCKET_START + b);
+    }
+
+    private static void putInt(ByteBuffer b, int word, int v) { b.putInt(word * 4, v); }
+    private static void putFloat(ByteBuffer b, int word, float v) { b.putFloat(word * 4, v); }
+    private static int getInt(ByteBuffer b, int word) { return b.getInt(word * 4); }
+    private static float getFloat(ByteBuffer b, int word) { return b.getFloat(word * 4); }
+}
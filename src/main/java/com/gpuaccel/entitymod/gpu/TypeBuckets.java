@@ -0,0 +1,92 @@
+package com.gpuaccel.entitymod.gpu;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * 按移动类型对实体槽位做计数排序。
+ * <p>
+ * 槽位本身保持稳定 (逐实体状态按槽位常驻设备)，这里只生成一张按类型排序的槽位表：
+ * 陆行、水生、飞行 (含蜂后)、掉落物、经验球各占一段连续区间，段内按槽位升序，
+ * 每段由 {@link #KERNELS} 中对应的专用内核处理。空闲槽位不进入任何一段。
+ * </p>
+ * <p>
+ * 类型只随描述行变化，因此排序表只在有描述行或槽位上界变化的帧重建和上传。
+ * </p>
+ */
+public final class TypeBuckets {
+    public static final int WALKER = 0;
+    public static final int SWIMMER = 1;
+    public static final int FLYER = 2;
+    public static final int ITEM = 3;
+    public static final int XP = 4;
+    public static final int COUNT = 5;
+
+    /** 各桶对应的内核入口 (见 SwarmKernelSource) */
+    public static final String[] KERNELS = {
+        "swarm_walkers", "swarm_swimmers", "swarm_flyers", "swarm_items", "swarm_xp"
+    };
+
+    /** 各桶起点，start[COUNT] 为已排序的槽位总数 */
+    private final int[] start = new int[COUNT + 1];
+    private final int[] cursor = new int[COUNT];
+    private int[] bucketOf = new int[0];
+    private int[] order = new int[0];
+    private int slotCount = -1;
+
+    /**
+     * @return 实体类型所属的桶，空闲或未知类型返回 -1
+     */
+    public static int bucketOf(int type) {
+        if (type < 0) return -1;
+        return switch (type) {
+            case 4 -> WALKER;
+            case 5 -> SWIMMER;
+            case 1 -> ITEM;
+            case 2 -> XP;
+            default -> FLYER; // 飞行生物与蜂后
+        };
+    }
+
+    /**
+     * 按增量流镜像中的类型对 [0, slotCount) 的槽位重新排序。
+     */
+    public void sort(EntityRowStream rows, int slotCount) {
+        if (bucketOf.length < slotCount) {
+            bucketOf = new int[Math.max(slotCount, bucketOf.length * 2)];
+            order = new int[bucketOf.length];
+        }
+        Arrays.fill(start, 0);
+        for (int s = 0; s < slotCount; s++) {
+            int b = bucketOf(rows.typeOf(s));
+            bucketOf[s] = b;
+            if (b >= 0) start[b + 1]++;
+        }
+        for (int b = 0; b < COUNT; b++) start[b + 1] += start[b];
+        System.arraycopy(start, 0, cursor, 0, COUNT);
+        for (int s = 0; s < slotCount; s++) {
+            int b = bucketOf[s];
+            if (b >= 0) order[cursor[b]++] = s;
+        }
+        this.slotCount = slotCount;
+    }
+
+    /** 丢弃排序结果，下一帧必定重建 */
+    public void invalidate() {
+        slotCount = -1;
+    }
+
+    /** 把排序后的槽位表写入 dst (从 0 开始，按绝对索引) */
+    public void writeOrder(IntBuffer dst) {
+        dst.put(0, order, 0, total());
+    }
+
+    /** @return 上一次排序时的槽位上界，未排序时为 -1 */
+    public int getSlotCount() { return slotCount; }
+    /** @return 第 b 个桶在排序表中的起点 (b == COUNT 时为总数) */
+    public int start(int b) { return start[b]; }
+    /** @return 第 b 个桶的槽位数 */
+    public int size(int b) { return start[b + 1] - start[b]; }
+    /** @return 已排序的存活槽位总数 */
+    public int total() { return start[COUNT]; }
+}
@@ -0,0 +1,239 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一维内核的工作组大小调优器。
+ * <p>
+ * 各调用点经由 {@link #enqueueAsync} / {@link #enqueue} 按内核名入队：已有结果时使用选定的局部大小，
+ * 并把全局大小补齐为其整数倍 (内核都以 {@code gid >= n} 提前返回)；没有结果时交给驱动自选。
+ * </p>
+ * <p>
+ * 调优期间每次入队都是一次真实的调度，只是依次换用候选局部大小 (含驱动自选)：
+ * 先排空队列，再计时该内核从入队到完成的耗时，按每个工作项的纳秒数取各候选多次采样的最小值。
+ * 全部候选测完后选出最快者，结果按设备名与驱动版本写入程序二进制缓存旁的 JSON，之后的启动直接复用。
+ * 调优期间流水线被串行化，只在首次启动或手动触发时持续若干帧。
+ * </p>
+ * <p>
+ * 只在服务器线程上使用。
+ * </p>
+ */
+public final class WorkGroupTuner {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /** 候选局部大小，0 表示交给驱动自选 */
+    private static final int[] CANDIDATES = {0, 32, 64, 128, 256, 512};
+    /** 每个候选的采样次数 */
+    private static final int SAMPLES = 5;
+
+    /** 调优结果：选定的局部大小 (0 为驱动自选) 与其每工作项耗时 */
+    public record Result(int local, double nsPerItem) {}
+
+    /** 一个内核正在进行的调优 */
+    private static final class Trial {
+        final int[] candidates;
+        final double[] best;
+        int candidate = 0;
+        int sample = 0;
+
+        Trial(int[] candidates) {
+            this.candidates = candidates;
+            this.best = new double[candidates.length];
+            Arrays.fill(best, Double.MAX_VALUE);
+        }
+    }
+
+    private final ClDriver driver;
+    private final Map<String, Result> results = new HashMap<>();
+    private final Map<String, Trial> trials = new HashMap<>();
+    /** 结果文件，为 null 时只在进程内保留 */
+    private Path file;
+    /** 是否调优尚无结果的内核 */
+    private boolean tuning = false;
+
+    public WorkGroupTuner(ClDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * 加载当前设备的调优结果。
+     *
+     * @param dir 结果文件所在目录 (程序二进制缓存目录)，为 null 时不落盘
+     * @param autoTune 是否自动调优尚无结果的内核 (首次启动，或新增了内核)
+     */
+    public void open(Path dir, boolean autoTune) {
+        file = dir == null ? null : dir.resolve("workgroups-" + deviceHash() + ".json");
+        if (file != null) load();
+        tuning = autoTune;
+    }
+
+    /** 丢弃已有结果，之后每个内核的下一次入队开始重新调优 */
+    public void start() {
+        results.clear();
+        trials.clear();
+        tuning = true;
+        LOGGER.info("开始工作组大小调优: {}", driver.getDeviceName());
+    }
+
+    /** @return 是否有内核正在调优 */
+    public boolean isTuning() { return !trials.isEmpty(); }
+
+    /** @return 正在调优的内核数 */
+    public int getPendingKernels() { return trials.size(); }
+
+    /** @return 各内核的调优结果 (按名称排序) */
+    public Map<String, Result> getResults() { return new TreeMap<>(results); }
+
+    /**
+     * 按调优结果入队一维内核并返回完成事件，事件需由调用方释放。
+     *
+     * @param n 实际工作项数量
+     */
+    public cl_event enqueueAsync(String name, cl_kernel kernel, long n, cl_event[] waitList) {
+        Trial trial = trialFor(name, kernel);
+        if (trial != null) return measure(name, trial, kernel, n, waitList);
+        long[] local = localFor(name);
+        return driver.enqueueKernelAsync(kernel, 1, globalFor(n, local), local, waitList);
+    }
+
+    /** 按调优结果入队一维内核 (不需要事件) */
+    public void enqueue(String name, cl_kernel kernel, long n) {
+        Trial trial = trialFor(name, kernel);
+        if (trial != null) {
+            driver.releaseEvent(measure(name, trial, kernel, n, null));
+            return;
+        }
+        long[] local = localFor(name);
+        driver.enqueueKernel(kernel, 1, globalFor(n, local), local);
+    }
+
+    private long[] localFor(String name) {
+        Result r = results.get(name);
+        return r == null || r.local() == 0 ? null : new long[]{r.local()};
+    }
+
+    private static long[] globalFor(long n, long[] local) {
+        if (local == null) return new long[]{n};
+        return new long[]{(n + local[0] - 1) / local[0] * local[0]};
+    }
+
+    private Trial trialFor(String name, cl_kernel kernel) {
+        if (!tuning || results.containsKey(name)) return null;
+        return trials.computeIfAbsent(name, k -> {
+            long max = driver.getKernelWorkGroupSize(kernel);
+            List<Integer> fit = new ArrayList<>();
+            for (int c : CANDIDATES) if (c <= max) fit.add(c);
+            return new Trial(fit.stream().mapToInt(Integer::intValue).toArray());
+        });
+    }
+
+    /** 排空队列后以当前候选入队并阻塞计时 */
+    private cl_event measure(String name, Trial trial, cl_kernel kernel, long n, cl_event[] waitList) {
+        int c = trial.candidates[trial.candidate];
+        long[] local = c == 0 ? null : new long[]{c};
+        long[] global = globalFor(n, local);
+
+        driver.finish();
+        long start = System.nanoTime();
+        cl_event done = driver.enqueueKernelAsync(kernel, 1, global, local, waitList);
+        driver.waitFor(done);
+        double nsPerItem = (double) (System.nanoTime() - start) / global[0];
+
+        trial.best[trial.candidate] = Math.min(trial.best[trial.candidate], nsPerItem);
+        if (++trial.sample >= SAMPLES) {
+            trial.sample = 0;
+            if (++trial.candidate >= trial.candidates.length) finish(name, trial);
+        }
+        return done;
+    }
+
+    private void finish(String name, Trial trial) {
+        int bestIdx = 0;
+        for (int i = 1; i < trial.candidates.length; i++) {
+            if (trial.best[i] < trial.best[bestIdx]) bestIdx = i;
+        }
+        Result r = new Result(trial.candidates[bestIdx], trial.best[bestIdx]);
+        results.put(name, r);
+        trials.remove(name);
+        // 驱动自选的耗时总是第一个候选
+        LOGGER.info("工作组调优 {}: 局部大小 {} ({} ns/项，驱动自选 {} ns/项)", name,
+            r.local() == 0 ? "驱动自选" : r.local(), String.format("%.3f", r.nsPerItem()), String.format("%.3f", trial.best[0]));
+        save();
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) return;
+        try {
+            JsonObject root = JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8)).getAsJsonObject();
+            if (!driver.getDeviceName().equals(root.get("device").getAsString())
+                || !driver.getDriverVersion().equals(root.get("driver").getAsString())) return;
+            JsonObject kernels = root.getAsJsonObject("kernels");
+            for (String name : kernels.keySet()) {
+                JsonObject k = kernels.getAsJsonObject(name);
+                results.put(name, new Result(k.get("local").getAsInt(), k.get("nsPerItem").getAsDouble()));
+            }
+            LOGGER.info("已加载 {} 个内核的工作组调优结果", results.size());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("工作组调优结果 {} 无效，将重新调优: {}", file.getFileName(), e.getMessage());
+            results.clear();
+        }
+    }
+
+    private void save() {
+        if (file == null) return;
+        JsonObject root = new JsonObject();
+        root.addProperty("device", driver.getDeviceName());
+        root.addProperty("driver", driver.getDriverVersion());
+        JsonObject kernels = new JsonObject();
+        for (Map.Entry<String, Result> e : getResults().entrySet()) {
+            JsonObject k = new JsonObject();
+            k.addProperty("local", e.getValue().local());
+            k.addProperty("nsPerItem", e.getValue().nsPerItem());
+            kernels.add(e.getKey(), k);
+        }
+        root.add("kernels", kernels);
+        try {
+            Files.createDirectories(file.getParent());
+            // 先写临时文件再原子替换，与程序二进制缓存一致
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, GSON.toJson(root), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("无法写入工作组调优结果: {}", e.getMessage());
+        }
+    }
+
+    private String deviceHash() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest((driver.getDeviceName() + "|" + driver.getDriverVersion()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.gpu.DispatchPlanner.Workload;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * CPU + GPU 协同执行时的工作划分。
+ * <p>
+ * 一帧的实体区间拆成两段：前缀交给 GPU，后缀同时由 CPU 处理。两侧各自的异步执行时长
+ * (GPU 为提交到回读完成，CPU 为工作线程或服务器线程上的计算时间) 除以实体数得到单实体耗时，
+ * 按指数滑动平均平滑；GPU 份额取 cpu / (gpu + cpu)，即两侧吞吐量之比，使两侧预计同时完成。
+ * </p>
+ * <p>
+ * 划分点移动会让边界附近的实体换到另一侧并丢失逐实体状态，目标份额变化不足 {@link #RESPLIT_DEADBAND}
+ * 时沿用当前份额。一侧分到的实体少于 {@link #MIN_BATCH} 时整帧交给另一侧；
+ * 闲置一侧的测量超过 {@link #PROBE_INTERVAL} 帧未更新时，分给它一个最小批次重新测量。
+ * </p>
+ * <p>
+ * 与 {@link DispatchPlanner} 一样在上下文重建之间保留，只在服务器线程上使用。
+ * </p>
+ */
+public final class WorkSplitter {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 一侧至少分到的实体数，更少时固定开销占主导，测得的单实体耗时没有意义 */
+    public static final int MIN_BATCH = 256;
+    /** 目标份额与当前份额相差超过该值才移动划分点 */
+    static final double RESPLIT_DEADBAND = 0.03;
+    /** 单实体耗时的平滑系数 */
+    static final double ALPHA = 0.2;
+    /** 闲置一侧超过该帧数没有新测量时重新试运行 */
+    static final int PROBE_INTERVAL = 600;
+
+    /** 一个子系统的划分状态 */
+    private static final class Split {
+        double share = 0.5;
+        double gpuNanosPerEntity = Double.NaN;
+        double cpuNanosPerEntity = Double.NaN;
+        long frame = 0;
+        long lastGpuSample = 0;
+        long lastCpuSample = 0;
+    }
+
+    private final Split[] splits = new Split[Workload.values().length];
+
+    public WorkSplitter() {
+        for (int i = 0; i < splits.length; i++) splits[i] = new Split();
+    }
+
+    /** @return 实体数是否足以让两侧各分到一个最小批次 */
+    public static boolean canSplit(int count) {
+        return count >= 2 * MIN_BATCH;
+    }
+
+    /**
+     * 划分本帧的实体区间。每帧每个子系统调用一次。
+     *
+     * @param count 本帧实体数
+     * @return 交给 GPU 的前缀长度，[0, count]；其余实体交给 CPU
+     */
+    public int split(Workload workload, int count) {
+        Split s = splits[workload.ordinal()];
+        s.frame++;
+        if (!Double.isNaN(s.gpuNanosPerEntity) && !Double.isNaN(s.cpuNanosPerEntity)) {
+            double sum = s.gpuNanosPerEntity + s.cpuNanosPerEntity;
+            double target = sum > 0 ? s.cpuNanosPerEntity / sum : 0.5;
+            if (Math.abs(target - s.share) >= RESPLIT_DEADBAND) {
+                LOGGER.debug("{} 协同执行: GPU 份额 {} -> {}", workload.label(),
+                    String.format("%.2f", s.share), String.format("%.2f", target));
+                s.share = target;
+            }
+        }
+
+        int gpu = (int) Math.round(count * s.share);
+        int batch = Math.min(MIN_BATCH, count);
+        if (gpu < MIN_BATCH) {
+            gpu = s.frame - s.lastGpuSample > PROBE_INTERVAL ? batch : 0;
+        } else if (count - gpu < MIN_BATCH) {
+            gpu = s.frame - s.lastCpuSample > PROBE_INTERVAL ? count - batch : count;
+        }
+        return gpu;
+    }
+
+    /**
+     * 记录一侧完成一段实体的实测时长。
+     *
+     * @param entities 该侧本帧处理的实体数，少于 {@link #MIN_BATCH} 时忽略
+     * @param nanos 该侧的异步执行时长
+     */
+    public void record(Workload workload, DispatchPlanner.Target target, int entities, long nanos) {
+        if (entities < MIN_BATCH || nanos <= 0) return;
+        Split s = splits[workload.ordinal()];
+        double perEntity = (double) nanos / entities;
+        if (target == DispatchPlanner.Target.GPU) {
+            s.gpuNanosPerEntity = smooth(s.gpuNanosPerEntity, perEntity);
+            s.lastGpuSample = s.frame;
+        } else {
+            s.cpuNanosPerEntity = smooth(s.cpuNanosPerEntity, perEntity);
+            s.lastCpuSample = s.frame;
+        }
+    }
+
+    private static double smooth(double current, double sample) {
+        return Double.isNaN(current) ? sample : current + ALPHA * (sample - current);
+    }
+
+    /** @return 当前的 GPU 份额 */
+    public double getShare(Workload workload) {
+        return splits[workload.ordinal()].share;
+    }
+
+    /** @return 该侧平滑后的单实体耗时 (微秒)，尚无测量时为 NaN */
+    public double getPerEntityMicros(Workload workload, DispatchPlanner.Target target) {
+        Split s = splits[workload.ordinal()];
+        return (target == DispatchPlanner.Target.GPU ? s.gpuNanosPerEntity : s.cpuNanosPerEntity) / 1000.0;
+    }
+}
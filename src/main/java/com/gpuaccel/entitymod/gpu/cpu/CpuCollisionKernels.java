@@ -0,0 +1,111 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 实体间碰撞粗筛与排斥力的 CPU 实现。
+ * <p>
+ * 对应 PhysicsSimulation 中的 collision_assign_cells 与 detectCollisions：
+ * 网格的前缀和与写入槽位表复用 {@link CpuSpatialGrid}，格子边长按本帧最大半径选定 (见 {@link #cellSize})，
+ * 半径之和不超过格子边长，相互重叠的实体必然位于相邻格内。
+ * </p>
+ */
+public final class CpuCollisionKernels {
+    /** 格子边长下限 (方块)，掉落物半径很小时避免格子过细 */
+    public static final float MIN_CELL_SIZE = 1.0f;
+    /** 单个实体检查的候选上限，与内核中的 COLLISION_MAX_CANDIDATES 一致 */
+    public static final int MAX_CANDIDATES = 64;
+    /** 排斥力强度 */
+    private static final float PUSH_STRENGTH = 20.0f;
+    /** 排斥力作用的时间步长 */
+    private static final float PUSH_DT = 0.016f;
+
+    private CpuCollisionKernels() {}
+
+    /** @return 最大半径为 maxRadius 时的格子边长 */
+    public static float cellSize(float maxRadius) {
+        return Math.max(MIN_CELL_SIZE, 2.0f * maxRadius);
+    }
+
+    /**
+     * collision_assign_cells：求每个实体所在哈希桶并领取桶内序号 (只能串行执行)。
+     */
+    public static void assignCells(FloatBuffer positions, int count, float invCellSize,
+                                   IntBuffer cellOf, IntBuffer cellRank, IntBuffer cellCount, int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int idx = gid * 3;
+            int h = SpatialGrid.hash(SpatialGrid.cell(positions.get(idx), invCellSize),
+                SpatialGrid.cell(positions.get(idx + 1), invCellSize), SpatialGrid.cell(positions.get(idx + 2), invCellSize));
+            cellOf.put(gid, h);
+            int rank = cellCount.get(h);
+            cellCount.put(h, rank + 1);
+            cellRank.put(gid, rank);
+        }
+    }
+
+    /**
+     * 依次执行分格、前缀和与写入槽位表；cellCount 在此清零。
+     */
+    public static void build(FloatBuffer positions, int count, float invCellSize,
+                             IntBuffer cellOf, IntBuffer cellRank, IntBuffer cellCount,
+                             IntBuffer cellStart, IntBuffer cellEnd, IntBuffer order) {
+        for (int h = 0; h < SpatialGrid.CELLS; h++) cellCount.put(h, 0);
+        assignCells(positions, count, invCellSize, cellOf, cellRank, cellCount, 0, count);
+        CpuSpatialGrid.scanCells(cellCount, cellStart, cellEnd);
+        CpuSpatialGrid.scatter(cellOf, cellRank, count, cellStart, order, 0, count);
+    }
+
+    /**
+     * detectCollisions：遍历相邻 27 格中的实体，按重叠深度累加排斥力并写回速度。
+     *
+     * @param params 每实体 4 个 float [半径, 质量, 弹性, 是否飞行]
+     */
+    public static void detectCollisions(FloatBuffer positions, FloatBuffer velocities, FloatBuffer params, int count,
+                                        float invCellSize, IntBuffer cellStart, IntBuffer cellEnd, IntBuffer order,
+                                        int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int idx1 = gid * 3;
+            Float3 pos1 = new Float3(positions.get(idx1), positions.get(idx1 + 1), positions.get(idx1 + 2));
+            float r1 = params.get(gid * 4);
+            float m1 = params.get(gid * 4 + 1);
+
+            Float3 force = Float3.ZERO;
+            int budget = MAX_CANDIDATES;
+            int cx = SpatialGrid.cell(pos1.x(), invCellSize), cy = SpatialGrid.cell(pos1.y(), invCellSize), cz = SpatialGrid.cell(pos1.z(), invCellSize);
+            for (int dz = -1; dz <= 1 && budget > 0; dz++)
+            for (int dy = -1; dy <= 1 && budget > 0; dy++)
+            for (int dx = -1; dx <= 1 && budget > 0; dx++) {
+                int nx = cx + dx, ny = cy + dy, nz = cz + dz;
+                int h = SpatialGrid.hash(nx, ny, nz);
+                int end = cellEnd.get(h);
+                for (int s = cellStart.get(h); s < end && budget > 0; s++) {
+                    int i = order.get(s);
+                    if (i == gid) continue;
+
+                    int idx2 = i * 3;
+                    Float3 pos2 = new Float3(positions.get(idx2), positions.get(idx2 + 1), positions.get(idx2 + 2));
+                    if (!CpuSpatialGrid.inCell(pos2, invCellSize, nx, ny, nz)) continue; // 哈希到同一桶的其他格子
+                    budget--;
+                    float r2 = params.get(i * 4);
+
+                    Float3 diff = pos1.sub(pos2);
+                    float distSq = diff.dot(diff);
+                    float minSep = r1 + r2;
+                    if (distSq < minSep * minSep && distSq > 0.0001f) {
+                        float dist = (float) Math.sqrt(distSq);
+                        force = force.add(diff.div(dist).mul((minSep - dist) * PUSH_STRENGTH));
+                    }
+                }
+            }
+
+            // 应用排斥力
+            Float3 push = force.div(m1).mul(PUSH_DT);
+            velocities.put(idx1, velocities.get(idx1) + push.x())
+                .put(idx1 + 1, velocities.get(idx1 + 1) + push.y())
+                .put(idx1 + 2, velocities.get(idx1 + 2) + push.z());
+        }
+    }
+}
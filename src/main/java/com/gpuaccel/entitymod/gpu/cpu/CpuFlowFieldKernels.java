@@ -0,0 +1,175 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * FlowFieldKernelSource 中三个流场内核的 CPU 实现。
+ * <p>
+ * 代价场使用与 GPU 相同的 ushort 布局 (以 {@link ShortBuffer} 存储，读取时按无符号处理)，
+ * 向量场使用 float4 布局。除逐内核对应的区间函数外，还提供基于波前队列的
+ * {@link #propagate}，只处理上一轮发生变化的体素，避免在 CPU 上做 64 轮全体积扫描。
+ * </p>
+ */
+public final class CpuFlowFieldKernels {
+    public static final int COST_IMPASSABLE = 65535;
+    public static final int COST_AIR = 1;
+    public static final int COST_WATER = 10;
+
+    private static final int[][] OFFSETS = {
+        {1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}
+    };
+
+    private CpuFlowFieldKernels() {}
+
+    private static int index(int x, int y, int z, int size) {
+        if (x < 0 || x >= size || y < 0 || y >= size || z < 0 || z >= size) return -1;
+        return x + z * size + y * size * size;
+    }
+
+    private static int cost(ShortBuffer field, int idx) {
+        return field.get(idx) & 0xFFFF;
+    }
+
+    /** 固体(1)、栅栏(3)、危险(4) 视为不可通行，返回 -1；否则返回进入该体素的代价 */
+    private static int stepCost(byte blockID) {
+        if (blockID == 1 || blockID == 3 || blockID == 4) return -1;
+        return blockID == 2 ? COST_WATER : COST_AIR;
+    }
+
+    /**
+     * k_resetCostField：全部设为不可达，目标点设为 0。
+     * <p>
+     * GPU 版本由线程 0 统一写入目标点，在多工作组下可能被其他线程的重置覆盖；
+     * 这里每个区间只写入落在自身范围内的目标点，避免同样的竞争。
+     * </p>
+     */
+    public static void resetCostField(ShortBuffer costField, IntBuffer targets, int targetCount, int size, int from, int to) {
+        int volume = size * size * size;
+        int end = Math.min(to, volume);
+        for (int gid = from; gid < end; gid++) {
+            costField.put(gid, (short) COST_IMPASSABLE);
+        }
+        for (int i = 0; i < targetCount; i++) {
+            int idx = index(targets.get(i * 3), targets.get(i * 3 + 1), targets.get(i * 3 + 2), size);
+            if (idx >= from && idx < end) costField.put(idx, (short) 0);
+        }
+    }
+
+    /**
+     * k_spreadCostField：单轮松弛 (原地更新，与 GPU 行为一致)。
+     *
+     * @param shift 流场相对体素地图的降采样位移，通行性取单元中心的体素
+     */
+    public static void spreadCostField(ShortBuffer costField, ByteBuffer voxelMap, int size, int shift, int from, int to) {
+        int area = size * size;
+        int volume = area * size;
+        int voxSize = size << shift;
+        int half = (1 << shift) >> 1;
+        for (int gid = from; gid < Math.min(to, volume); gid++) {
+            int y = gid / area;
+            int rem = gid % area;
+            int z = rem / size;
+            int x = rem % size;
+            int vIdx = ((x << shift) + half) + ((z << shift) + half) * voxSize + ((y << shift) + half) * voxSize * voxSize;
+            int step = stepCost(voxelMap.get(vIdx));
+            if (step < 0) {
+                costField.put(gid, (short) COST_IMPASSABLE);
+                continue;
+            }
+
+            int minNeighbor = COST_IMPASSABLE;
+            for (int[] o : OFFSETS) {
+                int nIdx = index(x + o[0], y + o[1], z + o[2], size);
+                if (nIdx != -1) minNeighbor = Math.min(minNeighbor, cost(costField, nIdx));
+            }
+            if (minNeighbor != COST_IMPASSABLE) {
+                int newCost = (minNeighbor + step) & 0xFFFF;
+                if (newCost < cost(costField, gid)) costField.put(gid, (short) newCost);
+            }
+        }
+    }
+
+    /** k_generateVectorField：沿代价下降最快的轴向邻居生成方向向量 */
+    public static void generateVectorField(ShortBuffer costField, FloatBuffer vectorField, int size, int from, int to) {
+        int area = size * size;
+        int volume = area * size;
+        for (int gid = from; gid < Math.min(to, volume); gid++) {
+            int base = gid * 4;
+            int myCost = cost(costField, gid);
+            float dx = 0, dy = 0, dz = 0;
+            if (myCost < COST_IMPASSABLE) {
+                int y = gid / area;
+                int rem = gid % area;
+                int z = rem / size;
+                int x = rem % size;
+                int minC = myCost;
+                for (int[] o : OFFSETS) {
+                    int nIdx = index(x + o[0], y + o[1], z + o[2], size);
+                    if (nIdx != -1) {
+                        int nCost = cost(costField, nIdx);
+                        if (nCost < minC) { minC = nCost; dx = o[0]; dy = o[1]; dz = o[2]; }
+                    }
+                }
+            }
+            vectorField.put(base, dx).put(base + 1, dy).put(base + 2, dz).put(base + 3, 0f);
+        }
+    }
+
+    /**
+     * 波前传播：从代价为 0 的目标点出发做至多 {@code maxRounds} 轮松弛。
+     * <p>
+     * 每轮只展开上一轮代价降低的体素，结果等价于 GPU 上 {@code maxRounds} 次
+     * k_spreadCostField 的收敛值 (GPU 的原地更新可能传播得略远)，
+     * 但工作量只与可达区域成正比。
+     * </p>
+     *
+     * @return 代价被更新的体素总数
+     */
+    public static int propagate(ShortBuffer costField, ByteBuffer voxelMap, IntBuffer targets, int targetCount, int size, int maxRounds) {
+        int[] frontier = new int[Math.max(16, targetCount)];
+        int frontierSize = 0;
+        for (int i = 0; i < targetCount; i++) {
+            int idx = index(targets.get(i * 3), targets.get(i * 3 + 1), targets.get(i * 3 + 2), size);
+            if (idx == -1) continue;
+            // 目标处于不可通行体素时，与 GPU 一致地视为不可达
+            if (stepCost(voxelMap.get(idx)) < 0) { costField.put(idx, (short) COST_IMPASSABLE); continue; }
+            frontier[frontierSize++] = idx;
+        }
+
+        int area = size * size;
+        int[] next = new int[Math.max(64, frontierSize * 6)];
+        int updated = 0;
+        for (int round = 0; round < maxRounds && frontierSize > 0; round++) {
+            int nextSize = 0;
+            for (int f = 0; f < frontierSize; f++) {
+                int idx = frontier[f];
+                int base = cost(costField, idx);
+                int y = idx / area;
+                int rem = idx % area;
+                int z = rem / size;
+                int x = rem % size;
+                for (int[] o : OFFSETS) {
+                    int nIdx = index(x + o[0], y + o[1], z + o[2], size);
+                    if (nIdx == -1) continue;
+                    int step = stepCost(voxelMap.get(nIdx));
+                    if (step < 0) continue;
+                    int candidate = base + step;
+                    if (candidate < cost(costField, nIdx)) {
+                        costField.put(nIdx, (short) candidate);
+                        if (nextSize == next.length) next = Arrays.copyOf(next, next.length * 2);
+                        next[nextSize++] = nIdx;
+                        updated++;
+                    }
+                }
+            }
+            int[] swap = frontier; frontier = next; next = swap;
+            frontierSize = nextSize;
+            if (next.length < frontier.length) next = new int[frontier.length];
+        }
+        return updated;
+    }
+}
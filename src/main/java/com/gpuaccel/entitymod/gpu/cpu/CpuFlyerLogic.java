@@ -0,0 +1,176 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.NeighbourList;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static com.gpuaccel.entitymod.gpu.cpu.CpuKernelCommon.*;
+
+/**
+ * 飞行生物逻辑的 CPU 实现。
+ * <p>
+ * 对应 {@link com.gpuaccel.entitymod.ai.kernel.FlyerLogic}：状态机、目标追踪、Boids 与射线避障。
+ * </p>
+ */
+public final class CpuFlyerLogic {
+
+    private CpuFlyerLogic() {}
+
+    public static Float3 updateFlyer(SwarmKernelArgs a, int gid, int idx, int type, int state, Float3 pos, Float3 vel, boolean lodActive) {
+        FloatBuffer params = a.params;
+        int pBase = gid * 12;
+        float maxSpeed         = params.get(pBase);
+        float wanderStrength   = params.get(pBase + 1);
+        float separationWeight = params.get(pBase + 2);
+        float separationRadius = 4.0f;
+        float alignmentWeight  = params.get(pBase + 3);
+        float cohesionWeight   = params.get(pBase + 4);
+        float gravity          = params.get(pBase + 5);
+        float mass             = params.get(pBase + 8);
+        float fovCos           = params.get(pBase + 9);
+        float familiarity      = params.get(pBase + 10);
+
+        if (mass < 0.1f) mass = 0.1f;
+
+        IntBuffer beeStates = a.beeStates;
+        IntBuffer stuckTimer = a.stuckTimer;
+        FloatBuffer prevPositions = a.prevPositions;
+        float time = a.time;
+
+        // 回巢逻辑：夜晚或下雨时回家
+        boolean goHome = (a.worldTime > 13000.0f && a.worldTime < 23000.0f) || (a.isRaining != 0);
+        if (goHome && state != STATE_HIVE && state != STATE_RETURN) { state = STATE_RETURN; beeStates.put(gid, STATE_RETURN); }
+
+        // 卡死检测
+        if (state == STATE_IDLE || state == STATE_RETURN) {
+            Float3 prev = new Float3(prevPositions.get(idx), prevPositions.get(idx + 1), prevPositions.get(idx + 2));
+            Float3 moved = pos.sub(prev);
+            if (vel.dot(vel) > 1e-4f && moved.dot(moved) < 0.0025f) stuckTimer.put(gid, stuckTimer.get(gid) + 1);
+            else {
+                stuckTimer.put(gid, 0);
+                if ((int) time % 10 == 0) prevPositions.put(idx, pos.x()).put(idx + 1, pos.y()).put(idx + 2, pos.z());
+            }
+            if (stuckTimer.get(gid) > 60) {
+                Float3 k = hash33(new Float3(gid, time, stuckTimer.get(gid))).mul(0.5f);
+                k = k.withY(k.y() + 0.3f);
+                beeStates.put(gid, STATE_IDLE);
+                if (stuckTimer.get(gid) > 80) stuckTimer.put(gid, 0);
+                return k;
+            }
+        } else stuckTimer.put(gid, 0);
+
+        Float3 acc = a.windForce;
+
+        // 熟悉度 (跟随玩家)
+        Float3 playerPos = new Float3(a.playerPos.get(0), a.playerPos.get(1), a.playerPos.get(2));
+        if (!lodActive && familiarity > 0.0f) {
+            Float3 toPlayer = playerPos.sub(pos);
+            float distToPlayerSq = toPlayer.dot(toPlayer);
+            if (distToPlayerSq < 6400.0f && distToPlayerSq > 16.0f) {
+                acc = acc.add(safeNormalize(toPlayer).mul(familiarity * 2.0f / mass));
+            }
+        }
+
+        // 1. 目标追踪 (花朵 / 蜂巢)
+        if (!lodActive && (state == STATE_IDLE || state == STATE_RETURN)) {
+            int targetType = (state == STATE_IDLE && !goHome) ? 1 : 2;
+            int closest = -1; float minScore = 1e18f; float realMinDSq = 1e18f;
+
+            for (int i = 0; i < a.attrCount; i++) {
+                if (a.attrType.get(i) != targetType) continue;
+                float dx = a.attrX.get(i) - pos.x(), dy = a.attrY.get(i) - pos.y(), dz = a.attrZ.get(i) - pos.z();
+                float dSq = dx * dx + dy * dy + dz * dz;
+                if (dSq < minScore) { minScore = dSq; closest = i; realMinDSq = dSq; }
+            }
+
+            if (state == STATE_IDLE) {
+                Float3 wander = curlNoise(pos.mul(0.2f), time).mul(wanderStrength);
+                acc = acc.add(wander.div(mass));
+            }
+
+            if (closest != -1) {
+                float viewDistSq = (targetType == 2) ? 1e9f : 4096.0f;
+                if (realMinDSq < viewDistSq) {
+                    Float3 tPos = new Float3(a.attrX.get(closest), a.attrY.get(closest), a.attrZ.get(closest));
+                    float dist = (float) Math.sqrt(realMinDSq);
+                    Float3 seek = safeNormalize(tPos.sub(pos)).mul(maxSpeed);
+                    acc = acc.add(seek.sub(vel).div(mass));
+
+                    // 到达目标处理
+                    if (dist < 2.0f) {
+                        if (targetType == 1) { beeStates.put(gid, STATE_GATHER); state = STATE_GATHER; }
+                        else { beeStates.put(gid, STATE_HIVE); state = STATE_HIVE; vel = Float3.ZERO; }
+                    }
+                }
+            } else if (state == STATE_RETURN) acc = acc.withY(acc.y() + 0.02f / mass);
+        }
+        else if (state == STATE_GATHER) {
+            // 采集状态：悬停和微动
+            vel = vel.mul(0.9f);
+            vel = vel.withY(vel.y() + sin(time * 5.0f) * 0.02f);
+            float rnd = hash33(new Float3(gid, time, 0)).x() * 0.5f + 0.5f;
+            if (rnd < 0.01f) { beeStates.put(gid, STATE_RETURN); state = STATE_RETURN; }
+        }
+
+        // 2. Boids 群体算法 (分离、对齐、凝聚)
+        if (!lodActive) {
+            Float3 sep = Float3.ZERO, ali = Float3.ZERO, coh = Float3.ZERO;
+            int count = 0; float sepSq = separationRadius * separationRadius;
+            Float3 fwd = safeNormalize(vel);
+
+            // 遍历 Verlet 邻居表 (见 NeighbourList)
+            int n = a.nbrCount.get(gid);
+            int base = gid * NeighbourList.MAX_NEIGHBOURS;
+            for (int k = 0; k < n; k++) {
+                int i = a.nbrList.get(base + k);
+                int oType = a.entityTypes.get(i);
+                if (oType < 0) continue; // 构建后离开或本帧未出现的槽位
+
+                int oIdx = i * 3;
+                Float3 oPos = new Float3(a.positions.get(oIdx), a.positions.get(oIdx + 1), a.positions.get(oIdx + 2));
+                Float3 diff = oPos.sub(pos);
+                float dSq = diff.dot(diff);
+
+                if (dSq < 64.0f && dSq > 1e-5f) {
+                    if (inFov(fwd, diff, fovCos)) {
+                        if (dSq < sepSq) sep = sep.sub(safeNormalize(diff).div(dSq));
+                        if (oType == type) {
+                            Float3 oVel = new Float3(a.velocities.get(oIdx), a.velocities.get(oIdx + 1), a.velocities.get(oIdx + 2));
+                            ali = ali.add(oVel); coh = coh.add(oPos);
+                        }
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                Float3 steerSep = safeNormalize(sep).mul(maxSpeed).sub(vel);
+                acc = acc.add(steerSep.mul(separationWeight).div(mass));
+                Float3 steerAli = safeNormalize(ali.div(count)).mul(maxSpeed).sub(vel);
+                acc = acc.add(steerAli.mul(alignmentWeight).div(mass));
+                Float3 steerCoh = safeNormalize(coh.div(count).sub(pos)).mul(maxSpeed).sub(vel);
+                acc = acc.add(steerCoh.mul(cohesionWeight).div(mass));
+            }
+        }
+
+        acc = acc.withY(acc.y() - gravity);
+        vel = vel.add(acc).mul(0.98f);
+
+        // 4. 避障 (Raycasting Avoidance)
+        float speedSq = vel.dot(vel);
+        if (speedSq > 0.0001f && !lodActive) {
+            float speed = (float) Math.sqrt(speedSq);
+            Float3 fwd = vel.div(speed);
+            Float3 avoidance = Float3.ZERO;
+            int rayCount = (int) clamp(speed * 80.0f, 6.0f, 32.0f);
+
+            for (int i = 0; i < rayCount; i++) {
+                Float3 rayDir = fibonacciCone(i, rayCount, fwd, 1.2f);
+                float dist = castRay(pos, rayDir, 5.0f, a.voxels, a.voxOX, a.voxOY, a.voxOZ, a.voxSize);
+                if (dist < 5.0f) avoidance = avoidance.sub(rayDir.mul(5.0f - dist));
+            }
+            vel = vel.add(avoidance.mul(0.8f).div(mass));
+        }
+        return limitVec(vel, maxSpeed);
+    }
+}
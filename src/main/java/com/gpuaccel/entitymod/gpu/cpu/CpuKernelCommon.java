@@ -0,0 +1,171 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.OccupancyPyramid;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CPU 参考内核公共函数库。
+ * <p>
+ * 与 {@link com.gpuaccel.entitymod.ai.kernel.KernelCommon} 中的 OpenCL 代码一一对应：
+ * 随机数、噪声、向量工具和体素射线检测。修改 OpenCL 版本时请同步修改此处。
+ * </p>
+ */
+public final class CpuKernelCommon {
+    // 状态与类型定义 (对应 KernelCommon 中的 #define)
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_GATHER = 1;
+    public static final int STATE_RETURN = 2;
+    public static final int STATE_HIVE = 3;
+
+    public static final int TYPE_FLYER = 0;
+    public static final int TYPE_ITEM = 1;
+    public static final int TYPE_XP = 2;
+    public static final int TYPE_QUEEN = 3;
+    public static final int TYPE_WALKER = 4;
+    public static final int TYPE_SWIMMER = 5;
+
+    public static final byte VOXEL_AIR = 0;
+    public static final byte VOXEL_SOLID = 1;
+    public static final byte VOXEL_LIQUID = 2;
+
+    private static final Float3 HASH_A = new Float3(127.1f, 311.7f, 74.7f);
+    private static final Float3 HASH_B = new Float3(269.5f, 183.3f, 246.1f);
+    private static final Float3 HASH_C = new Float3(113.5f, 271.9f, 124.6f);
+
+    private CpuKernelCommon() {}
+
+    // =========================================================
+    // 数学工具函数
+    // =========================================================
+
+    public static float sin(float v) { return (float) Math.sin(v); }
+    public static float cos(float v) { return (float) Math.cos(v); }
+    public static float floor(float v) { return (float) Math.floor(v); }
+    public static float clamp(float v, float lo, float hi) { return Math.min(Math.max(v, lo), hi); }
+    public static float mix(float a, float b, float t) { return a + (b - a) * t; }
+
+    /** 3D 哈希函数 (基于正弦波) */
+    public static Float3 hash33(Float3 p) {
+        float sx = sin(p.dot(HASH_A)) * 43758.5453123f;
+        float sy = sin(p.dot(HASH_B)) * 43758.5453123f;
+        float sz = sin(p.dot(HASH_C)) * 43758.5453123f;
+        return new Float3(
+            -1.0f + 2.0f * (sx - floor(sx)),
+            -1.0f + 2.0f * (sy - floor(sy)),
+            -1.0f + 2.0f * (sz - floor(sz)));
+    }
+
+    /** 伪随机数生成器 (线性同余法)，按 uint 语义溢出 */
+    public static int nextRand(int state) {
+        return state * 1664525 + 1013904223;
+    }
+
+    /** 安全归一化：防止零向量导致 NaN 错误 */
+    public static Float3 safeNormalize(Float3 v) {
+        float lenSq = v.lengthSq();
+        if (lenSq < 1e-8f) return Float3.ZERO;
+        return v.mul((float) (1.0 / Math.sqrt(lenSq)));
+    }
+
+    /** 旋度噪声 (Curl Noise) */
+    public static Float3 curlNoise(Float3 p, float time) {
+        float e = 0.1f;
+        Float3 pt = p.add(new Float3(0, time * 0.5f, 0));
+        Float3 n0 = hash33(pt);
+        Float3 dx = hash33(pt.add(new Float3(e, 0, 0)));
+        Float3 dy = hash33(pt.add(new Float3(0, e, 0)));
+        Float3 dz = hash33(pt.add(new Float3(0, 0, e)));
+        float x = (dy.z() - n0.z()) - (dz.y() - n0.y());
+        float y = (dz.x() - n0.x()) - (dx.z() - n0.z());
+        float z = (dx.y() - n0.y()) - (dy.x() - n0.x());
+        return safeNormalize(new Float3(x, y, z));
+    }
+
+    /** 限制向量长度不超过 maxVal */
+    public static Float3 limitVec(Float3 v, float maxVal) {
+        float lenSq = v.lengthSq();
+        if (lenSq > maxVal * maxVal && lenSq > 1e-6f) {
+            return v.mul(maxVal * (float) (1.0 / Math.sqrt(lenSq)));
+        }
+        return v;
+    }
+
+    /** 视野检查 (Field of View) */
+    public static boolean inFov(Float3 fwd, Float3 diff, float fovCos) {
+        return fwd.dot(safeNormalize(diff)) > fovCos;
+    }
+
+    // =========================================================
+    // 体素地图访问函数
+    // =========================================================
+
+    /** 获取指定坐标的体素 ID，越界时返回空气 */
+    public static byte getVoxel(Float3 p, ByteBuffer voxels, int oX, int oY, int oZ, int size) {
+        int ix = (int) Math.floor(p.x()) - oX;
+        int iy = (int) Math.floor(p.y()) - oY;
+        int iz = (int) Math.floor(p.z()) - oZ;
+        if (ix >= 0 && ix < size && iy >= 0 && iy < size && iz >= 0 && iz < size) {
+            return voxels.get(ix + iz * size + iy * size * size);
+        }
+        return VOXEL_AIR;
+    }
+
+    public static boolean isSolid(Float3 p, ByteBuffer voxels, int oX, int oY, int oZ, int size) {
+        return getVoxel(p, voxels, oX, oY, oZ, size) == VOXEL_SOLID;
+    }
+
+    /** 射线检测 (Raycast)：3D DDA，借助占用金字塔 (见 OccupancyPyramid) 跳过空砖块的体素读取 */
+    public static float castRay(Float3 start, Float3 dir, float maxDist, ByteBuffer voxels, int oX, int oY, int oZ, int size) {
+        int mx = (int) Math.floor(start.x()); int my = (int) Math.floor(start.y()); int mz = (int) Math.floor(start.z());
+        float dDistX = Math.abs(1.0f / dir.x()), dDistY = Math.abs(1.0f / dir.y()), dDistZ = Math.abs(1.0f / dir.z());
+        int stepX = dir.x() < 0 ? -1 : 1; int stepY = dir.y() < 0 ? -1 : 1; int stepZ = dir.z() < 0 ? -1 : 1;
+        float sideX = dir.x() < 0 ? (start.x() - mx) * dDistX : (mx + 1.0f - start.x()) * dDistX;
+        float sideY = dir.y() < 0 ? (start.y() - my) * dDistY : (my + 1.0f - start.y()) * dDistY;
+        float sideZ = dir.z() < 0 ? (start.z() - mz) * dDistZ : (mz + 1.0f - start.z()) * dDistZ;
+
+        // 缓冲区未附带占用金字塔时退化为逐格读取
+        boolean pyramid = voxels.capacity() >= OccupancyPyramid.bytes(size);
+        int d1 = size >> 2, d2 = size >> 4;
+        int occ1 = size * size * size, occ2 = occ1 + d1 * d1 * d1;
+
+        float dist = 0.0f;
+        int skip = 0; // 非 0 时表示正位于边长为 (1 << skip) 的空砖块 (bx, by, bz) 内
+        int bx = 0, by = 0, bz = 0;
+        while (dist < maxDist) {
+            if (sideX < sideY) {
+                if (sideX < sideZ) { dist = sideX; sideX += dDistX; mx += stepX; }
+                else { dist = sideZ; sideZ += dDistZ; mz += stepZ; }
+            } else {
+                if (sideY < sideZ) { dist = sideY; sideY += dDistY; my += stepY; }
+                else { dist = sideZ; sideZ += dDistZ; mz += stepZ; }
+            }
+            int lx = mx - oX; int ly = my - oY; int lz = mz - oZ;
+            if (skip != 0) {
+                if ((lx >> skip) == bx && (ly >> skip) == by && (lz >> skip) == bz) continue;
+                skip = 0;
+            }
+            if (lx >= 0 && lx < size && ly >= 0 && ly < size && lz >= 0 && lz < size) {
+                if (pyramid && voxels.get(occ2 + (lx >> 4) + (lz >> 4) * d2 + (ly >> 4) * d2 * d2) == 0) skip = 4;
+                else if (pyramid && voxels.get(occ1 + (lx >> 2) + (lz >> 2) * d1 + (ly >> 2) * d1 * d1) == 0) skip = 2;
+                else if (voxels.get(lx + lz * size + ly * size * size) == VOXEL_SOLID) return dist;
+                if (skip != 0) { bx = lx >> skip; by = ly >> skip; bz = lz >> skip; }
+            }
+        }
+        return maxDist;
+    }
+
+    /** 斐波那契螺旋采样：用于均匀分布的射线探测 */
+    public static Float3 fibonacciCone(int i, int n, Float3 fwd, float spread) {
+        float goldenAngle = 2.399963f;
+        float z = 1.0f - ((float) i / (float) (n - 1)) * spread;
+        float radius = (float) Math.sqrt(1.0f - z * z);
+        float theta = goldenAngle * i;
+        float x = cos(theta) * radius;
+        float y = sin(theta) * radius;
+        Float3 up = (Math.abs(fwd.y()) < 0.99f) ? new Float3(0, 1, 0) : new Float3(1, 0, 0);
+        Float3 right = up.cross(fwd).normalize();
+        up = fwd.cross(right);
+        return right.mul(x).add(up.mul(y)).add(fwd.mul(z));
+    }
+}
@@ -0,0 +1,82 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.NeighbourList;
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Verlet 邻居表内核的 CPU 实现。
+ * <p>
+ * 对应 {@link NeighbourList#CL_SRC} 中的 nbr_max_displacement 与 nbr_build；
+ * 是否需要重建由调用方根据 {@link #maxDisplacement} 的结果决定。
+ * </p>
+ */
+public final class CpuNeighbourList {
+
+    private CpuNeighbourList() {}
+
+    /**
+     * nbr_max_displacement：本帧出现的实体自上次构建以来的最大位移平方，槽位换了实体或构建标记已清除时为正无穷。
+     */
+    public static float maxDisplacement(FloatBuffer positions, IntBuffer entityTypes, int count,
+                                        FloatBuffer refPos, IntBuffer refTag, int from, int to) {
+        float max = 0.0f;
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int type = entityTypes.get(gid);
+            if (type < 0) continue;
+            if (refTag.get(gid) != type + 1) return Float.POSITIVE_INFINITY;
+            int idx = gid * 3;
+            float dx = positions.get(idx) - refPos.get(idx);
+            float dy = positions.get(idx + 1) - refPos.get(idx + 1);
+            float dz = positions.get(idx + 2) - refPos.get(idx + 2);
+            max = Math.max(max, dx * dx + dy * dy + dz * dz);
+        }
+        return max;
+    }
+
+    /**
+     * nbr_build：为本帧出现的槽位记录构建时的位置与类型，并从网格中收集表半径内的候选。
+     */
+    public static void build(FloatBuffer positions, IntBuffer entityTypes, int count,
+                             IntBuffer gridStart, IntBuffer gridEnd, IntBuffer gridOrder,
+                             FloatBuffer refPos, IntBuffer refTag, IntBuffer nbrList, IntBuffer nbrCount,
+                             int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int type = entityTypes.get(gid);
+            if (type < 0) continue;
+            int idx = gid * 3;
+            Float3 pos = new Float3(positions.get(idx), positions.get(idx + 1), positions.get(idx + 2));
+            refTag.put(gid, type + 1);
+            refPos.put(idx, pos.x()).put(idx + 1, pos.y()).put(idx + 2, pos.z());
+
+            int n = 0;
+            if (NeighbourList.usesList(type)) {
+                boolean swimmer = type == NeighbourList.TYPE_SWIMMER;
+                float radius = NeighbourList.listRadius(type);
+                float listSq = radius * radius;
+                int r = NeighbourList.cellRange(radius);
+                int base = gid * NeighbourList.MAX_NEIGHBOURS;
+                int cx = SpatialGrid.cell(pos.x()), cy = SpatialGrid.cell(pos.y()), cz = SpatialGrid.cell(pos.z());
+                for (int dz = -r; dz <= r && n < NeighbourList.MAX_NEIGHBOURS; dz++)
+                for (int dy = -r; dy <= r && n < NeighbourList.MAX_NEIGHBOURS; dy++)
+                for (int dx = -r; dx <= r && n < NeighbourList.MAX_NEIGHBOURS; dx++) {
+                    int nx = cx + dx, ny = cy + dy, nz = cz + dz;
+                    int h = SpatialGrid.hash(nx, ny, nz);
+                    int end = gridEnd.get(h);
+                    for (int s = gridStart.get(h); s < end && n < NeighbourList.MAX_NEIGHBOURS; s++) {
+                        int i = gridOrder.get(s);
+                        if (i == gid || (swimmer && entityTypes.get(i) != NeighbourList.TYPE_SWIMMER)) continue;
+                        int oIdx = i * 3;
+                        Float3 oPos = new Float3(positions.get(oIdx), positions.get(oIdx + 1), positions.get(oIdx + 2));
+                        if (!CpuSpatialGrid.inCell(oPos, nx, ny, nz)) continue; // 哈希到同一桶的其他格子
+                        Float3 diff = oPos.sub(pos);
+                        if (diff.dot(diff) < listSq) nbrList.put(base + n++, i);
+                    }
+                }
+            }
+            nbrCount.put(gid, n);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.ai.VoxelManager;
+import com.gpuaccel.entitymod.gpu.OccupancyPyramid;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 占用金字塔构建内核的 CPU 实现。
+ * <p>
+ * 对应 {@link OccupancyPyramid#CL_SRC} 中的 occupancy_build_l1 / occupancy_build_l2，
+ * 写入体素缓冲区末尾 (缓冲区需按 {@link OccupancyPyramid#bytes} 分配)。
+ * </p>
+ */
+public final class CpuOccupancyPyramid {
+
+    private CpuOccupancyPyramid() {}
+
+    /** occupancy_build_l1：汇总 [from, to) 号 4³ 砖块 */
+    public static void buildL1(ByteBuffer voxels, int size, int from, int to) {
+        int d = size >> OccupancyPyramid.L1_SHIFT;
+        int base = size * size * size;
+        for (int b = from; b < Math.min(to, d * d * d); b++) {
+            int bx = b % d, bz = (b / d) % d, by = b / (d * d);
+            byte occ = 0;
+            for (int y = 0; y < 4 && occ == 0; y++)
+            for (int z = 0; z < 4 && occ == 0; z++)
+            for (int x = 0; x < 4; x++) {
+                int v = (bx * 4 + x) + (bz * 4 + z) * size + (by * 4 + y) * size * size;
+                if (voxels.get(v) == VoxelManager.VOXEL_SOLID) { occ = 1; break; }
+            }
+            voxels.put(base + b, occ);
+        }
+    }
+
+    /** occupancy_build_l2：汇总 [from, to) 号 16³ 砖块 */
+    public static void buildL2(ByteBuffer voxels, int size, int from, int to) {
+        int d = size >> OccupancyPyramid.L2_SHIFT;
+        int d1 = size >> OccupancyPyramid.L1_SHIFT;
+        int l1 = size * size * size;
+        int base = l1 + d1 * d1 * d1;
+        for (int b = from; b < Math.min(to, d * d * d); b++) {
+            int bx = b % d, bz = (b / d) % d, by = b / (d * d);
+            byte occ = 0;
+            for (int y = 0; y < 4 && occ == 0; y++)
+            for (int z = 0; z < 4 && occ == 0; z++)
+            for (int x = 0; x < 4; x++) {
+                if (voxels.get(l1 + (bx * 4 + x) + (bz * 4 + z) * d1 + (by * 4 + y) * d1 * d1) != 0) { occ = 1; break; }
+            }
+            voxels.put(base + b, occ);
+        }
+    }
+
+    /** 依次重建两级占用表 */
+    public static void build(ByteBuffer voxels, int size) {
+        buildL1(voxels, size, 0, OccupancyPyramid.l1Count(size));
+        buildL2(voxels, size, 0, OccupancyPyramid.l2Count(size));
+    }
+}
@@ -0,0 +1,63 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 基于 ForkJoin 的一维并行区间执行器。
+ * <p>
+ * 相当于 CPU 版本的 clEnqueueNDRangeKernel：把 [0, count) 递归二分，
+ * 直到区间不超过 grain，再交给内核函数处理。
+ * </p>
+ */
+public final class CpuParallel {
+
+    /** 处理全局 ID 区间 [from, to) 的内核体 */
+    @FunctionalInterface
+    public interface RangeKernel {
+        void run(int from, int to);
+    }
+
+    private CpuParallel() {}
+
+    /** 同步执行，返回时所有区间均已完成 */
+    public static void invoke(ForkJoinPool pool, int count, int grain, RangeKernel kernel) {
+        if (count <= 0) return;
+        if (count <= grain) { kernel.run(0, count); return; }
+        pool.invoke(new RangeTask(0, count, Math.max(1, grain), kernel));
+    }
+
+    /** 异步提交，调用方通过返回的任务 join */
+    public static ForkJoinTask<Void> submit(ForkJoinPool pool, int count, int grain, RangeKernel kernel) {
+        return pool.submit(new RangeTask(0, Math.max(0, count), Math.max(1, grain), kernel));
+    }
+
+    /** 异步提交，全部区间完成后在同一任务中执行 then (相当于排在内核之后的串行命令) */
+    public static ForkJoinTask<Void> submit(ForkJoinPool pool, int count, int grain, RangeKernel kernel, Runnable then) {
+        RangeTask body = new RangeTask(0, Math.max(0, count), Math.max(1, grain), kernel);
+        return pool.submit(ForkJoinTask.adapt(() -> {
+            body.invoke();
+            then.run();
+        }, (Void) null));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private final int from, to, grain;
+        private final RangeKernel kernel;
+
+        RangeTask(int from, int to, int grain, RangeKernel kernel) {
+            this.from = from; this.to = to; this.grain = grain; this.kernel = kernel;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                if (to > from) kernel.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, grain, kernel), new RangeTask(mid, to, grain, kernel));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 空间哈希网格构建内核的 CPU 实现。
+ * <p>
+ * 对应 SwarmKernelSource 中的 grid_assign_cells 与 {@link SpatialGrid#CL_BUILD} 中的 grid_scan_cells / grid_scatter；
+ * 物理碰撞的分格见 {@link CpuCollisionKernels}。
+ * 计数以普通读写代替原子加，assignCells 只能串行执行；格内顺序因此按槽位递增，结果是确定的。
+ * </p>
+ */
+public final class CpuSpatialGrid {
+
+    private CpuSpatialGrid() {}
+
+    /**
+     * grid_assign_cells：求每个槽位所在哈希桶并领取桶内序号，空闲槽位的桶记为 -1。
+     */
+    public static void assignCells(FloatBuffer positions, IntBuffer entityTypes, int count,
+                                   IntBuffer cellOf, IntBuffer cellRank, IntBuffer cellCount, int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            if (entityTypes.get(gid) < 0) { cellOf.put(gid, -1); continue; }
+            int idx = gid * 3;
+            int h = SpatialGrid.hash(SpatialGrid.cell(positions.get(idx)), SpatialGrid.cell(positions.get(idx + 1)),
+                SpatialGrid.cell(positions.get(idx + 2)));
+            cellOf.put(gid, h);
+            int rank = cellCount.get(h);
+            cellCount.put(h, rank + 1);
+            cellRank.put(gid, rank);
+        }
+    }
+
+    /**
+     * grid_scan_cells：按桶计数求前缀和，得到每个桶在槽位表中的 [start, end)。
+     */
+    public static void scanCells(IntBuffer cellCount, IntBuffer cellStart, IntBuffer cellEnd) {
+        int sum = 0;
+        for (int h = 0; h < SpatialGrid.CELLS; h++) {
+            cellStart.put(h, sum);
+            sum += cellCount.get(h);
+            cellEnd.put(h, sum);
+        }
+    }
+
+    /**
+     * grid_scatter：把槽位写入按桶排序的槽位表。
+     */
+    public static void scatter(IntBuffer cellOf, IntBuffer cellRank, int count, IntBuffer cellStart, IntBuffer order, int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int h = cellOf.get(gid);
+            if (h >= 0) order.put(cellStart.get(h) + cellRank.get(gid), gid);
+        }
+    }
+
+    /**
+     * 依次执行三个步骤重建网格；cellCount 在此清零。
+     */
+    public static void build(FloatBuffer positions, IntBuffer entityTypes, int count,
+                             IntBuffer cellOf, IntBuffer cellRank, IntBuffer cellCount,
+                             IntBuffer cellStart, IntBuffer cellEnd, IntBuffer order) {
+        for (int h = 0; h < SpatialGrid.CELLS; h++) cellCount.put(h, 0);
+        assignCells(positions, entityTypes, count, cellOf, cellRank, cellCount, 0, count);
+        scanCells(cellCount, cellStart, cellEnd);
+        scatter(cellOf, cellRank, count, cellStart, order, 0, count);
+    }
+
+    /** @return 位置是否落在群体网格的给定格子内 (排除哈希冲突的其他格子) */
+    public static boolean inCell(Float3 p, int x, int y, int z) {
+        return inCell(p, 1.0f / SpatialGrid.CELL_SIZE, x, y, z);
+    }
+
+    /** @return 位置是否落在边长为 1 / invCellSize 的网格的给定格子内 */
+    public static boolean inCell(Float3 p, float invCellSize, int x, int y, int z) {
+        return SpatialGrid.cell(p.x(), invCellSize) == x && SpatialGrid.cell(p.y(), invCellSize) == y
+            && SpatialGrid.cell(p.z(), invCellSize) == z;
+    }
+}
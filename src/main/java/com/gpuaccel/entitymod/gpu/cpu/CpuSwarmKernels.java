@@ -0,0 +1,298 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static com.gpuaccel.entitymod.gpu.cpu.CpuKernelCommon.*;
+
+/**
+ * SwarmKernelSource 中各 __kernel 的 CPU 实现。
+ * <p>
+ * 每个方法处理全局 ID 区间 [from, to)，与 OpenCL 的 get_global_id(0) 一一对应，
+ * 由调用方负责把区间切分给 ForkJoin 工作线程。
+ * </p>
+ */
+public final class CpuSwarmKernels {
+    public static final int AI_GENERIC       = 0;
+    public static final int AI_PREDATOR      = 1;
+    public static final int AI_LIVESTOCK     = 2;
+    public static final int AI_PREY_SKITTISH = 3;
+    public static final int AI_DEFENSIVE     = 4;
+    public static final int AI_ZOMBIE        = 5;
+
+    private static final Float3 XP_TARGET_OFFSET = new Float3(0, 1, 0);
+
+    private CpuSwarmKernels() {}
+
+    /**
+     * inject_stimuli：将刺激源累加到费洛蒙网格 (上限 10)。
+     */
+    public static void injectStimuli(FloatBuffer pheromones, float[] stimPos, int[] stimChannel, float[] stimValue, int count,
+                                     int mapOX, int mapOY, int mapOZ, int sizeXZ, int sizeY, int from, int to) {
+        int area = sizeXZ * sizeXZ;
+        int volume = area * sizeY;
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int px = (int) Math.floor(stimPos[gid * 3]) - mapOX;
+            int py = (int) Math.floor(stimPos[gid * 3 + 1]) - mapOY;
+            int pz = (int) Math.floor(stimPos[gid * 3 + 2]) - mapOZ;
+            if (px >= 0 && px < sizeXZ && py >= 0 && py < sizeY && pz >= 0 && pz < sizeXZ) {
+                int finalIdx = stimChannel[gid] * volume + px + pz * sizeXZ + py * area;
+                pheromones.put(finalIdx, Math.min(pheromones.get(finalIdx) + stimValue[gid], 10.0f));
+            }
+        }
+    }
+
+    /**
+     * diffuse_pheromones：3D 6-邻域拉普拉斯扩散 + 衰减。
+     */
+    public static void diffusePheromones(FloatBuffer inputMap, FloatBuffer outputMap, int sizeX, int sizeY, int sizeZ,
+                                         float diffusionRate, float decayRate, float dt, int from, int to) {
+        int volume = sizeX * sizeY * sizeZ;
+        int totalSize = volume * 8;
+        int area = sizeX * sizeZ;
+        for (int gid = from; gid < Math.min(to, totalSize); gid++) {
+            int channel = gid / volume;
+            int voxelIdx = gid % volume;
+            int y = voxelIdx / area;
+            int rem = voxelIdx % area;
+            int z = rem / sizeX;
+            int x = rem % sizeX;
+
+            int base = channel * volume + voxelIdx;
+            float centerVal = inputMap.get(base);
+
+            float sum = 0.0f;
+            int count = 0;
+            if (x > 0) { sum += inputMap.get(base - 1); count++; }
+            if (x < sizeX - 1) { sum += inputMap.get(base + 1); count++; }
+            if (z > 0) { sum += inputMap.get(base - sizeX); count++; }
+            if (z < sizeZ - 1) { sum += inputMap.get(base + sizeX); count++; }
+            if (y > 0) { sum += inputMap.get(base - area); count++; }
+            if (y < sizeY - 1) { sum += inputMap.get(base + area); count++; }
+
+            float rate = diffusionRate;
+            float decay = decayRate;
+            if (channel == 4) rate *= 1.5f;
+            else if (channel == 0) rate *= 0.5f;
+            else if (channel == 7) decay *= 0.8f;
+
+            float result = centerVal;
+            if (count > 0) {
+                float avg = sum / (float) count;
+                result = centerVal + (avg - centerVal) * rate * 60.0f * dt;
+            }
+            outputMap.put(gid, Math.max(0.0f, result * decay));
+        }
+    }
+
+    /** 读取 float4 流场中的方向分量，流场未生成时返回零向量 */
+    private static Float3 sampleField(FloatBuffer field, int idx) {
+        if (field == null) return Float3.ZERO;
+        int base = idx * 4;
+        return new Float3(field.get(base), field.get(base + 1), field.get(base + 2));
+    }
+
+    /** get_flow_force：根据 AI 类型选择并采样对应的流场 */
+    static Float3 getFlowForce(Float3 pos, int aiType, SwarmKernelArgs a) {
+        int size = a.voxSize;
+        int ix = (int) Math.floor(pos.x()) - a.voxOX;
+        int iy = (int) Math.floor(pos.y()) - a.voxOY;
+        int iz = (int) Math.floor(pos.z()) - a.voxOZ;
+        if (ix < 0 || ix >= size || iy < 0 || iy >= size || iz < 0 || iz >= size) return Float3.ZERO;
+
+        int shift = a.flowShift;
+        int fs = size >> shift;
+        int idx = (ix >> shift) + (iz >> shift) * fs + (iy >> shift) * fs * fs;
+        switch (aiType) {
+            case AI_ZOMBIE:
+                return sampleField(a.ffPlayer, idx);
+            case AI_PREDATOR: {
+                Float3 toPlayer = sampleField(a.ffPlayer, idx);
+                if (toPlayer.length() > 0.01f) return toPlayer;
+                return sampleField(a.ffLivestock, idx);
+            }
+            case AI_LIVESTOCK:
+            case AI_DEFENSIVE:
+                return sampleField(a.ffFood, idx);
+            case AI_PREY_SKITTISH: {
+                Float3 toPlayer = sampleField(a.ffPlayer, idx);
+                if (toPlayer.length() > 0.01f) return toPlayer.neg();
+                return sampleField(a.ffFood, idx);
+            }
+            default:
+                return Float3.ZERO;
+        }
+    }
+
+    /**
+     * remap_entity_slots：按 (源, 目标) 操作搬移或清零逐实体状态，源为负数时清零目标槽位。
+     */
+    public static void remapEntitySlots(IntBuffer ops, int count, FloatBuffer prevPositions, IntBuffer stuckTimer, IntBuffer beeStates,
+                                        int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            int src = ops.get(gid * 2);
+            int dst = ops.get(gid * 2 + 1);
+            if (src < 0) {
+                prevPositions.put(dst * 3, 0f).put(dst * 3 + 1, 0f).put(dst * 3 + 2, 0f);
+                stuckTimer.put(dst, 0);
+                beeStates.put(dst, 0);
+            } else {
+                prevPositions.put(dst * 3, prevPositions.get(src * 3))
+                    .put(dst * 3 + 1, prevPositions.get(src * 3 + 1))
+                    .put(dst * 3 + 2, prevPositions.get(src * 3 + 2));
+                stuckTimer.put(dst, stuckTimer.get(src));
+                beeStates.put(dst, beeStates.get(src));
+            }
+        }
+    }
+
+    /**
+     * scatter_entity_rows：把打包的运动行 (槽位 + 6 个 float) 与描述行 (槽位 + 类型 + 12 个 float) 写回各自的槽位。
+     * 描述行的类型写入登记类型 baseTypes。
+     */
+    public static void scatterEntityRows(IntBuffer motionRows, int motionCount, IntBuffer descRows, int descCount,
+                                         FloatBuffer positions, FloatBuffer velocities, IntBuffer baseTypes, FloatBuffer params,
+                                         int from, int to) {
+        for (int gid = from; gid < Math.min(to, motionCount + descCount); gid++) {
+            if (gid < motionCount) {
+                int r = gid * 7;
+                int slot = motionRows.get(r);
+                for (int k = 0; k < 3; k++) {
+                    positions.put(slot * 3 + k, Float.intBitsToFloat(motionRows.get(r + 1 + k)));
+                    velocities.put(slot * 3 + k, Float.intBitsToFloat(motionRows.get(r + 4 + k)));
+                }
+            } else {
+                int r = (gid - motionCount) * 14;
+                int slot = descRows.get(r);
+                baseTypes.put(slot, descRows.get(r + 1));
+                for (int k = 0; k < 12; k++) params.put(slot * 12 + k, Float.intBitsToFloat(descRows.get(r + 2 + k)));
+            }
+        }
+    }
+
+    /**
+     * apply_slot_mask：活动掩码中置位的槽位取登记类型，其余槽位类型记为 -1 (按空洞跳过)。
+     */
+    public static void applySlotMask(IntBuffer baseTypes, IntBuffer activeMask, int count, IntBuffer entityTypes,
+                                     int from, int to) {
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            boolean active = ((activeMask.get(gid >>> 5) >>> (gid & 31)) & 1) != 0;
+            entityTypes.put(gid, active ? baseTypes.get(gid) : -1);
+        }
+    }
+
+    /**
+     * compact_outputs：过滤新速度，把运动发生变化的实体以 (槽位, vel xyz) 记录追加到 records。
+     * 被归零或限幅、而 Host 上的当前速度尚未处于该值的实体同样输出记录。
+     * 追加位置由 recordCount[0] 维护，因此只能串行执行；记录按槽位升序排列。
+     */
+    public static void compactOutputs(FloatBuffer newVelocities, FloatBuffer velocities, IntBuffer entityTypes, int count,
+                                      float jitter, float maxSpeed, IntBuffer records, IntBuffer recordCount,
+                                      int from, int to) {
+        int n = recordCount.get(0);
+        for (int gid = from; gid < Math.min(to, count); gid++) {
+            if (entityTypes.get(gid) < 0) continue;
+            int idx = gid * 3;
+            float cx = velocities.get(idx), cy = velocities.get(idx + 1), cz = velocities.get(idx + 2);
+            float vx = filter(newVelocities.get(idx), maxSpeed);
+            float vy = filter(newVelocities.get(idx + 1), maxSpeed);
+            float vz = filter(newVelocities.get(idx + 2), maxSpeed);
+            boolean rest = Math.abs(vx) < jitter && Math.abs(vy) < jitter && Math.abs(vz) < jitter;
+            if (rest) {
+                vx = 0f; vy = 0f; vz = 0f;
+            }
+            boolean changed = Math.abs(vx - cx) > jitter || Math.abs(vy - cy) > jitter || Math.abs(vz - cz) > jitter;
+            boolean settle = rest && (cx != 0f || cy != 0f || cz != 0f);
+            boolean limit = Math.abs(cx) > maxSpeed || Math.abs(cy) > maxSpeed || Math.abs(cz) > maxSpeed;
+            if (!changed && !settle && !limit) continue;
+
+            int o = n * 4;
+            records.put(o, gid);
+            records.put(o + 1, Float.floatToRawIntBits(vx));
+            records.put(o + 2, Float.floatToRawIntBits(vy));
+            records.put(o + 3, Float.floatToRawIntBits(vz));
+            n++;
+        }
+        recordCount.put(0, n);
+    }
+
+    /** NaN 归零并限幅 */
+    private static float filter(float v, float maxSpeed) {
+        if (Float.isNaN(v)) return 0f;
+        return Math.max(-maxSpeed, Math.min(maxSpeed, v));
+    }
+
+    /**
+     * calculateSwarmBehavior：主入口，按实体类型分派到各逻辑分支。
+     */
+    public static void calculateSwarmBehavior(SwarmKernelArgs a, int from, int to) {
+        Float3 pPos3 = new Float3(a.playerPos.get(0), a.playerPos.get(1), a.playerPos.get(2));
+        int end = Math.min(to, a.entityCount);
+        for (int gid = from; gid < end; gid++) step(a, pPos3, gid);
+    }
+
+    /**
+     * 分桶内核 (swarm_walkers 等)：第 i 个工作项处理 order[bucketStart[bucket] + i] 号槽位，
+     * 处理区间 [from, to) 按桶内序号计。
+     */
+    public static void calculateBucket(SwarmKernelArgs a, int bucket, int from, int to) {
+        Float3 pPos3 = new Float3(a.playerPos.get(0), a.playerPos.get(1), a.playerPos.get(2));
+        int first = a.bucketStart[bucket];
+        int end = Math.min(to, a.bucketStart[bucket + 1] - first);
+        for (int b = from; b < end; b++) step(a, pPos3, a.order.get(first + b));
+    }
+
+    private static void step(SwarmKernelArgs a, Float3 pPos3, int gid) {
+        int idx = gid * 3;
+        Float3 pos = new Float3(a.positions.get(idx), a.positions.get(idx + 1), a.positions.get(idx + 2));
+        Float3 vel = new Float3(a.velocities.get(idx), a.velocities.get(idx + 1), a.velocities.get(idx + 2));
+        int type = a.entityTypes.get(gid);
+        if (type < 0) return;
+
+        Float3 toPlayer = pos.sub(pPos3);
+        float distToPlayerSq = toPlayer.dot(toPlayer);
+        boolean lodActive = distToPlayerSq > 64.0f * 64.0f;
+
+        Float3 finalVel = vel;
+        int aiType = (int) a.params.get(gid * 12 + 11);
+
+        if (type == TYPE_WALKER) {
+            Float3 flowDir = getFlowForce(pos, aiType, a);
+            finalVel = CpuWalkerLogic.updateWalker(a, gid, idx, pos, vel, lodActive, flowDir);
+        } else if (type == TYPE_SWIMMER) {
+            finalVel = CpuSwimmerLogic.updateSwimmer(a, gid, idx, pos, vel, lodActive);
+        } else if (type == TYPE_ITEM) {
+            vel = vel.withY(vel.y() - 0.04f);
+            byte vBelow = getVoxel(pos.add(new Float3(0, -0.2f, 0)), a.voxels, a.voxOX, a.voxOY, a.voxOZ, a.voxSize);
+            if (vBelow == VOXEL_SOLID) vel = new Float3(vel.x() * 0.5f, 0, vel.z() * 0.5f);
+            else vel = vel.mul(0.6f);
+            finalVel = vel;
+        } else if (type == TYPE_XP) {
+            // 与 OpenCL 版本一致：finalVel 取自重力修正前的速度
+            if (!lodActive && distToPlayerSq < 64.0f)
+                finalVel = finalVel.add(pPos3.add(XP_TARGET_OFFSET).sub(pos).normalize().mul(0.15f));
+            finalVel = finalVel.mul(0.95f);
+        } else {
+            int state = a.beeStates.get(gid);
+            finalVel = CpuFlyerLogic.updateFlyer(a, gid, idx, type, state, pos, vel, lodActive);
+        }
+
+        // 写入自身气味 (Self Scent Trail)
+        if (!lodActive && a.pheromones != null) {
+            int px = (int) Math.floor(pos.x()) - a.mapOX;
+            int py = (int) Math.floor(pos.y()) - a.mapOY;
+            int pz = (int) Math.floor(pos.z()) - a.mapOZ;
+            int sXZ = a.pSizeXZ, sY = a.pSizeY;
+            if (px >= 0 && px < sXZ && py >= 0 && py < sY && pz >= 0 && pz < sXZ) {
+                int pIdx = px + pz * sXZ + py * sXZ * sXZ;
+                int volume = sXZ * sXZ * sY;
+                int emitChannel = -1;
+                if (aiType == AI_PREDATOR) emitChannel = 4;
+                else if (aiType == AI_LIVESTOCK || aiType == AI_PREY_SKITTISH) emitChannel = 5;
+                if (emitChannel != -1) a.pheromones.put(emitChannel * volume + pIdx, 1.0f);
+            }
+        }
+
+        a.newVelocities.put(idx, finalVel.x()).put(idx + 1, finalVel.y()).put(idx + 2, finalVel.z());
+    }
+}
@@ -0,0 +1,127 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.NeighbourList;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static com.gpuaccel.entitymod.gpu.cpu.CpuKernelCommon.*;
+
+/**
+ * 水生生物逻辑的 CPU 实现。
+ * <p>
+ * 对应 {@link com.gpuaccel.entitymod.ai.kernel.SwimmerLogic}。
+ * </p>
+ */
+public final class CpuSwimmerLogic {
+    private static final Float3 WANDER_AXIS = new Float3(0.3f, 0.7f, 0.4f);
+
+    private CpuSwimmerLogic() {}
+
+    public static Float3 updateSwimmer(SwarmKernelArgs a, int gid, int idx, Float3 pos, Float3 vel, boolean lodActive) {
+        FloatBuffer params = a.params;
+        int pBase = gid * 12;
+        float maxSpeed         = params.get(pBase);
+        float wanderStrength   = params.get(pBase + 1);
+        float separationWeight = params.get(pBase + 2);
+        float separationRadius = 2.5f;
+        float alignmentWeight  = params.get(pBase + 3);
+        float cohesionWeight   = params.get(pBase + 4);
+        float mass             = params.get(pBase + 8);
+        int flags              = (int) params.get(pBase + 11);
+
+        // 标志位 1: 海洋生物 (支持地下无重力/飞行模式)
+        boolean isMarine = (flags & 1) != 0;
+        if (mass < 0.1f) mass = 0.1f;
+
+        ByteBuffer voxels = a.voxels;
+        int oX = a.voxOX, oY = a.voxOY, oZ = a.voxOZ, size = a.voxSize;
+        float time = a.time;
+
+        boolean inWater = getVoxel(pos, voxels, oX, oY, oZ, size) == VOXEL_LIQUID;
+
+        if (isMarine) {
+            inWater = true;
+            vel = vel.mul(0.92f);
+        }
+
+        // 搁浅逻辑
+        if (!inWater) {
+            vel = vel.withY(vel.y() - 0.08f);
+            byte voxelBelow = getVoxel(pos.add(new Float3(0, -0.6f, 0)), voxels, oX, oY, oZ, size);
+            if (voxelBelow == VOXEL_SOLID) {
+                vel = new Float3(vel.x() * 0.5f, vel.y(), vel.z() * 0.5f);
+                // 扑腾效果 (Flop)
+                if ((int) (time * 20 + gid) % 15 == 0) {
+                    Float3 flop = hash33(new Float3(gid, time, 0));
+                    vel = new Float3(vel.x() + (flop.x() - 0.5f) * 0.3f, 0.25f, vel.z() + (flop.z() - 0.5f) * 0.3f);
+                }
+            }
+            return vel;
+        }
+
+        Float3 acc = Float3.ZERO;
+
+        // 垂直方向浮力控制
+        if (!isMarine) {
+            vel = vel.mul(0.92f);
+            vel = vel.withY(vel.y() - 0.001f);
+
+            if (getVoxel(pos.add(new Float3(0, 1.0f, 0)), voxels, oX, oY, oZ, size) == VOXEL_AIR) acc = acc.withY(acc.y() - 0.05f / mass);
+            if (getVoxel(pos.add(new Float3(0, -1.0f, 0)), voxels, oX, oY, oZ, size) == VOXEL_SOLID) acc = acc.withY(acc.y() + 0.05f / mass);
+        }
+
+        // 风力 (水中影响减弱)
+        acc = acc.add(a.windForce.mul(isMarine ? 0.5f : 0.1f));
+
+        if (!lodActive) {
+            float noise = sin(pos.dot(WANDER_AXIS) + time * 0.3f + (float) gid);
+            Float3 wander = new Float3(cos(noise * 5.0f), sin(noise * 3.0f) * 0.3f, sin(noise * 5.0f));
+            acc = acc.add(wander.mul(wanderStrength).div(mass));
+
+            // 群体行为 (Boids)
+            Float3 sep = Float3.ZERO, ali = Float3.ZERO, coh = Float3.ZERO;
+            int count = 0; float visRadSq = 16.0f;
+
+            // 遍历 Verlet 邻居表 (见 NeighbourList)，表中只收录水生生物
+            int n = a.nbrCount.get(gid);
+            int base = gid * NeighbourList.MAX_NEIGHBOURS;
+            for (int k = 0; k < n; k++) {
+                int i = a.nbrList.get(base + k);
+                if (a.entityTypes.get(i) != TYPE_SWIMMER) continue; // 构建后离开或本帧未出现的槽位
+
+                int oIdx = i * 3;
+                Float3 oPos = new Float3(a.positions.get(oIdx), a.positions.get(oIdx + 1), a.positions.get(oIdx + 2));
+                Float3 away = pos.sub(oPos);
+                float dSq = away.dot(away);
+
+                if (dSq < visRadSq && dSq > 1e-5f) {
+                    coh = coh.add(oPos);
+                    ali = ali.add(new Float3(a.velocities.get(oIdx), a.velocities.get(oIdx + 1), a.velocities.get(oIdx + 2)));
+                    if (dSq < separationRadius * separationRadius) sep = sep.add(away.div(dSq));
+                    count++;
+                }
+            }
+            if (count > 0) {
+                coh = coh.div(count).sub(pos); ali = ali.div(count);
+                acc = acc.add(safeNormalize(sep).mul(separationWeight).div(mass));
+                acc = acc.add(safeNormalize(ali).mul(alignmentWeight).div(mass));
+                acc = acc.add(safeNormalize(coh).mul(cohesionWeight).div(mass));
+            }
+        } else {
+            acc = acc.add(hash33(new Float3(gid, time * 0.1f, 0)).mul(0.01f));
+        }
+
+        // 避障 (简单的向前探测)
+        float speed = vel.length();
+        if (speed > 0.01f) {
+            Float3 fwd = vel.div(speed);
+            Float3 lookAhead = pos.add(fwd.mul(2.0f));
+            if (getVoxel(lookAhead, voxels, oX, oY, oZ, size) != VOXEL_LIQUID) {
+                acc = acc.sub(fwd.mul(0.2f).div(mass));
+                acc = acc.add(hash33(new Float3(gid, time, 1)).mul(0.1f));
+            }
+        }
+        return limitVec(vel.add(acc), maxSpeed);
+    }
+}
@@ -0,0 +1,182 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static com.gpuaccel.entitymod.gpu.cpu.CpuKernelCommon.*;
+
+/**
+ * 陆行生物逻辑的 CPU 实现。
+ * <p>
+ * 对应 {@link com.gpuaccel.entitymod.ai.kernel.WalkerLogic}。
+ * </p>
+ */
+public final class CpuWalkerLogic {
+    private static final Float3 DOWN = new Float3(0, -1, 0);
+    private static final Float3 UP = new Float3(0, 1, 0);
+
+    private CpuWalkerLogic() {}
+
+    /** 位置评分：评估一个位置是否适合站立（脚下有方块，头顶无遮挡） */
+    static float evaluatePos(Float3 pos, ByteBuffer v, int ox, int oy, int oz, int s) {
+        float score = 0.0f;
+        score -= (isSolid(pos.add(new Float3(0, 0.5f, 0)), v, ox, oy, oz, s) ? 1f : 0f) * 1000.0f;
+        score -= (isSolid(pos.add(new Float3(0, 1.5f, 0)), v, ox, oy, oz, s) ? 1f : 0f) * 1000.0f;
+
+        boolean ground = isSolid(pos.add(new Float3(0, -0.5f, 0)), v, ox, oy, oz, s);
+        boolean drop = isSolid(pos.add(new Float3(0, -1.5f, 0)), v, ox, oy, oz, s);
+
+        float hasSupport = (ground ? 1f : 0f) + (drop ? 1f : 0f);
+        score -= (1.0f - Math.min(hasSupport, 1.0f)) * 1000.0f;
+
+        score -= (!ground && drop ? 1f : 0f) * 5.0f;
+        return score;
+    }
+
+    /** 在 3x3 邻域内寻找最佳前进方向，y=1 表示需要跳跃 */
+    static Float3 calculateBestDir(Float3 startPos, Float3 targetVec, ByteBuffer voxels, int oX, int oY, int oZ, int size) {
+        float maxScore = -9999.0f;
+        Float3 bestDir = Float3.ZERO;
+        boolean canJump = !isSolid(startPos.add(new Float3(0, 2.0f, 0)), voxels, oX, oY, oZ, size);
+
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) {
+                if (x == 0 && z == 0) continue;
+                Float3 dir = new Float3(x, 0, z).normalize();
+
+                float currentScore = dir.dot(targetVec) * 2.0f;
+
+                Float3 nextPos = startPos.add(dir.mul(0.8f));
+                float walkScore = evaluatePos(nextPos, voxels, oX, oY, oZ, size);
+
+                Float3 upPos = nextPos.add(new Float3(0, 1.0f, 0));
+                float jumpScore = evaluatePos(upPos, voxels, oX, oY, oZ, size) - 10.0f;
+                jumpScore -= (1.0f - (canJump ? 1f : 0f)) * 2000.0f;
+
+                currentScore += Math.max(walkScore, jumpScore);
+
+                if (currentScore > maxScore) {
+                    maxScore = currentScore;
+                    bestDir = dir.withY((jumpScore > walkScore && jumpScore > -500.0f) ? 1.0f : 0.0f);
+                }
+            }
+        }
+        if (maxScore < -100.0f) return Float3.ZERO;
+        return bestDir;
+    }
+
+    public static Float3 updateWalker(SwarmKernelArgs a, int gid, int idx, Float3 pos, Float3 vel, boolean lodActive, Float3 flowFieldDir) {
+        FloatBuffer params = a.params;
+        int pBase = gid * 12;
+        float maxSpeed     = params.get(pBase);
+        float commandState = params.get(pBase + 1);
+        Float3 goalPos     = new Float3(params.get(pBase + 2), params.get(pBase + 3), params.get(pBase + 4));
+        float gravity      = params.get(pBase + 5);
+        float jumpPower    = params.get(pBase + 7);
+        float mass         = Math.max(params.get(pBase + 8), 0.1f);
+
+        ByteBuffer voxels = a.voxels;
+        int oX = a.voxOX, oY = a.voxOY, oZ = a.voxOZ, size = a.voxSize;
+
+        // 环境感知
+        boolean inLiquid = getVoxel(pos, voxels, oX, oY, oZ, size) == VOXEL_LIQUID;
+        float distToGround = castRay(pos, DOWN, 4.0f, voxels, oX, oY, oZ, size);
+        float distToCeiling = castRay(pos, UP, 4.0f, voxels, oX, oY, oZ, size);
+
+        boolean centerGrounded = distToGround < 2.0f;
+        boolean isSolidGround = distToGround < 0.6f;
+        boolean lowCeiling = distToCeiling < 2.0f;
+
+        // --- 决策层 ---
+        boolean shouldMove = commandState > 0.5f;
+        Float3 targetDir = Float3.ZERO;
+        float speedMult = 1.0f;
+
+        if (shouldMove) {
+            targetDir = goalPos.sub(pos).normalize();
+            if (commandState > 1.5f) speedMult = 2.0f;
+            if (goalPos.sub(pos).length() < 1.0f) shouldMove = false;
+        }
+
+        // 流场覆盖逻辑 (恐慌状态除外)
+        if (flowFieldDir.length() > 0.1f && commandState < 1.9f) {
+            shouldMove = true;
+            targetDir = flowFieldDir.normalize();
+        }
+
+        // --- 运动层 ---
+        Float3 desiredVel = Float3.ZERO;
+        boolean jumpReq = false;
+
+        if (shouldMove && (centerGrounded || inLiquid)) {
+            Float3 moveDir = calculateBestDir(pos, targetDir, voxels, oX, oY, oZ, size);
+            if (moveDir.y() > 0.5f) { jumpReq = true; moveDir = moveDir.withY(0); }
+
+            if (moveDir.dot(moveDir) > 0.01f) {
+                moveDir = moveDir.normalize();
+                desiredVel = moveDir.mul(maxSpeed * speedMult);
+                if (jumpReq && !lowCeiling && !inLiquid && isSolidGround) {
+                    vel = vel.withY(jumpPower);
+                }
+            }
+        }
+
+        // --- 物理层 ---
+        float accY = a.windForce.y();
+        float liqFactor = inLiquid ? 1f : 0f;
+        accY -= gravity * (1.0f - liqFactor);
+        vel = vel.withY(vel.y() + liqFactor * 0.02f);
+        vel = vel.mul(mix(1.0f, 0.8f, liqFactor));
+
+        if (isSolidGround && vel.y() <= 0.0f) vel = vel.withY(0.0f);
+        else if (!isSolidGround && !inLiquid && distToGround < 4.0f) accY -= gravity;
+
+        if (vel.y() > 0 && distToCeiling < (vel.y() + 0.5f)) vel = vel.withY(-0.1f);
+
+        boolean moving = desiredVel.dot(desiredVel) > 0.001f;
+        float frictionRate = isSolidGround ? 0.2f : 0.02f;
+        float accelRate = 0.3f / mass;
+
+        float vx = vel.x(), vy = vel.y(), vz = vel.z();
+        if (moving) {
+            vx += (desiredVel.x() - vx) * accelRate;
+            vz += (desiredVel.z() - vz) * accelRate;
+        } else {
+            vx -= vx * frictionRate;
+            vz -= vz * frictionRate;
+        }
+        vy += accY;
+
+        if (vx * vx + vz * vz < 0.001f) { vx = 0; vz = 0; }
+
+        // --- 防卡死机制 ---
+        FloatBuffer prevPositions = a.prevPositions;
+        IntBuffer stuckTimer = a.stuckTimer;
+        Float3 prev = new Float3(prevPositions.get(idx), prevPositions.get(idx + 1), prevPositions.get(idx + 2));
+        Float3 moved = pos.sub(prev);
+        float isStuck = (moving && !inLiquid && moved.dot(moved) < 0.0001f) ? 1f : 0f;
+        stuckTimer.put(gid, (int) ((float) stuckTimer.get(gid) * isStuck + isStuck));
+
+        float time = a.time;
+        if ((int) time % 10 == 0) {
+            prevPositions.put(idx, pos.x()).put(idx + 1, pos.y()).put(idx + 2, pos.z());
+        }
+
+        if (stuckTimer.get(gid) > 60) {
+            if (centerGrounded && !lowCeiling && distToCeiling > 1.5f) {
+                vy = 0.25f;
+                float n1 = sin(time) * 43758.5453f;
+                float n2 = cos(time) * 23421.2312f;
+                vx += ((n1 - floor(n1)) - 0.5f) * 0.4f;
+                vz += ((n2 - floor(n2)) - 0.5f) * 0.4f;
+            } else {
+                float n3 = sin(time) * 12.34f;
+                vx += ((n3 - floor(n3)) - 0.5f) * 0.2f;
+            }
+            stuckTimer.put(gid, 0);
+        }
+
+        return limitVec(new Float3(vx, vy, vz), maxSpeed * 3.0f);
+    }
+}
@@ -0,0 +1,37 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+/**
+ * OpenCL {@code float3} 的 Java 对应物。
+ * <p>
+ * 仅用于 CPU 参考内核，保持与 OpenCL C 代码逐行对应，便于对照维护。
+ * 所有运算均为单精度，与 GPU 端的数值行为尽量一致。
+ * </p>
+ */
+public record Float3(float x, float y, float z) {
+    public static final Float3 ZERO = new Float3(0f, 0f, 0f);
+
+    public Float3 add(Float3 o) { return new Float3(x + o.x, y + o.y, z + o.z); }
+    public Float3 sub(Float3 o) { return new Float3(x - o.x, y - o.y, z - o.z); }
+    public Float3 mul(float s) { return new Float3(x * s, y * s, z * s); }
+    public Float3 div(float s) { return new Float3(x / s, y / s, z / s); }
+    public Float3 neg() { return new Float3(-x, -y, -z); }
+
+    public Float3 withX(float v) { return new Float3(v, y, z); }
+    public Float3 withY(float v) { return new Float3(x, v, z); }
+    public Float3 withZ(float v) { return new Float3(x, y, v); }
+
+    public float dot(Float3 o) { return x * o.x + y * o.y + z * o.z; }
+    public float lengthSq() { return x * x + y * y + z * z; }
+    public float length() { return (float) Math.sqrt(lengthSq()); }
+
+    public Float3 cross(Float3 o) {
+        return new Float3(y * o.z - z * o.y, z * o.x - x * o.z, x * o.y - y * o.x);
+    }
+
+    /** 与 OpenCL normalize 一致：零向量返回零向量 */
+    public Float3 normalize() {
+        float lenSq = lengthSq();
+        if (lenSq == 0f) return ZERO;
+        return mul((float) (1.0 / Math.sqrt(lenSq)));
+    }
+}
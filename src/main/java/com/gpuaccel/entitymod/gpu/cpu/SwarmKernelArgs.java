@@ -0,0 +1,64 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.TypeBuckets;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * calculateSwarmBehavior 的 CPU 参数块。
+ * <p>
+ * 缓冲区字段与 {@code SwarmKernelSource.MAIN_ENTRY} 的内核签名一致，
+ * 标量字段对应 {@link com.gpuaccel.entitymod.gpu.SwarmUniforms} 参数块。
+ * 所有缓冲区均使用绝对索引访问，因此可在多个工作线程间共享。
+ * </p>
+ */
+public class SwarmKernelArgs {
+    public FloatBuffer positions;
+    public FloatBuffer velocities;
+    public FloatBuffer newVelocities;
+    public IntBuffer entityTypes;
+    public FloatBuffer playerPos;
+    public int entityCount;
+
+    // 吸引点 (花朵/蜂巢)
+    public FloatBuffer attrX, attrY, attrZ;
+    public IntBuffer attrType;
+    public int attrCount;
+
+    public FloatBuffer prevPositions;
+    public IntBuffer stuckTimer;
+
+    // 费洛蒙网格 (Volume * 8)
+    public FloatBuffer pheromones;
+    public int mapOX, mapOY, mapOZ, pSizeXZ, pSizeY;
+
+    // 体素地图
+    public ByteBuffer voxels;
+    public int voxOX, voxOY, voxOZ, voxSize;
+    /** 流场降采样位移 (流场边长 = voxSize >> flowShift) */
+    public int flowShift;
+
+    public IntBuffer beeStates;
+    public float time;
+    public float attractionForce, arriveRadius, gatherChance, hoverFreq, hoverAmp;
+    public float worldTime;
+    public int isRaining;
+    public Float3 windForce = Float3.ZERO;
+    public float rainIntensity;
+
+    /** 每实体 12 个 float 的参数行 */
+    public FloatBuffer params;
+
+    // 流场 (float4 布局，可为 null 表示该流场尚未生成)
+    public FloatBuffer ffPlayer, ffLivestock, ffFood;
+
+    // Verlet 邻居表 (见 NeighbourList)：每槽位 MAX_NEIGHBOURS 项的邻居槽位与实际条数
+    public IntBuffer nbrList, nbrCount;
+
+    /** 分桶内核：各类型桶在排序槽位表中的起点 (见 TypeBuckets) */
+    public final int[] bucketStart = new int[TypeBuckets.COUNT + 1];
+    /** 分桶内核：按类型排序的槽位表 */
+    public IntBuffer order;
+}
@@ -0,0 +1,179 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+
+import java.nio.Buffer;
+
+/**
+ * OpenCL 驱动抽象层。
+ * <p>
+ * 所有子系统通过此接口发出 OpenCL 命令，而不是直接调用 {@code org.jocl.CL}。
+ * {@link JoclDriver} 转发到真实设备；{@link RecordingClDriver} 是本地替身，
+ * 记录命令流并用 Java 参考实现执行内核，可在没有 GPU 的机器上统计传输开销；
+ * {@link ThreadedClDriver} 包装前两者，把全部调用转交给独立的驱动线程执行；
+ * {@link com.gpuaccel.entitymod.gpu.sidecar.SidecarClDriver} 则把调用经共享内存转交给独立的计算边车进程。
+ * </p>
+ * <p>
+ * 每个实现都维护一个 {@link ClDriverStats}，记录入队、参数设置、阻塞调用和传输字节数。
+ * </p>
+ */
+public interface ClDriver {
+
+    /** @return 驱动名称 */
+    String getName();
+
+    /** @return 上下文与命令队列是否已就绪 */
+    boolean isAvailable();
+
+    String getDeviceName();
+
+    /** @return 驱动版本 (CL_DRIVER_VERSION)，与设备名一起标识持久化的调优结果 */
+    String getDriverVersion();
+
+    long getMaxComputeUnits();
+
+    long getGlobalMemorySize();
+
+    /** @return 单个缓冲区的最大字节数 (CL_DEVICE_MAX_MEM_ALLOC_SIZE) */
+    long getMaxMemAllocSize();
+
+    /** @return 子缓冲区起始偏移必须满足的对齐字节数 (CL_DEVICE_MEM_BASE_ADDR_ALIGN 换算为字节) */
+    long getMemBaseAddrAlign();
+
+    /** @return 设备是否与主机共享物理内存 (集成显卡 / APU，CL_DEVICE_HOST_UNIFIED_MEMORY) */
+    boolean isHostUnifiedMemory();
+
+    /**
+     * 编译内核源码并创建指定内核。
+     * <p>
+     * 同一份源码只构建一次，之后的调用直接从已构建的程序中创建内核。
+     * </p>
+     *
+     * @throws RuntimeException 编译失败或内核不存在
+     */
+    default cl_kernel compileKernel(String source, String name) {
+        return compileKernel(source, "", name);
+    }
+
+    /**
+     * 以指定构建选项 (clBuildProgram 的 options，如 {@code -D NAME=VALUE}) 编译并创建内核。
+     * 源码与选项共同决定程序缓存键，同一源码的不同选项是各自独立的程序。
+     *
+     * @throws RuntimeException 编译失败或内核不存在
+     */
+    cl_kernel compileKernel(String source, String options, String name);
+
+    void releaseKernel(cl_kernel kernel);
+
+    /** @return 该内核在当前设备上允许的最大工作组大小 (CL_KERNEL_WORK_GROUP_SIZE) */
+    long getKernelWorkGroupSize(cl_kernel kernel);
+
+    cl_mem createBuffer(long flags, long size);
+
+    /** 创建缓冲区并以 CL_MEM_COPY_HOST_PTR 方式用 hostData 初始化 */
+    cl_mem createBuffer(long flags, long size, Buffer hostData);
+
+    /**
+     * 在 parent 的 [origin, origin + size) 区间上创建子缓冲区 (clCreateSubBuffer)。
+     * 子缓冲区与父缓冲区共享存储；Host 指针相关标志从父缓冲区继承，flags 中只应包含访问标志。
+     *
+     * @param origin 起始偏移，必须是 {@link #getMemBaseAddrAlign()} 的整数倍
+     */
+    cl_mem createSubBuffer(cl_mem parent, long flags, long origin, long size);
+
+    void releaseMem(cl_mem mem);
+
+    void setArg(cl_kernel kernel, int index, cl_mem mem);
+
+    void setArg(cl_kernel kernel, int index, int value);
+
+    void setArg(cl_kernel kernel, int index, float value);
+
+    /** 设置 float3 参数 (按 16 字节对齐传递) */
+    void setArg(cl_kernel kernel, int index, float x, float y, float z);
+
+    /**
+     * Host -> Device 写入。
+     *
+     * @param src 源缓冲区，从其当前 position 开始读取
+     */
+    void write(cl_mem mem, boolean blocking, long offset, long bytes, Buffer src);
+
+    /**
+     * Device -> Host 读取。
+     *
+     * @param dst 目标缓冲区，从其当前 position 开始写入
+     */
+    void read(cl_mem mem, boolean blocking, long offset, long bytes, Buffer dst);
+
+    /** 用单个 float 值填充缓冲区的前 bytes 字节 */
+    void fill(cl_mem mem, float value, long bytes);
+
+    /** 非阻塞的设备内复制 (clEnqueueCopyBuffer)，按队列顺序在之前的命令之后执行 */
+    void copy(cl_mem src, cl_mem dst, long srcOffset, long dstOffset, long bytes);
+
+    void enqueueKernel(cl_kernel kernel, int dim, long[] global, long[] local);
+
+    // ==========================================
+    // 事件链 (非阻塞管线)
+    // ==========================================
+
+    /**
+     * 非阻塞写入，返回的事件需由调用方释放。
+     * 源缓冲区必须是直接缓冲区，且在事件完成前不得改写。
+     *
+     * @param waitList 需等待的事件，可为 null
+     */
+    cl_event writeAsync(cl_mem mem, long offset, long bytes, Buffer src, cl_event[] waitList);
+
+    /**
+     * 非阻塞读取，返回的事件需由调用方释放。
+     * 目标缓冲区必须是直接缓冲区，事件完成后数据才有效。
+     */
+    cl_event readAsync(cl_mem mem, long offset, long bytes, Buffer dst, cl_event[] waitList);
+
+    /**
+     * 非阻塞映射缓冲区的 [offset, offset + bytes) 区间 (clEnqueueMapBuffer)，映射事件需由调用方释放。
+     * 以 CL_MEM_ALLOC_HOST_PTR 创建的缓冲区在共享内存的设备上映射不产生复制。
+     *
+     * @param mapFlags CL_MAP_READ / CL_MAP_WRITE / CL_MAP_WRITE_INVALIDATE_REGION
+     */
+    ClMapping mapAsync(cl_mem mem, long mapFlags, long offset, long bytes, cl_event[] waitList);
+
+    /** 非阻塞解除映射，按队列顺序在之后的命令之前完成；映射本身可以尚未完成 */
+    void unmap(cl_mem mem, ClMapping mapping);
+
+    /** 入队内核并返回其完成事件 */
+    cl_event enqueueKernelAsync(cl_kernel kernel, int dim, long[] global, long[] local, cl_event[] waitList);
+
+    /**
+     * 非阻塞查询事件是否已完成。
+     *
+     * @throws org.jocl.CLException 命令执行出错 (事件状态为负的错误码)，调用方应交给看门狗并丢弃该帧的结果
+     */
+    boolean isComplete(cl_event event);
+
+    /**
+     * 非阻塞查询事件完成的时刻，用于测量设备上的实际执行时长。
+     *
+     * @return 观察到事件完成时的 {@link System#nanoTime()}；尚未完成时返回 0
+     */
+    long getCompletionNanos(cl_event event);
+
+    /** 阻塞等待事件完成 */
+    void waitFor(cl_event event);
+
+    void releaseEvent(cl_event event);
+
+    void flush();
+
+    /** 阻塞直到队列中的全部命令完成 */
+    void finish();
+
+    ClDriverStats getStats();
+
+    /** 释放命令队列与上下文 */
+    void release();
+}
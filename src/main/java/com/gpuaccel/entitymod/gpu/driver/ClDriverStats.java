@@ -0,0 +1,103 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+/**
+ * OpenCL 命令流计数器。
+ * <p>
+ * 由 {@link ClDriver} 实现在每次入队、设置参数和传输时累加，
+ * 每个更新周期结束时调用 {@link #endTick(int)} 生成快照并清零当前周期计数。
+ * 只应在发出 OpenCL 命令的线程上访问。
+ * </p>
+ */
+public class ClDriverStats {
+    // 当前周期计数
+    private long kernelEnqueues;
+    private long kernelArgSets;
+    private long blockingCalls;
+    private long writes;
+    private long reads;
+    private long fills;
+    private long maps;
+    private long copies;
+    private long bytesWritten;
+    private long bytesRead;
+    private long bytesCopied;
+    private long buffersCreated;
+
+    // 累计值
+    private long totalTicks;
+    private long totalEntities;
+    private long totalBlockingCalls;
+    private long totalBytes;
+
+    private ClTickStats lastTick = ClTickStats.EMPTY;
+
+    public void onKernelEnqueue() { kernelEnqueues++; }
+    public void onKernelArg() { kernelArgSets++; }
+    public void onBlocking() { blockingCalls++; }
+    public void onBufferCreated() { buffersCreated++; }
+
+    public void onWrite(long bytes, boolean blocking) {
+        writes++;
+        bytesWritten += bytes;
+        if (blocking) blockingCalls++;
+    }
+
+    public void onRead(long bytes, boolean blocking) {
+        reads++;
+        bytesRead += bytes;
+        if (blocking) blockingCalls++;
+    }
+
+    public void onFill() { fills++; }
+
+    /** 设备内复制不经过 Host，单独计量，不计入传输量 */
+    public void onCopy(long bytes) {
+        copies++;
+        bytesCopied += bytes;
+    }
+
+    /** 映射不经过传输，只计次数 */
+    public void onMap() { maps++; }
+
+    /**
+     * 结束当前更新周期。
+     *
+     * @param entities 本周期提交给设备的实体数量
+     * @return 本周期的统计快照
+     */
+    public ClTickStats endTick(int entities) {
+        lastTick = new ClTickStats(entities, kernelEnqueues, kernelArgSets, blockingCalls,
+            writes, reads, fills, maps, copies, bytesWritten, bytesRead, bytesCopied, buffersCreated);
+
+        totalTicks++;
+        totalEntities += entities;
+        totalBlockingCalls += blockingCalls;
+        totalBytes += bytesWritten + bytesRead;
+
+        kernelEnqueues = kernelArgSets = blockingCalls = 0;
+        writes = reads = fills = maps = copies = 0;
+        bytesWritten = bytesRead = bytesCopied = buffersCreated = 0;
+        return lastTick;
+    }
+
+    /** @return 最近一个完整周期的快照 */
+    public ClTickStats getLastTick() { return lastTick; }
+
+    public long getTotalTicks() { return totalTicks; }
+
+    /** @return 每周期平均阻塞调用次数 */
+    public double getAvgBlockingCalls() {
+        return totalTicks == 0 ? 0.0 : (double) totalBlockingCalls / totalTicks;
+    }
+
+    /** @return 全部周期内每 1000 个实体的平均传输量 (MB) */
+    public double getAvgMBPer1000Entities() {
+        return totalEntities == 0 ? 0.0 : totalBytes / (1024.0 * 1024.0) * 1000.0 / totalEntities;
+    }
+
+    public void reset() {
+        endTick(0);
+        totalTicks = totalEntities = totalBlockingCalls = totalBytes = 0;
+        lastTick = ClTickStats.EMPTY;
+    }
+}
@@ -0,0 +1,33 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import org.jocl.cl_event;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 非阻塞映射 (clEnqueueMapBuffer) 的结果。
+ * <p>
+ * 映射区域只有在 {@link #event()} 完成后才能访问；事件由调用方释放，
+ * 映射本身需用 {@link ClDriver#unmap} 解除，解除之前不得再让内核读写该缓冲区。
+ * </p>
+ */
+public final class ClMapping {
+    private final cl_event event;
+    /** {@link ThreadedClDriver} 在驱动线程上入队映射后才写入 */
+    private volatile ByteBuffer buffer;
+
+    public ClMapping(cl_event event, ByteBuffer buffer) {
+        this.event = event;
+        this.buffer = buffer;
+    }
+
+    void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** @return 映射完成事件 */
+    public cl_event event() { return event; }
+
+    /** @return 映射区域 (本机字节序)，事件完成前不得访问 */
+    public ByteBuffer buffer() { return buffer; }
+}
@@ -0,0 +1,166 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static org.jocl.CL.*;
+
+/**
+ * OpenCL 程序缓存。
+ * <p>
+ * 每份内核源码与构建选项的组合只构建一次 {@link cl_program}，同一程序中的所有内核都从该程序创建；
+ * 同一源码以不同 {@code -D} 选项构建的特化变体各自缓存。
+ * 构建成功后把 {@code CL_PROGRAM_BINARIES} 写入缓存目录，文件名由源码与选项的哈希、设备名与驱动版本共同决定，
+ * 下次启动时直接用 {@code clCreateProgramWithBinary} 加载，跳过前端编译。
+ * 驱动升级或换卡后键值变化，旧文件自然失效。
+ * </p>
+ */
+public class ClProgramCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String SUFFIX = ".clbin";
+
+    private final cl_context context;
+    private final cl_device_id device;
+    /** 设备名 + 驱动版本，参与磁盘缓存键 */
+    private final String deviceKey;
+    /** 为 null 时只做进程内缓存 */
+    private final Path cacheDir;
+
+    /** 源码 + 选项哈希 -> 已构建程序 */
+    private final Map<String, cl_program> programs = new HashMap<>();
+
+    private int diskHits = 0;
+    private int builds = 0;
+
+    public ClProgramCache(cl_context context, cl_device_id device, String deviceKey, Path cacheDir) {
+        this.context = context;
+        this.device = device;
+        this.deviceKey = deviceKey;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * 获取源码对应的程序，必要时从磁盘加载或重新构建。
+     *
+     * @param source 内核源码
+     * @param options 构建选项，可为空串
+     * @param label 用于日志的名称
+     */
+    public cl_program getOrBuild(String source, String options, String label) {
+        String sourceHash = sha256(options.isEmpty() ? source : source + "\0" + options);
+        cl_program cached = programs.get(sourceHash);
+        if (cached != null) return cached;
+
+        long start = System.nanoTime();
+        Path binFile = cacheDir == null ? null : cacheDir.resolve(sha256(sourceHash + "|" + deviceKey) + SUFFIX);
+        cl_program prog = binFile == null ? null : loadBinary(binFile, options);
+        if (prog != null) {
+            diskHits++;
+            LOGGER.info("从缓存加载 OpenCL 程序 ({}): {} ms", label, (System.nanoTime() - start) / 1_000_000);
+        } else {
+            prog = buildFromSource(source, options, label);
+            builds++;
+            LOGGER.info("OpenCL 程序构建完成 ({}{}): {} ms", label, options.isEmpty() ? "" : " " + options, (System.nanoTime() - start) / 1_000_000);
+            if (binFile != null) saveBinary(prog, binFile);
+        }
+        programs.put(sourceHash, prog);
+        return prog;
+    }
+
+    private cl_program buildFromSource(String source, String options, String label) {
+        cl_program prog = clCreateProgramWithSource(context, 1, new String[]{source}, null, null);
+        try {
+            clBuildProgram(prog, 0, null, options, null, null);
+        } catch (CLException e) {
+            LOGGER.error("{} 的 OpenCL 构建错误:\n{}", label, buildLog(prog));
+            clReleaseProgram(prog);
+            throw new RuntimeException("OpenCL 编译失败: " + label, e);
+        }
+        return prog;
+    }
+
+    /** 读取并构建缓存的二进制；文件损坏或与当前驱动不兼容时删除并返回 null */
+    private cl_program loadBinary(Path file, String options) {
+        if (!Files.isRegularFile(file)) return null;
+        cl_program prog = null;
+        try {
+            byte[] binary = Files.readAllBytes(file);
+            int[] binaryStatus = new int[1];
+            prog = clCreateProgramWithBinary(context, 1, new cl_device_id[]{device},
+                new long[]{binary.length}, new byte[][]{binary}, binaryStatus, null);
+            if (binaryStatus[0] != CL_SUCCESS) throw new IOException("binary status " + binaryStatus[0]);
+            // 二进制程序仍需 clBuildProgram 完成链接
+            clBuildProgram(prog, 0, null, options, null, null);
+            return prog;
+        } catch (IOException | CLException e) {
+            LOGGER.warn("OpenCL 程序缓存 {} 无效，将重新编译: {}", file.getFileName(), e.getMessage());
+            if (prog != null) clReleaseProgram(prog);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {}
+            return null;
+        }
+    }
+
+    private void saveBinary(cl_program prog, Path file) {
+        try {
+            long[] binarySize = new long[1];
+            clGetProgramInfo(prog, CL_PROGRAM_BINARY_SIZES, Sizeof.size_t, Pointer.to(binarySize), null);
+            if (binarySize[0] <= 0) return;
+
+            byte[] binary = new byte[(int) binarySize[0]];
+            Pointer[] binaryPointers = {Pointer.to(binary)};
+            clGetProgramInfo(prog, CL_PROGRAM_BINARIES, Sizeof.POINTER, Pointer.to(binaryPointers), null);
+
+            Files.createDirectories(file.getParent());
+            // 先写临时文件再原子替换，避免中途崩溃留下半个文件
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, binary);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | CLException e) {
+            LOGGER.warn("无法写入 OpenCL 程序缓存: {}", e.getMessage());
+        }
+    }
+
+    private String buildLog(cl_program prog) {
+        long[] logSize = new long[1];
+        clGetProgramBuildInfo(prog, device, CL_PROGRAM_BUILD_LOG, 0, null, logSize);
+        if (logSize[0] <= 1) return "";
+        byte[] logData = new byte[(int) logSize[0]];
+        clGetProgramBuildInfo(prog, device, CL_PROGRAM_BUILD_LOG, logSize[0], Pointer.to(logData), null);
+        return new String(logData, 0, logData.length - 1, StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return 本次启动从磁盘缓存加载的程序数 */
+    public int getDiskHits() { return diskHits; }
+
+    /** @return 本次启动从源码构建的程序数 */
+    public int getBuilds() { return builds; }
+
+    /** 释放所有程序对象 */
+    public void release() {
+        for (cl_program prog : programs.values()) clReleaseProgram(prog);
+        programs.clear();
+    }
+}
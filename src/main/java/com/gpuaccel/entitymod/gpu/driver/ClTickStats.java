@@ -0,0 +1,38 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+/**
+ * 单个更新周期内的 OpenCL 命令流统计快照。
+ *
+ * @param entities 本周期提交的实体数量
+ * @param kernelEnqueues 内核入队次数
+ * @param kernelArgSets clSetKernelArg 调用次数
+ * @param blockingCalls 阻塞调用次数 (CL_TRUE 读写与 clFinish)
+ * @param writes 写入命令数
+ * @param reads 读取命令数
+ * @param fills 填充命令数
+ * @param maps 映射命令数 (零复制，不计入传输量)
+ * @param copies 设备内复制命令数
+ * @param bytesWritten Host -> Device 字节数
+ * @param bytesRead Device -> Host 字节数
+ * @param bytesCopied Device -> Device 字节数 (不计入传输量)
+ * @param buffersCreated 新建的 cl_mem 数量
+ */
+public record ClTickStats(
+    int entities,
+    long kernelEnqueues, long kernelArgSets, long blockingCalls,
+    long writes, long reads, long fills, long maps, long copies,
+    long bytesWritten, long bytesRead, long bytesCopied,
+    long buffersCreated
+) {
+    public static final ClTickStats EMPTY = new ClTickStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    /** @return 本周期 Host-Device 总传输量 (MB) */
+    public double transferredMB() {
+        return (bytesWritten + bytesRead) / (1024.0 * 1024.0);
+    }
+
+    /** @return 每 1000 个实体的传输量 (MB)，无实体时返回 0 */
+    public double mbPer1000Entities() {
+        return entities <= 0 ? 0.0 : transferredMB() * 1000.0 / entities;
+    }
+}
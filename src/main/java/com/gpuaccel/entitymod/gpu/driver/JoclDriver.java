@@ -0,0 +1,343 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.*;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.jocl.CL.*;
+
+/**
+ * 基于 JOCL 的真实 OpenCL 驱动。
+ * <p>
+ * 负责平台/设备选择、上下文与命令队列创建，并把 {@link ClDriver} 的调用转发给 {@code org.jocl.CL}。
+ * 内核程序经由 {@link ClProgramCache} 按源码去重构建，并可持久化到磁盘。
+ * </p>
+ */
+public class JoclDriver implements ClDriver {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private cl_context context;
+    private cl_command_queue commandQueue;
+    private cl_device_id device;
+    private boolean available = false;
+    private ClProgramCache programCache;
+    private final Path programCacheDir;
+
+    // 设备信息
+    private String deviceName = "未知";
+    private String driverVersion = "未知";
+    private long maxComputeUnits = 0;
+    private long globalMemorySize = 0;
+    private long maxMemAllocSize = 0;
+    private long memBaseAddrAlign = 0;
+    private boolean hostUnifiedMemory = false;
+
+    private final ClDriverStats stats = new ClDriverStats();
+
+    // 复用的参数数组，避免每次 setArg 分配
+    private final int[] intArg = new int[1];
+    private final float[] floatArg = new float[1];
+    private final float[] float3Arg = new float[4];
+    private final int[] eventStatus = new int[1];
+
+    public JoclDriver() {
+        this(null);
+    }
+
+    /**
+     * @param programCacheDir 程序二进制缓存目录，为 null 时不落盘
+     */
+    public JoclDriver(Path programCacheDir) {
+        this.programCacheDir = programCacheDir;
+        try {
+            initializeOpenCL();
+        } catch (Exception e) {
+            LOGGER.error("OpenCL 初始化失败", e);
+            available = false;
+        }
+    }
+
+    /**
+     * 初始化 OpenCL 平台、设备、上下文和命令队列。
+     */
+    private void initializeOpenCL() {
+        CL.setExceptionsEnabled(true);
+        int[] numPlatforms = new int[1];
+        clGetPlatformIDs(0, null, numPlatforms);
+        if (numPlatforms[0] == 0) return;
+
+        cl_platform_id[] platforms = new cl_platform_id[numPlatforms[0]];
+        clGetPlatformIDs(platforms.length, platforms, null);
+        cl_platform_id chosenPlatform = platforms[0];
+
+        int[] numDevices = new int[1];
+        clGetDeviceIDs(chosenPlatform, CL_DEVICE_TYPE_GPU, 0, null, numDevices);
+        if (numDevices[0] == 0) return;
+
+        cl_device_id[] devices = new cl_device_id[numDevices[0]];
+        clGetDeviceIDs(chosenPlatform, CL_DEVICE_TYPE_GPU, numDevices[0], devices, null);
+        device = devices[0];
+
+        cl_context_properties contextProperties = new cl_context_properties();
+        contextProperties.addProperty(CL_CONTEXT_PLATFORM, chosenPlatform);
+        context = clCreateContext(contextProperties, 1, new cl_device_id[]{device}, null, null, null);
+        commandQueue = clCreateCommandQueue(context, device, 0, null);
+
+        // 获取设备信息
+        deviceName = getDeviceString(CL_DEVICE_NAME);
+        driverVersion = getDeviceString(CL_DRIVER_VERSION);
+
+        long[] val = new long[1];
+        clGetDeviceInfo(device, CL_DEVICE_MAX_COMPUTE_UNITS, Sizeof.cl_long, Pointer.to(val), null);
+        maxComputeUnits = val[0];
+        clGetDeviceInfo(device, CL_DEVICE_GLOBAL_MEM_SIZE, Sizeof.cl_long, Pointer.to(val), null);
+        globalMemorySize = val[0];
+        clGetDeviceInfo(device, CL_DEVICE_MAX_MEM_ALLOC_SIZE, Sizeof.cl_long, Pointer.to(val), null);
+        maxMemAllocSize = val[0];
+        int[] align = new int[1];
+        clGetDeviceInfo(device, CL_DEVICE_MEM_BASE_ADDR_ALIGN, Sizeof.cl_uint, Pointer.to(align), null);
+        memBaseAddrAlign = align[0] / 8;
+        int[] unified = new int[1];
+        clGetDeviceInfo(device, CL_DEVICE_HOST_UNIFIED_MEMORY, Sizeof.cl_int, Pointer.to(unified), null);
+        hostUnifiedMemory = unified[0] != 0;
+
+        programCache = new ClProgramCache(context, device, deviceName + "|" + driverVersion, programCacheDir);
+        available = true;
+    }
+
+    private String getDeviceString(int param) {
+        byte[] buf = new byte[256];
+        long[] size = new long[1];
+        clGetDeviceInfo(device, param, buf.length, Pointer.to(buf), size);
+        return new String(buf, 0, (int)size[0]-1, StandardCharsets.UTF_8).trim();
+    }
+
+    @Override
+    public String getName() {
+        return "JOCL";
+    }
+
+    @Override
+    public boolean isAvailable() { return available; }
+
+    @Override
+    public String getDeviceName() { return deviceName; }
+
+    @Override
+    public String getDriverVersion() { return driverVersion; }
+
+    @Override
+    public long getMaxComputeUnits() { return maxComputeUnits; }
+
+    @Override
+    public long getGlobalMemorySize() { return globalMemorySize; }
+
+    @Override
+    public long getMaxMemAllocSize() { return maxMemAllocSize; }
+
+    @Override
+    public long getMemBaseAddrAlign() { return memBaseAddrAlign; }
+
+    @Override
+    public boolean isHostUnifiedMemory() { return hostUnifiedMemory; }
+
+    @Override
+    public cl_kernel compileKernel(String source, String options, String name) {
+        cl_program prog = programCache.getOrBuild(source, options, name);
+        return clCreateKernel(prog, name, null);
+    }
+
+    @Override
+    public void releaseKernel(cl_kernel kernel) {
+        if (kernel != null) clReleaseKernel(kernel);
+    }
+
+    @Override
+    public long getKernelWorkGroupSize(cl_kernel kernel) {
+        long[] size = new long[1];
+        clGetKernelWorkGroupInfo(kernel, device, CL_KERNEL_WORK_GROUP_SIZE, Sizeof.size_t, Pointer.to(size), null);
+        return size[0];
+    }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size) {
+        stats.onBufferCreated();
+        return clCreateBuffer(context, flags, size, null, null);
+    }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size, Buffer hostData) {
+        stats.onBufferCreated();
+        if (hostData != null && (flags & CL_MEM_COPY_HOST_PTR) != 0) stats.onWrite(size, true);
+        return clCreateBuffer(context, flags, size, hostData == null ? null : Pointer.to(hostData), null);
+    }
+
+    @Override
+    public cl_mem createSubBuffer(cl_mem parent, long flags, long origin, long size) {
+        stats.onBufferCreated();
+        return clCreateSubBuffer(parent, flags, CL_BUFFER_CREATE_TYPE_REGION, new cl_buffer_region(origin, size), null);
+    }
+
+    @Override
+    public void releaseMem(cl_mem mem) {
+        if (mem != null) clReleaseMemObject(mem);
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, cl_mem mem) {
+        stats.onKernelArg();
+        clSetKernelArg(kernel, index, Sizeof.cl_mem, Pointer.to(mem));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, int value) {
+        stats.onKernelArg();
+        intArg[0] = value;
+        clSetKernelArg(kernel, index, Sizeof.cl_int, Pointer.to(intArg));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float value) {
+        stats.onKernelArg();
+        floatArg[0] = value;
+        clSetKernelArg(kernel, index, Sizeof.cl_float, Pointer.to(floatArg));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float x, float y, float z) {
+        stats.onKernelArg();
+        float3Arg[0] = x; float3Arg[1] = y; float3Arg[2] = z; float3Arg[3] = 0f;
+        clSetKernelArg(kernel, index, Sizeof.cl_float3, Pointer.to(float3Arg));
+    }
+
+    @Override
+    public void write(cl_mem mem, boolean blocking, long offset, long bytes, Buffer src) {
+        stats.onWrite(bytes, blocking);
+        clEnqueueWriteBuffer(commandQueue, mem, blocking, offset, bytes, Pointer.to(src), 0, null, null);
+    }
+
+    @Override
+    public void read(cl_mem mem, boolean blocking, long offset, long bytes, Buffer dst) {
+        stats.onRead(bytes, blocking);
+        clEnqueueReadBuffer(commandQueue, mem, blocking, offset, bytes, Pointer.to(dst), 0, null, null);
+    }
+
+    @Override
+    public void fill(cl_mem mem, float value, long bytes) {
+        stats.onFill();
+        clEnqueueFillBuffer(commandQueue, mem, Pointer.to(new float[]{value}), Sizeof.cl_float, 0, bytes, 0, null, null);
+    }
+
+    @Override
+    public void copy(cl_mem src, cl_mem dst, long srcOffset, long dstOffset, long bytes) {
+        stats.onCopy(bytes);
+        clEnqueueCopyBuffer(commandQueue, src, dst, srcOffset, dstOffset, bytes, 0, null, null);
+    }
+
+    @Override
+    public void enqueueKernel(cl_kernel kernel, int dim, long[] global, long[] local) {
+        stats.onKernelEnqueue();
+        clEnqueueNDRangeKernel(commandQueue, kernel, dim, null, global, local, 0, null, null);
+    }
+
+    @Override
+    public cl_event writeAsync(cl_mem mem, long offset, long bytes, Buffer src, cl_event[] waitList) {
+        stats.onWrite(bytes, false);
+        cl_event event = new cl_event();
+        clEnqueueWriteBuffer(commandQueue, mem, CL_FALSE, offset, bytes, Pointer.to(src), count(waitList), waitList(waitList), event);
+        return event;
+    }
+
+    @Override
+    public cl_event readAsync(cl_mem mem, long offset, long bytes, Buffer dst, cl_event[] waitList) {
+        stats.onRead(bytes, false);
+        cl_event event = new cl_event();
+        clEnqueueReadBuffer(commandQueue, mem, CL_FALSE, offset, bytes, Pointer.to(dst), count(waitList), waitList(waitList), event);
+        return event;
+    }
+
+    @Override
+    public ClMapping mapAsync(cl_mem mem, long mapFlags, long offset, long bytes, cl_event[] waitList) {
+        stats.onMap();
+        cl_event event = new cl_event();
+        ByteBuffer mapped = clEnqueueMapBuffer(commandQueue, mem, CL_FALSE, mapFlags, offset, bytes,
+            count(waitList), waitList(waitList), event, null);
+        return new ClMapping(event, mapped.order(ByteOrder.nativeOrder()));
+    }
+
+    @Override
+    public void unmap(cl_mem mem, ClMapping mapping) {
+        clEnqueueUnmapMemObject(commandQueue, mem, mapping.buffer(), 0, null, null);
+    }
+
+    @Override
+    public cl_event enqueueKernelAsync(cl_kernel kernel, int dim, long[] global, long[] local, cl_event[] waitList) {
+        stats.onKernelEnqueue();
+        cl_event event = new cl_event();
+        clEnqueueNDRangeKernel(commandQueue, kernel, dim, null, global, local, count(waitList), waitList(waitList), event);
+        return event;
+    }
+
+    private static int count(cl_event[] waitList) {
+        return waitList == null ? 0 : waitList.length;
+    }
+
+    private static cl_event[] waitList(cl_event[] waitList) {
+        return waitList == null || waitList.length == 0 ? null : waitList;
+    }
+
+    @Override
+    public boolean isComplete(cl_event event) {
+        clGetEventInfo(event, CL_EVENT_COMMAND_EXECUTION_STATUS, Sizeof.cl_int, Pointer.to(eventStatus), null);
+        int status = eventStatus[0];
+        if (status < 0) throw new CLException("OpenCL 命令执行失败: " + CL.stringFor_errorCode(status), status);
+        return status == CL_COMPLETE;
+    }
+
+    /** 没有后台轮询，以查询时刻近似完成时刻 (偏晚，误差不超过两次查询的间隔) */
+    @Override
+    public long getCompletionNanos(cl_event event) {
+        return isComplete(event) ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void waitFor(cl_event event) {
+        stats.onBlocking();
+        clWaitForEvents(1, new cl_event[]{event});
+    }
+
+    @Override
+    public void releaseEvent(cl_event event) {
+        if (event != null) clReleaseEvent(event);
+    }
+
+    @Override
+    public void flush() {
+        clFlush(commandQueue);
+    }
+
+    @Override
+    public void finish() {
+        stats.onBlocking();
+        clFinish(commandQueue);
+    }
+
+    @Override
+    public ClDriverStats getStats() { return stats; }
+
+    @Override
+    public void release() {
+        if (programCache != null) programCache.release();
+        if (commandQueue != null) clReleaseCommandQueue(commandQueue);
+        if (context != null) clReleaseContext(context);
+        commandQueue = null;
+        context = null;
+        available = false;
+    }
+}
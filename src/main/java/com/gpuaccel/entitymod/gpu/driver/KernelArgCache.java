@@ -0,0 +1,45 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+
+import java.util.Arrays;
+
+/**
+ * 内核缓冲区参数的绑定缓存。
+ * <p>
+ * 记录每个参数位置当前绑定的 {@link cl_mem}，只有句柄对象变化 (例如扩容后重新分配) 时才调用 setArg。
+ * 句柄按引用比较；释放后重新创建的缓冲区总是新的对象，因此不会误判为未变化。
+ * </p>
+ */
+public final class KernelArgCache {
+    private final cl_kernel kernel;
+    private final cl_mem[] bound;
+
+    /**
+     * @param kernel 目标内核
+     * @param argCount 内核参数个数
+     */
+    public KernelArgCache(cl_kernel kernel, int argCount) {
+        this.kernel = kernel;
+        this.bound = new cl_mem[argCount];
+    }
+
+    public cl_kernel kernel() {
+        return kernel;
+    }
+
+    /**
+     * 绑定缓冲区参数，与上次绑定的对象相同时跳过。
+     */
+    public void bind(ClDriver driver, int index, cl_mem mem) {
+        if (bound[index] == mem) return;
+        driver.setArg(kernel, index, mem);
+        bound[index] = mem;
+    }
+
+    /** 清除绑定记录，下次 {@link #bind} 时全部重新设置 */
+    public void invalidate() {
+        Arrays.fill(bound, null);
+    }
+}
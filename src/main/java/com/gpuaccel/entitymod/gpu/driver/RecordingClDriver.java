@@ -0,0 +1,599 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import com.gpuaccel.entitymod.gpu.NeighbourList;
+import com.gpuaccel.entitymod.gpu.SwarmUniforms;
+import com.gpuaccel.entitymod.gpu.TypeBuckets;
+import com.gpuaccel.entitymod.gpu.cpu.CpuCollisionKernels;
+import com.gpuaccel.entitymod.gpu.cpu.CpuFlowFieldKernels;
+import com.gpuaccel.entitymod.gpu.cpu.CpuNeighbourList;
+import com.gpuaccel.entitymod.gpu.cpu.CpuOccupancyPyramid;
+import com.gpuaccel.entitymod.gpu.cpu.CpuParallel;
+import com.gpuaccel.entitymod.gpu.cpu.CpuSpatialGrid;
+import com.gpuaccel.entitymod.gpu.cpu.CpuSwarmKernels;
+import com.gpuaccel.entitymod.gpu.cpu.SwarmKernelArgs;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+
+import java.nio.*;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import static org.jocl.CL.CL_MEM_COPY_HOST_PTR;
+
+/**
+ * 记录型 OpenCL 替身驱动。
+ * <p>
+ * 不访问任何 OpenCL 平台：cl_mem 由堆外 ByteBuffer 模拟，内核入队时按内核名
+ * 分派到 {@code gpu.cpu} 中的 Java 参考实现同步执行。所有命令都会计入 {@link ClDriverStats}，
+ * 因此可以在没有 GPU 的机器上得到每 Tick 的阻塞调用次数与传输量。
+ * </p>
+ * <p>
+ * 超过 {@link #DEFAULT_BACKING_LIMIT} 的缓冲区 (例如 1 GiB 的费洛蒙网格) 只计账、不分配内存；
+ * 内核参数中的此类缓冲区以 null 传入参考实现，相关内核 (注入/扩散) 将被跳过。
+ * 没有参考实现的内核 (物理、气候) 只记录不执行。
+ * </p>
+ * <p>
+ * 所有命令都同步执行，因此异步接口返回的事件始终处于完成状态。
+ * </p>
+ */
+public class RecordingClDriver implements ClDriver {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 单个缓冲区实际分配内存的上限 */
+    public static final long DEFAULT_BACKING_LIMIT = 256L * 1024 * 1024;
+
+    /** 体素地图边长；流场可能降采样，其边长由代价场缓冲区的大小推出 */
+    private static final int VOXEL_MAP_SIZE = 128;
+    private static final int GRAIN = 4096;
+
+    @FunctionalInterface
+    private interface KernelImpl {
+        void run(Object[] args, int globalSize);
+    }
+
+    /** 模拟的设备缓冲区；子缓冲区是父缓冲区存储的一个切片 */
+    private static final class MemRecord {
+        final long size;
+        final boolean backed;
+        final MemRecord parent;
+        final long origin;
+        ByteBuffer data;
+
+        MemRecord(long size, boolean backed) {
+            this(size, backed, null, 0);
+        }
+
+        MemRecord(long size, boolean backed, MemRecord parent, long origin) {
+            this.size = size;
+            this.backed = backed;
+            this.parent = parent;
+            this.origin = origin;
+        }
+
+        ByteBuffer data() {
+            if (data == null && backed) {
+                if (parent != null) {
+                    ByteBuffer p = parent.data().duplicate();
+                    p.position((int) origin).limit((int) (origin + size));
+                    data = p.slice().order(ByteOrder.nativeOrder());
+                } else {
+                    data = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+                }
+            }
+            return data;
+        }
+    }
+
+    private static final class KernelRecord {
+        final String name;
+        final Object[] args = new Object[64];
+        long enqueues;
+
+        KernelRecord(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Map<cl_mem, MemRecord> mems = new IdentityHashMap<>();
+    private final Map<cl_kernel, KernelRecord> kernels = new IdentityHashMap<>();
+    private final Map<String, KernelImpl> impls = new HashMap<>();
+    private final ClDriverStats stats = new ClDriverStats();
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final long backingLimit;
+    private long backedBytes = 0;
+    private long skippedKernels = 0;
+    /** 最近一条异步命令执行完毕时的 System.nanoTime() */
+    private long lastCommandNanos = 0;
+
+    public RecordingClDriver() {
+        this(DEFAULT_BACKING_LIMIT);
+    }
+
+    public RecordingClDriver(long backingLimit) {
+        this.backingLimit = backingLimit;
+        registerKernels();
+        LOGGER.info("使用记录型 OpenCL 替身驱动 (缓冲区分配上限 {} MB)", backingLimit / 1024 / 1024);
+    }
+
+    // ==========================================
+    // 内核参考实现注册
+    // ==========================================
+
+    /** 按 calculateSwarmBehavior 的参数顺序组装参考实现的参数，参数块或邻居表未分配时返回 null */
+    private SwarmKernelArgs swarmArgs(Object[] a) {
+        SwarmKernelArgs k = new SwarmKernelArgs();
+        k.positions = floats(a[0]); k.velocities = floats(a[1]); k.newVelocities = floats(a[2]);
+        k.entityTypes = ints(a[3]); k.playerPos = floats(a[4]);
+        ByteBuffer uniforms = bytes(a[5]);
+        if (uniforms == null) return null;
+        SwarmUniforms.unpack(uniforms, k);
+        k.attrX = floats(a[6]); k.attrY = floats(a[7]); k.attrZ = floats(a[8]); k.attrType = ints(a[9]);
+        k.prevPositions = floats(a[10]); k.stuckTimer = ints(a[11]);
+        k.pheromones = floats(a[12]);
+        k.voxels = bytes(a[13]);
+        k.beeStates = ints(a[14]);
+        k.params = floats(a[15]);
+        k.ffPlayer = floats(a[16]); k.ffLivestock = floats(a[17]); k.ffFood = floats(a[18]);
+        k.nbrList = ints(a[19]); k.nbrCount = ints(a[20]);
+        if (k.nbrList == null || k.nbrCount == null) return null;
+        if (k.attrCount > 0 && k.attrX == null) k.attrCount = 0;
+        return k;
+    }
+
+    private void registerKernels() {
+        impls.put("calculateSwarmBehavior", (a, n) -> {
+            SwarmKernelArgs k = swarmArgs(a);
+            if (k == null) { skippedKernels++; return; }
+            CpuParallel.invoke(pool, n, 64, (from, to) -> CpuSwarmKernels.calculateSwarmBehavior(k, from, to));
+        });
+        for (int b = 0; b < TypeBuckets.COUNT; b++) {
+            int bucket = b;
+            // 参数与 calculateSwarmBehavior 相同，末尾追加排序后的槽位表
+            impls.put(TypeBuckets.KERNELS[b], (a, n) -> {
+                SwarmKernelArgs k = swarmArgs(a);
+                if (k == null || (k.order = ints(a[21])) == null) { skippedKernels++; return; }
+                CpuParallel.invoke(pool, n, 64, (from, to) -> CpuSwarmKernels.calculateBucket(k, bucket, from, to));
+            });
+        }
+        impls.put("diffuse_pheromones", (a, n) -> {
+            FloatBuffer in = floats(a[0]), out = floats(a[1]);
+            if (in == null || out == null) { skippedKernels++; return; }
+            int sx = (Integer) a[2], sy = (Integer) a[3], sz = (Integer) a[4];
+            float rate = (Float) a[5], decay = (Float) a[6], dt = (Float) a[7];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuSwarmKernels.diffusePheromones(in, out, sx, sy, sz, rate, decay, dt, from, to));
+        });
+        impls.put("inject_stimuli", (a, n) -> {
+            FloatBuffer phero = floats(a[0]);
+            if (phero == null) { skippedKernels++; return; }
+            int count = (Integer) a[4];
+            float[] pos = toArray(floats(a[1]), count * 3);
+            int[] ch = toArray(ints(a[2]), count);
+            float[] val = toArray(floats(a[3]), count);
+            CpuSwarmKernels.injectStimuli(phero, pos, ch, val, count,
+                (Integer) a[5], (Integer) a[6], (Integer) a[7], (Integer) a[8], (Integer) a[9], 0, n);
+        });
+        impls.put("remap_entity_slots", (a, n) -> {
+            IntBuffer ops = ints(a[0]);
+            FloatBuffer prev = floats(a[2]);
+            IntBuffer stuck = ints(a[3]), bee = ints(a[4]);
+            if (ops == null || prev == null || stuck == null || bee == null) { skippedKernels++; return; }
+            CpuSwarmKernels.remapEntitySlots(ops, (Integer) a[1], prev, stuck, bee, 0, n);
+        });
+        impls.put("scatter_entity_rows", (a, n) -> {
+            IntBuffer motion = ints(a[0]), desc = ints(a[2]);
+            FloatBuffer pos = floats(a[4]), vel = floats(a[5]), params = floats(a[7]);
+            IntBuffer types = ints(a[6]);
+            if (pos == null || vel == null || types == null || params == null) { skippedKernels++; return; }
+            int motionCount = (Integer) a[1], descCount = (Integer) a[3];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) ->
+                CpuSwarmKernels.scatterEntityRows(motion, motionCount, desc, descCount, pos, vel, types, params, from, to));
+        });
+        impls.put("apply_slot_mask", (a, n) -> {
+            IntBuffer base = ints(a[0]), mask = ints(a[1]), types = ints(a[3]);
+            if (base == null || mask == null || types == null) { skippedKernels++; return; }
+            int count = (Integer) a[2];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuSwarmKernels.applySlotMask(base, mask, count, types, from, to));
+        });
+        impls.put("grid_assign_cells", (a, n) -> {
+            FloatBuffer pos = floats(a[0]);
+            IntBuffer types = ints(a[1]), cellOf = ints(a[3]), rank = ints(a[4]), counts = ints(a[5]);
+            if (pos == null || types == null || cellOf == null || rank == null || counts == null) { skippedKernels++; return; }
+            // 以普通读写代替原子计数，只能串行执行
+            CpuSpatialGrid.assignCells(pos, types, (Integer) a[2], cellOf, rank, counts, 0, n);
+        });
+        impls.put("grid_scan_cells", (a, n) -> {
+            IntBuffer counts = ints(a[0]), start = ints(a[1]), end = ints(a[2]);
+            if (counts == null || start == null || end == null) { skippedKernels++; return; }
+            CpuSpatialGrid.scanCells(counts, start, end);
+        });
+        impls.put("grid_scatter", (a, n) -> {
+            IntBuffer cellOf = ints(a[0]), rank = ints(a[1]), start = ints(a[3]), order = ints(a[4]);
+            if (cellOf == null || rank == null || start == null || order == null) { skippedKernels++; return; }
+            int count = (Integer) a[2];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuSpatialGrid.scatter(cellOf, rank, count, start, order, from, to));
+        });
+        impls.put("occupancy_build_l1", (a, n) -> {
+            ByteBuffer voxels = bytes(a[0]);
+            if (voxels == null) { skippedKernels++; return; }
+            int size = (Integer) a[1];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuOccupancyPyramid.buildL1(voxels, size, from, to));
+        });
+        impls.put("occupancy_build_l2", (a, n) -> {
+            ByteBuffer voxels = bytes(a[0]);
+            if (voxels == null) { skippedKernels++; return; }
+            CpuOccupancyPyramid.buildL2(voxels, (Integer) a[1], 0, n);
+        });
+        impls.put("nbr_max_displacement", (a, n) -> {
+            FloatBuffer pos = floats(a[0]), refPos = floats(a[3]);
+            IntBuffer types = ints(a[1]), refTag = ints(a[4]), maxDisp = ints(a[5]);
+            if (pos == null || types == null || refPos == null || refTag == null || maxDisp == null) { skippedKernels++; return; }
+            float d = CpuNeighbourList.maxDisplacement(pos, types, (Integer) a[2], refPos, refTag, 0, n);
+            if (d > Float.intBitsToFloat(maxDisp.get(0))) maxDisp.put(0, Float.floatToRawIntBits(d));
+        });
+        impls.put("nbr_build", (a, n) -> {
+            FloatBuffer pos = floats(a[0]), refPos = floats(a[7]);
+            IntBuffer types = ints(a[1]), start = ints(a[3]), end = ints(a[4]), order = ints(a[5]), maxDisp = ints(a[6]);
+            IntBuffer refTag = ints(a[8]), list = ints(a[9]), counts = ints(a[10]);
+            if (pos == null || types == null || start == null || end == null || order == null || maxDisp == null
+                || refPos == null || refTag == null || list == null || counts == null) { skippedKernels++; return; }
+            if (Float.intBitsToFloat(maxDisp.get(0)) <= NeighbourList.REBUILD_DISP_SQ) return;
+            int count = (Integer) a[2];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) ->
+                CpuNeighbourList.build(pos, types, count, start, end, order, refPos, refTag, list, counts, from, to));
+        });
+        impls.put("collision_assign_cells", (a, n) -> {
+            FloatBuffer pos = floats(a[0]);
+            IntBuffer cellOf = ints(a[3]), rank = ints(a[4]), counts = ints(a[5]);
+            if (pos == null || cellOf == null || rank == null || counts == null) { skippedKernels++; return; }
+            // 桶内序号依赖计数顺序，串行执行
+            CpuCollisionKernels.assignCells(pos, (Integer) a[1], (Float) a[2], cellOf, rank, counts, 0, n);
+        });
+        impls.put("detectCollisions", (a, n) -> {
+            FloatBuffer pos = floats(a[0]), vel = floats(a[1]), params = floats(a[2]);
+            IntBuffer start = ints(a[6]), end = ints(a[7]), order = ints(a[8]);
+            if (pos == null || vel == null || params == null || start == null || end == null || order == null) { skippedKernels++; return; }
+            int count = (Integer) a[3];
+            float invCellSize = (Float) a[5];
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) ->
+                CpuCollisionKernels.detectCollisions(pos, vel, params, count, invCellSize, start, end, order, from, to));
+        });
+        impls.put("compact_outputs", (a, n) -> {
+            FloatBuffer out = floats(a[0]), vel = floats(a[1]);
+            IntBuffer types = ints(a[2]), records = ints(a[6]), counter = ints(a[7]);
+            if (out == null || vel == null || types == null || records == null || counter == null) { skippedKernels++; return; }
+            CpuSwarmKernels.compactOutputs(out, vel, types, (Integer) a[3], (Float) a[4], (Float) a[5], records, counter, 0, n);
+        });
+        impls.put("k_resetCostField", (a, n) -> {
+            ShortBuffer cost = shorts(a[0]);
+            IntBuffer targets = ints(a[1]);
+            int count = (Integer) a[2];
+            int size = flowSize(cost);
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuFlowFieldKernels.resetCostField(cost, targets, count, size, from, to));
+        });
+        impls.put("k_spreadCostField", (a, n) -> {
+            ShortBuffer cost = shorts(a[0]);
+            ByteBuffer voxels = bytes(a[1]);
+            int size = flowSize(cost);
+            int shift = Integer.numberOfTrailingZeros(VOXEL_MAP_SIZE / size);
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuFlowFieldKernels.spreadCostField(cost, voxels, size, shift, from, to));
+        });
+        impls.put("k_generateVectorField", (a, n) -> {
+            ShortBuffer cost = shorts(a[0]);
+            FloatBuffer vec = floats(a[1]);
+            int size = flowSize(cost);
+            CpuParallel.invoke(pool, n, GRAIN, (from, to) -> CpuFlowFieldKernels.generateVectorField(cost, vec, size, from, to));
+        });
+    }
+
+    /** 由代价场 (ushort，边长的立方个元素) 的大小推出流场边长 */
+    private static int flowSize(ShortBuffer cost) {
+        return (int) Math.round(Math.cbrt(cost.capacity()));
+    }
+
+    private ByteBuffer bytes(Object arg) {
+        if (!(arg instanceof cl_mem mem)) return null;
+        MemRecord rec = mems.get(mem);
+        return rec == null ? null : rec.data();
+    }
+
+    private FloatBuffer floats(Object arg) {
+        ByteBuffer b = bytes(arg);
+        return b == null ? null : b.asFloatBuffer();
+    }
+
+    private IntBuffer ints(Object arg) {
+        ByteBuffer b = bytes(arg);
+        return b == null ? null : b.asIntBuffer();
+    }
+
+    private ShortBuffer shorts(Object arg) {
+        ByteBuffer b = bytes(arg);
+        return b == null ? null : b.asShortBuffer();
+    }
+
+    private static float[] toArray(FloatBuffer buf, int n) {
+        float[] out = new float[n];
+        buf.get(0, out, 0, n);
+        return out;
+    }
+
+    private static int[] toArray(IntBuffer buf, int n) {
+        int[] out = new int[n];
+        buf.get(0, out, 0, n);
+        return out;
+    }
+
+    // ==========================================
+    // ClDriver
+    // ==========================================
+
+    @Override
+    public String getName() {
+        return "Recording";
+    }
+
+    @Override
+    public boolean isAvailable() { return true; }
+
+    @Override
+    public String getDeviceName() { return "Recording (Java 参考实现)"; }
+
+    @Override
+    public String getDriverVersion() { return "1.0"; }
+
+    @Override
+    public long getMaxComputeUnits() { return pool.getParallelism(); }
+
+    @Override
+    public long getGlobalMemorySize() { return backingLimit; }
+
+    @Override
+    public long getMaxMemAllocSize() { return backingLimit; }
+
+    @Override
+    public long getMemBaseAddrAlign() { return 128; }
+
+    /** 模拟的缓冲区本身就在 Host 内存中 */
+    @Override
+    public boolean isHostUnifiedMemory() { return true; }
+
+    @Override
+    public cl_kernel compileKernel(String source, String options, String name) {
+        // 构建选项只影响设备端编译，Java 参考实现始终是完整的精确路径
+        Pattern decl = Pattern.compile("__kernel\\s+(?:__attribute__\\s*\\(\\(.*?\\)\\)\\s*)*void\\s+" + Pattern.quote(name) + "\\s*\\(");
+        if (!decl.matcher(source).find()) {
+            throw new RuntimeException("OpenCL 编译失败: " + name);
+        }
+        if (!impls.containsKey(name)) {
+            LOGGER.warn("内核 {} 没有 Java 参考实现，入队时只记录不执行", name);
+        }
+        cl_kernel kernel = new cl_kernel();
+        kernels.put(kernel, new KernelRecord(name));
+        return kernel;
+    }
+
+    @Override
+    public void releaseKernel(cl_kernel kernel) {
+        kernels.remove(kernel);
+    }
+
+    @Override
+    public long getKernelWorkGroupSize(cl_kernel kernel) { return 1024; }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size) {
+        stats.onBufferCreated();
+        boolean backed = size <= backingLimit;
+        if (!backed) LOGGER.debug("缓冲区 {} 字节超过分配上限，仅计账", size);
+        cl_mem mem = new cl_mem();
+        mems.put(mem, new MemRecord(size, backed));
+        if (backed) backedBytes += size;
+        return mem;
+    }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size, Buffer hostData) {
+        cl_mem mem = createBuffer(flags, size);
+        if (hostData != null && (flags & CL_MEM_COPY_HOST_PTR) != 0) {
+            copy(hostData, mems.get(mem), 0, size, true);
+            stats.onWrite(size, true);
+        }
+        return mem;
+    }
+
+    @Override
+    public cl_mem createSubBuffer(cl_mem parent, long flags, long origin, long size) {
+        stats.onBufferCreated();
+        MemRecord p = mems.get(parent);
+        if (p == null || origin + size > p.size) throw new IllegalArgumentException("子缓冲区超出父缓冲区范围");
+        cl_mem mem = new cl_mem();
+        // 子缓冲区不另占内存，backedBytes 只计父缓冲区
+        mems.put(mem, new MemRecord(size, p.backed, p, origin));
+        return mem;
+    }
+
+    @Override
+    public void releaseMem(cl_mem mem) {
+        MemRecord rec = mems.remove(mem);
+        if (rec != null && rec.backed && rec.parent == null) backedBytes -= rec.size;
+    }
+
+    private void putArg(cl_kernel kernel, int index, Object value) {
+        stats.onKernelArg();
+        KernelRecord rec = kernels.get(kernel);
+        if (rec != null) rec.args[index] = value;
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, cl_mem mem) { putArg(kernel, index, mem); }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, int value) { putArg(kernel, index, value); }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float value) { putArg(kernel, index, value); }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float x, float y, float z) {
+        putArg(kernel, index, new float[]{x, y, z});
+    }
+
+    @Override
+    public void write(cl_mem mem, boolean blocking, long offset, long bytes, Buffer src) {
+        stats.onWrite(bytes, blocking);
+        copy(src, mems.get(mem), offset, bytes, true);
+    }
+
+    @Override
+    public void read(cl_mem mem, boolean blocking, long offset, long bytes, Buffer dst) {
+        stats.onRead(bytes, blocking);
+        copy(dst, mems.get(mem), offset, bytes, false);
+    }
+
+    /** 在 Host 缓冲区 (从 position 开始) 与模拟设备内存之间复制 */
+    private static void copy(Buffer host, MemRecord rec, long offset, long bytes, boolean toDevice) {
+        if (rec == null || !rec.backed || bytes <= 0) return;
+        ByteBuffer dev = rec.data().duplicate().order(ByteOrder.nativeOrder());
+        dev.position((int) offset).limit((int) (offset + bytes));
+        ByteBuffer window = dev.slice().order(ByteOrder.nativeOrder());
+        int pos = host.position();
+        if (host instanceof ByteBuffer b) {
+            if (toDevice) window.put(0, b, pos, (int) bytes); else b.put(pos, window, 0, (int) bytes);
+        } else if (host instanceof FloatBuffer f) {
+            FloatBuffer w = window.asFloatBuffer();
+            if (toDevice) w.put(0, f, pos, (int) (bytes / 4)); else f.put(pos, w, 0, (int) (bytes / 4));
+        } else if (host instanceof IntBuffer i) {
+            IntBuffer w = window.asIntBuffer();
+            if (toDevice) w.put(0, i, pos, (int) (bytes / 4)); else i.put(pos, w, 0, (int) (bytes / 4));
+        } else if (host instanceof ShortBuffer s) {
+            ShortBuffer w = window.asShortBuffer();
+            if (toDevice) w.put(0, s, pos, (int) (bytes / 2)); else s.put(pos, w, 0, (int) (bytes / 2));
+        } else {
+            throw new IllegalArgumentException("不支持的缓冲区类型: " + host.getClass());
+        }
+    }
+
+    @Override
+    public void fill(cl_mem mem, float value, long bytes) {
+        stats.onFill();
+        MemRecord rec = mems.get(mem);
+        if (rec == null || !rec.backed) return;
+        // 新分配的缓冲区本身为 0，无需真正写入 (子缓冲区可能复用旧内容，仍需写入)
+        if (value == 0f && rec.data == null && rec.parent == null) return;
+        FloatBuffer f = rec.data().asFloatBuffer();
+        int n = (int) (bytes / 4);
+        for (int i = 0; i < n; i++) f.put(i, value);
+    }
+
+    @Override
+    public void copy(cl_mem src, cl_mem dst, long srcOffset, long dstOffset, long bytes) {
+        stats.onCopy(bytes);
+        MemRecord s = mems.get(src), d = mems.get(dst);
+        if (s == null || d == null || !s.backed || !d.backed || bytes <= 0) return;
+        d.data().put((int) dstOffset, s.data(), (int) srcOffset, (int) bytes);
+    }
+
+    @Override
+    public void enqueueKernel(cl_kernel kernel, int dim, long[] global, long[] local) {
+        stats.onKernelEnqueue();
+        KernelRecord rec = kernels.get(kernel);
+        if (rec == null) return;
+        rec.enqueues++;
+        KernelImpl impl = impls.get(rec.name);
+        if (impl == null) { skippedKernels++; return; }
+
+        long total = 1;
+        for (int d = 0; d < dim; d++) total *= global[d];
+        impl.run(rec.args, (int) total);
+    }
+
+    @Override
+    public cl_event writeAsync(cl_mem mem, long offset, long bytes, Buffer src, cl_event[] waitList) {
+        stats.onWrite(bytes, false);
+        copy(src, mems.get(mem), offset, bytes, true);
+        return completedEvent();
+    }
+
+    @Override
+    public cl_event readAsync(cl_mem mem, long offset, long bytes, Buffer dst, cl_event[] waitList) {
+        stats.onRead(bytes, false);
+        copy(dst, mems.get(mem), offset, bytes, false);
+        return completedEvent();
+    }
+
+    @Override
+    public ClMapping mapAsync(cl_mem mem, long mapFlags, long offset, long bytes, cl_event[] waitList) {
+        stats.onMap();
+        MemRecord rec = mems.get(mem);
+        ByteBuffer mapped;
+        if (rec != null && rec.backed) {
+            ByteBuffer d = rec.data().duplicate();
+            d.position((int) offset).limit((int) (offset + bytes));
+            mapped = d.slice().order(ByteOrder.nativeOrder());
+        } else {
+            // 未分配内存的缓冲区映射到一块临时区域，写入的内容被丢弃
+            mapped = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        }
+        return new ClMapping(completedEvent(), mapped);
+    }
+
+    @Override
+    public void unmap(cl_mem mem, ClMapping mapping) {}
+
+    @Override
+    public cl_event enqueueKernelAsync(cl_kernel kernel, int dim, long[] global, long[] local, cl_event[] waitList) {
+        enqueueKernel(kernel, dim, global, local);
+        return completedEvent();
+    }
+
+    /** 异步命令同步执行完毕后返回的事件 */
+    private cl_event completedEvent() {
+        lastCommandNanos = System.nanoTime();
+        return new cl_event();
+    }
+
+    @Override
+    public boolean isComplete(cl_event event) { return true; }
+
+    /** 命令同步执行，事件在入队返回前就已完成；以最近一条异步命令执行完毕的时刻作为上界 */
+    @Override
+    public long getCompletionNanos(cl_event event) { return lastCommandNanos; }
+
+    @Override
+    public void waitFor(cl_event event) {
+        stats.onBlocking();
+    }
+
+    @Override
+    public void releaseEvent(cl_event event) {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void finish() {
+        stats.onBlocking();
+    }
+
+    @Override
+    public ClDriverStats getStats() { return stats; }
+
+    /** @return 当前实际分配的模拟显存 (字节) */
+    public long getBackedBytes() { return backedBytes; }
+
+    /** @return 因缺少参考实现或缓冲区未分配而跳过的内核执行次数 */
+    public long getSkippedKernels() { return skippedKernels; }
+
+    @Override
+    public void release() {
+        mems.clear();
+        kernels.clear();
+        backedBytes = 0;
+    }
+}
@@ -0,0 +1,74 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者 / 单消费者的无锁环形队列。
+ * <p>
+ * 生产者只写 tail，消费者只写 head，两者都用 release 语义发布 ({@code lazySet})，
+ * 另一端以 volatile 读取，因此元素在发布前写入的数据对消费者可见。
+ * 只能有一个线程调用 {@link #offer}，且只能有一个线程调用 {@link #poll}。
+ * </p>
+ *
+ * @param <T> 元素类型
+ */
+public final class SpscRing<T> {
+    private final Object[] slots;
+    private final int mask;
+
+    /** 下一个待消费的位置，仅消费者写入 */
+    private final AtomicLong head = new AtomicLong();
+    /** 下一个待写入的位置，仅生产者写入 */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity 容量，向上取整到 2 的幂
+     */
+    public SpscRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * 生产者端：追加一个元素。
+     *
+     * @return 队列已满时返回 false
+     */
+    public boolean offer(T value) {
+        long t = tail.get();
+        if (t - head.get() >= slots.length) return false;
+        slots[(int) (t & mask)] = value;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * 消费者端：取出最早的元素。
+     *
+     * @return 队列为空时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h == tail.get()) return null;
+        int idx = (int) (h & mask);
+        T value = (T) slots[idx];
+        slots[idx] = null;
+        head.lazySet(h + 1);
+        return value;
+    }
+
+    /** @return 当前元素数量 (并发读取时为近似值) */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
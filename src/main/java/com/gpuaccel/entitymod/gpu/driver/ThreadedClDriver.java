@@ -0,0 +1,605 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.HostArena;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.jocl.CL.CL_COMPLETE;
+
+/**
+ * 在独立驱动线程上执行全部 OpenCL 调用的 {@link ClDriver} 包装。
+ * <p>
+ * 被包装的驱动 (通常是 {@link JoclDriver}) 及其命令队列只由驱动线程访问。
+ * Tick 线程上的 setArg / 写入 / 入队只是把打包好的命令放进无锁 SPSC 命令环，立即返回；
+ * 驱动线程按顺序取出并调用 JNI，因此驱动偶发的毫秒级卡顿不再计入 MSPT。
+ * </p>
+ * <p>
+ * 异步命令返回的 {@link cl_event} 是代理对象，驱动线程维护代理到真实事件的映射，
+ * 并在事件完成后把代理连同观察到完成的时刻放进第二个 SPSC 完成环；{@link #isComplete} 与 {@link #getCompletionNanos}
+ * 只查询 Tick 线程本地的完成表，不进入 JNI。执行出错的事件随错误码一起投递，查询时在 Tick 线程上重新抛出。
+ * </p>
+ * <p>
+ * 阻塞写入会先把数据复制到暂存区再入队，对调用方而言等价于阻塞语义；
+ * 阻塞读取、{@link #finish()}、缓冲区创建与内核编译需要返回结果，会等待驱动线程执行完毕并计为阻塞调用。
+ * 驱动线程上的异常会在 Tick 线程下一次提交命令时抛出。
+ * </p>
+ */
+public class ThreadedClDriver implements ClDriver {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int COMMAND_CAPACITY = 4096;
+    private static final int COMPLETION_CAPACITY = 1024;
+    /** 无在途事件时的休眠时长 */
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    /** 有在途事件时的轮询间隔 */
+    private static final long POLL_PARK_NANOS = 50_000L;
+    /** 连续执行多少条命令后插入一次事件轮询 */
+    private static final int POLL_EVERY_COMMANDS = 64;
+
+    /** 在驱动线程上执行的命令 */
+    @FunctionalInterface
+    private interface Command {
+        void execute() throws Exception;
+    }
+
+    /** 需要返回结果的同步调用，Tick 线程等待其完成 */
+    private static final class SyncCall<T> implements Command {
+        private final Callable<T> callable;
+        private final Thread waiter = Thread.currentThread();
+        private volatile boolean done;
+        private T result;
+        private Throwable error;
+
+        SyncCall(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public void execute() {
+            try {
+                result = callable.call();
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                done = true;
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /** 暂存写入：事件完成后释放暂存区 */
+    private record StagedWrite(cl_event event, ByteBuffer data) {}
+
+    /** 完成通知：代理事件、驱动线程观察到其完成时的 System.nanoTime() 与执行状态 (负数为 OpenCL 错误码) */
+    private record Completion(cl_event proxy, long nanos, int status) {}
+
+    private final ClDriver inner;
+    private final SpscRing<Command> commands = new SpscRing<>(COMMAND_CAPACITY);
+    private final SpscRing<Completion> completions = new SpscRing<>(COMPLETION_CAPACITY);
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean sleeping = false;
+    private volatile Throwable failure;
+
+    // --- 仅驱动线程访问 ---
+    private final Map<cl_event, cl_event> realEvents = new IdentityHashMap<>();
+    private final List<cl_event> outstanding = new ArrayList<>();
+    /** 完成环已满时暂存的完成通知 */
+    private final List<Completion> undelivered = new ArrayList<>();
+    private final List<StagedWrite> stagedWrites = new ArrayList<>();
+
+    // --- 仅 Tick 线程访问 ---
+    private final Set<cl_event> liveEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+    /** 已完成的代理 -> 完成时刻 */
+    private final Map<cl_event, Long> completedEvents = new IdentityHashMap<>();
+    /** 执行出错的代理 -> 错误码 */
+    private final Map<cl_event, Integer> failedEvents = new IdentityHashMap<>();
+    private final ClDriverStats stats = new ClDriverStats();
+    private long ringStalls = 0;
+
+    /**
+     * @param inner 实际执行命令的驱动，此后只能由驱动线程访问
+     */
+    public ThreadedClDriver(ClDriver inner) {
+        this.inner = inner;
+        this.thread = new Thread(this::runLoop, "GPUAccel-CL-Driver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // ==========================================
+    // 驱动线程
+    // ==========================================
+
+    private void runLoop() {
+        int sincePoll = 0;
+        while (running) {
+            Command cmd = commands.poll();
+            if (cmd != null) {
+                execute(cmd);
+                if (++sincePoll >= POLL_EVERY_COMMANDS) {
+                    pollEvents();
+                    sincePoll = 0;
+                }
+                continue;
+            }
+            sincePoll = 0;
+            boolean busy = pollEvents();
+
+            sleeping = true;
+            if (running && commands.isEmpty()) {
+                LockSupport.parkNanos(this, busy ? POLL_PARK_NANOS : IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    private void execute(Command cmd) {
+        try {
+            cmd.execute();
+        } catch (Throwable t) {
+            if (failure == null) LOGGER.error("OpenCL 驱动线程命令执行失败", t);
+            failure = t;
+        }
+    }
+
+    /**
+     * 轮询在途事件与暂存写入。
+     *
+     * @return 是否仍有未完成的事件
+     */
+    private boolean pollEvents() {
+        if (!undelivered.isEmpty()) {
+            Iterator<Completion> it = undelivered.iterator();
+            while (it.hasNext() && completions.offer(it.next())) it.remove();
+        }
+        try {
+            Iterator<cl_event> it = outstanding.iterator();
+            while (it.hasNext()) {
+                cl_event proxy = it.next();
+                int status;
+                try {
+                    if (!inner.isComplete(realEvents.get(proxy))) continue;
+                    status = CL_COMPLETE;
+                } catch (CLException e) {
+                    status = e.getStatus();
+                }
+                it.remove();
+                deliver(proxy, status);
+            }
+            Iterator<StagedWrite> sw = stagedWrites.iterator();
+            while (sw.hasNext()) {
+                StagedWrite w = sw.next();
+                try {
+                    if (!inner.isComplete(w.event())) continue;
+                } catch (CLException e) {
+                    // 暂存写入没有调用方持有的事件，错误在下一次提交命令时抛出
+                    if (failure == null) LOGGER.error("OpenCL 暂存写入执行失败", e);
+                    failure = e;
+                }
+                inner.releaseEvent(w.event());
+                HostArena.free(w.data());
+                sw.remove();
+            }
+        } catch (Throwable t) {
+            if (failure == null) LOGGER.error("OpenCL 事件查询失败", t);
+            failure = t;
+        }
+        return !outstanding.isEmpty() || !stagedWrites.isEmpty();
+    }
+
+    private void deliver(cl_event proxy, int status) {
+        Completion c = new Completion(proxy, System.nanoTime(), status);
+        if (!completions.offer(c)) undelivered.add(c);
+    }
+
+    private cl_event[] resolve(cl_event[] waitList) {
+        if (waitList == null || waitList.length == 0) return null;
+        List<cl_event> real = new ArrayList<>(waitList.length);
+        for (cl_event proxy : waitList) {
+            cl_event e = realEvents.get(proxy);
+            if (e != null) real.add(e);
+        }
+        return real.isEmpty() ? null : real.toArray(new cl_event[0]);
+    }
+
+    /** 释放全部暂存写入 (仅在 finish 之后调用，此时写入均已完成) */
+    private void releaseStagedWrites() {
+        for (StagedWrite w : stagedWrites) {
+            inner.releaseEvent(w.event());
+            HostArena.free(w.data());
+        }
+        stagedWrites.clear();
+    }
+
+    // ==========================================
+    // Tick 线程：命令发布
+    // ==========================================
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t != null) {
+            failure = null;
+            throw new IllegalStateException("OpenCL 驱动线程命令执行失败", t);
+        }
+        if (!running) throw new IllegalStateException("OpenCL 驱动线程已停止");
+    }
+
+    private void submit(Command cmd) {
+        checkFailure();
+        if (!commands.offer(cmd)) {
+            // 命令环已满：唤醒驱动线程并自旋等待空位
+            ringStalls++;
+            LockSupport.unpark(thread);
+            do {
+                if (!thread.isAlive()) throw new IllegalStateException("OpenCL 驱动线程已退出");
+                Thread.onSpinWait();
+            } while (!commands.offer(cmd));
+        }
+        if (commands.size() > COMMAND_CAPACITY / 2) wake();
+    }
+
+    private void wake() {
+        if (sleeping) LockSupport.unpark(thread);
+    }
+
+    private <T> T call(Callable<T> callable) {
+        SyncCall<T> sync = new SyncCall<>(callable);
+        submit(sync);
+        LockSupport.unpark(thread);
+        while (!sync.done) {
+            if (!thread.isAlive()) throw new IllegalStateException("OpenCL 驱动线程已退出");
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        if (sync.error instanceof RuntimeException re) throw re;
+        if (sync.error != null) throw new IllegalStateException("OpenCL 调用失败", sync.error);
+        return sync.result;
+    }
+
+    private cl_event submitEvent(Callable<cl_event> enqueue) {
+        return submitEvent(new cl_event(), enqueue);
+    }
+
+    private cl_event submitEvent(cl_event proxy, Callable<cl_event> enqueue) {
+        liveEvents.add(proxy);
+        submit(() -> {
+            cl_event real;
+            try {
+                real = enqueue.call();
+            } catch (Throwable t) {
+                // 入队失败也视为完成，避免等待方挂起
+                deliver(proxy, CL_COMPLETE);
+                throw t;
+            }
+            realEvents.put(proxy, real);
+            outstanding.add(proxy);
+        });
+        return proxy;
+    }
+
+    private void drainCompletions() {
+        Completion c;
+        while ((c = completions.poll()) != null) {
+            // 已释放的代理不再记录
+            if (!liveEvents.contains(c.proxy())) continue;
+            completedEvents.put(c.proxy(), c.nanos());
+            if (c.status() < 0) failedEvents.put(c.proxy(), c.status());
+        }
+    }
+
+    // ==========================================
+    // ClDriver
+    // ==========================================
+
+    @Override
+    public String getName() {
+        return inner.getName() + " (驱动线程)";
+    }
+
+    @Override
+    public boolean isAvailable() { return running && inner.isAvailable(); }
+
+    @Override
+    public String getDeviceName() { return inner.getDeviceName(); }
+
+    @Override
+    public String getDriverVersion() { return inner.getDriverVersion(); }
+
+    @Override
+    public long getMaxComputeUnits() { return inner.getMaxComputeUnits(); }
+
+    @Override
+    public long getGlobalMemorySize() { return inner.getGlobalMemorySize(); }
+
+    @Override
+    public long getMaxMemAllocSize() { return inner.getMaxMemAllocSize(); }
+
+    @Override
+    public long getMemBaseAddrAlign() { return inner.getMemBaseAddrAlign(); }
+
+    @Override
+    public boolean isHostUnifiedMemory() { return inner.isHostUnifiedMemory(); }
+
+    @Override
+    public cl_kernel compileKernel(String source, String options, String name) {
+        stats.onBlocking();
+        return call(() -> inner.compileKernel(source, options, name));
+    }
+
+    @Override
+    public void releaseKernel(cl_kernel kernel) {
+        if (kernel != null) submit(() -> inner.releaseKernel(kernel));
+    }
+
+    @Override
+    public long getKernelWorkGroupSize(cl_kernel kernel) {
+        stats.onBlocking();
+        return call(() -> inner.getKernelWorkGroupSize(kernel));
+    }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size) {
+        stats.onBufferCreated();
+        stats.onBlocking();
+        return call(() -> inner.createBuffer(flags, size));
+    }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size, Buffer hostData) {
+        stats.onBufferCreated();
+        stats.onBlocking();
+        return call(() -> inner.createBuffer(flags, size, hostData));
+    }
+
+    @Override
+    public cl_mem createSubBuffer(cl_mem parent, long flags, long origin, long size) {
+        stats.onBufferCreated();
+        stats.onBlocking();
+        return call(() -> inner.createSubBuffer(parent, flags, origin, size));
+    }
+
+    @Override
+    public void releaseMem(cl_mem mem) {
+        if (mem != null) submit(() -> inner.releaseMem(mem));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, cl_mem mem) {
+        stats.onKernelArg();
+        submit(() -> inner.setArg(kernel, index, mem));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, int value) {
+        stats.onKernelArg();
+        submit(() -> inner.setArg(kernel, index, value));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float value) {
+        stats.onKernelArg();
+        submit(() -> inner.setArg(kernel, index, value));
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float x, float y, float z) {
+        stats.onKernelArg();
+        submit(() -> inner.setArg(kernel, index, x, y, z));
+    }
+
+    @Override
+    public void write(cl_mem mem, boolean blocking, long offset, long bytes, Buffer src) {
+        stats.onWrite(bytes, false);
+        if (!blocking) {
+            submit(() -> inner.write(mem, false, offset, bytes, src));
+            return;
+        }
+        // 复制到暂存区后调用方即可改写 src，等价于阻塞写入
+        ByteBuffer staged = HostArena.alloc(Subsystem.STAGING, (int) bytes);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(src), MemoryUtil.memAddress(staged), bytes);
+        try {
+            submit(() -> {
+                try {
+                    stagedWrites.add(new StagedWrite(inner.writeAsync(mem, offset, bytes, staged, null), staged));
+                } catch (Throwable t) {
+                    HostArena.free(staged);
+                    throw t;
+                }
+            });
+        } catch (RuntimeException e) {
+            HostArena.free(staged);
+            throw e;
+        }
+    }
+
+    @Override
+    public void read(cl_mem mem, boolean blocking, long offset, long bytes, Buffer dst) {
+        stats.onRead(bytes, blocking);
+        if (!blocking) {
+            submit(() -> inner.read(mem, false, offset, bytes, dst));
+            return;
+        }
+        call(() -> {
+            inner.read(mem, true, offset, bytes, dst);
+            return null;
+        });
+    }
+
+    @Override
+    public void fill(cl_mem mem, float value, long bytes) {
+        stats.onFill();
+        submit(() -> inner.fill(mem, value, bytes));
+    }
+
+    @Override
+    public void copy(cl_mem src, cl_mem dst, long srcOffset, long dstOffset, long bytes) {
+        stats.onCopy(bytes);
+        submit(() -> inner.copy(src, dst, srcOffset, dstOffset, bytes));
+    }
+
+    @Override
+    public void enqueueKernel(cl_kernel kernel, int dim, long[] global, long[] local) {
+        stats.onKernelEnqueue();
+        long[] g = global.clone();
+        long[] l = local == null ? null : local.clone();
+        submit(() -> inner.enqueueKernel(kernel, dim, g, l));
+    }
+
+    @Override
+    public cl_event writeAsync(cl_mem mem, long offset, long bytes, Buffer src, cl_event[] waitList) {
+        stats.onWrite(bytes, false);
+        cl_event[] wait = waitList == null ? null : waitList.clone();
+        return submitEvent(() -> inner.writeAsync(mem, offset, bytes, src, resolve(wait)));
+    }
+
+    @Override
+    public cl_event readAsync(cl_mem mem, long offset, long bytes, Buffer dst, cl_event[] waitList) {
+        stats.onRead(bytes, false);
+        cl_event[] wait = waitList == null ? null : waitList.clone();
+        return submitEvent(() -> inner.readAsync(mem, offset, bytes, dst, resolve(wait)));
+    }
+
+    /**
+     * 映射在驱动线程上入队，返回的映射对象在代理事件完成时已填入映射区域，Tick 线程不等待。
+     */
+    @Override
+    public ClMapping mapAsync(cl_mem mem, long mapFlags, long offset, long bytes, cl_event[] waitList) {
+        stats.onMap();
+        cl_event[] wait = waitList == null ? null : waitList.clone();
+        ClMapping mapping = new ClMapping(new cl_event(), null);
+        submitEvent(mapping.event(), () -> {
+            ClMapping real = inner.mapAsync(mem, mapFlags, offset, bytes, resolve(wait));
+            mapping.setBuffer(real.buffer());
+            return real.event();
+        });
+        return mapping;
+    }
+
+    /** 映射区域在驱动线程上才读取，因此可以解除尚未完成的映射 */
+    @Override
+    public void unmap(cl_mem mem, ClMapping mapping) {
+        submit(() -> inner.unmap(mem, mapping));
+    }
+
+    @Override
+    public cl_event enqueueKernelAsync(cl_kernel kernel, int dim, long[] global, long[] local, cl_event[] waitList) {
+        stats.onKernelEnqueue();
+        long[] g = global.clone();
+        long[] l = local == null ? null : local.clone();
+        cl_event[] wait = waitList == null ? null : waitList.clone();
+        return submitEvent(() -> inner.enqueueKernelAsync(kernel, dim, g, l, resolve(wait)));
+    }
+
+    @Override
+    public boolean isComplete(cl_event event) {
+        drainCompletions();
+        Integer status = failedEvents.get(event);
+        if (status != null) throw new CLException("OpenCL 命令执行失败: " + CL.stringFor_errorCode(status), status);
+        return completedEvents.containsKey(event);
+    }
+
+    @Override
+    public long getCompletionNanos(cl_event event) {
+        drainCompletions();
+        Long nanos = completedEvents.get(event);
+        return nanos == null ? 0 : nanos;
+    }
+
+    @Override
+    public void waitFor(cl_event event) {
+        if (event == null || !liveEvents.contains(event)) return;
+        stats.onBlocking();
+        LockSupport.unpark(thread);
+        while (!isComplete(event)) {
+            if (!thread.isAlive()) throw new IllegalStateException("OpenCL 驱动线程已退出");
+            LockSupport.parkNanos(this, POLL_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void releaseEvent(cl_event event) {
+        if (event == null) return;
+        liveEvents.remove(event);
+        completedEvents.remove(event);
+        failedEvents.remove(event);
+        submit(() -> {
+            outstanding.remove(event);
+            undelivered.removeIf(c -> c.proxy() == event);
+            cl_event real = realEvents.remove(event);
+            if (real != null) inner.releaseEvent(real);
+        });
+    }
+
+    @Override
+    public void flush() {
+        submit(inner::flush);
+        wake();
+    }
+
+    @Override
+    public void finish() {
+        stats.onBlocking();
+        call(() -> {
+            inner.finish();
+            releaseStagedWrites();
+            return null;
+        });
+    }
+
+    @Override
+    public ClDriverStats getStats() { return stats; }
+
+    /** @return 命令环中尚未执行的命令数 */
+    public int getPendingCommands() { return commands.size(); }
+
+    /** @return 命令环占满导致 Tick 线程自旋等待的次数 */
+    public long getRingStalls() { return ringStalls; }
+
+    @Override
+    public void release() {
+        if (!running) return;
+        // 之前的命令失败不应阻止释放
+        failure = null;
+        try {
+            call(() -> {
+                try {
+                    inner.finish();
+                    releaseStagedWrites();
+                } finally {
+                    inner.release();
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("释放 OpenCL 驱动时出错", e);
+        } finally {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.gpuaccel.entitymod.gpu.sidecar;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 共享内存中的单生产者 / 单消费者变长消息环。
+ * <p>
+ * 数据区与两个序号都位于同一块映射内存 (通常是 {@link SidecarChannel} 的文件映射)，可以跨进程使用。
+ * 序号是单调递增的字节位置：生产者只写 tail，消费者只写 head，都以 release 语义发布、另一端以 acquire 语义读取，
+ * 因此消息在序号发布前写入的内容对另一进程可见。不使用任何锁或 futex，等待的一方自行轮询。
+ * </p>
+ * <p>
+ * 每条消息以 8 字节头 [总长度, 操作码] 开始，总长度按 8 字节对齐；消息不会跨越数据区末尾，
+ * 剩余空间不足时写入一条填充消息并从数据区开头继续。单条消息的载荷不超过 {@link #maxPayload()}。
+ * </p>
+ */
+public final class SharedRing {
+    /** 序号的跨进程原子访问 (映射缓冲区上 8 字节对齐的 long) */
+    private static final VarHandle SEQ = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** 消息头长度 */
+    public static final int HEADER = 8;
+    /** 填充消息的操作码 */
+    private static final int PAD = -1;
+
+    private final ByteBuffer shared;
+    private final int headOffset;
+    private final int tailOffset;
+    private final int dataOffset;
+    private final int capacity;
+
+    // 生产者端：已写入但尚未发布的位置
+    private long writePos;
+    // 消费者端：当前消息
+    private long readPos;
+    private int currentLength;
+
+    /**
+     * @param shared 整块映射内存 (本机字节序)
+     * @param headOffset 消费者序号的偏移 (8 字节对齐)
+     * @param tailOffset 生产者序号的偏移 (8 字节对齐)
+     * @param dataOffset 数据区偏移 (8 字节对齐)
+     * @param capacity 数据区字节数 (8 的倍数)
+     */
+    public SharedRing(ByteBuffer shared, int headOffset, int tailOffset, int dataOffset, int capacity) {
+        this.shared = shared;
+        this.headOffset = headOffset;
+        this.tailOffset = tailOffset;
+        this.dataOffset = dataOffset;
+        this.capacity = capacity;
+        this.writePos = (long) SEQ.getAcquire(shared, tailOffset);
+        this.readPos = (long) SEQ.getAcquire(shared, headOffset);
+    }
+
+    /** 新建共享区时把两个序号清零 */
+    public static void reset(ByteBuffer shared, int headOffset, int tailOffset) {
+        SEQ.setRelease(shared, headOffset, 0L);
+        SEQ.setRelease(shared, tailOffset, 0L);
+    }
+
+    /** @return 单条消息载荷的上限，保证任何位置都能在数据区放下 */
+    public int maxPayload() {
+        return capacity / 2 - HEADER;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    // ==========================================
+    // 生产者
+    // ==========================================
+
+    /**
+     * 预留一条消息。写完载荷后调用 {@link #publish()}，在此之前不能再预留。
+     *
+     * @param payload 载荷字节数，不超过 {@link #maxPayload()}
+     * @return 载荷在共享缓冲区中的起始偏移；空间不足时返回 -1
+     */
+    public int reserve(int opcode, int payload) {
+        if (payload > maxPayload()) throw new IllegalArgumentException("消息过大: " + payload);
+        int need = align(HEADER + payload);
+        long head = (long) SEQ.getAcquire(shared, headOffset);
+        int idx = (int) (writePos % capacity);
+        int toEnd = capacity - idx;
+        long total = toEnd < need ? toEnd + need : need;
+        if (writePos + total - head > capacity) return -1;
+        if (toEnd < need) {
+            shared.putInt(dataOffset + idx, toEnd);
+            shared.putInt(dataOffset + idx + 4, PAD);
+            writePos += toEnd;
+            idx = 0;
+        }
+        shared.putInt(dataOffset + idx, need);
+        shared.putInt(dataOffset + idx + 4, opcode);
+        writePos += need;
+        return dataOffset + idx + HEADER;
+    }
+
+    /** 发布之前预留的全部消息 */
+    public void publish() {
+        SEQ.setRelease(shared, tailOffset, writePos);
+    }
+
+    /** @return 按当前消费进度能否立即预留该大小的消息 (不考虑填充) */
+    public boolean hasRoom(int payload) {
+        long head = (long) SEQ.getAcquire(shared, headOffset);
+        return writePos + 2L * align(HEADER + payload) - head <= capacity;
+    }
+
+    // ==========================================
+    // 消费者
+    // ==========================================
+
+    /**
+     * 取出下一条消息，处理完后调用 {@link #release()}。
+     *
+     * @return 操作码；没有消息时返回 {@link Integer#MIN_VALUE}
+     */
+    public int poll() {
+        while (true) {
+            long tail = (long) SEQ.getAcquire(shared, tailOffset);
+            if (readPos == tail) return Integer.MIN_VALUE;
+            int idx = (int) (readPos % capacity);
+            int length = shared.getInt(dataOffset + idx);
+            int opcode = shared.getInt(dataOffset + idx + 4);
+            if (opcode == PAD) {
+                readPos += length;
+                SEQ.setRelease(shared, headOffset, readPos);
+                continue;
+            }
+            currentLength = length;
+            return opcode;
+        }
+    }
+
+    /** @return 当前消息载荷在共享缓冲区中的起始偏移 */
+    public int payloadOffset() {
+        return dataOffset + (int) (readPos % capacity) + HEADER;
+    }
+
+    /** 归还当前消息占用的空间 */
+    public void release() {
+        readPos += currentLength;
+        currentLength = 0;
+        SEQ.setRelease(shared, headOffset, readPos);
+    }
+
+    /** @return 生产者已发布、消费者尚未取走的字节数 */
+    public long pendingBytes() {
+        return (long) SEQ.getAcquire(shared, tailOffset) - (long) SEQ.getAcquire(shared, headOffset);
+    }
+
+    public ByteBuffer buffer() {
+        return shared;
+    }
+}
@@ -0,0 +1,114 @@
+package com.gpuaccel.entitymod.gpu.sidecar;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.gpuaccel.entitymod.gpu.sidecar.SidecarProtocol.*;
+
+/**
+ * 一个服务器进程与边车宿主之间的通道：映射同一个文件的两端各持有一个实例。
+ * <p>
+ * 布局见 {@link SidecarProtocol}。服务器端用 {@link #create} 新建并初始化文件，宿主端用 {@link #open} 接入；
+ * 文件映射后即可关闭文件句柄，映射在实例被回收前一直有效。
+ * </p>
+ */
+public final class SidecarChannel {
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path file;
+    private final MappedByteBuffer mapped;
+    private final SharedRing requests;
+    private final SharedRing responses;
+
+    private SidecarChannel(Path file, MappedByteBuffer mapped) {
+        this.file = file;
+        this.mapped = mapped;
+        int requestCapacity = (int) getLong(OFF_REQUEST_CAPACITY);
+        int responseCapacity = (int) getLong(OFF_RESPONSE_CAPACITY);
+        this.requests = new SharedRing(mapped, OFF_REQUEST_HEAD, OFF_REQUEST_TAIL, HEADER_BYTES, requestCapacity);
+        this.responses = new SharedRing(mapped, OFF_RESPONSE_HEAD, OFF_RESPONSE_TAIL,
+            HEADER_BYTES + requestCapacity, responseCapacity);
+    }
+
+    /**
+     * 新建通道文件并写入头部，状态为 {@link SidecarProtocol#STATE_CONNECTING}。
+     *
+     * @param requestCapacity 请求环字节数 (8 的倍数)
+     * @param responseCapacity 响应环字节数 (8 的倍数)
+     */
+    public static SidecarChannel create(Path file, int requestCapacity, int responseCapacity) throws IOException {
+        long size = (long) HEADER_BYTES + requestCapacity + responseCapacity;
+        MappedByteBuffer mapped;
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapped = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        mapped.order(ByteOrder.nativeOrder());
+        mapped.putInt(OFF_VERSION, VERSION);
+        mapped.putLong(OFF_REQUEST_CAPACITY, requestCapacity);
+        mapped.putLong(OFF_RESPONSE_CAPACITY, responseCapacity);
+        mapped.putLong(OFF_CLIENT_PID, ProcessHandle.current().pid());
+        SharedRing.reset(mapped, OFF_REQUEST_HEAD, OFF_REQUEST_TAIL);
+        SharedRing.reset(mapped, OFF_RESPONSE_HEAD, OFF_RESPONSE_TAIL);
+        LONG.setRelease(mapped, OFF_STATE, STATE_CONNECTING);
+        // 魔数最后写入，宿主看到魔数时头部其余字段已经就绪
+        INT.setRelease(mapped, OFF_MAGIC, MAGIC);
+        return new SidecarChannel(file, mapped);
+    }
+
+    /**
+     * 接入服务器创建的通道文件。
+     *
+     * @return 文件尚未初始化完毕、版本不符或大小不符时返回 null
+     */
+    public static SidecarChannel open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = fc.size();
+            if (size < HEADER_BYTES) return null;
+            mapped = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        mapped.order(ByteOrder.nativeOrder());
+        if ((int) INT.getAcquire(mapped, OFF_MAGIC) != MAGIC || mapped.getInt(OFF_VERSION) != VERSION) return null;
+        long expected = HEADER_BYTES + mapped.getLong(OFF_REQUEST_CAPACITY) + mapped.getLong(OFF_RESPONSE_CAPACITY);
+        if (expected != mapped.capacity()) return null;
+        return new SidecarChannel(file, mapped);
+    }
+
+    public long getLong(int offset) {
+        return (long) LONG.getAcquire(mapped, offset);
+    }
+
+    public void setLong(int offset, long value) {
+        LONG.setRelease(mapped, offset, value);
+    }
+
+    public long getState() {
+        return getLong(OFF_STATE);
+    }
+
+    public void setState(long state) {
+        setLong(OFF_STATE, state);
+    }
+
+    /** @return 请求环：服务器生产、宿主消费 */
+    public SharedRing requests() {
+        return requests;
+    }
+
+    /** @return 响应环：宿主生产、服务器消费 */
+    public SharedRing responses() {
+        return responses;
+    }
+
+    public Path file() {
+        return file;
+    }
+}
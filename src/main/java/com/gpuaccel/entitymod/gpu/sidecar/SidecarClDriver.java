@@ -0,0 +1,809 @@
+package com.gpuaccel.entitymod.gpu.sidecar;
+
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.HostArena;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import com.gpuaccel.entitymod.gpu.driver.ClDriverStats;
+import com.gpuaccel.entitymod.gpu.driver.ClMapping;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.gpuaccel.entitymod.gpu.sidecar.SidecarProtocol.*;
+import static org.jocl.CL.CL_DEVICE_NOT_AVAILABLE;
+import static org.jocl.CL.CL_MAP_WRITE;
+import static org.jocl.CL.CL_MAP_WRITE_INVALIDATE_REGION;
+import static org.jocl.CL.CL_MEM_COPY_HOST_PTR;
+
+/**
+ * 把 OpenCL 调用转发给独立边车进程 ({@link SidecarHost}) 的 {@link ClDriver}。
+ * <p>
+ * 边车进程拥有 OpenCL 上下文与命令队列，服务器进程不加载任何 OpenCL 驱动；驱动崩溃或挂起只会带走边车进程，
+ * 服务器表现为设备失联，由 {@link com.gpuaccel.entitymod.gpu.GpuWatchdog} 熔断后重建 (重新连接并在需要时拉起新的宿主)。
+ * 多个服务器进程可以连接同一个宿主，共享一块设备。
+ * </p>
+ * <p>
+ * 命令打包后写入共享内存中的请求环，立即返回；句柄与事件都是本地代理，id 由本端分配。
+ * 写入数据在调用时复制进请求环，因此阻塞与非阻塞写入都具有复制语义；读取的数据由宿主在事件完成后分片写回响应环，
+ * 本端在查询事件时复制到调用方的目标缓冲区。需要返回结果的调用 (编译、缓冲区创建、{@link #finish()}) 会等待宿主应答并计为阻塞调用。
+ * </p>
+ * <p>
+ * 映射通过读写模拟，{@link #isHostUnifiedMemory()} 始终为 false，{@code GPUManager} 因此不会启用零拷贝。
+ * 事件完成时刻取本端收到完成通知的时间。与 {@link com.gpuaccel.entitymod.gpu.driver.ThreadedClDriver} 一样只能在单个线程上使用。
+ * </p>
+ */
+public class SidecarClDriver implements ClDriver {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 等待宿主接入的时长 */
+    private static final long CONNECT_TIMEOUT_NANOS = 30_000_000_000L;
+    /** 宿主存活检查的最小间隔 */
+    private static final long LIVENESS_CHECK_NANOS = 100_000_000L;
+    /** 心跳停止超过该时长视为宿主失联 */
+    private static final long HEARTBEAT_TIMEOUT_NANOS = 5_000_000_000L;
+    /** 等待应答时的轮询间隔 */
+    private static final long POLL_PARK_NANOS = 50_000L;
+
+    private static final AtomicInteger CHANNELS = new AtomicInteger();
+
+    /** 异步命令的本地状态 */
+    private static final class EventState {
+        final long id;
+        /** 收到完成通知时的 System.nanoTime()，0 = 未完成 */
+        long completedNanos;
+        /** 完成通知中的执行状态，负数为 OpenCL 错误码 */
+        int status;
+        /** 读取目标，持有引用防止被回收 */
+        Buffer dst;
+        long dstAddress;
+        /** 非阻塞读取没有调用方持有的事件，完成后自动移除 */
+        boolean detached;
+
+        EventState(long id) {
+            this.id = id;
+        }
+    }
+
+    /** 模拟映射：映射区域与写回范围 */
+    private record MapState(long flags, long offset, long bytes, ByteBuffer buffer) {}
+
+    private SidecarChannel channel;
+    private SharedRing requests;
+    private SharedRing responses;
+    private ByteBuffer shared;
+    private long sharedAddress;
+    private Process launchedHost;
+    private ProcessHandle hostHandle;
+
+    private boolean available = false;
+    private boolean attached = false;
+    private boolean closed = false;
+    private boolean hostAlive = true;
+
+    // 设备信息 (来自宿主)
+    private String hostDriverName = "未连接";
+    private String deviceName = "未知";
+    private String driverVersion = "未知";
+    private long maxComputeUnits = 0;
+    private long globalMemorySize = 0;
+    private long maxMemAllocSize = 0;
+    private long memBaseAddrAlign = 0;
+
+    private final Map<cl_kernel, Long> kernels = new IdentityHashMap<>();
+    private final Map<cl_mem, Long> mems = new IdentityHashMap<>();
+    private final Map<cl_event, EventState> events = new IdentityHashMap<>();
+    private final Map<Long, EventState> eventsById = new HashMap<>();
+    private final Map<ClMapping, MapState> mappings = new IdentityHashMap<>();
+    private long nextId = 1;
+
+    // 当前同步调用
+    private long pendingCall = 0;
+    private boolean callDone;
+    private long callValue;
+    private int callStatus;
+    private String callError;
+
+    /** 宿主上异步命令的失败，下一次提交时抛出 */
+    private CLException failure;
+
+    private long lastLivenessCheck = 0;
+    private long lastHeartbeat = -1;
+    private long heartbeatSeenAt = System.nanoTime();
+
+    private final ClDriverStats stats = new ClDriverStats();
+
+    /**
+     * 在 dir 中创建通道并等待宿主接入。
+     *
+     * @param dir 宿主监视的目录
+     * @param launchHost 没有宿主在运行时是否拉起新的边车进程
+     * @param classpath 边车进程的类路径，为 null 时按已加载类的位置推断
+     * @param programCacheDir 边车进程的程序二进制缓存目录，为 null 时不落盘
+     */
+    public SidecarClDriver(Path dir, boolean launchHost, String classpath, Path programCacheDir) {
+        try {
+            connect(dir, launchHost, classpath, programCacheDir);
+        } catch (Exception e) {
+            LOGGER.error("无法连接计算边车", e);
+            available = false;
+            abandon();
+        }
+    }
+
+    private void connect(Path dir, boolean launchHost, String classpath, Path programCacheDir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve("server-" + ProcessHandle.current().pid() + "-" + CHANNELS.incrementAndGet() + CHANNEL_SUFFIX);
+        Files.deleteIfExists(file);
+        channel = SidecarChannel.create(file, REQUEST_CAPACITY, RESPONSE_CAPACITY);
+        requests = channel.requests();
+        responses = channel.responses();
+        shared = requests.buffer();
+        sharedAddress = MemoryUtil.memAddress(shared);
+
+        if (launchHost && !isHostRunning(dir)) {
+            launchedHost = SidecarHost.launch(dir, classpath, programCacheDir);
+        }
+
+        long deadline = System.nanoTime() + CONNECT_TIMEOUT_NANOS;
+        while (!attached) {
+            drainResponses();
+            if (attached) break;
+            // 另一个服务器同时拉起的宿主抢到锁时，本端拉起的进程会正常退出，由那个宿主接入本通道
+            if (launchedHost != null && !launchedHost.isAlive() && launchedHost.exitValue() != 0) {
+                throw new IOException("计算边车进程启动失败 (退出码 " + launchedHost.exitValue() + ")，详见 " + dir.resolve("host.log"));
+            }
+            if (System.nanoTime() > deadline) throw new IOException("等待计算边车接入超时");
+            LockSupport.parkNanos(this, 1_000_000L);
+        }
+        heartbeatSeenAt = System.nanoTime();
+        LOGGER.info("已连接计算边车 {} (宿主 pid {})：{}", file.getFileName(), channel.getLong(OFF_HOST_PID), deviceName);
+    }
+
+    /** @return 是否已有宿主持有目录锁 (包括运行在本进程内的宿主) */
+    private static boolean isHostRunning(Path dir) throws IOException {
+        try (FileChannel fc = FileChannel.open(dir.resolve(HOST_LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = fc.tryLock()) {
+            return lock == null;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        }
+    }
+
+    /** 连接失败或宿主失联后丢弃通道 */
+    private void abandon() {
+        closed = true;
+        if (channel == null) return;
+        channel.setState(STATE_CLOSED);
+        try {
+            Files.deleteIfExists(channel.file());
+        } catch (IOException e) {
+            LOGGER.debug("无法删除通道文件 {}", channel.file(), e);
+        }
+    }
+
+    // ==========================================
+    // 响应处理
+    // ==========================================
+
+    private void drainResponses() {
+        if (responses == null) return;
+        int op;
+        while ((op = responses.poll()) != Integer.MIN_VALUE) {
+            int p = responses.payloadOffset();
+            switch (op) {
+                case R_RESULT -> {
+                    if (shared.getLong(p) == pendingCall) {
+                        callValue = shared.getLong(p + 8);
+                        callStatus = shared.getInt(p + 16);
+                        callError = getString(shared, p + 20);
+                        callDone = true;
+                    }
+                }
+                case R_COMPLETE -> {
+                    EventState state = eventsById.get(shared.getLong(p));
+                    if (state != null) {
+                        state.completedNanos = System.nanoTime();
+                        state.status = shared.getInt(p + 8);
+                        if (state.detached) eventsById.remove(state.id);
+                    }
+                }
+                case R_READ_DATA -> {
+                    EventState state = eventsById.get(shared.getLong(p));
+                    if (state != null && state.dstAddress != 0) {
+                        long chunkOffset = shared.getLong(p + 8);
+                        int bytes = shared.getInt(p + 16);
+                        MemoryUtil.memCopy(sharedAddress + p + 20, state.dstAddress + chunkOffset, bytes);
+                    }
+                }
+                case R_ERROR -> {
+                    int status = shared.getInt(p);
+                    String message = getString(shared, p + 4);
+                    LOGGER.error("计算边车命令执行失败: {}", message);
+                    if (failure == null) failure = new CLException(message, status == STATUS_FAILED ? CL_DEVICE_NOT_AVAILABLE : status);
+                }
+                case R_HELLO -> onHello(p);
+                default -> LOGGER.warn("未知的计算边车响应 {}", op);
+            }
+            responses.release();
+        }
+    }
+
+    private void onHello(int p) {
+        long hostPid = shared.getLong(p);
+        maxComputeUnits = shared.getLong(p + 8);
+        globalMemorySize = shared.getLong(p + 16);
+        maxMemAllocSize = shared.getLong(p + 24);
+        memBaseAddrAlign = shared.getLong(p + 32);
+        available = shared.getInt(p + 40) != 0;
+        int o = p + 44;
+        hostDriverName = getString(shared, o);
+        o += 4 + shared.getInt(o);
+        deviceName = getString(shared, o);
+        o += 4 + shared.getInt(o);
+        driverVersion = getString(shared, o);
+        hostHandle = ProcessHandle.of(hostPid).orElse(null);
+        attached = true;
+    }
+
+    /**
+     * 检查宿主是否存活：宿主进程仍在且心跳在推进。检查结果按 {@link #LIVENESS_CHECK_NANOS} 缓存。
+     */
+    private boolean checkHost() {
+        if (!hostAlive) return false;
+        long now = System.nanoTime();
+        if (now - lastLivenessCheck < LIVENESS_CHECK_NANOS) return true;
+        lastLivenessCheck = now;
+
+        long beat = channel.getLong(OFF_HEARTBEAT);
+        if (beat != lastHeartbeat) {
+            lastHeartbeat = beat;
+            heartbeatSeenAt = now;
+        }
+        boolean alive = now - heartbeatSeenAt < HEARTBEAT_TIMEOUT_NANOS
+            && channel.getState() != STATE_CLOSED
+            && (hostHandle == null || hostHandle.isAlive());
+        if (!alive) {
+            hostAlive = false;
+            LOGGER.error("计算边车宿主已失联，在途的 GPU 命令不会再完成");
+        }
+        return alive;
+    }
+
+    private CLException hostLost() {
+        return new CLException("计算边车宿主已失联", CL_DEVICE_NOT_AVAILABLE);
+    }
+
+    // ==========================================
+    // 请求发布
+    // ==========================================
+
+    private void checkFailure() {
+        CLException f = failure;
+        if (f != null) {
+            failure = null;
+            throw f;
+        }
+        if (closed) throw new IllegalStateException("计算边车通道已关闭");
+        if (!checkHost()) throw hostLost();
+    }
+
+    /** 预留一条请求，请求环已满时一边消费响应一边等待宿主腾出空间 */
+    private int begin(int opcode, int payload) {
+        checkFailure();
+        int p = requests.reserve(opcode, payload);
+        while (p < 0) {
+            drainResponses();
+            if (!checkHost()) throw hostLost();
+            Thread.onSpinWait();
+            p = requests.reserve(opcode, payload);
+        }
+        return p;
+    }
+
+    private void end() {
+        requests.publish();
+    }
+
+    /** @return 宿主仍可接收请求；释放类调用在宿主失联后直接忽略 */
+    private boolean connected() {
+        return !closed && attached && hostAlive;
+    }
+
+    /** 发送带调用 id 的请求并等待应答 */
+    private long call(int opcode, int payload, Encoder encoder) {
+        long callId = nextId++;
+        int p = begin(opcode, 8 + payload);
+        shared.putLong(p, callId);
+        encoder.encode(p + 8);
+        end();
+
+        pendingCall = callId;
+        callDone = false;
+        try {
+            while (true) {
+                drainResponses();
+                if (callDone) break;
+                if (!checkHost()) throw hostLost();
+                LockSupport.parkNanos(this, POLL_PARK_NANOS);
+            }
+        } finally {
+            pendingCall = 0;
+        }
+        if (callStatus == STATUS_FAILED) throw new IllegalStateException(callError);
+        if (callStatus != STATUS_OK) throw new CLException(callError, callStatus);
+        return callValue;
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        void encode(int offset);
+    }
+
+    private long id(cl_kernel kernel) {
+        Long id = kernels.get(kernel);
+        return id == null ? 0 : id;
+    }
+
+    private long id(cl_mem mem) {
+        Long id = mems.get(mem);
+        return id == null ? 0 : id;
+    }
+
+    /** @return 仍未完成的等待事件的 id，已完成的事件无需等待 */
+    private long[] waitIds(cl_event[] waitList) {
+        if (waitList == null || waitList.length == 0) return null;
+        long[] ids = new long[waitList.length];
+        int n = 0;
+        for (cl_event e : waitList) {
+            EventState state = events.get(e);
+            if (state != null && state.completedNanos == 0) ids[n++] = state.id;
+        }
+        return n == 0 ? null : n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+
+    private cl_event newEvent(EventState state) {
+        cl_event proxy = new cl_event();
+        events.put(proxy, state);
+        eventsById.put(state.id, state);
+        return proxy;
+    }
+
+    /** 把 src 的 bytes 字节按分片写入请求环，事件只挂在最后一片上 (命令队列按顺序执行) */
+    private void sendWrite(long eventId, cl_mem mem, long offset, long bytes, Buffer src, long[] wait) {
+        long srcAddress = MemoryUtil.memAddress(src);
+        long memId = id(mem);
+        long done = 0;
+        do {
+            int chunk = (int) Math.min(CHUNK_BYTES, bytes - done);
+            boolean last = done + chunk >= bytes;
+            long[] w = done == 0 ? wait : null;
+            int p = begin(Q_WRITE, 28 + sizeOfWaitList(w) + chunk);
+            shared.putLong(p, last ? eventId : 0);
+            shared.putLong(p + 8, memId);
+            shared.putLong(p + 16, offset + done);
+            shared.putInt(p + 24, chunk);
+            int d = putWaitList(shared, p + 28, w);
+            MemoryUtil.memCopy(srcAddress + done, sharedAddress + d, chunk);
+            end();
+            done += chunk;
+        } while (done < bytes);
+    }
+
+    private cl_event sendRead(cl_mem mem, long offset, long bytes, Buffer dst, long[] wait, boolean detached) {
+        EventState state = new EventState(nextId++);
+        state.dst = dst;
+        state.dstAddress = MemoryUtil.memAddress(dst);
+        state.detached = detached;
+        int p = begin(Q_READ, 32 + sizeOfWaitList(wait));
+        shared.putLong(p, state.id);
+        shared.putLong(p + 8, id(mem));
+        shared.putLong(p + 16, offset);
+        shared.putLong(p + 24, bytes);
+        putWaitList(shared, p + 32, wait);
+        end();
+        if (detached) {
+            eventsById.put(state.id, state);
+            return null;
+        }
+        return newEvent(state);
+    }
+
+    private void sendKernel(long eventId, cl_kernel kernel, int dim, long[] global, long[] local, long[] wait) {
+        int payload = 8 + 8 + 4 + 8 * dim + 4 + (local == null ? 0 : 8 * dim) + sizeOfWaitList(wait);
+        int p = begin(Q_KERNEL, payload);
+        shared.putLong(p, eventId);
+        shared.putLong(p + 8, id(kernel));
+        shared.putInt(p + 16, dim);
+        int o = p + 20;
+        for (int i = 0; i < dim; i++, o += 8) shared.putLong(o, global[i]);
+        shared.putInt(o, local == null ? 0 : 1);
+        o += 4;
+        if (local != null) {
+            for (int i = 0; i < dim; i++, o += 8) shared.putLong(o, local[i]);
+        }
+        putWaitList(shared, o, wait);
+        end();
+    }
+
+    private void sendId(int opcode, long id) {
+        int p = begin(opcode, 8);
+        shared.putLong(p, id);
+        end();
+    }
+
+    // ==========================================
+    // ClDriver
+    // ==========================================
+
+    @Override
+    public String getName() {
+        return "计算边车 (" + hostDriverName + ")";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available && connected() && checkHost();
+    }
+
+    @Override
+    public String getDeviceName() { return deviceName; }
+
+    @Override
+    public String getDriverVersion() { return driverVersion; }
+
+    @Override
+    public long getMaxComputeUnits() { return maxComputeUnits; }
+
+    @Override
+    public long getGlobalMemorySize() { return globalMemorySize; }
+
+    @Override
+    public long getMaxMemAllocSize() { return maxMemAllocSize; }
+
+    @Override
+    public long getMemBaseAddrAlign() { return memBaseAddrAlign; }
+
+    @Override
+    public boolean isHostUnifiedMemory() { return false; }
+
+    @Override
+    public cl_kernel compileKernel(String source, String options, String name) {
+        stats.onBlocking();
+        byte[] src = utf8(source), opts = utf8(options), n = utf8(name);
+        long id = nextId++;
+        call(Q_COMPILE, 8 + sizeOf(src) + sizeOf(opts) + sizeOf(n), p -> {
+            shared.putLong(p, id);
+            int o = putString(shared, p + 8, src);
+            o = putString(shared, o, opts);
+            putString(shared, o, n);
+        });
+        cl_kernel kernel = new cl_kernel();
+        kernels.put(kernel, id);
+        return kernel;
+    }
+
+    @Override
+    public void releaseKernel(cl_kernel kernel) {
+        Long id = kernels.remove(kernel);
+        if (id != null && connected()) sendId(Q_RELEASE_KERNEL, id);
+    }
+
+    @Override
+    public long getKernelWorkGroupSize(cl_kernel kernel) {
+        stats.onBlocking();
+        long id = id(kernel);
+        return call(Q_KERNEL_WORK_GROUP_SIZE, 8, p -> shared.putLong(p, id));
+    }
+
+    @Override
+    public cl_mem createBuffer(long flags, long size) {
+        stats.onBufferCreated();
+        stats.onBlocking();
+        long id = nextId++;
+        call(Q_CREATE_BUFFER, 24, p -> {
+            shared.putLong(p, id);
+            shared.putLong(p + 8, flags);
+            shared.putLong(p + 16, size);
+        });
+        cl_mem mem = new cl_mem();
+        mems.put(mem, id);
+        return mem;
+    }
+
+    /** 初始数据不随创建请求传递，而是创建后按分片写入 */
+    @Override
+    public cl_mem createBuffer(long flags, long size, Buffer hostData) {
+        cl_mem mem = createBuffer(flags & ~CL_MEM_COPY_HOST_PTR, size);
+        stats.onWrite(size, false);
+        sendWrite(0, mem, 0, size, hostData, null);
+        return mem;
+    }
+
+    @Override
+    public cl_mem createSubBuffer(cl_mem parent, long flags, long origin, long size) {
+        stats.onBufferCreated();
+        stats.onBlocking();
+        long id = nextId++;
+        long parentId = id(parent);
+        call(Q_CREATE_SUB_BUFFER, 40, p -> {
+            shared.putLong(p, id);
+            shared.putLong(p + 8, parentId);
+            shared.putLong(p + 16, flags);
+            shared.putLong(p + 24, origin);
+            shared.putLong(p + 32, size);
+        });
+        cl_mem mem = new cl_mem();
+        mems.put(mem, id);
+        return mem;
+    }
+
+    @Override
+    public void releaseMem(cl_mem mem) {
+        Long id = mems.remove(mem);
+        if (id != null && connected()) sendId(Q_RELEASE_MEM, id);
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, cl_mem mem) {
+        stats.onKernelArg();
+        int p = begin(Q_SET_ARG_MEM, 20);
+        shared.putLong(p, id(kernel));
+        shared.putInt(p + 8, index);
+        shared.putLong(p + 12, id(mem));
+        end();
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, int value) {
+        stats.onKernelArg();
+        int p = begin(Q_SET_ARG_INT, 16);
+        shared.putLong(p, id(kernel));
+        shared.putInt(p + 8, index);
+        shared.putInt(p + 12, value);
+        end();
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float value) {
+        stats.onKernelArg();
+        int p = begin(Q_SET_ARG_FLOAT, 16);
+        shared.putLong(p, id(kernel));
+        shared.putInt(p + 8, index);
+        shared.putFloat(p + 12, value);
+        end();
+    }
+
+    @Override
+    public void setArg(cl_kernel kernel, int index, float x, float y, float z) {
+        stats.onKernelArg();
+        int p = begin(Q_SET_ARG_FLOAT3, 24);
+        shared.putLong(p, id(kernel));
+        shared.putInt(p + 8, index);
+        shared.putFloat(p + 12, x);
+        shared.putFloat(p + 16, y);
+        shared.putFloat(p + 20, z);
+        end();
+    }
+
+    /** 数据在调用时已复制进请求环，调用方随即可以改写 src */
+    @Override
+    public void write(cl_mem mem, boolean blocking, long offset, long bytes, Buffer src) {
+        stats.onWrite(bytes, false);
+        sendWrite(0, mem, offset, bytes, src, null);
+    }
+
+    @Override
+    public void read(cl_mem mem, boolean blocking, long offset, long bytes, Buffer dst) {
+        stats.onRead(bytes, blocking);
+        if (!blocking) {
+            sendRead(mem, offset, bytes, dst, null, true);
+            return;
+        }
+        cl_event event = sendRead(mem, offset, bytes, dst, null, false);
+        try {
+            waitFor(event);
+        } finally {
+            releaseEvent(event);
+        }
+    }
+
+    @Override
+    public void fill(cl_mem mem, float value, long bytes) {
+        stats.onFill();
+        int p = begin(Q_FILL, 20);
+        shared.putLong(p, id(mem));
+        shared.putFloat(p + 8, value);
+        shared.putLong(p + 12, bytes);
+        end();
+    }
+
+    @Override
+    public void copy(cl_mem src, cl_mem dst, long srcOffset, long dstOffset, long bytes) {
+        stats.onCopy(bytes);
+        int p = begin(Q_COPY, 40);
+        shared.putLong(p, id(src));
+        shared.putLong(p + 8, id(dst));
+        shared.putLong(p + 16, srcOffset);
+        shared.putLong(p + 24, dstOffset);
+        shared.putLong(p + 32, bytes);
+        end();
+    }
+
+    @Override
+    public void enqueueKernel(cl_kernel kernel, int dim, long[] global, long[] local) {
+        stats.onKernelEnqueue();
+        sendKernel(0, kernel, dim, global, local, null);
+    }
+
+    @Override
+    public cl_event writeAsync(cl_mem mem, long offset, long bytes, Buffer src, cl_event[] waitList) {
+        stats.onWrite(bytes, false);
+        long[] wait = waitIds(waitList);
+        EventState state = new EventState(nextId++);
+        sendWrite(state.id, mem, offset, bytes, src, wait);
+        return newEvent(state);
+    }
+
+    @Override
+    public cl_event readAsync(cl_mem mem, long offset, long bytes, Buffer dst, cl_event[] waitList) {
+        stats.onRead(bytes, false);
+        return sendRead(mem, offset, bytes, dst, waitIds(waitList), false);
+    }
+
+    /**
+     * 以读取模拟映射：映射区域是本地暂存区，映射事件即读取事件；解除写映射时把暂存区写回设备。
+     */
+    @Override
+    public ClMapping mapAsync(cl_mem mem, long mapFlags, long offset, long bytes, cl_event[] waitList) {
+        stats.onMap();
+        ByteBuffer staging = HostArena.alloc(Subsystem.STAGING, (int) bytes);
+        cl_event event = sendRead(mem, offset, bytes, staging, waitIds(waitList), false);
+        ClMapping mapping = new ClMapping(event, staging);
+        mappings.put(mapping, new MapState(mapFlags, offset, bytes, staging));
+        return mapping;
+    }
+
+    @Override
+    public void unmap(cl_mem mem, ClMapping mapping) {
+        MapState state = mappings.remove(mapping);
+        if (state == null) return;
+        // 映射尚未完成时不再接收读回的数据，暂存区随即释放
+        EventState read = events.get(mapping.event());
+        if (read != null) {
+            read.dst = null;
+            read.dstAddress = 0;
+        }
+        try {
+            if ((state.flags() & (CL_MAP_WRITE | CL_MAP_WRITE_INVALIDATE_REGION)) != 0 && connected()) {
+                write(mem, false, state.offset(), state.bytes(), state.buffer().rewind());
+            }
+        } finally {
+            HostArena.free(state.buffer());
+        }
+    }
+
+    @Override
+    public cl_event enqueueKernelAsync(cl_kernel kernel, int dim, long[] global, long[] local, cl_event[] waitList) {
+        stats.onKernelEnqueue();
+        EventState state = new EventState(nextId++);
+        sendKernel(state.id, kernel, dim, global, local, waitIds(waitList));
+        return newEvent(state);
+    }
+
+    /** 宿主失联后在途事件不再完成，由看门狗按超时处理 */
+    @Override
+    public boolean isComplete(cl_event event) {
+        drainResponses();
+        EventState state = events.get(event);
+        if (state == null || state.completedNanos == 0) return false;
+        checkStatus(state);
+        return true;
+    }
+
+    private static void checkStatus(EventState state) {
+        if (state.status < 0) {
+            throw new CLException("OpenCL 命令执行失败: " + CL.stringFor_errorCode(state.status), state.status);
+        }
+    }
+
+    @Override
+    public long getCompletionNanos(cl_event event) {
+        drainResponses();
+        EventState state = events.get(event);
+        return state == null ? 0 : state.completedNanos;
+    }
+
+    @Override
+    public void waitFor(cl_event event) {
+        EventState state = events.get(event);
+        if (state == null) return;
+        stats.onBlocking();
+        while (true) {
+            drainResponses();
+            if (state.completedNanos != 0) {
+                checkStatus(state);
+                return;
+            }
+            if (!checkHost()) throw hostLost();
+            LockSupport.parkNanos(this, POLL_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void releaseEvent(cl_event event) {
+        if (event == null) return;
+        EventState state = events.remove(event);
+        if (state == null) return;
+        eventsById.remove(state.id);
+        // 已完成的事件宿主已自行释放
+        if (state.completedNanos == 0 && connected()) sendId(Q_RELEASE_EVENT, state.id);
+    }
+
+    @Override
+    public void flush() {
+        begin(Q_FLUSH, 0);
+        end();
+    }
+
+    @Override
+    public void finish() {
+        stats.onBlocking();
+        call(Q_FINISH, 0, p -> {});
+    }
+
+    @Override
+    public ClDriverStats getStats() { return stats; }
+
+    /** @return 请求环中宿主尚未取走的字节数 */
+    public long getPendingRequestBytes() {
+        return requests == null ? 0 : requests.pendingBytes();
+    }
+
+    /**
+     * 关闭通道。宿主收到关闭请求后等待本通道的命令完成并释放其全部句柄；宿主已失联时直接删除通道文件。
+     */
+    @Override
+    public void release() {
+        if (closed) return;
+        try {
+            if (connected() && checkHost()) {
+                begin(Q_CLOSE, 0);
+                end();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("关闭计算边车通道时出错", e);
+        }
+        for (MapState state : mappings.values()) HostArena.free(state.buffer());
+        mappings.clear();
+        events.clear();
+        eventsById.clear();
+        kernels.clear();
+        mems.clear();
+        if (hostAlive) {
+            closed = true;
+        } else {
+            abandon();
+        }
+    }
+}
@@ -0,0 +1,784 @@
+package com.gpuaccel.entitymod.gpu.sidecar;
+
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
+import com.gpuaccel.entitymod.gpu.driver.JoclDriver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jocl.CLException;
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static com.gpuaccel.entitymod.gpu.sidecar.SidecarProtocol.*;
+import static org.jocl.CL.CL_DEVICE_NOT_AVAILABLE;
+import static org.jocl.CL.CL_INVALID_COMMAND_QUEUE;
+import static org.jocl.CL.CL_INVALID_CONTEXT;
+import static org.jocl.CL.CL_OUT_OF_RESOURCES;
+
+/**
+ * 计算边车宿主：拥有 OpenCL 上下文，为目录中的每个通道执行 {@link SidecarClDriver} 发来的命令。
+ * <p>
+ * 宿主持有目录中 {@link SidecarProtocol#HOST_LOCK} 的排他锁，同一目录只有一个宿主；
+ * 周期性扫描目录中新建的通道文件并接入，在单个线程上轮流处理各通道的请求，所有通道共享一个驱动与命令队列。
+ * 句柄表按通道隔离，通道关闭或服务器进程退出后释放该通道的全部句柄。
+ * </p>
+ * <p>
+ * 写入的数据先从请求环复制到暂存区再入队；读取在事件完成后分片写回响应环。
+ * 响应积压超过 {@link #MAX_OUTBOUND} 条时暂停读取该通道的请求，等服务器端消费。
+ * 驱动报告上下文级错误后不再接入新通道，待现有通道全部关闭后重新创建驱动。
+ * </p>
+ * <p>
+ * 既可以作为独立进程运行 ({@link #main}，空闲一段时间后退出)，也可以用 {@link #startInProcess} 在服务器进程内的守护线程上运行，
+ * 后者配合 {@code RecordingClDriver} 可以在没有显卡的环境中验证完整的通道协议。
+ * </p>
+ */
+public final class SidecarHost {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** 目录扫描间隔 */
+    private static final long SCAN_INTERVAL_NANOS = 200_000_000L;
+    /** 心跳间隔 (毫秒) */
+    private static final long HEARTBEAT_INTERVAL_MS = 100;
+    /** 服务循环停顿超过该时长时停止心跳，服务器端随即判定宿主失联 */
+    private static final long STALL_NANOS = 30_000_000_000L;
+    /** 独立进程在没有通道时的存活时长 */
+    private static final long IDLE_EXIT_NANOS = 60_000_000_000L;
+    /** 每个通道每轮最多处理的请求数，保证多个服务器之间的公平 */
+    private static final int REQUESTS_PER_TURN = 256;
+    /** 单个通道积压的响应上限 */
+    private static final int MAX_OUTBOUND = 256;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    private static final long POLL_PARK_NANOS = 50_000L;
+
+    /** 在途的异步命令 */
+    private static final class Pending {
+        /** 服务器端的事件 id，0 = 宿主内部命令 (分片写入等) */
+        final long id;
+        final cl_event event;
+        final ByteBuffer staging;
+        final boolean read;
+        /** 服务器端已释放该事件，完成后无需通知 */
+        boolean released;
+
+        Pending(long id, cl_event event, ByteBuffer staging, boolean read) {
+            this.id = id;
+            this.event = event;
+            this.staging = staging;
+            this.read = read;
+        }
+    }
+
+    /** 等待写入响应环的消息 */
+    @FunctionalInterface
+    private interface Outbound {
+        /** @return 是否已全部写入；响应环已满时返回 false，下一轮继续 */
+        boolean send(SharedRing ring);
+    }
+
+    /** 一个已接入的通道与其句柄表 */
+    private static final class Client {
+        final SidecarChannel channel;
+        final ByteBuffer shared;
+        final ProcessHandle process;
+        final Map<Long, cl_kernel> kernels = new HashMap<>();
+        final Map<Long, cl_mem> mems = new HashMap<>();
+        final Map<Long, Pending> events = new HashMap<>();
+        final List<Pending> outstanding = new ArrayList<>();
+        final ArrayDeque<Outbound> outbound = new ArrayDeque<>();
+
+        Client(SidecarChannel channel) {
+            this.channel = channel;
+            this.shared = channel.requests().buffer();
+            this.process = ProcessHandle.of(channel.getLong(OFF_CLIENT_PID)).orElse(null);
+        }
+    }
+
+    private final Path dir;
+    private final Supplier<ClDriver> driverFactory;
+    private final boolean exitWhenIdle;
+    private final StagingPool staging = new StagingPool();
+
+    private ClDriver inner;
+    /** 驱动报告了上下文级错误，现有通道关闭后重建 */
+    private boolean contextFailed = false;
+
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final Set<Path> known = new HashSet<>();
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    private volatile boolean running = true;
+    private volatile long lastLoopNanos = System.nanoTime();
+    private long heartbeat = 0;
+
+    private SidecarHost(Path dir, Supplier<ClDriver> driverFactory, boolean exitWhenIdle) {
+        this.dir = dir;
+        this.driverFactory = driverFactory;
+        this.exitWhenIdle = exitWhenIdle;
+    }
+
+    // ==========================================
+    // 启动
+    // ==========================================
+
+    /**
+     * 独立进程入口：{@code SidecarHost <目录> [--cache <程序缓存目录>]}。
+     * 目录已有宿主时立即以 0 退出。
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: SidecarHost <目录> [--cache <程序缓存目录>]");
+            System.exit(2);
+        }
+        Path dir = Path.of(args[0]);
+        Path cache = null;
+        for (int i = 1; i < args.length - 1; i++) {
+            if ("--cache".equals(args[i])) cache = Path.of(args[++i]);
+        }
+        Path cacheDir = cache;
+        Files.createDirectories(dir);
+        SidecarHost host = new SidecarHost(dir, () -> new JoclDriver(cacheDir), true);
+        if (!host.acquireLock()) {
+            LOGGER.info("目录 {} 已有计算边车宿主在运行", dir);
+            return;
+        }
+        host.startHeartbeat();
+        host.serve();
+        System.exit(0);
+    }
+
+    /**
+     * 在本进程的守护线程上运行宿主，作为独立边车进程的替身。
+     *
+     * @param driverFactory 创建实际执行命令的驱动，上下文故障后会再次调用
+     * @return 宿主；目录已有其他宿主在运行时返回 null，通道由那个宿主接入
+     */
+    public static SidecarHost startInProcess(Path dir, Supplier<ClDriver> driverFactory) throws IOException {
+        Files.createDirectories(dir);
+        SidecarHost host = new SidecarHost(dir, driverFactory, false);
+        if (!host.acquireLock()) {
+            LOGGER.info("目录 {} 已有计算边车宿主在运行，不再启动进程内宿主", dir);
+            return null;
+        }
+        Thread thread = new Thread(host::serve, "GPUAccel-Sidecar-Host");
+        thread.setDaemon(true);
+        thread.start();
+        host.startHeartbeat();
+        return host;
+    }
+
+    /** 停止进程内宿主，释放全部通道与驱动 */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 拉起独立的宿主进程，输出追加到目录中的 host.log。
+     *
+     * @param classpath 为 null 时按 {@link #defaultClasspath()} 推断
+     */
+    static Process launch(Path dir, String classpath, Path programCacheDir) throws IOException {
+        String cp = classpath != null && !classpath.isBlank() ? classpath : defaultClasspath();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(cp);
+        command.add(SidecarHost.class.getName());
+        command.add(dir.toString());
+        if (programCacheDir != null) {
+            command.add("--cache");
+            command.add(programCacheDir.toString());
+        }
+        LOGGER.info("正在启动计算边车进程 (类路径 {})", cp);
+        return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(dir.resolve("host.log").toFile()))
+            .start();
+    }
+
+    /**
+     * 由宿主依赖的类所在的 jar 拼出类路径：本模组、JOCL 与 log4j。
+     * Forge 的模组类来自 union 文件系统，取其底层 jar 路径。
+     */
+    public static String defaultClasspath() {
+        Set<String> entries = new LinkedHashSet<>();
+        addCodeSource(entries, SidecarHost.class);
+        addCodeSource(entries, CLException.class);
+        addCodeSource(entries, LogManager.class);
+        try {
+            addCodeSource(entries, Class.forName("org.apache.logging.log4j.core.LoggerContext"));
+        } catch (ClassNotFoundException e) {
+            // 只有 log4j-api 时宿主使用其内置的简单日志
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void addCodeSource(Set<String> entries, Class<?> cls) {
+        try {
+            CodeSource source = cls.getProtectionDomain().getCodeSource();
+            if (source == null || source.getLocation() == null) return;
+            URL url = source.getLocation();
+            if ("union".equals(url.getProtocol())) {
+                // union:/path/to/mod.jar%23123!/
+                String path = url.getPath();
+                int end = path.indexOf("%23");
+                if (end < 0) end = path.indexOf('#');
+                if (end >= 0) path = path.substring(0, end);
+                entries.add(Path.of(URLDecoder.decode(path, StandardCharsets.UTF_8)).toString());
+            } else {
+                entries.add(Path.of(url.toURI()).toString());
+            }
+        } catch (Exception e) {
+            LOGGER.warn("无法确定 {} 的位置，请在配置中指定计算边车类路径", cls.getName(), e);
+        }
+    }
+
+    private boolean acquireLock() throws IOException {
+        lockChannel = FileChannel.open(dir.resolve(HOST_LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            return false;
+        }
+        return true;
+    }
+
+    /** 心跳只在服务循环仍在推进时递增，驱动调用挂起时服务器端能察觉 */
+    private void startHeartbeat() {
+        Thread thread = new Thread(() -> {
+            while (running) {
+                if (System.nanoTime() - lastLoopNanos < STALL_NANOS) {
+                    heartbeat++;
+                    for (Client c : clients) c.channel.setLong(OFF_HEARTBEAT, heartbeat);
+                }
+                try {
+                    Thread.sleep(HEARTBEAT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "GPUAccel-Sidecar-Heartbeat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // ==========================================
+    // 服务循环
+    // ==========================================
+
+    private void serve() {
+        inner = driverFactory.get();
+        LOGGER.info("计算边车宿主已启动: {} ({})", inner.getName(), inner.getDeviceName());
+        long lastScan = 0;
+        long idleSince = System.nanoTime();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                lastLoopNanos = now;
+                if (now - lastScan > SCAN_INTERVAL_NANOS) {
+                    lastScan = now;
+                    scan();
+                }
+
+                boolean busy = false;
+                boolean inFlight = false;
+                for (Client c : clients) {
+                    busy |= serve(c);
+                    inFlight |= !c.outstanding.isEmpty() || !c.outbound.isEmpty();
+                }
+
+                if (!clients.isEmpty()) {
+                    idleSince = now;
+                } else if (exitWhenIdle && now - idleSince > IDLE_EXIT_NANOS) {
+                    LOGGER.info("计算边车宿主空闲，退出");
+                    break;
+                }
+                if (!busy) LockSupport.parkNanos(this, inFlight ? POLL_PARK_NANOS : IDLE_PARK_NANOS);
+            }
+        } catch (Throwable t) {
+            LOGGER.error("计算边车宿主异常退出", t);
+        } finally {
+            running = false;
+            for (Client c : clients) close(c);
+            releaseDriver();
+            try {
+                if (lock != null) lock.release();
+                lockChannel.close();
+            } catch (IOException e) {
+                LOGGER.debug("释放宿主锁失败", e);
+            }
+        }
+    }
+
+    /** 接入新通道，清理已关闭或服务器进程已退出的通道，必要时重建驱动 */
+    private void scan() {
+        for (Client c : clients) {
+            if (c.channel.getState() == STATE_CLOSED || (c.process != null && !c.process.isAlive())) {
+                LOGGER.info("通道 {} 已断开", c.channel.file().getFileName());
+                close(c);
+            }
+        }
+        if (contextFailed) {
+            if (!clients.isEmpty()) return;
+            LOGGER.warn("OpenCL 上下文出错，正在重新创建驱动");
+            releaseDriver();
+            inner = driverFactory.get();
+            contextFailed = false;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + CHANNEL_SUFFIX)) {
+            for (Path file : files) {
+                if (known.contains(file)) continue;
+                SidecarChannel channel = SidecarChannel.open(file);
+                if (channel == null) continue;
+                ProcessHandle owner = ProcessHandle.of(channel.getLong(OFF_CLIENT_PID)).orElse(null);
+                if (owner == null || !owner.isAlive() || channel.getState() == STATE_CLOSED) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                // 之前的宿主接入过的通道，服务器端会判定其失联并重新连接
+                if (channel.getState() != STATE_CONNECTING) continue;
+                attach(channel);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("扫描计算边车目录失败", e);
+        }
+    }
+
+    private void attach(SidecarChannel channel) {
+        Client c = new Client(channel);
+        known.add(channel.file());
+        channel.setLong(OFF_HOST_PID, ProcessHandle.current().pid());
+        channel.setLong(OFF_HEARTBEAT, heartbeat);
+        byte[] name = utf8(inner.getName()), device = utf8(inner.getDeviceName()), version = utf8(inner.getDriverVersion());
+        boolean available = inner.isAvailable();
+        c.outbound.add(ring -> {
+            int p = ring.reserve(R_HELLO, 44 + sizeOf(name) + sizeOf(device) + sizeOf(version));
+            if (p < 0) return false;
+            ByteBuffer b = ring.buffer();
+            b.putLong(p, ProcessHandle.current().pid());
+            b.putLong(p + 8, inner.getMaxComputeUnits());
+            b.putLong(p + 16, inner.getGlobalMemorySize());
+            b.putLong(p + 24, inner.getMaxMemAllocSize());
+            b.putLong(p + 32, inner.getMemBaseAddrAlign());
+            b.putInt(p + 40, available ? 1 : 0);
+            int o = putString(b, p + 44, name);
+            o = putString(b, o, device);
+            putString(b, o, version);
+            ring.publish();
+            return true;
+        });
+        channel.setState(STATE_ATTACHED);
+        clients.add(c);
+        LOGGER.info("已接入通道 {} (服务器 pid {})", channel.file().getFileName(), channel.getLong(OFF_CLIENT_PID));
+    }
+
+    /**
+     * 处理一个通道：发送积压的响应、轮询在途事件、执行一批请求。
+     *
+     * @return 本轮是否有进展
+     */
+    private boolean serve(Client c) {
+        boolean busy = flush(c);
+        busy |= poll(c);
+        SharedRing requests = c.channel.requests();
+        int n = 0;
+        while (n < REQUESTS_PER_TURN && c.outbound.size() < MAX_OUTBOUND) {
+            int op = requests.poll();
+            if (op == Integer.MIN_VALUE) break;
+            int p = requests.payloadOffset();
+            try {
+                execute(c, op, p);
+            } catch (Throwable t) {
+                fail(c, op, p, t);
+            }
+            requests.release();
+            n++;
+            if (op == Q_CLOSE) {
+                close(c);
+                return true;
+            }
+        }
+        busy |= n > 0;
+        busy |= flush(c);
+        return busy;
+    }
+
+    private boolean flush(Client c) {
+        boolean sent = false;
+        while (!c.outbound.isEmpty() && c.outbound.peek().send(c.channel.responses())) {
+            c.outbound.poll();
+            sent = true;
+        }
+        return sent;
+    }
+
+    /** 轮询在途命令，完成后回传读取数据与完成通知并释放暂存区 */
+    private boolean poll(Client c) {
+        if (c.outstanding.isEmpty()) return false;
+        boolean progressed = false;
+        Iterator<Pending> it = c.outstanding.iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            int status = STATUS_OK;
+            try {
+                if (!inner.isComplete(p.event)) continue;
+            } catch (CLException e) {
+                status = statusOf(e);
+                LOGGER.warn("计算边车命令执行失败: {}", e.getMessage());
+            }
+            it.remove();
+            progressed = true;
+            inner.releaseEvent(p.event);
+            if (p.id != 0) c.events.remove(p.id);
+            boolean notify = p.id != 0 && !p.released;
+            // 出错的读取不回传数据，服务器端按完成通知中的错误码丢弃该帧
+            if (p.read && notify && status == STATUS_OK) {
+                c.outbound.add(readReply(p));
+            } else if (p.staging != null) {
+                staging.give(p.staging);
+            }
+            if (notify) c.outbound.add(complete(p.id, status));
+        }
+        return progressed;
+    }
+
+    /** 释放通道的全部句柄并删除通道文件 */
+    private void close(Client c) {
+        if (!clients.remove(c)) return;
+        try {
+            // 暂存区与句柄可能仍被队列中的命令使用
+            inner.finish();
+        } catch (RuntimeException e) {
+            LOGGER.warn("关闭通道时等待命令完成失败", e);
+        }
+        for (Pending p : c.outstanding) inner.releaseEvent(p.event);
+        c.outstanding.clear();
+        c.events.clear();
+        for (cl_kernel k : c.kernels.values()) inner.releaseKernel(k);
+        for (cl_mem m : c.mems.values()) inner.releaseMem(m);
+        c.kernels.clear();
+        c.mems.clear();
+        c.channel.setState(STATE_CLOSED);
+        known.remove(c.channel.file());
+        try {
+            Files.deleteIfExists(c.channel.file());
+        } catch (IOException e) {
+            LOGGER.debug("无法删除通道文件 {}", c.channel.file(), e);
+        }
+    }
+
+    private void releaseDriver() {
+        if (inner == null) return;
+        try {
+            inner.release();
+        } catch (RuntimeException e) {
+            LOGGER.warn("释放 OpenCL 驱动时出错", e);
+        }
+        inner = null;
+    }
+
+    // ==========================================
+    // 请求执行
+    // ==========================================
+
+    private void execute(Client c, int op, int p) {
+        ByteBuffer b = c.shared;
+        switch (op) {
+            case Q_COMPILE -> {
+                long kernelId = b.getLong(p + 8);
+                int o = p + 16;
+                String source = getString(b, o);
+                o += 4 + b.getInt(o);
+                String options = getString(b, o);
+                o += 4 + b.getInt(o);
+                String name = getString(b, o);
+                reply(c, b.getLong(p), () -> {
+                    c.kernels.put(kernelId, inner.compileKernel(source, options, name));
+                    return 0L;
+                });
+            }
+            case Q_RELEASE_KERNEL -> {
+                cl_kernel kernel = c.kernels.remove(b.getLong(p));
+                if (kernel != null) inner.releaseKernel(kernel);
+            }
+            case Q_KERNEL_WORK_GROUP_SIZE -> {
+                cl_kernel kernel = c.kernels.get(b.getLong(p + 8));
+                reply(c, b.getLong(p), () -> inner.getKernelWorkGroupSize(kernel));
+            }
+            case Q_CREATE_BUFFER -> {
+                long memId = b.getLong(p + 8), flags = b.getLong(p + 16), size = b.getLong(p + 24);
+                reply(c, b.getLong(p), () -> {
+                    c.mems.put(memId, inner.createBuffer(flags, size));
+                    return 0L;
+                });
+            }
+            case Q_CREATE_SUB_BUFFER -> {
+                long memId = b.getLong(p + 8);
+                cl_mem parent = c.mems.get(b.getLong(p + 16));
+                long flags = b.getLong(p + 24), origin = b.getLong(p + 32), size = b.getLong(p + 40);
+                reply(c, b.getLong(p), () -> {
+                    c.mems.put(memId, inner.createSubBuffer(parent, flags, origin, size));
+                    return 0L;
+                });
+            }
+            case Q_RELEASE_MEM -> {
+                cl_mem mem = c.mems.remove(b.getLong(p));
+                if (mem != null) inner.releaseMem(mem);
+            }
+            case Q_SET_ARG_MEM -> inner.setArg(c.kernels.get(b.getLong(p)), b.getInt(p + 8), c.mems.get(b.getLong(p + 12)));
+            case Q_SET_ARG_INT -> inner.setArg(c.kernels.get(b.getLong(p)), b.getInt(p + 8), b.getInt(p + 12));
+            case Q_SET_ARG_FLOAT -> inner.setArg(c.kernels.get(b.getLong(p)), b.getInt(p + 8), b.getFloat(p + 12));
+            case Q_SET_ARG_FLOAT3 -> inner.setArg(c.kernels.get(b.getLong(p)), b.getInt(p + 8),
+                b.getFloat(p + 12), b.getFloat(p + 16), b.getFloat(p + 20));
+            case Q_WRITE -> {
+                long eventId = b.getLong(p);
+                cl_mem mem = c.mems.get(b.getLong(p + 8));
+                long offset = b.getLong(p + 16);
+                int bytes = b.getInt(p + 24);
+                int o = p + 28;
+                cl_event[] wait = waitList(c, b, o);
+                o += 4 + 8 * b.getInt(o);
+                ByteBuffer data = staging.take(bytes);
+                data.put(0, b, o, bytes);
+                cl_event event;
+                try {
+                    event = inner.writeAsync(mem, offset, bytes, data, wait);
+                } catch (RuntimeException e) {
+                    staging.give(data);
+                    throw e;
+                }
+                track(c, new Pending(eventId, event, data, false));
+            }
+            case Q_READ -> {
+                long eventId = b.getLong(p);
+                cl_mem mem = c.mems.get(b.getLong(p + 8));
+                long offset = b.getLong(p + 16);
+                int bytes = (int) b.getLong(p + 24);
+                cl_event[] wait = waitList(c, b, p + 32);
+                ByteBuffer data = staging.take(bytes);
+                cl_event event;
+                try {
+                    event = inner.readAsync(mem, offset, bytes, data, wait);
+                } catch (RuntimeException e) {
+                    staging.give(data);
+                    throw e;
+                }
+                track(c, new Pending(eventId, event, data, true));
+            }
+            case Q_FILL -> inner.fill(c.mems.get(b.getLong(p)), b.getFloat(p + 8), b.getLong(p + 12));
+            case Q_COPY -> inner.copy(c.mems.get(b.getLong(p)), c.mems.get(b.getLong(p + 8)),
+                b.getLong(p + 16), b.getLong(p + 24), b.getLong(p + 32));
+            case Q_KERNEL -> {
+                long eventId = b.getLong(p);
+                cl_kernel kernel = c.kernels.get(b.getLong(p + 8));
+                int dim = b.getInt(p + 16);
+                int o = p + 20;
+                long[] global = new long[dim];
+                for (int i = 0; i < dim; i++, o += 8) global[i] = b.getLong(o);
+                boolean hasLocal = b.getInt(o) != 0;
+                o += 4;
+                long[] local = null;
+                if (hasLocal) {
+                    local = new long[dim];
+                    for (int i = 0; i < dim; i++, o += 8) local[i] = b.getLong(o);
+                }
+                cl_event[] wait = waitList(c, b, o);
+                if (eventId == 0 && wait == null) {
+                    inner.enqueueKernel(kernel, dim, global, local);
+                } else {
+                    track(c, new Pending(eventId, inner.enqueueKernelAsync(kernel, dim, global, local, wait), null, false));
+                }
+            }
+            case Q_RELEASE_EVENT -> {
+                Pending pending = c.events.remove(b.getLong(p));
+                if (pending != null) pending.released = true;
+            }
+            case Q_FLUSH -> inner.flush();
+            case Q_FINISH -> reply(c, b.getLong(p), () -> {
+                inner.finish();
+                // 完成通知与读取数据排在结果之前，服务器端收到结果时它们都已到达
+                poll(c);
+                return 0L;
+            });
+            case Q_CLOSE -> { }
+            default -> throw new IllegalStateException("未知的计算边车请求 " + op);
+        }
+    }
+
+    private void track(Client c, Pending pending) {
+        c.outstanding.add(pending);
+        if (pending.id != 0) c.events.put(pending.id, pending);
+    }
+
+    /** @return 仍在途的等待事件；已完成的事件宿主已经释放，无需等待 */
+    private static cl_event[] waitList(Client c, ByteBuffer b, int offset) {
+        int n = b.getInt(offset);
+        if (n == 0) return null;
+        List<cl_event> events = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Pending p = c.events.get(b.getLong(offset + 4 + 8 * i));
+            if (p != null) events.add(p.event);
+        }
+        return events.isEmpty() ? null : events.toArray(new cl_event[0]);
+    }
+
+    @FunctionalInterface
+    private interface CallBody {
+        long run();
+    }
+
+    /** 执行同步调用并回复结果，失败时把状态与消息带回服务器端 */
+    private void reply(Client c, long callId, CallBody body) {
+        long value = 0;
+        int status = STATUS_OK;
+        String error = null;
+        try {
+            value = body.run();
+        } catch (Throwable t) {
+            status = statusOf(t);
+            error = String.valueOf(t.getMessage());
+            LOGGER.warn("计算边车调用失败", t);
+        }
+        long v = value;
+        int s = status;
+        byte[] message = utf8(error);
+        c.outbound.add(ring -> {
+            int p = ring.reserve(R_RESULT, 20 + sizeOf(message));
+            if (p < 0) return false;
+            ByteBuffer b = ring.buffer();
+            b.putLong(p, callId);
+            b.putLong(p + 8, v);
+            b.putInt(p + 16, s);
+            putString(b, p + 20, message);
+            ring.publish();
+            return true;
+        });
+    }
+
+    /** 没有调用 id 的请求失败：报告错误，带事件的请求视为已完成，避免服务器端等待 */
+    private void fail(Client c, int op, int p, Throwable t) {
+        LOGGER.warn("计算边车请求 {} 执行失败", op, t);
+        int status = statusOf(t);
+        byte[] message = utf8(String.valueOf(t.getMessage()));
+        c.outbound.add(ring -> {
+            int o = ring.reserve(R_ERROR, 4 + sizeOf(message));
+            if (o < 0) return false;
+            ring.buffer().putInt(o, status);
+            putString(ring.buffer(), o + 4, message);
+            ring.publish();
+            return true;
+        });
+        if (op == Q_WRITE || op == Q_READ || op == Q_KERNEL) {
+            long eventId = c.shared.getLong(p);
+            if (eventId != 0) c.outbound.add(complete(eventId, STATUS_OK));
+        }
+    }
+
+    private int statusOf(Throwable t) {
+        for (Throwable e = t; e != null; e = e.getCause()) {
+            if (e instanceof CLException cl) {
+                int status = cl.getStatus();
+                if (status == CL_OUT_OF_RESOURCES || status == CL_DEVICE_NOT_AVAILABLE
+                        || status == CL_INVALID_CONTEXT || status == CL_INVALID_COMMAND_QUEUE) {
+                    contextFailed = true;
+                }
+                return status;
+            }
+        }
+        return STATUS_FAILED;
+    }
+
+    private static Outbound complete(long eventId, int status) {
+        return ring -> {
+            int p = ring.reserve(R_COMPLETE, 12);
+            if (p < 0) return false;
+            ring.buffer().putLong(p, eventId);
+            ring.buffer().putInt(p + 8, status);
+            ring.publish();
+            return true;
+        };
+    }
+
+    /** 分片回传读取数据，全部发出后释放暂存区 */
+    private Outbound readReply(Pending pending) {
+        return new Outbound() {
+            private int sent = 0;
+
+            @Override
+            public boolean send(SharedRing ring) {
+                int total = pending.staging.limit();
+                ByteBuffer b = ring.buffer();
+                while (sent < total) {
+                    int chunk = Math.min(CHUNK_BYTES, total - sent);
+                    int p = ring.reserve(R_READ_DATA, 20 + chunk);
+                    if (p < 0) return false;
+                    b.putLong(p, pending.id);
+                    b.putLong(p + 8, sent);
+                    b.putInt(p + 16, chunk);
+                    b.put(p + 20, pending.staging, sent, chunk);
+                    ring.publish();
+                    sent += chunk;
+                }
+                staging.give(pending.staging);
+                return true;
+            }
+        };
+    }
+
+    // ==========================================
+    // 暂存区
+    // ==========================================
+
+    /** 按 2 的幂容量分级复用的直接缓冲区，只在服务线程上使用 */
+    private static final class StagingPool {
+        private static final int MAX_PER_CLASS = 16;
+        private final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+
+        ByteBuffer take(int bytes) {
+            int capacity = Math.max(64, Integer.highestOneBit(Math.max(bytes - 1, 1)) << 1);
+            ArrayDeque<ByteBuffer> pool = free.get(capacity);
+            ByteBuffer buf = pool == null ? null : pool.poll();
+            if (buf == null) buf = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+            buf.clear().limit(bytes);
+            return buf;
+        }
+
+        void give(ByteBuffer buf) {
+            ArrayDeque<ByteBuffer> pool = free.computeIfAbsent(buf.capacity(), k -> new ArrayDeque<>());
+            if (pool.size() < MAX_PER_CLASS) pool.push(buf);
+        }
+    }
+}
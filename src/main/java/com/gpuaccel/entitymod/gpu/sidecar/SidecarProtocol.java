@@ -0,0 +1,164 @@
+package com.gpuaccel.entitymod.gpu.sidecar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 计算边车 (sidecar) 的通道布局与消息格式。
+ * <p>
+ * 每个服务器进程与边车宿主之间有一个通道文件，映射后的布局为：
+ * 头部 ({@link #HEADER_BYTES} 字节，含魔数、版本、连接状态、双方 pid、宿主心跳、两个环的序号) +
+ * 请求环 (服务器 -> 宿主) + 响应环 (宿主 -> 服务器)。两个序号各占一条缓存行，避免双方写入时互相失效。
+ * </p>
+ * <p>
+ * 句柄 (内核、缓冲区、事件) 由服务器端分配 64 位 id，宿主为每个通道维护 id 到真实 OpenCL 对象的映射；
+ * 需要返回结果的请求带调用 id，宿主以 {@link #R_RESULT} 应答。
+ * 所有整数按本机字节序存放，字符串为 [int 字节数, UTF-8 字节]。
+ * </p>
+ */
+public final class SidecarProtocol {
+    private SidecarProtocol() {}
+
+    public static final int MAGIC = 0x47504153; // "GPAS"
+    public static final int VERSION = 2;
+
+    // ==========================================
+    // 头部布局
+    // ==========================================
+
+    public static final int OFF_MAGIC = 0;
+    public static final int OFF_VERSION = 4;
+    /** 连接状态 (long) */
+    public static final int OFF_STATE = 8;
+    public static final int OFF_CLIENT_PID = 16;
+    public static final int OFF_HOST_PID = 24;
+    /** 宿主心跳计数，宿主存活期间周期性递增 */
+    public static final int OFF_HEARTBEAT = 32;
+    public static final int OFF_REQUEST_CAPACITY = 40;
+    public static final int OFF_RESPONSE_CAPACITY = 48;
+    public static final int OFF_REQUEST_HEAD = 128;
+    public static final int OFF_REQUEST_TAIL = 192;
+    public static final int OFF_RESPONSE_HEAD = 256;
+    public static final int OFF_RESPONSE_TAIL = 320;
+    public static final int HEADER_BYTES = 512;
+
+    /** 服务器已创建通道，等待宿主接入 */
+    public static final long STATE_CONNECTING = 0;
+    /** 宿主已接入并发送设备信息 */
+    public static final long STATE_ATTACHED = 1;
+    /** 任一方已关闭通道 */
+    public static final long STATE_CLOSED = 2;
+
+    /** 默认请求环容量 */
+    public static final int REQUEST_CAPACITY = 32 << 20;
+    /** 默认响应环容量 */
+    public static final int RESPONSE_CAPACITY = 16 << 20;
+    /** 大块传输按此大小分片，单条消息不会长时间占住环 */
+    public static final int CHUNK_BYTES = 1 << 20;
+
+    public static final String CHANNEL_SUFFIX = ".ring";
+    /** 宿主进程持有该文件的排他锁，用于判断宿主是否在运行 */
+    public static final String HOST_LOCK = "host.lock";
+
+    // ==========================================
+    // 请求 (服务器 -> 宿主)
+    // ==========================================
+
+    /** [call, kernel, source, options, name] */
+    public static final int Q_COMPILE = 1;
+    /** [kernel] */
+    public static final int Q_RELEASE_KERNEL = 2;
+    /** [call, kernel] */
+    public static final int Q_KERNEL_WORK_GROUP_SIZE = 3;
+    /** [call, mem, flags, size] */
+    public static final int Q_CREATE_BUFFER = 4;
+    /** [call, mem, parent, flags, origin, size] */
+    public static final int Q_CREATE_SUB_BUFFER = 5;
+    /** [mem] */
+    public static final int Q_RELEASE_MEM = 6;
+    /** [kernel, int index, mem] */
+    public static final int Q_SET_ARG_MEM = 7;
+    /** [kernel, int index, int value] */
+    public static final int Q_SET_ARG_INT = 8;
+    /** [kernel, int index, float value] */
+    public static final int Q_SET_ARG_FLOAT = 9;
+    /** [kernel, int index, float x, float y, float z] */
+    public static final int Q_SET_ARG_FLOAT3 = 10;
+    /** [event 或 0, mem, offset, int bytes, waitList, 数据] */
+    public static final int Q_WRITE = 11;
+    /** [event, mem, offset, bytes, waitList]，完成后宿主以 {@link #R_READ_DATA} 分片回传 */
+    public static final int Q_READ = 12;
+    /** [mem, float value, bytes] */
+    public static final int Q_FILL = 13;
+    /** [src, dst, srcOffset, dstOffset, bytes] */
+    public static final int Q_COPY = 14;
+    /** [event 或 0, kernel, int dim, global[dim], int hasLocal, local[dim], waitList] */
+    public static final int Q_KERNEL = 15;
+    /** [event] */
+    public static final int Q_RELEASE_EVENT = 16;
+    /** [] */
+    public static final int Q_FLUSH = 17;
+    /** [call] */
+    public static final int Q_FINISH = 18;
+    /** []，宿主释放该通道的全部句柄 */
+    public static final int Q_CLOSE = 19;
+
+    // ==========================================
+    // 响应 (宿主 -> 服务器)
+    // ==========================================
+
+    /** [long hostPid, computeUnits, globalMem, maxAlloc, baseAlign, int available, driverName, deviceName, driverVersion] */
+    public static final int R_HELLO = 101;
+    /** [call, long value, int status, error] */
+    public static final int R_RESULT = 102;
+    /** [event, int status]，status 为负数时是命令执行出错的 OpenCL 错误码 */
+    public static final int R_COMPLETE = 103;
+    /** [event, long chunkOffset, int bytes, 数据] */
+    public static final int R_READ_DATA = 104;
+    /** [int status, message]，不带调用 id 的命令执行失败 */
+    public static final int R_ERROR = 105;
+
+    /** 调用成功 */
+    public static final int STATUS_OK = 0;
+    /** 非 OpenCL 错误 (其余非零状态为 OpenCL 错误码) */
+    public static final int STATUS_FAILED = Integer.MIN_VALUE;
+
+    // ==========================================
+    // 编码辅助
+    // ==========================================
+
+    public static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** @return 字符串编码后占用的字节数 */
+    public static int sizeOf(byte[] utf8) {
+        return 4 + utf8.length;
+    }
+
+    /** 在 offset 处写入字符串，返回写入后的偏移 */
+    public static int putString(ByteBuffer buf, int offset, byte[] utf8) {
+        buf.putInt(offset, utf8.length);
+        buf.put(offset + 4, utf8);
+        return offset + 4 + utf8.length;
+    }
+
+    public static String getString(ByteBuffer buf, int offset) {
+        byte[] bytes = new byte[buf.getInt(offset)];
+        buf.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @return 等待列表编码后占用的字节数 */
+    public static int sizeOfWaitList(long[] ids) {
+        return 4 + 8 * (ids == null ? 0 : ids.length);
+    }
+
+    public static int putWaitList(ByteBuffer buf, int offset, long[] ids) {
+        int n = ids == null ? 0 : ids.length;
+        buf.putInt(offset, n);
+        offset += 4;
+        for (int i = 0; i < n; i++, offset += 8) buf.putLong(offset, ids[i]);
+        return offset;
+    }
+}
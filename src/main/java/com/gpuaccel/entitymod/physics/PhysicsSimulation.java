@@ -2,17 +2,32 @@ package com.gpuaccel.entitymod.physics;
 
 import com.gpuaccel.entitymod.ai.VoxelManager;
 import com.gpuaccel.entitymod.config.GPUAccelConfig;
+import com.gpuaccel.entitymod.gpu.DeviceMemoryBudget.Subsystem;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner.Stage;
 import com.gpuaccel.entitymod.gpu.GPUManager;
+import com.gpuaccel.entitymod.gpu.GpuWatchdog;
+import com.gpuaccel.entitymod.gpu.HostArena;
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+import com.gpuaccel.entitymod.gpu.TypeBuckets;
+import com.gpuaccel.entitymod.gpu.WorkSplitter;
+import com.gpuaccel.entitymod.gpu.cpu.CpuCollisionKernels;
+import com.gpuaccel.entitymod.gpu.driver.ClDriver;
 import com.gpuaccel.entitymod.util.PerformanceProfiler;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.ExperienceOrb;
+import net.minecraft.world.entity.animal.FlyingAnimal;
+import net.minecraft.world.entity.animal.WaterAnimal;
+import net.minecraft.world.entity.item.ItemEntity;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.phys.Vec3;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jocl.*;
-import org.lwjgl.system.MemoryUtil;
 
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,7 +41,7 @@ import static org.jocl.CL.*;
  *   <li>地形碰撞检测 (基于体素)</li>
  *   <li>流体浮力与阻力</li>
  *   <li>重力与空气阻力</li>
- *   <li>实体间碰撞 (基于简单的排斥力)</li>
+ *   <li>实体间碰撞 (网格粗筛 + 排斥力，CPU 路径同样适用)</li>
  * </ul>
  * 实现了 Host-Device 异步流水线，以提高吞吐量。
  * </p>
@@ -37,6 +52,10 @@ public class PhysicsSimulation {
     private final GPUManager gpuManager;
     private cl_kernel physicsKernel;
     private cl_kernel collisionKernel;
+    // 碰撞粗筛的网格构建内核
+    private cl_kernel assignCellsKernel;
+    private cl_kernel scanCellsKernel;
+    private cl_kernel scatterCellsKernel;
     
     // 性能监控
     private final PerformanceProfiler profiler = new PerformanceProfiler();
@@ -54,10 +73,29 @@ public class PhysicsSimulation {
     private cl_mem posMem;
     private cl_mem velMem;
     private cl_mem radiusMem;
+    // 碰撞粗筛网格：逐实体的桶与桶内序号、按桶排序的实体表 (随容量增长)，各桶计数与 [start, end) (固定大小)
+    private cl_mem cellOfMem, cellRankMem, cellOrderMem;
+    private cl_mem cellCountMem, cellStartMem, cellEndMem;
+
+    // CPU 路径的碰撞粗筛缓冲区 (按需分配)
+    private int cpuCapacity = 0;
+    private FloatBuffer cpuPos, cpuPush, cpuParams;
+    private IntBuffer cpuCellOf, cpuCellRank, cpuCellOrder;
+    private IntBuffer cpuCellCount, cpuCellStart, cpuCellEnd;
+
+    // 回读缓冲区 (非阻塞读取的目标，独立于上传缓冲区)
+    private FloatBuffer readPosBuffer;
+    private FloatBuffer readVelBuffer;
 
     // 异步管线状态
     private boolean hasPendingFrame = false;
     private int lastFrameEntityCount = 0;
+    /** 上一帧回读完成事件 (速度回读，队列有序因此也覆盖位置回读) */
+    private cl_event readbackEvent;
+    /** 上一帧回读的提交时间，供看门狗判断设备是否挂起 */
+    private long readbackSubmitNanos;
+    /** 上一帧开始上传的时间，与回读完成时刻之差即设备侧的整帧耗时 */
+    private long frameSubmitNanos;
 
     // ================== OpenCL 内核 ==================
 
@@ -101,10 +139,15 @@ public class PhysicsSimulation {
             const float groundFric,        // 地面摩擦
             // 体素地图参数
             __global const char* voxels,
-            const int voxOX, const int voxOY, const int voxOZ, const int voxSize
+            const int voxOX, const int voxOY, const int voxOZ, const int voxSizeArg
         ) {
             int gid = get_global_id(0);
             if (gid >= entityCount) return;
+        #ifdef VOXEL_SIZE
+            const int voxSize = VOXEL_SIZE; // 编译期常量
+        #else
+            const int voxSize = voxSizeArg;
+        #endif
 
             int idx = gid * 3;
             int pIdx = gid * 4;
@@ -230,13 +273,36 @@ public class PhysicsSimulation {
         }
     """;
 
-    private static final String COLLISION_KERNEL = """
+    // 实体间碰撞：按格计数排序的网格粗筛 (见 SpatialGrid)，只检查相邻 27 格中的实体对
+    // 格子边长由 Host 按本帧最大半径选定，半径之和不超过格子边长，重叠的实体对必然位于相邻格内
+    private static final String COLLISION_KERNEL = SpatialGrid.CL_COMMON + SpatialGrid.CL_BUILD + """
+        #define COLLISION_MAX_CANDIDATES %d
+
+        __kernel void collision_assign_cells(
+            __global const float* positions,
+            const int entityCount,
+            const float invCellSize,
+            __global int* cellOf,              // 实体所在的哈希桶
+            __global int* cellRank,            // 实体在桶内的序号
+            volatile __global int* cellCount   // 每桶实体数，入队前清零
+        ) {
+            int gid = get_global_id(0);
+            if (gid >= entityCount) return;
+            int h = grid_hash(grid_cell_scaled(vload3(gid, positions), invCellSize));
+            cellOf[gid] = h;
+            cellRank[gid] = atomic_inc(&cellCount[h]);
+        }
+
         __kernel void detectCollisions(
             __global const float* positions,
             __global float* velocities,
             __global const float* params, // [radius, mass, ...]
             const int entityCount,
-            const float restitution
+            const float restitution,
+            const float invCellSize,
+            __global const int* cellStart,
+            __global const int* cellEnd,
+            __global const int* cellOrder  // 按桶排序的实体表
         ) {
             int gid = get_global_id(0);
             if (gid >= entityCount) return;
@@ -248,27 +314,37 @@ public class PhysicsSimulation {
             float m1 = params[gid * 4 + 1]; // 质量
             
             float3 force = (float3)(0);
-
-            // 简单的 O(N^2) 碰撞检测 (对于 < 1000 实体可接受)
-            // 生产环境应使用空间哈希网格优化
-            for (int i = 0; i < entityCount; i++) {
-                if (i == gid) continue;
-                
-                int idx2 = i * 3;
-                float3 pos2 = (float3)(positions[idx2], positions[idx2+1], positions[idx2+2]);
-                float r2 = params[i * 4 + 0];
-                
-                float3 diff = pos1 - pos2;
-                float distSq = dot(diff, diff);
-                float minSep = r1 + r2;
-                
-                // 仅当距离小于半径之和且大于极小值(防止重叠除零)时处理
-                if (distSq < minSep * minSep && distSq > 0.0001f) {
-                    float dist = sqrt(distSq);
-                    float overlap = minSep - dist;
-                    float3 normal = diff / dist;
-                    float pushStrength = 20.0f; // 推力强度
-                    force += normal * overlap * pushStrength;
+            int budget = COLLISION_MAX_CANDIDATES; // 刷怪塔 / 物品堆中限制候选数，开销随实体数线性增长
+
+            int3 cell = grid_cell_scaled(pos1, invCellSize);
+            for (int dz=-1; dz<=1 && budget>0; dz++)
+            for (int dy=-1; dy<=1 && budget>0; dy++)
+            for (int dx=-1; dx<=1 && budget>0; dx++) {
+                int3 nc = cell + (int3)(dx, dy, dz);
+                int h = grid_hash(nc);
+                int end = cellEnd[h];
+                for (int s = cellStart[h]; s < end && budget > 0; s++) {
+                    int i = cellOrder[s];
+                    if (i == gid) continue;
+
+                    int idx2 = i * 3;
+                    float3 pos2 = (float3)(positions[idx2], positions[idx2+1], positions[idx2+2]);
+                    if (any(grid_cell_scaled(pos2, invCellSize) != nc)) continue; // 哈希到同一桶的其他格子
+                    budget--;
+                    float r2 = params[i * 4 + 0];
+
+                    float3 diff = pos1 - pos2;
+                    float distSq = dot(diff, diff);
+                    float minSep = r1 + r2;
+
+                    // 仅当距离小于半径之和且大于极小值(防止重叠除零)时处理
+                    if (distSq < minSep * minSep && distSq > 0.0001f) {
+                        float dist = sqrt(distSq);
+                        float overlap = minSep - dist;
+                        float3 normal = diff / dist;
+                        float pushStrength = 20.0f; // 推力强度
+                        force += normal * overlap * pushStrength;
+                    }
                 }
             }
             
@@ -279,14 +355,18 @@ public class PhysicsSimulation {
             velocities[idx1+1] = vel1.y;
             velocities[idx1+2] = vel1.z;
         }
-    """;
+    """.formatted(CpuCollisionKernels.MAX_CANDIDATES);
 
     public PhysicsSimulation(GPUManager gpuManager) {
         this.gpuManager = gpuManager;
         if (gpuManager.isGPUAvailable()) {
             try {
-                physicsKernel = gpuManager.compileKernel(PHYSICS_KERNEL, "updatePhysics");
+                // 体素地图尺寸固定，以编译期常量代替运行时参数
+                physicsKernel = gpuManager.compileKernel(PHYSICS_KERNEL, "-D VOXEL_SIZE=" + VoxelManager.VOXEL_SIZE, "updatePhysics");
                 collisionKernel = gpuManager.compileKernel(COLLISION_KERNEL, "detectCollisions");
+                assignCellsKernel = gpuManager.compileKernel(COLLISION_KERNEL, "collision_assign_cells");
+                scanCellsKernel = gpuManager.compileKernel(COLLISION_KERNEL, "grid_scan_cells");
+                scatterCellsKernel = gpuManager.compileKernel(COLLISION_KERNEL, "grid_scatter");
                 LOGGER.info("物理内核编译成功");
             } catch (Exception e) {
                 LOGGER.error("物理内核编译失败", e);
@@ -296,7 +376,11 @@ public class PhysicsSimulation {
 
     /**
      * 更新实体物理状态的主入口。
-     * 根据配置和实体数量决定使用 CPU 还是 GPU 计算。
+     * GPU 路径可用时由 {@link DispatchPlanner} 按两侧的实测代价选择 CPU 或 GPU；实体较多且开启协同执行时
+     * 由 {@link WorkSplitter} 把列表拆成两段，GPU 异步计算前缀的同时 CPU 计算后缀。
+     * CPU 路径调用 {@link Entity#move}，只能在服务器线程上执行，协同执行时 CPU 段同步计入服务器 Tick；
+     * 两段按列表位置划分，段间的实体碰撞不做检测，因此协同执行默认关闭。
+     * 关闭自适应调度时按固定的实体数阈值选择。
      *
      * @param entities 实体列表
      * @param deltaTime 时间步长 (通常为 0.05s)
@@ -314,41 +398,95 @@ public class PhysicsSimulation {
         int count = targetEntities.size();
         if (count == 0) return;
 
-        int threshold = GPUAccelConfig.MIN_ENTITIES_FOR_GPU.get();
-        boolean useGPU = GPUAccelConfig.ENABLE_GPU.get() 
+        boolean gpuUsable = GPUAccelConfig.ENABLE_GPU.get()
                       && GPUAccelConfig.ENABLE_PHYSICS_GPU.get() 
                       && gpuManager.isGPUAvailable() 
-                      && physicsKernel != null 
-                      && count >= threshold;
+                      && gpuManager.getWatchdog().allows(GpuWatchdog.Breaker.PHYSICS)
+                      && physicsKernel != null;
+        DispatchPlanner planner = gpuManager.getDispatchPlanner();
+        int gpuCount;
+        if (gpuUsable && GPUAccelConfig.ADAPTIVE_DISPATCH.get()) {
+            if (GPUAccelConfig.CO_EXECUTION.get() && WorkSplitter.canSplit(count)) {
+                gpuCount = planner.getSplitter().split(DispatchPlanner.Workload.PHYSICS, count);
+            } else {
+                boolean useGPU = planner.choose(DispatchPlanner.Workload.PHYSICS, countTypes(targetEntities), true, true) == DispatchPlanner.Target.GPU;
+                gpuCount = useGPU ? count : 0;
+            }
+        } else {
+            gpuCount = gpuUsable && count >= GPUAccelConfig.MIN_ENTITIES_FOR_GPU.get() ? count : 0;
+        }
 
-        if (useGPU) {
-            updateGPU(targetEntities, count, deltaTime);
+        if (gpuCount > 0) {
+            List<Entity> gpuEntities = targetEntities.subList(0, gpuCount);
+            updateGPU(gpuEntities, gpuCount, deltaTime, planner.begin(DispatchPlanner.Workload.PHYSICS, DispatchPlanner.Target.GPU, countTypes(gpuEntities)));
         } else {
-            updateCPU(targetEntities, deltaTime);
+            // 回到 GPU 时不能应用多帧之前的结果；回读事件保留到下一次 GPU 帧或扩容时再释放
+            hasPendingFrame = false;
+        }
+        if (gpuCount < count) {
+            // 协同执行时后缀在设备计算前缀的同时于服务器线程上同步计算，与前缀之间的碰撞丢失 (有损)
+            List<Entity> cpuEntities = targetEntities.subList(gpuCount, count);
+            DispatchPlanner.Sample sample = planner.begin(DispatchPlanner.Workload.PHYSICS, DispatchPlanner.Target.CPU, countTypes(cpuEntities));
+            long start = System.nanoTime();
+            updateCPU(cpuEntities, deltaTime);
+            planner.getSplitter().record(DispatchPlanner.Workload.PHYSICS, DispatchPlanner.Target.CPU, cpuEntities.size(), System.nanoTime() - start);
+            sample.lap(Stage.KERNEL);
+            planner.record(sample);
+        }
+    }
+
+    /** 按 {@link TypeBuckets} 统计实体构成，作为调度器的代价特征 */
+    private static int[] countTypes(List<Entity> entities) {
+        int[] counts = new int[TypeBuckets.COUNT];
+        for (Entity e : entities) {
+            if (e instanceof ItemEntity) counts[TypeBuckets.ITEM]++;
+            else if (e instanceof ExperienceOrb) counts[TypeBuckets.XP]++;
+            else if (e instanceof FlyingAnimal) counts[TypeBuckets.FLYER]++;
+            else if (e instanceof WaterAnimal) counts[TypeBuckets.SWIMMER]++;
+            else counts[TypeBuckets.WALKER]++;
         }
+        return counts;
     }
 
-    private void updateGPU(List<Entity> entities, int count, float dt) {
+    private void updateGPU(List<Entity> entities, int count, float dt, DispatchPlanner.Sample sample) {
         try {
             ensureBuffers(count);
             profiler.markPackStart();
+            sample.restart();
+
+            ClDriver driver = gpuManager.getDriver();
+            GpuWatchdog watchdog = gpuManager.getWatchdog();
+
+            // 上一帧回读迟迟未完成：设备可能已挂起，熔断后本帧起改走 CPU
+            if (hasPendingFrame && !driver.isComplete(readbackEvent)) {
+                sample.markLate();
+                watchdog.checkPending(GpuWatchdog.Breaker.PHYSICS, System.nanoTime() - readbackSubmitNanos);
+                if (!watchdog.allows(GpuWatchdog.Breaker.PHYSICS)) {
+                    // 事件可能永远不会完成，不再等待也不释放，随上下文一起丢弃
+                    readbackEvent = null;
+                    hasPendingFrame = false;
+                    updateCPU(entities, dt);
+                    return;
+                }
+            }
 
-            // === 异步管线 Step 1: 读取上一帧的结果 (Readback) ===
-            // 只有当有挂起的帧且实体数量未发生变化时才读取，否则丢弃上一帧结果以防错位
-            if (hasPendingFrame && count == lastFrameEntityCount) {
-                // 读回数据
-                gpuManager.readBuffer(posMem, (long)count * 3 * 4, Pointer.to(posBuffer));
-                gpuManager.readBuffer(velMem, (long)count * 3 * 4, Pointer.to(velBuffer));
-
+            // === 异步管线 Step 1: 应用上一帧的结果 (Readback) ===
+            // 只有当有挂起的帧、实体数量未发生变化且回读已完成时才应用；
+            // 回读尚未完成时本帧不等待设备，实体保持原版物理结果
+            if (hasPendingFrame && driver.isComplete(readbackEvent)) {
+                gpuManager.getDispatchPlanner().getSplitter().record(DispatchPlanner.Workload.PHYSICS, DispatchPlanner.Target.GPU,
+                    lastFrameEntityCount, driver.getCompletionNanos(readbackEvent) - frameSubmitNanos);
+            }
+            if (hasPendingFrame && count == lastFrameEntityCount && driver.isComplete(readbackEvent)) {
                 // 应用回实体
                 for (int i = 0; i < count; i++) {
                     Entity e = entities.get(i);
-                    float nx = posBuffer.get(i*3);
-                    float ny = posBuffer.get(i*3+1);
-                    float nz = posBuffer.get(i*3+2);
-                    float vx = velBuffer.get(i*3);
-                    float vy = velBuffer.get(i*3+1);
-                    float vz = velBuffer.get(i*3+2);
+                    float nx = readPosBuffer.get(i*3);
+                    float ny = readPosBuffer.get(i*3+1);
+                    float nz = readPosBuffer.get(i*3+2);
+                    float vx = readVelBuffer.get(i*3);
+                    float vy = readVelBuffer.get(i*3+1);
+                    float vz = readVelBuffer.get(i*3+2);
 
                     if (!Float.isNaN(nx) && !Float.isNaN(vx)) {
                         double distSq = e.distanceToSqr(nx, ny, nz);
@@ -366,14 +504,15 @@ public class PhysicsSimulation {
                         }
                     }
                 }
-            } else {
-                // 管道重置：第一帧或实体列表变动，不读取，仅写入
-                hasPendingFrame = false;
             }
+            // 第一帧、实体列表变动或回读未完成：丢弃上一帧结果，仅写入
+            releaseReadback();
+            hasPendingFrame = false;
+            sample.lap(Stage.APPLY);
 
             // === 异步管线 Step 2: 写入当前帧数据 (Upload) ===
-            // 必须重新填充 Buffer，因为上面的 Readback 覆盖了它们
             posBuffer.clear(); velBuffer.clear(); radiusBuffer.clear();
+            float maxRadius = 0f;
 
             for (int i = 0; i < count; i++) {
                 Entity e = entities.get(i);
@@ -383,56 +522,73 @@ public class PhysicsSimulation {
                 posBuffer.put(i*3, (float)pos.x).put(i*3+1, (float)pos.y).put(i*3+2, (float)pos.z);
                 velBuffer.put(i*3, (float)vel.x).put(i*3+1, (float)vel.y).put(i*3+2, (float)vel.z);
                 
-                float width = e.getBbWidth();
-                float mass = 1.0f;
+                float radius = collisionRadius(e);
                 float isFly = 0.0f;
                 if (e instanceof net.minecraft.world.entity.animal.FlyingAnimal) isFly = 1.0f;
-                if (e instanceof net.minecraft.world.entity.item.ItemEntity) { mass = 0.2f; width = 0.25f; }
+                maxRadius = Math.max(maxRadius, radius);
                 
-                radiusBuffer.put(i*4 + 0, width * 0.5f);
-                radiusBuffer.put(i*4 + 1, mass);
+                radiusBuffer.put(i*4 + 0, radius);
+                radiusBuffer.put(i*4 + 1, collisionMass(e));
                 radiusBuffer.put(i*4 + 2, 0.5f);
                 radiusBuffer.put(i*4 + 3, isFly);
             }
             posBuffer.position(0); velBuffer.position(0); radiusBuffer.position(0);
+            sample.lap(Stage.PACK);
 
-            gpuManager.writeBuffer(posMem, (long)count * 3 * 4, Pointer.to(posBuffer));
-            gpuManager.writeBuffer(velMem, (long)count * 3 * 4, Pointer.to(velBuffer));
-            gpuManager.writeBuffer(radiusMem, (long)count * 4 * 4, Pointer.to(radiusBuffer));
+            frameSubmitNanos = System.nanoTime();
+            gpuManager.writeBuffer(posMem, (long)count * 3 * 4, posBuffer);
+            gpuManager.writeBuffer(velMem, (long)count * 3 * 4, velBuffer);
+            gpuManager.writeBuffer(radiusMem, (long)count * 4 * 4, radiusBuffer);
             
             if (VoxelManager.isDirty()) {
                 gpuManager.writeVoxelBuffer(VoxelManager.getVoxelBuffer());
                 VoxelManager.clearDirty();
             }
+            sample.lap(Stage.UPLOAD);
 
             // === 异步管线 Step 3: 发送计算指令 (Compute) ===
             profiler.markComputeStart();
 
-            long[] globalWorkSize = new long[]{count};
-            
-            clSetKernelArg(physicsKernel, 0, Sizeof.cl_mem, Pointer.to(posMem));
-            clSetKernelArg(physicsKernel, 1, Sizeof.cl_mem, Pointer.to(velMem));
-            clSetKernelArg(physicsKernel, 2, Sizeof.cl_mem, Pointer.to(radiusMem));
-            clSetKernelArg(physicsKernel, 3, Sizeof.cl_int, Pointer.to(new int[]{count}));
-            clSetKernelArg(physicsKernel, 4, Sizeof.cl_float, Pointer.to(new float[]{dt}));
-            clSetKernelArg(physicsKernel, 5, Sizeof.cl_float, Pointer.to(new float[]{GPUAccelConfig.GRAVITY.get().floatValue()}));
-            clSetKernelArg(physicsKernel, 6, Sizeof.cl_float, Pointer.to(new float[]{GPUAccelConfig.AIR_RESISTANCE.get().floatValue()}));
-            clSetKernelArg(physicsKernel, 7, Sizeof.cl_float, Pointer.to(new float[]{GPUAccelConfig.GROUND_FRICTION.get().floatValue()}));
-            clSetKernelArg(physicsKernel, 8, Sizeof.cl_mem, Pointer.to(gpuManager.getVoxelMem()));
-            clSetKernelArg(physicsKernel, 9, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getOriginX()}));
-            clSetKernelArg(physicsKernel, 10, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getOriginY()}));
-            clSetKernelArg(physicsKernel, 11, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getOriginZ()}));
-            clSetKernelArg(physicsKernel, 12, Sizeof.cl_int, Pointer.to(new int[]{VoxelManager.getMapSize()}));
-
-            gpuManager.executeKernel(physicsKernel, 1, globalWorkSize, null);
-
-            clSetKernelArg(collisionKernel, 0, Sizeof.cl_mem, Pointer.to(posMem));
-            clSetKernelArg(collisionKernel, 1, Sizeof.cl_mem, Pointer.to(velMem));
-            clSetKernelArg(collisionKernel, 2, Sizeof.cl_mem, Pointer.to(radiusMem));
-            clSetKernelArg(collisionKernel, 3, Sizeof.cl_int, Pointer.to(new int[]{count}));
-            clSetKernelArg(collisionKernel, 4, Sizeof.cl_float, Pointer.to(new float[]{0.5f}));
-
-            gpuManager.executeKernel(collisionKernel, 1, globalWorkSize, null);
+            driver.setArg(physicsKernel, 0, posMem);
+            driver.setArg(physicsKernel, 1, velMem);
+            driver.setArg(physicsKernel, 2, radiusMem);
+            driver.setArg(physicsKernel, 3, count);
+            driver.setArg(physicsKernel, 4, dt);
+            driver.setArg(physicsKernel, 5, GPUAccelConfig.GRAVITY.get().floatValue());
+            driver.setArg(physicsKernel, 6, GPUAccelConfig.AIR_RESISTANCE.get().floatValue());
+            driver.setArg(physicsKernel, 7, GPUAccelConfig.GROUND_FRICTION.get().floatValue());
+            driver.setArg(physicsKernel, 8, gpuManager.getVoxelMem());
+            driver.setArg(physicsKernel, 9, VoxelManager.getOriginX());
+            driver.setArg(physicsKernel, 10, VoxelManager.getOriginY());
+            driver.setArg(physicsKernel, 11, VoxelManager.getOriginZ());
+            driver.setArg(physicsKernel, 12, VoxelManager.getMapSize());
+
+            gpuManager.executeTuned("updatePhysics", physicsKernel, count);
+
+            float invCellSize = 1.0f / CpuCollisionKernels.cellSize(maxRadius);
+            enqueueBroadphase(driver, count, invCellSize);
+
+            driver.setArg(collisionKernel, 0, posMem);
+            driver.setArg(collisionKernel, 1, velMem);
+            driver.setArg(collisionKernel, 2, radiusMem);
+            driver.setArg(collisionKernel, 3, count);
+            driver.setArg(collisionKernel, 4, 0.5f);
+            driver.setArg(collisionKernel, 5, invCellSize);
+            driver.setArg(collisionKernel, 6, cellStartMem);
+            driver.setArg(collisionKernel, 7, cellEndMem);
+            driver.setArg(collisionKernel, 8, cellOrderMem);
+
+            gpuManager.getWorkGroupTuner().enqueue("detectCollisions", collisionKernel, count);
+            sample.lap(Stage.KERNEL);
+
+            // === 异步管线 Step 4: 非阻塞回读，下一帧轮询完成事件 ===
+            cl_event posRead = driver.readAsync(posMem, 0, (long)count * 3 * 4, readPosBuffer, null);
+            driver.releaseEvent(posRead);
+            readbackEvent = driver.readAsync(velMem, 0, (long)count * 3 * 4, readVelBuffer, null);
+            readbackSubmitNanos = System.nanoTime();
+            driver.flush();
+            sample.lap(Stage.READBACK);
+            gpuManager.getDispatchPlanner().record(sample);
 
             // 标记下一帧可以读取
             hasPendingFrame = true;
@@ -444,43 +600,122 @@ public class PhysicsSimulation {
         } catch (Exception e) {
             LOGGER.error("GPU 物理模拟出错", e);
             hasPendingFrame = false; // 出错重置
+            if (gpuManager.getWatchdog().onError(GpuWatchdog.Breaker.PHYSICS, e)) {
+                // 设备故障时事件状态未知，随上下文一起丢弃
+                readbackEvent = null;
+            }
+            releaseReadback();
             updateCPU(entities, dt);
         }
     }
 
+    /**
+     * 由积分后的位置重建碰撞网格：清零桶计数 -> collision_assign_cells -> grid_scan_cells -> grid_scatter。
+     * 队列按序执行，detectCollisions 排在其后即可读到完整的网格。
+     */
+    private void enqueueBroadphase(ClDriver driver, int count, float invCellSize) {
+        driver.fill(cellCountMem, 0f, (long) SpatialGrid.CELLS * 4);
+
+        driver.setArg(assignCellsKernel, 0, posMem);
+        driver.setArg(assignCellsKernel, 1, count);
+        driver.setArg(assignCellsKernel, 2, invCellSize);
+        driver.setArg(assignCellsKernel, 3, cellOfMem);
+        driver.setArg(assignCellsKernel, 4, cellRankMem);
+        driver.setArg(assignCellsKernel, 5, cellCountMem);
+        gpuManager.getWorkGroupTuner().enqueue("collision_assign_cells", assignCellsKernel, count);
+
+        driver.setArg(scanCellsKernel, 0, cellCountMem);
+        driver.setArg(scanCellsKernel, 1, cellStartMem);
+        driver.setArg(scanCellsKernel, 2, cellEndMem);
+        long[] group = {SpatialGrid.SCAN_GROUP};
+        driver.enqueueKernel(scanCellsKernel, 1, group, group);
+
+        driver.setArg(scatterCellsKernel, 0, cellOfMem);
+        driver.setArg(scatterCellsKernel, 1, cellRankMem);
+        driver.setArg(scatterCellsKernel, 2, count);
+        driver.setArg(scatterCellsKernel, 3, cellStartMem);
+        driver.setArg(scatterCellsKernel, 4, cellOrderMem);
+        gpuManager.getWorkGroupTuner().enqueue("grid_scatter", scatterCellsKernel, count);
+    }
+
+    /** 碰撞半径，GPU 打包与 CPU 碰撞共用 */
+    private static float collisionRadius(Entity e) {
+        return e instanceof ItemEntity ? 0.125f : e.getBbWidth() * 0.5f;
+    }
+
+    /** 碰撞质量，GPU 打包与 CPU 碰撞共用 */
+    private static float collisionMass(Entity e) {
+        return e instanceof ItemEntity ? 0.2f : 1.0f;
+    }
+
     private void ensureBuffers(int count) {
         if (count > bufferCapacity) {
-            freeBuffers();
+            // 回读可能仍在写入旧的 Host 缓冲区
+            if (readbackEvent != null) gpuManager.getDriver().waitFor(readbackEvent);
+            releaseReadback();
+            freeHostBuffers();
             int newCap = (int)(count * 1.5) + 64;
             bufferCapacity = newCap;
             LOGGER.info("调整物理缓冲区大小至 {}", newCap);
 
-            posBuffer = MemoryUtil.memAllocFloat(newCap * 3);
-            velBuffer = MemoryUtil.memAllocFloat(newCap * 3);
-            radiusBuffer = MemoryUtil.memAllocFloat(newCap * 4);
+            posBuffer = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 3);
+            velBuffer = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 3);
+            radiusBuffer = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 4);
+            readPosBuffer = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 3);
+            readVelBuffer = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 3);
             
-            posMem = gpuManager.createBuffer(CL_MEM_READ_WRITE, (long)newCap * 3 * 4, null);
-            velMem = gpuManager.createBuffer(CL_MEM_READ_WRITE, (long)newCap * 3 * 4, null);
-            radiusMem = gpuManager.createBuffer(CL_MEM_READ_ONLY, (long)newCap * 4 * 4, null);
+            // 每帧都会整体上传，设备缓冲区在池内扩容时无需保留内容
+            posMem = gpuManager.growBuffer(posMem, Subsystem.PHYSICS, CL_MEM_READ_WRITE, (long)newCap * 3 * 4, 0);
+            velMem = gpuManager.growBuffer(velMem, Subsystem.PHYSICS, CL_MEM_READ_WRITE, (long)newCap * 3 * 4, 0);
+            radiusMem = gpuManager.growBuffer(radiusMem, Subsystem.PHYSICS, CL_MEM_READ_ONLY, (long)newCap * 4 * 4, 0);
+            cellOfMem = gpuManager.growBuffer(cellOfMem, Subsystem.PHYSICS, CL_MEM_READ_WRITE, (long)newCap * 4, 0);
+            cellRankMem = gpuManager.growBuffer(cellRankMem, Subsystem.PHYSICS, CL_MEM_READ_WRITE, (long)newCap * 4, 0);
+            cellOrderMem = gpuManager.growBuffer(cellOrderMem, Subsystem.PHYSICS, CL_MEM_READ_WRITE, (long)newCap * 4, 0);
+            if (cellCountMem == null) {
+                long gridBytes = (long) SpatialGrid.CELLS * 4;
+                cellCountMem = gpuManager.growBuffer(null, Subsystem.PHYSICS, CL_MEM_READ_WRITE, gridBytes, 0);
+                cellStartMem = gpuManager.growBuffer(null, Subsystem.PHYSICS, CL_MEM_READ_WRITE, gridBytes, 0);
+                cellEndMem = gpuManager.growBuffer(null, Subsystem.PHYSICS, CL_MEM_READ_WRITE, gridBytes, 0);
+            }
 
-            // 扩容后必须重置管线，因为旧 Buffer 已经释放，里面的数据没了
+            // 扩容后必须重置管线，因为回读用的 Host 缓冲区已经重新分配
             hasPendingFrame = false;
         }
     }
 
     private void freeBuffers() {
-        if (posBuffer != null) MemoryUtil.memFree(posBuffer);
-        if (velBuffer != null) MemoryUtil.memFree(velBuffer);
-        if (radiusBuffer != null) MemoryUtil.memFree(radiusBuffer);
-        
+        freeHostBuffers();
         gpuManager.releaseMemObject(posMem);
         gpuManager.releaseMemObject(velMem);
         gpuManager.releaseMemObject(radiusMem);
+        posMem = velMem = radiusMem = null;
+        for (cl_mem mem : new cl_mem[]{cellOfMem, cellRankMem, cellOrderMem, cellCountMem, cellStartMem, cellEndMem}) {
+            gpuManager.releaseMemObject(mem);
+        }
+        cellOfMem = cellRankMem = cellOrderMem = cellCountMem = cellStartMem = cellEndMem = null;
+        freeCpuBuffers();
+    }
+
+    private void freeHostBuffers() {
+        if (posBuffer != null) HostArena.free(posBuffer);
+        if (velBuffer != null) HostArena.free(velBuffer);
+        if (radiusBuffer != null) HostArena.free(radiusBuffer);
+        if (readPosBuffer != null) HostArena.free(readPosBuffer);
+        if (readVelBuffer != null) HostArena.free(readVelBuffer);
+        posBuffer = velBuffer = radiusBuffer = readPosBuffer = readVelBuffer = null;
+    }
+
+    private void releaseReadback() {
+        if (readbackEvent != null) {
+            gpuManager.getDriver().releaseEvent(readbackEvent);
+            readbackEvent = null;
+        }
     }
 
     private void updateCPU(List<Entity> entities, float dt) {
         float gravity = GPUAccelConfig.GRAVITY.get().floatValue();
         float friction = GPUAccelConfig.GROUND_FRICTION.get().floatValue();
+        applyCollisionsCPU(entities);
         
         for (Entity e : entities) {
             Vec3 vel = e.getDeltaMovement();
@@ -500,9 +735,70 @@ public class PhysicsSimulation {
         }
     }
     
+    /**
+     * CPU 路径的实体间碰撞：与 GPU 相同的网格粗筛与排斥力 (见 {@link CpuCollisionKernels})，
+     * 以移动前的位置计算，排斥速度叠加到实体的速度上。
+     */
+    private void applyCollisionsCPU(List<Entity> entities) {
+        int count = entities.size();
+        if (count < 2) return;
+        ensureCpuBuffers(count);
+
+        float maxRadius = 0f;
+        for (int i = 0; i < count; i++) {
+            Entity e = entities.get(i);
+            float radius = collisionRadius(e);
+            maxRadius = Math.max(maxRadius, radius);
+            cpuPos.put(i*3, (float)e.getX()).put(i*3+1, (float)e.getY()).put(i*3+2, (float)e.getZ());
+            cpuPush.put(i*3, 0f).put(i*3+1, 0f).put(i*3+2, 0f);
+            cpuParams.put(i*4, radius).put(i*4+1, collisionMass(e));
+        }
+        float invCellSize = 1.0f / CpuCollisionKernels.cellSize(maxRadius);
+        CpuCollisionKernels.build(cpuPos, count, invCellSize, cpuCellOf, cpuCellRank, cpuCellCount, cpuCellStart, cpuCellEnd, cpuCellOrder);
+        CpuCollisionKernels.detectCollisions(cpuPos, cpuPush, cpuParams, count, invCellSize, cpuCellStart, cpuCellEnd, cpuCellOrder, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            float px = cpuPush.get(i*3), py = cpuPush.get(i*3+1), pz = cpuPush.get(i*3+2);
+            if (px != 0f || py != 0f || pz != 0f) {
+                Entity e = entities.get(i);
+                e.setDeltaMovement(e.getDeltaMovement().add(px, py, pz));
+            }
+        }
+    }
+
+    private void ensureCpuBuffers(int count) {
+        if (count <= cpuCapacity) return;
+        freeCpuBuffers();
+        int newCap = (int)(count * 1.5) + 64;
+        cpuCapacity = newCap;
+        cpuPos = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 3);
+        cpuPush = HostArena.allocFloat(Subsystem.PHYSICS, newCap * 3);
+        cpuParams = HostArena.callocFloat(Subsystem.PHYSICS, newCap * 4);
+        cpuCellOf = HostArena.allocInt(Subsystem.PHYSICS, newCap);
+        cpuCellRank = HostArena.allocInt(Subsystem.PHYSICS, newCap);
+        cpuCellOrder = HostArena.allocInt(Subsystem.PHYSICS, newCap);
+        cpuCellCount = HostArena.allocInt(Subsystem.PHYSICS, SpatialGrid.CELLS);
+        cpuCellStart = HostArena.allocInt(Subsystem.PHYSICS, SpatialGrid.CELLS);
+        cpuCellEnd = HostArena.allocInt(Subsystem.PHYSICS, SpatialGrid.CELLS);
+    }
+
+    private void freeCpuBuffers() {
+        for (Buffer b : new Buffer[]{cpuPos, cpuPush, cpuParams, cpuCellOf, cpuCellRank, cpuCellOrder, cpuCellCount, cpuCellStart, cpuCellEnd}) {
+            if (b != null) HostArena.free(b);
+        }
+        cpuPos = cpuPush = cpuParams = null;
+        cpuCellOf = cpuCellRank = cpuCellOrder = cpuCellCount = cpuCellStart = cpuCellEnd = null;
+        cpuCapacity = 0;
+    }
+
     public void cleanup() {
-        if (physicsKernel != null) clReleaseKernel(physicsKernel);
-        if (collisionKernel != null) clReleaseKernel(collisionKernel);
+        gpuManager.releaseKernel(physicsKernel);
+        gpuManager.releaseKernel(collisionKernel);
+        gpuManager.releaseKernel(assignCellsKernel);
+        gpuManager.releaseKernel(scanCellsKernel);
+        gpuManager.releaseKernel(scatterCellsKernel);
+        if (readbackEvent != null) gpuManager.getDriver().waitFor(readbackEvent);
+        releaseReadback();
         freeBuffers();
     }
 }
@@ -78,9 +78,9 @@ public class PerformanceProfiler {
             LOGGER.info("GPU 性能统计 (实体数: {}): 打包=%.3fms, 计算=%.3fms, 解包=%.3fms, 总计=%.3fms",
                 entityCount, avgPack, avgCompute, avgUnpack, total);
             
-            // 诊断：如果 Pack + Unpack > Compute，说明 GPU 加速无益 (数据传输瓶颈)
+            // 诊断：如果 Pack + Unpack > Compute，说明传输是瓶颈；CPU / GPU 的取舍由 DispatchPlanner 按实测代价自动完成
             if (avgPack + avgUnpack > avgCompute) {
-                LOGGER.warn("GPU 加速效率低于预期 (传输耗时 > 计算耗时)，建议降低 MIN_ENTITIES_FOR_GPU 阈值或使用纯 CPU 计算。");
+                LOGGER.debug("GPU 传输耗时 > 计算耗时 (实体数: {})", entityCount);
             }
             
             reset();
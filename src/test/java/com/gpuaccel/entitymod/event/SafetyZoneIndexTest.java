@@ -0,0 +1,99 @@
+package com.gpuaccel.entitymod.event;
+
+import net.minecraft.core.BlockPos;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 安全区索引：只查半径覆盖到的区块，结果与逐个比较所有受保护实体一致 (含跨区块与负坐标)。
+ */
+class SafetyZoneIndexTest {
+
+    /** 与 BlockPos#distToCenterSqr 的判定一致的逐个比较 */
+    private static boolean bruteForce(Map<Integer, Long> zones, double x, double y, double z, double radius) {
+        for (long p : zones.values()) {
+            double dx = BlockPos.getX(p) + 0.5 - x, dy = BlockPos.getY(p) + 0.5 - y, dz = BlockPos.getZ(p) + 0.5 - z;
+            if (dx * dx + dy * dy + dz * dz < radius * radius) return true;
+        }
+        return false;
+    }
+
+    @Test
+    void queryReachesIntoNeighbouringChunks() {
+        SafetyZoneIndex index = new SafetyZoneIndex();
+        assertTrue(index.isEmpty());
+        index.beginScan();
+        index.update(1, BlockPos.asLong(15, 64, 15));
+        index.update(2, BlockPos.asLong(-1, 10, -17));
+        index.endScan();
+
+        assertTrue(index.contains(17.5, 64.5, 15.5, 3));
+        assertFalse(index.contains(18.5, 64.5, 15.5, 3), "恰好在半径上不算在内");
+        assertTrue(index.contains(0.2, 10.5, -15.8, 2));
+        assertFalse(index.contains(0.2, 30.5, -15.8, 2));
+        assertFalse(index.contains(40, 64, 40, 8));
+    }
+
+    @Test
+    void movesAndRemovalsFollowScans() {
+        SafetyZoneIndex index = new SafetyZoneIndex();
+        index.beginScan();
+        index.update(1, BlockPos.asLong(0, 0, 0));
+        index.update(2, BlockPos.asLong(100, 0, 100));
+        index.endScan();
+
+        index.beginScan();
+        index.update(1, BlockPos.asLong(50, 0, 0)); // 跨区块移动
+        index.endScan();
+        assertFalse(index.contains(0.5, 0.5, 0.5, 4), "旧位置应被移除");
+        assertTrue(index.contains(50.5, 0.5, 0.5, 4));
+        assertFalse(index.contains(100.5, 0.5, 100.5, 4), "本轮未出现的实体应被移除");
+
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertFalse(index.contains(50.5, 0.5, 0.5, 4));
+    }
+
+    @Test
+    void sharedBlockKeepsRemainingZone() {
+        SafetyZoneIndex index = new SafetyZoneIndex();
+        index.beginScan();
+        index.update(1, BlockPos.asLong(8, 8, 8));
+        index.update(2, BlockPos.asLong(8, 8, 8));
+        index.endScan();
+        index.beginScan();
+        index.update(2, BlockPos.asLong(8, 8, 8));
+        index.endScan();
+        assertTrue(index.contains(8.5, 8.5, 8.5, 1), "同一方块上的另一个实体仍受保护");
+    }
+
+    @Test
+    void randomQueriesMatchBruteForce() {
+        Random random = new Random(9);
+        SafetyZoneIndex index = new SafetyZoneIndex();
+        Map<Integer, Long> zones = new HashMap<>();
+        for (int round = 0; round < 20; round++) {
+            index.beginScan();
+            zones.entrySet().removeIf(e -> random.nextInt(4) == 0);
+            for (int id = 0; id < 40; id++) {
+                if (random.nextInt(3) == 0) {
+                    zones.put(id, BlockPos.asLong(random.nextInt(200) - 100, random.nextInt(64), random.nextInt(200) - 100));
+                }
+            }
+            zones.forEach(index::update);
+            index.endScan();
+
+            for (int q = 0; q < 500; q++) {
+                double x = random.nextDouble() * 240 - 120, y = random.nextDouble() * 80 - 8, z = random.nextDouble() * 240 - 120;
+                double radius = 1 + random.nextDouble() * 40;
+                assertEquals(bruteForce(zones, x, y, z, radius), index.contains(x, y, z, radius),
+                    "查询 (" + x + ", " + y + ", " + z + ") 半径 " + radius);
+            }
+        }
+    }
+}
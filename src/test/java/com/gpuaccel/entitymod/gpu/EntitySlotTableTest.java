@@ -0,0 +1,247 @@
+package com.gpuaccel.entitymod.gpu;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 持久槽位表：槽位稳定性、离开判定、空洞复用与压缩，以及重映射操作对逐实体状态的保持。
+ */
+class EntitySlotTableTest {
+
+    @Test
+    void slotsStayStableAcrossFrames() {
+        EntitySlotTable table = new EntitySlotTable();
+        table.beginFrame(1);
+        int a = table.acquire(10), b = table.acquire(11);
+        table.endFrame();
+        assertNotEquals(a, b);
+        assertEquals(2, table.getRemapCount(), "新实体各生成一个清零操作");
+        table.clearRemap();
+
+        table.beginFrame(2);
+        assertEquals(b, table.acquire(11));
+        assertEquals(a, table.acquire(10));
+        table.endFrame();
+        assertEquals(0, table.getRemapCount());
+        assertTrue(table.isActiveThisFrame(a));
+    }
+
+    @Test
+    void entityMissingForOneRoundKeepsItsSlot() {
+        EntitySlotTable table = new EntitySlotTable();
+        table.beginFrame(1);
+        table.acquire(1);
+        int slot = table.acquire(2);
+        table.endFrame();
+
+        table.beginFrame(2);
+        table.acquire(1);
+        table.endFrame();
+        assertEquals(slot, table.slotOf(2), "只缺席一轮的实体不释放");
+        assertFalse(table.isActiveThisFrame(slot));
+
+        table.beginFrame(3);
+        table.acquire(1);
+        table.endFrame();
+        assertEquals(-1, table.slotOf(2));
+        assertEquals(1, table.getLiveCount());
+    }
+
+    @Test
+    void entityBackAfterMissingARoundCountsAsReturning() {
+        EntitySlotTable table = new EntitySlotTable();
+        table.beginFrame(1);
+        table.acquire(1);
+        int slot = table.acquire(2);
+        table.endFrame();
+        table.clearRemap();
+
+        table.beginFrame(2);
+        table.acquire(1);
+        table.endFrame();
+        assertEquals(0, table.getReturningCount());
+
+        table.beginFrame(3);
+        table.acquire(1);
+        assertEquals(slot, table.acquire(2));
+        table.endFrame();
+        assertEquals(1, table.getReturningCount(), "缺席一轮后重新出现");
+        assertEquals(0, table.getRemapCount(), "重新出现的实体沿用原有状态");
+
+        table.beginFrame(4);
+        table.acquire(1);
+        table.acquire(2);
+        table.endFrame();
+        assertEquals(0, table.getReturningCount());
+    }
+
+    /**
+     * 两个维度共用一张表、更新间隔为 2：每轮先后调度两个维度，
+     * 轮次是连续的，但服务器 Tick 每轮前进 2。另一维度的实体不能被释放或清零。
+     */
+    @Test
+    void interleavedDimensionsKeepTheirSlots() {
+        EntitySlotTable table = new EntitySlotTable();
+        int interval = 2;
+        int[] slotA = new int[20], slotB = new int[20];
+        for (int round = 1, tick = interval; round <= 50; round++, tick += interval) {
+            table.beginFrame(round);
+            for (int i = 0; i < 20; i++) slotA[i] = table.acquire(i);
+            table.endFrame();
+            if (round > 1) assertEquals(0, table.getRemapCount(), "第 " + round + " 轮 (Tick " + tick + ") 维度 A 的帧");
+            for (int i = 0; round > 1 && i < 20; i++) {
+                assertEquals(slotB[i], table.slotOf(100 + i), "维度 B 的实体在维度 A 的帧中保留槽位");
+                assertFalse(table.isActiveThisFrame(slotB[i]));
+            }
+            table.clearRemap();
+
+            table.beginFrame(round);
+            for (int i = 0; i < 20; i++) {
+                int slot = table.acquire(100 + i);
+                if (round > 1) assertEquals(slotB[i], slot);
+                slotB[i] = slot;
+            }
+            table.endFrame();
+            if (round > 1) assertEquals(0, table.getRemapCount(), "第 " + round + " 轮 (Tick " + tick + ") 维度 B 的帧");
+            assertEquals(0, table.getReturningCount(), "每轮都出现的实体不算重新出现");
+            for (int i = 0; i < 20; i++) {
+                assertEquals(slotA[i], table.slotOf(i));
+                assertFalse(table.isActiveThisFrame(slotA[i]));
+            }
+            table.clearRemap();
+        }
+        assertEquals(40, table.getLiveCount());
+        assertEquals(40, table.getHighWater());
+        assertEquals(0, table.getCompactions());
+    }
+
+    @Test
+    void freedSlotsAreReusedLowestFirst() {
+        EntitySlotTable table = new EntitySlotTable();
+        table.beginFrame(1);
+        for (int id = 0; id < 8; id++) table.acquire(id);
+        table.endFrame();
+        table.clearRemap();
+
+        // 释放 2 和 5 号实体，7 号保留以免高位槽位被直接收回
+        for (int t = 2; t <= 3; t++) {
+            table.beginFrame(t);
+            for (int id = 0; id < 8; id++) if (id != 2 && id != 5) table.acquire(id);
+            table.endFrame();
+        }
+        assertEquals(8, table.getHighWater());
+        table.clearRemap();
+
+        table.beginFrame(4);
+        int first = table.acquire(100), second = table.acquire(101);
+        table.endFrame();
+        assertEquals(2, first);
+        assertEquals(5, second);
+        assertEquals(8, table.getHighWater());
+    }
+
+    @Test
+    void compactionPacksLiveSlotsAndEmitsMoves() {
+        EntitySlotTable table = new EntitySlotTable();
+        table.beginFrame(1);
+        for (int id = 0; id < 200; id++) table.acquire(id);
+        table.endFrame();
+        table.clearRemap();
+
+        for (int t = 2; t <= 3; t++) {
+            table.beginFrame(t);
+            for (int id = 0; id < 10; id++) table.acquire(id);
+            table.acquire(199);
+            table.endFrame();
+        }
+        assertEquals(1, table.getCompactions());
+        assertEquals(11, table.getHighWater());
+        assertEquals(10, table.slotOf(199), "最高位的存活实体被搬到第一个空洞");
+        assertEquals(1, table.getRemapCount());
+        assertEquals(199, table.getRemapOps()[0]);
+        assertEquals(10, table.getRemapOps()[1]);
+    }
+
+    @Test
+    void resetAllLiveReplacesPendingOps() {
+        EntitySlotTable table = new EntitySlotTable();
+        table.beginFrame(1);
+        for (int id = 0; id < 5; id++) table.acquire(id);
+        table.endFrame();
+        table.clearRemap();
+        table.beginFrame(2);
+        table.acquire(0);
+        table.acquire(1);
+        table.acquire(7);
+        table.endFrame();
+
+        table.resetAllLive();
+        assertEquals(6, table.getRemapCount());
+        for (int i = 0; i < table.getRemapCount(); i++) {
+            assertEquals(EntitySlotTable.RESET, table.getRemapOps()[i * 2]);
+        }
+
+        table.clear();
+        assertEquals(0, table.getHighWater());
+        assertEquals(0, table.getLiveCount());
+        assertEquals(-1, table.slotOf(0));
+    }
+
+    /**
+     * 随机进出的实体：按后端的方式在每帧之后并行应用重映射操作，
+     * 已有实体的逐实体状态必须跟着槽位移动，新实体的状态必须被清零。
+     */
+    @Test
+    void remapOpsPreservePerEntityStateUnderChurn() {
+        EntitySlotTable table = new EntitySlotTable();
+        Random random = new Random(7);
+        int[] state = new int[4096];
+        int population = 600;
+
+        for (int tick = 1; tick <= 300; tick++) {
+            table.beginFrame(tick);
+            // 人口在高低之间摆动，使压缩反复触发
+            double presence = (tick / 40) % 2 == 0 ? 0.9 : 0.15;
+            Set<Integer> present = new HashSet<>();
+            Set<Integer> returning = new HashSet<>();
+            for (int id = 1; id <= population; id++) {
+                if (random.nextDouble() >= presence) continue;
+                if (table.slotOf(id) >= 0) returning.add(id);
+                table.acquire(id);
+                present.add(id);
+            }
+            table.endFrame();
+
+            int n = table.getRemapCount();
+            int[] ops = table.getRemapOps();
+            Set<Integer> sources = new HashSet<>(), targets = new HashSet<>();
+            int[] moved = new int[n];
+            for (int i = 0; i < n; i++) {
+                int src = ops[i * 2];
+                assertTrue(targets.add(ops[i * 2 + 1]), "目标槽位重复");
+                if (src != EntitySlotTable.RESET) sources.add(src);
+                moved[i] = src == EntitySlotTable.RESET ? 0 : state[src];
+            }
+            for (int src : sources) assertFalse(targets.contains(src), "同一帧的操作之间不能相互依赖");
+            for (int i = 0; i < n; i++) state[ops[i * 2 + 1]] = moved[i];
+            table.clearRemap();
+
+            assertTrue(table.getHighWater() >= table.getLiveCount());
+            Set<Integer> slots = new HashSet<>();
+            for (int id : present) {
+                int slot = table.slotOf(id);
+                assertTrue(slot >= 0 && slot < table.getHighWater());
+                assertTrue(slots.add(slot), "槽位被重复分配");
+                assertTrue(table.isActiveThisFrame(slot));
+                assertEquals(returning.contains(id) ? id : 0, state[slot], "实体 " + id + " 的状态");
+                state[slot] = id;
+            }
+        }
+        assertTrue(table.getCompactions() > 0);
+    }
+}
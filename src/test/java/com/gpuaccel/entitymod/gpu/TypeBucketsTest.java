@@ -0,0 +1,89 @@
+package com.gpuaccel.entitymod.gpu;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按移动类型的计数排序：各段连续、段内槽位升序，空洞与未知类型不进入任何一段。
+ */
+class TypeBucketsTest {
+
+    private static EntityRowStream rows(int[] types) {
+        EntityRowStream rows = new EntityRowStream();
+        rows.ensureCapacity(types.length);
+        rows.begin(IntBuffer.allocate(types.length * EntityRowStream.MOTION_WORDS),
+            IntBuffer.allocate(types.length * EntityRowStream.DESC_WORDS));
+        for (int s = 0; s < types.length; s++) {
+            if (types[s] != Integer.MIN_VALUE) rows.putDescriptor(s, types[s], null);
+        }
+        return rows;
+    }
+
+    @Test
+    void bucketOfMapsMovementTypes() {
+        assertEquals(-1, TypeBuckets.bucketOf(-1));
+        assertEquals(-1, TypeBuckets.bucketOf(Integer.MIN_VALUE));
+        assertEquals(TypeBuckets.WALKER, TypeBuckets.bucketOf(4));
+        assertEquals(TypeBuckets.SWIMMER, TypeBuckets.bucketOf(5));
+        assertEquals(TypeBuckets.ITEM, TypeBuckets.bucketOf(1));
+        assertEquals(TypeBuckets.XP, TypeBuckets.bucketOf(2));
+        assertEquals(TypeBuckets.FLYER, TypeBuckets.bucketOf(0));
+        assertEquals(TypeBuckets.FLYER, TypeBuckets.bucketOf(3));
+    }
+
+    @Test
+    void sortGroupsSlotsByBucketInAscendingOrder() {
+        // 最后一个槽位从未写入描述行，镜像中类型未知
+        int[] types = {4, 1, -1, 0, 4, 5, 2, 3, 5, -1, 4, Integer.MIN_VALUE};
+        TypeBuckets buckets = new TypeBuckets();
+        assertEquals(-1, buckets.getSlotCount());
+        buckets.sort(rows(types), types.length);
+
+        assertEquals(types.length, buckets.getSlotCount());
+        assertEquals(9, buckets.total());
+        assertEquals(3, buckets.size(TypeBuckets.WALKER));
+        assertEquals(2, buckets.size(TypeBuckets.SWIMMER));
+        assertEquals(2, buckets.size(TypeBuckets.FLYER));
+        assertEquals(1, buckets.size(TypeBuckets.ITEM));
+        assertEquals(1, buckets.size(TypeBuckets.XP));
+
+        IntBuffer order = IntBuffer.allocate(types.length);
+        buckets.writeOrder(order);
+        int[] expected = {0, 4, 10, 5, 8, 3, 7, 1, 6};
+        for (int i = 0; i < expected.length; i++) assertEquals(expected[i], order.get(i));
+
+        buckets.invalidate();
+        assertEquals(-1, buckets.getSlotCount());
+    }
+
+    @Test
+    void resortingSmallerAndLargerRangesStaysConsistent() {
+        Random random = new Random(3);
+        TypeBuckets buckets = new TypeBuckets();
+        for (int round = 0; round < 20; round++) {
+            int n = 1 + random.nextInt(2000);
+            int[] types = new int[n];
+            for (int s = 0; s < n; s++) types[s] = random.nextInt(8) - 1;
+            buckets.sort(rows(types), n);
+
+            IntBuffer order = IntBuffer.allocate(n);
+            buckets.writeOrder(order);
+            int live = 0;
+            for (int type : types) if (type >= 0) live++;
+            assertEquals(live, buckets.total());
+            assertEquals(0, buckets.start(0));
+            assertEquals(live, buckets.start(TypeBuckets.COUNT));
+            for (int b = 0; b < TypeBuckets.COUNT; b++) {
+                for (int i = buckets.start(b); i < buckets.start(b + 1); i++) {
+                    int slot = order.get(i);
+                    assertEquals(b, TypeBuckets.bucketOf(types[slot]));
+                    if (i > buckets.start(b)) assertTrue(order.get(i - 1) < slot);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.gpuaccel.entitymod.gpu;
+
+import com.gpuaccel.entitymod.gpu.DispatchPlanner.Target;
+import com.gpuaccel.entitymod.gpu.DispatchPlanner.Workload;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 协同执行的份额计算：吞吐量比、死区、最小批次与闲置一侧的重新试运行。
+ */
+class WorkSplitterTest {
+    private static final Workload W = Workload.SWARM;
+
+    @Test
+    void startsEvenAndFollowsThroughputRatio() {
+        WorkSplitter splitter = new WorkSplitter();
+        assertEquals(500, splitter.split(W, 1000));
+
+        // GPU 每实体 1 ns，CPU 每实体 3 ns：GPU 应承担 3/4
+        splitter.record(W, Target.GPU, 1000, 1000);
+        splitter.record(W, Target.CPU, 1000, 3000);
+        assertEquals(1500, splitter.split(W, 2000));
+        assertEquals(0.75, splitter.getShare(W), 1e-9);
+        assertEquals(0.001, splitter.getPerEntityMicros(W, Target.GPU), 1e-12);
+        assertEquals(0.5, splitter.getShare(Workload.PHYSICS), "子系统之间互不影响");
+    }
+
+    @Test
+    void smallTargetChangesStayInsideDeadband() {
+        WorkSplitter splitter = new WorkSplitter();
+        splitter.record(W, Target.GPU, 1000, 1000);
+        splitter.record(W, Target.CPU, 1000, 1000);
+        splitter.split(W, 1000);
+        assertEquals(0.5, splitter.getShare(W), 1e-9);
+
+        // 平滑后 CPU 约 1.06 ns，目标份额约 0.515，不足死区
+        splitter.record(W, Target.CPU, 1000, 1300);
+        splitter.split(W, 1000);
+        assertEquals(0.5, splitter.getShare(W), 1e-9);
+
+        for (int i = 0; i < 10; i++) splitter.record(W, Target.CPU, 1000, 1300);
+        splitter.split(W, 1000);
+        assertTrue(splitter.getShare(W) > 0.5 + WorkSplitter.RESPLIT_DEADBAND);
+    }
+
+    @Test
+    void undersizedSamplesAreIgnored() {
+        WorkSplitter splitter = new WorkSplitter();
+        splitter.record(W, Target.GPU, WorkSplitter.MIN_BATCH - 1, 1);
+        splitter.record(W, Target.CPU, 1000, 0);
+        assertTrue(Double.isNaN(splitter.getPerEntityMicros(W, Target.GPU)));
+        assertTrue(Double.isNaN(splitter.getPerEntityMicros(W, Target.CPU)));
+    }
+
+    @Test
+    void tinyShareGoesWholeToOtherSideUntilProbe() {
+        WorkSplitter splitter = new WorkSplitter();
+        splitter.split(W, 1000);
+        splitter.record(W, Target.GPU, 1000, 99_000);
+        splitter.record(W, Target.CPU, 1000, 1_000);
+
+        assertEquals(0, splitter.split(W, 1000), "GPU 份额不足一个最小批次时整帧交给 CPU");
+        for (int i = 1; i < WorkSplitter.PROBE_INTERVAL; i++) assertEquals(0, splitter.split(W, 1000));
+        assertEquals(WorkSplitter.MIN_BATCH, splitter.split(W, 1000), "闲置过久后分给 GPU 一个最小批次");
+
+        splitter.record(W, Target.GPU, WorkSplitter.MIN_BATCH, 99L * WorkSplitter.MIN_BATCH);
+        assertEquals(0, splitter.split(W, 1000));
+    }
+
+    @Test
+    void tinyCpuRemainderGoesWholeToGpu() {
+        WorkSplitter splitter = new WorkSplitter();
+        splitter.split(W, 1000);
+        splitter.record(W, Target.GPU, 1000, 1_000);
+        splitter.record(W, Target.CPU, 1000, 99_000);
+
+        assertEquals(1000, splitter.split(W, 1000));
+        for (int i = 1; i < WorkSplitter.PROBE_INTERVAL; i++) splitter.split(W, 1000);
+        assertEquals(1000 - WorkSplitter.MIN_BATCH, splitter.split(W, 1000));
+        assertFalse(WorkSplitter.canSplit(2 * WorkSplitter.MIN_BATCH - 1));
+        assertTrue(WorkSplitter.canSplit(2 * WorkSplitter.MIN_BATCH));
+    }
+}
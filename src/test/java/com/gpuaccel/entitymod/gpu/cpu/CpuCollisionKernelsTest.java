@@ -0,0 +1,99 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 碰撞粗筛：按最大半径选定的网格与两两比较得到相同的排斥力。
+ */
+class CpuCollisionKernelsTest {
+    private static final int COUNT = 1500;
+    private static final float EXTENT = 24f;
+    private static final float MAX_RADIUS = 0.6f;
+
+    private final FloatBuffer positions = FloatBuffer.allocate(COUNT * 3);
+    private final FloatBuffer params = FloatBuffer.allocate(COUNT * 4);
+
+    private void populate(long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < COUNT; i++) {
+            for (int k = 0; k < 3; k++) positions.put(i * 3 + k, (random.nextFloat() * 2f - 1f) * EXTENT);
+            params.put(i * 4, 0.1f + random.nextFloat() * (MAX_RADIUS - 0.1f));
+            params.put(i * 4 + 1, 0.5f + random.nextFloat() * 4f);
+        }
+    }
+
+    private Float3 pos(int i) {
+        return new Float3(positions.get(i * 3), positions.get(i * 3 + 1), positions.get(i * 3 + 2));
+    }
+
+    /** 以两两比较求每个实体的速度增量 (排斥强度 20、步长 0.016，与内核常量一致) */
+    private FloatBuffer bruteForce() {
+        FloatBuffer out = FloatBuffer.allocate(COUNT * 3);
+        for (int a = 0; a < COUNT; a++) {
+            Float3 force = Float3.ZERO;
+            for (int b = 0; b < COUNT; b++) {
+                if (a == b) continue;
+                Float3 diff = pos(a).sub(pos(b));
+                float distSq = diff.dot(diff);
+                float minSep = params.get(a * 4) + params.get(b * 4);
+                if (distSq < minSep * minSep && distSq > 0.0001f) {
+                    float dist = (float) Math.sqrt(distSq);
+                    force = force.add(diff.div(dist).mul((minSep - dist) * 20.0f));
+                }
+            }
+            Float3 push = force.div(params.get(a * 4 + 1)).mul(0.016f);
+            out.put(a * 3, push.x()).put(a * 3 + 1, push.y()).put(a * 3 + 2, push.z());
+        }
+        return out;
+    }
+
+    private FloatBuffer grid(int chunk) {
+        float invCellSize = 1.0f / CpuCollisionKernels.cellSize(MAX_RADIUS);
+        IntBuffer cellOf = IntBuffer.allocate(COUNT), cellRank = IntBuffer.allocate(COUNT), order = IntBuffer.allocate(COUNT);
+        IntBuffer cellCount = IntBuffer.allocate(SpatialGrid.CELLS);
+        IntBuffer cellStart = IntBuffer.allocate(SpatialGrid.CELLS), cellEnd = IntBuffer.allocate(SpatialGrid.CELLS);
+        CpuCollisionKernels.build(positions, COUNT, invCellSize, cellOf, cellRank, cellCount, cellStart, cellEnd, order);
+
+        FloatBuffer velocities = FloatBuffer.allocate(COUNT * 3);
+        for (int from = 0; from < COUNT; from += chunk) {
+            CpuCollisionKernels.detectCollisions(positions, velocities, params, COUNT, invCellSize,
+                cellStart, cellEnd, order, from, from + chunk);
+        }
+        return velocities;
+    }
+
+    @Test
+    void cellSizeCoversLargestPair() {
+        assertEquals(CpuCollisionKernels.MIN_CELL_SIZE, CpuCollisionKernels.cellSize(0.1f));
+        assertEquals(3.0f, CpuCollisionKernels.cellSize(1.5f));
+    }
+
+    @Test
+    void gridMatchesBruteForce() {
+        populate(5);
+        FloatBuffer expected = bruteForce();
+        FloatBuffer actual = grid(COUNT);
+        int touched = 0;
+        for (int i = 0; i < COUNT * 3; i++) {
+            // 累加顺序不同，只允许舍入误差
+            assertEquals(expected.get(i), actual.get(i), 1e-4f + Math.abs(expected.get(i)) * 1e-4f, "分量 " + i);
+            if (expected.get(i) != 0f) touched++;
+        }
+        assertTrue(touched > 0, "测试数据中应存在相互重叠的实体");
+    }
+
+    @Test
+    void splitDispatchMatchesSinglePass() {
+        populate(6);
+        FloatBuffer whole = grid(COUNT);
+        FloatBuffer split = grid(97);
+        for (int i = 0; i < COUNT * 3; i++) assertEquals(whole.get(i), split.get(i));
+    }
+}
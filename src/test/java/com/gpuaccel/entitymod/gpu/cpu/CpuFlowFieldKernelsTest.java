@@ -0,0 +1,118 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流场 CPU 参考内核：波前传播与逐轮松弛的一致性、代价与方向场的基本性质。
+ */
+class CpuFlowFieldKernelsTest {
+    private static final int SIZE = 16;
+    private static final int VOLUME = SIZE * SIZE * SIZE;
+
+    private static int index(int x, int y, int z) {
+        return x + z * SIZE + y * SIZE * SIZE;
+    }
+
+    private static int cost(ShortBuffer field, int x, int y, int z) {
+        return field.get(index(x, y, z)) & 0xFFFF;
+    }
+
+    /** 在 x = 8 处立一堵墙，只在 (8, *, 3) 留一个缺口 */
+    private static ByteBuffer wallWithGap() {
+        ByteBuffer voxels = ByteBuffer.allocate(VOLUME);
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                if (z != 3) voxels.put(index(8, y, z), CpuKernelCommon.VOXEL_SOLID);
+            }
+        }
+        return voxels;
+    }
+
+    private static IntBuffer target(int x, int y, int z) {
+        return IntBuffer.wrap(new int[]{x, y, z});
+    }
+
+    private static ShortBuffer resetField(IntBuffer targets, int targetCount) {
+        ShortBuffer field = ShortBuffer.allocate(VOLUME);
+        CpuFlowFieldKernels.resetCostField(field, targets, targetCount, SIZE, 0, VOLUME);
+        return field;
+    }
+
+    @Test
+    void openAirCostIsManhattanDistance() {
+        ByteBuffer voxels = ByteBuffer.allocate(VOLUME);
+        IntBuffer targets = target(4, 5, 6);
+        ShortBuffer field = resetField(targets, 1);
+        CpuFlowFieldKernels.propagate(field, voxels, targets, 1, SIZE, 64);
+
+        for (int y = 0; y < SIZE; y++)
+        for (int z = 0; z < SIZE; z++)
+        for (int x = 0; x < SIZE; x++) {
+            int expected = Math.abs(x - 4) + Math.abs(y - 5) + Math.abs(z - 6);
+            assertEquals(expected * CpuFlowFieldKernels.COST_AIR, cost(field, x, y, z));
+        }
+    }
+
+    @Test
+    void propagateMatchesConvergedRelaxation() {
+        ByteBuffer voxels = wallWithGap();
+        voxels.put(index(2, 2, 2), (byte) 2); // 一格水
+        IntBuffer targets = IntBuffer.wrap(new int[]{1, 1, 1, 12, 9, 4});
+
+        ShortBuffer relaxed = resetField(targets, 2);
+        // 原地更新的单轮松弛反复执行直到不再变化
+        for (int round = 0; round < 4 * SIZE; round++) {
+            CpuFlowFieldKernels.spreadCostField(relaxed, voxels, SIZE, 0, 0, VOLUME);
+        }
+        ShortBuffer propagated = resetField(targets, 2);
+        CpuFlowFieldKernels.propagate(propagated, voxels, targets, 2, SIZE, 4 * SIZE);
+
+        for (int i = 0; i < VOLUME; i++) {
+            assertEquals(relaxed.get(i) & 0xFFFF, propagated.get(i) & 0xFFFF, "体素 " + i);
+        }
+    }
+
+    @Test
+    void wallsStayImpassableAndDetourThroughGap() {
+        ByteBuffer voxels = wallWithGap();
+        IntBuffer targets = target(2, 0, 3);
+        ShortBuffer field = resetField(targets, 1);
+        CpuFlowFieldKernels.propagate(field, voxels, targets, 1, SIZE, 64);
+
+        assertEquals(CpuFlowFieldKernels.COST_IMPASSABLE, cost(field, 8, 0, 10));
+        assertEquals(6, cost(field, 8, 0, 3));
+        // 墙后的点只能绕经缺口: 到缺口 6 步，再到 (12, 0, 10) 4 + 7 步
+        assertEquals(17, cost(field, 12, 0, 10));
+    }
+
+    @Test
+    void vectorFieldPointsDownhill() {
+        ByteBuffer voxels = wallWithGap();
+        IntBuffer targets = target(2, 0, 3);
+        ShortBuffer field = resetField(targets, 1);
+        CpuFlowFieldKernels.propagate(field, voxels, targets, 1, SIZE, 64);
+        FloatBuffer vectors = FloatBuffer.allocate(VOLUME * 4);
+        CpuFlowFieldKernels.generateVectorField(field, vectors, SIZE, 0, VOLUME);
+
+        for (int y = 0; y < SIZE; y++)
+        for (int z = 0; z < SIZE; z++)
+        for (int x = 0; x < SIZE; x++) {
+            int i = index(x, y, z) * 4;
+            int dx = (int) vectors.get(i), dy = (int) vectors.get(i + 1), dz = (int) vectors.get(i + 2);
+            int c = cost(field, x, y, z);
+            if (c == 0 || c == CpuFlowFieldKernels.COST_IMPASSABLE) {
+                assertEquals(0, Math.abs(dx) + Math.abs(dy) + Math.abs(dz));
+                continue;
+            }
+            assertEquals(1, Math.abs(dx) + Math.abs(dy) + Math.abs(dz), "应指向一个轴向邻居");
+            assertTrue(cost(field, x + dx, y + dy, z + dz) < c, "方向应指向代价更低的邻居");
+        }
+    }
+}
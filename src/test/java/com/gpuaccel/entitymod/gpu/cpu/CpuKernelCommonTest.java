@@ -0,0 +1,98 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.OccupancyPyramid;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * cast_ray 的 CPU 参考实现：借助占用金字塔跳过空砖块时，结果与逐格读取逐位一致。
+ */
+class CpuKernelCommonTest {
+    private static final int SIZE = 64;
+    private static final int OX = -32, OY = 16, OZ = 96;
+
+    /** 散点方块加上几堆实心块与一个空角落，使各级空砖块与非空砖块交错 */
+    private static byte[] scene(long seed) {
+        Random random = new Random(seed);
+        byte[] voxels = new byte[SIZE * SIZE * SIZE];
+        for (int i = 0; i < 1500; i++) voxels[random.nextInt(voxels.length)] = CpuKernelCommon.VOXEL_SOLID;
+        for (int c = 0; c < 12; c++) {
+            int cx = random.nextInt(SIZE - 8), cy = random.nextInt(SIZE - 8), cz = random.nextInt(SIZE - 8);
+            for (int y = 0; y < 6; y++)
+            for (int z = 0; z < 6; z++)
+            for (int x = 0; x < 6; x++) {
+                voxels[(cx + x) + (cz + z) * SIZE + (cy + y) * SIZE * SIZE] = CpuKernelCommon.VOXEL_SOLID;
+            }
+        }
+        // 非固体的其他体素类型 (如水) 不应被当作障碍
+        for (int i = 0; i < 300; i++) voxels[random.nextInt(voxels.length)] = 2;
+        // 清空一个 32³ 的角落，覆盖整块的第二级空砖块
+        for (int y = 32; y < SIZE; y++)
+        for (int z = 0; z < 32; z++)
+        for (int x = 0; x < 32; x++) {
+            voxels[x + z * SIZE + y * SIZE * SIZE] = 0;
+        }
+        return voxels;
+    }
+
+    private static ByteBuffer withPyramid(byte[] voxels) {
+        ByteBuffer buffer = ByteBuffer.allocate(OccupancyPyramid.bytes(SIZE));
+        buffer.put(0, voxels);
+        CpuOccupancyPyramid.build(buffer, SIZE);
+        return buffer;
+    }
+
+    private static float coord(Random random, int origin) {
+        // 起点大多在地图内，少量在地图外
+        return origin - 8f + random.nextFloat() * (SIZE + 16f);
+    }
+
+    @Test
+    void pyramidMatchesPlainTraversal() {
+        for (long seed = 1; seed <= 4; seed++) {
+            byte[] voxels = scene(seed);
+            ByteBuffer plain = ByteBuffer.wrap(voxels);
+            ByteBuffer pyramid = withPyramid(voxels);
+
+            Random random = new Random(seed * 31);
+            int hits = 0;
+            for (int r = 0; r < 5000; r++) {
+                Float3 start = new Float3(coord(random, OX), coord(random, OY), coord(random, OZ));
+                Float3 dir = new Float3(random.nextFloat() * 2f - 1f, random.nextFloat() * 2f - 1f, random.nextFloat() * 2f - 1f);
+                if (r % 10 == 0) dir = dir.withY(0f); // 轴平行的分量
+                dir = dir.normalize();
+                if (dir.lengthSq() == 0f) continue;
+                float maxDist = 4f + random.nextFloat() * 80f;
+
+                float expected = CpuKernelCommon.castRay(start, dir, maxDist, plain, OX, OY, OZ, SIZE);
+                float actual = CpuKernelCommon.castRay(start, dir, maxDist, pyramid, OX, OY, OZ, SIZE);
+                assertEquals(Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual),
+                    "射线 " + r + " 起点 " + start + " 方向 " + dir);
+                if (expected < maxDist) hits++;
+            }
+            assertTrue(hits > 500, "测试场景应有足够的命中");
+        }
+    }
+
+    @Test
+    void pyramidMarksOnlyBricksWithSolidVoxels() {
+        byte[] voxels = new byte[SIZE * SIZE * SIZE];
+        voxels[5 + 9 * SIZE + 33 * SIZE * SIZE] = CpuKernelCommon.VOXEL_SOLID;
+        voxels[40 + 40 * SIZE + 2 * SIZE * SIZE] = 2;
+        ByteBuffer buffer = withPyramid(voxels);
+
+        int d1 = SIZE >> OccupancyPyramid.L1_SHIFT, d2 = SIZE >> OccupancyPyramid.L2_SHIFT;
+        int l1 = SIZE * SIZE * SIZE, l2 = l1 + OccupancyPyramid.l1Count(SIZE);
+        int occupied1 = 0, occupied2 = 0;
+        for (int b = 0; b < OccupancyPyramid.l1Count(SIZE); b++) occupied1 += buffer.get(l1 + b);
+        for (int b = 0; b < OccupancyPyramid.l2Count(SIZE); b++) occupied2 += buffer.get(l2 + b);
+        assertEquals(1, occupied1);
+        assertEquals(1, occupied2);
+        assertEquals(1, buffer.get(l1 + (5 >> 2) + (9 >> 2) * d1 + (33 >> 2) * d1 * d1));
+        assertEquals(1, buffer.get(l2 + (5 >> 4) + (9 >> 4) * d2 + (33 >> 4) * d2 * d2));
+    }
+}
@@ -0,0 +1,142 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.NeighbourList;
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verlet 邻居表：按位移阈值跨帧沿用的邻居表，与每帧直接遍历 27 格得到的作用半径内邻居完全一致。
+ */
+class CpuNeighbourListTest {
+    private static final int COUNT = 1500;
+    /** 飞行 (0, 3)、水生 (5)、陆行 (4)、掉落物 (1) 与空洞 */
+    private static final int[] TYPES = {0, 3, 5, 5, 4, 1, -1};
+
+    private final FloatBuffer positions = FloatBuffer.allocate(COUNT * 3);
+    private final IntBuffer types = IntBuffer.allocate(COUNT);
+    private final IntBuffer cellOf = IntBuffer.allocate(COUNT);
+    private final IntBuffer cellRank = IntBuffer.allocate(COUNT);
+    private final IntBuffer cellCount = IntBuffer.allocate(SpatialGrid.CELLS);
+    private final IntBuffer cellStart = IntBuffer.allocate(SpatialGrid.CELLS);
+    private final IntBuffer cellEnd = IntBuffer.allocate(SpatialGrid.CELLS);
+    private final IntBuffer order = IntBuffer.allocate(COUNT);
+
+    private final FloatBuffer refPos = FloatBuffer.allocate(COUNT * 3);
+    private final IntBuffer refTag = IntBuffer.allocate(COUNT);
+    private final IntBuffer nbrList = IntBuffer.allocate(COUNT * NeighbourList.MAX_NEIGHBOURS);
+    private final IntBuffer nbrCount = IntBuffer.allocate(COUNT);
+
+    private void populate(Random random, float extent) {
+        for (int i = 0; i < COUNT; i++) {
+            for (int k = 0; k < 3; k++) positions.put(i * 3 + k, (random.nextFloat() * 2f - 1f) * extent);
+            types.put(i, TYPES[random.nextInt(TYPES.length)]);
+        }
+    }
+
+    private Float3 pos(int i) {
+        return new Float3(positions.get(i * 3), positions.get(i * 3 + 1), positions.get(i * 3 + 2));
+    }
+
+    private static float radius(int type) {
+        return type == NeighbourList.TYPE_SWIMMER ? NeighbourList.SWIMMER_RADIUS : NeighbourList.FLYER_RADIUS;
+    }
+
+    /** 与行为逻辑相同的过滤：飞行生物与任意实体互动，水生生物只与水生生物互动 */
+    private boolean interacts(int type, int other) {
+        int oType = types.get(other);
+        return type == NeighbourList.TYPE_SWIMMER ? oType == NeighbourList.TYPE_SWIMMER : oType >= 0;
+    }
+
+    /** 修改前行为逻辑的查询方式：遍历相邻 27 格 (不设候选上限) */
+    private TreeSet<Integer> gridScan(int gid) {
+        int type = types.get(gid);
+        float r = radius(type);
+        Float3 p = pos(gid);
+        TreeSet<Integer> found = new TreeSet<>();
+        int cx = SpatialGrid.cell(p.x()), cy = SpatialGrid.cell(p.y()), cz = SpatialGrid.cell(p.z());
+        for (int dz = -1; dz <= 1; dz++)
+        for (int dy = -1; dy <= 1; dy++)
+        for (int dx = -1; dx <= 1; dx++) {
+            int h = SpatialGrid.hash(cx + dx, cy + dy, cz + dz);
+            for (int s = cellStart.get(h); s < cellEnd.get(h); s++) {
+                int i = order.get(s);
+                if (i == gid || !interacts(type, i) || !CpuSpatialGrid.inCell(pos(i), cx + dx, cy + dy, cz + dz)) continue;
+                Float3 d = pos(i).sub(p);
+                if (d.dot(d) < r * r) found.add(i);
+            }
+        }
+        return found;
+    }
+
+    /** 新的查询方式：遍历邻居表，按本帧的位置与类型筛选 */
+    private TreeSet<Integer> listScan(int gid) {
+        int type = types.get(gid);
+        float r = radius(type);
+        Float3 p = pos(gid);
+        TreeSet<Integer> found = new TreeSet<>();
+        for (int k = 0; k < nbrCount.get(gid); k++) {
+            int i = nbrList.get(gid * NeighbourList.MAX_NEIGHBOURS + k);
+            if (!interacts(type, i)) continue;
+            Float3 d = pos(i).sub(p);
+            if (d.dot(d) < r * r) found.add(i);
+        }
+        return found;
+    }
+
+    @Test
+    void cachedListsMatchGridScanWhileEntitiesMove() {
+        Random random = new Random(23);
+        populate(random, 40f);
+        int frames = 60, rebuilds = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            if (frame > 0) {
+                for (int i = 0; i < COUNT * 3; i++) positions.put(i, positions.get(i) + (random.nextFloat() * 2f - 1f) * 0.15f);
+            }
+            CpuSpatialGrid.build(positions, types, COUNT, cellOf, cellRank, cellCount, cellStart, cellEnd, order);
+            if (CpuNeighbourList.maxDisplacement(positions, types, COUNT, refPos, refTag, 0, COUNT) > NeighbourList.REBUILD_DISP_SQ) {
+                for (int from = 0; from < COUNT; from += 257) {
+                    CpuNeighbourList.build(positions, types, COUNT, cellStart, cellEnd, order, refPos, refTag, nbrList, nbrCount, from, from + 257);
+                }
+                rebuilds++;
+            }
+
+            for (int gid = 0; gid < COUNT; gid++) {
+                if (!NeighbourList.usesList(types.get(gid))) continue;
+                assertTrue(nbrCount.get(gid) < NeighbourList.MAX_NEIGHBOURS, "槽位 " + gid + " 的邻居表溢出");
+                assertEquals(gridScan(gid), listScan(gid), "第 " + frame + " 帧槽位 " + gid + " 的邻居");
+            }
+        }
+        assertTrue(rebuilds > 1 && rebuilds < frames / 2, "重建次数 " + rebuilds);
+    }
+
+    @Test
+    void displacementIgnoresHolesAndFlagsReplacedSlots() {
+        populate(new Random(7), 40f);
+        types.put(0, 0);
+        types.put(1, 5);
+        CpuSpatialGrid.build(positions, types, COUNT, cellOf, cellRank, cellCount, cellStart, cellEnd, order);
+        assertEquals(Float.POSITIVE_INFINITY, CpuNeighbourList.maxDisplacement(positions, types, COUNT, refPos, refTag, 0, COUNT),
+            "未构建过的槽位强制重建");
+        CpuNeighbourList.build(positions, types, COUNT, cellStart, cellEnd, order, refPos, refTag, nbrList, nbrCount, 0, COUNT);
+        assertEquals(0f, CpuNeighbourList.maxDisplacement(positions, types, COUNT, refPos, refTag, 0, COUNT));
+
+        // 本帧未出现的槽位 (其他维度) 远距离移动也不触发重建，且保留原有的表
+        int before = nbrCount.get(0);
+        types.put(0, -1);
+        positions.put(0, 1000f);
+        assertEquals(0f, CpuNeighbourList.maxDisplacement(positions, types, COUNT, refPos, refTag, 0, COUNT));
+        CpuNeighbourList.build(positions, types, COUNT, cellStart, cellEnd, order, refPos, refTag, nbrList, nbrCount, 0, COUNT);
+        assertEquals(before, nbrCount.get(0));
+
+        // 槽位换成其他类型的实体
+        types.put(1, 0);
+        assertEquals(Float.POSITIVE_INFINITY, CpuNeighbourList.maxDisplacement(positions, types, COUNT, refPos, refTag, 0, COUNT));
+    }
+}
@@ -0,0 +1,112 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.SpatialGrid;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 群体空间哈希网格：每个存活槽位恰好出现一次，桶内按槽位递增，
+ * 相邻 27 格的查询覆盖一个格子边长内的全部邻居。
+ */
+class CpuSpatialGridTest {
+    private static final int COUNT = 3000;
+
+    private final FloatBuffer positions = FloatBuffer.allocate(COUNT * 3);
+    private final IntBuffer types = IntBuffer.allocate(COUNT);
+    private final IntBuffer cellOf = IntBuffer.allocate(COUNT);
+    private final IntBuffer cellRank = IntBuffer.allocate(COUNT);
+    private final IntBuffer cellCount = IntBuffer.allocate(SpatialGrid.CELLS);
+    private final IntBuffer cellStart = IntBuffer.allocate(SpatialGrid.CELLS);
+    private final IntBuffer cellEnd = IntBuffer.allocate(SpatialGrid.CELLS);
+    private final IntBuffer order = IntBuffer.allocate(COUNT);
+
+    /** 在 ±extent 的立方体内随机摆放实体，约十分之一的槽位为空洞 */
+    private int populate(long seed, float extent) {
+        Random random = new Random(seed);
+        int live = 0;
+        for (int i = 0; i < COUNT; i++) {
+            for (int k = 0; k < 3; k++) positions.put(i * 3 + k, (random.nextFloat() * 2f - 1f) * extent);
+            boolean hole = random.nextInt(10) == 0;
+            types.put(i, hole ? -1 : random.nextInt(6));
+            if (!hole) live++;
+        }
+        CpuSpatialGrid.build(positions, types, COUNT, cellOf, cellRank, cellCount, cellStart, cellEnd, order);
+        return live;
+    }
+
+    private Float3 pos(int i) {
+        return new Float3(positions.get(i * 3), positions.get(i * 3 + 1), positions.get(i * 3 + 2));
+    }
+
+    @Test
+    void everyLiveSlotIsListedOnceInItsBucket() {
+        int live = populate(1, 200f);
+        assertEquals(live, cellEnd.get(SpatialGrid.CELLS - 1));
+        assertEquals(0, cellStart.get(0));
+
+        boolean[] seen = new boolean[COUNT];
+        for (int h = 0; h < SpatialGrid.CELLS; h++) {
+            assertEquals(cellCount.get(h), cellEnd.get(h) - cellStart.get(h));
+            if (h > 0) assertEquals(cellEnd.get(h - 1), cellStart.get(h));
+            for (int s = cellStart.get(h); s < cellEnd.get(h); s++) {
+                int slot = order.get(s);
+                assertFalse(seen[slot], "槽位重复");
+                seen[slot] = true;
+                assertEquals(h, cellOf.get(slot));
+                if (s > cellStart.get(h)) assertTrue(order.get(s - 1) < slot, "桶内按槽位递增");
+            }
+        }
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(types.get(i) >= 0, seen[i]);
+            if (types.get(i) < 0) assertEquals(-1, cellOf.get(i));
+        }
+    }
+
+    @Test
+    void neighbourhoodQueryMatchesBruteForce() {
+        populate(2, 60f);
+        float range = SpatialGrid.CELL_SIZE;
+        for (int i = 0; i < COUNT; i += 7) {
+            if (types.get(i) < 0) continue;
+            Float3 p = pos(i);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int j = 0; j < COUNT; j++) {
+                if (j == i || types.get(j) < 0) continue;
+                Float3 d = pos(j).sub(p);
+                if (d.dot(d) < range * range) expected.add(j);
+            }
+
+            TreeSet<Integer> found = new TreeSet<>();
+            int cx = SpatialGrid.cell(p.x()), cy = SpatialGrid.cell(p.y()), cz = SpatialGrid.cell(p.z());
+            for (int dz = -1; dz <= 1; dz++)
+            for (int dy = -1; dy <= 1; dy++)
+            for (int dx = -1; dx <= 1; dx++) {
+                int h = SpatialGrid.hash(cx + dx, cy + dy, cz + dz);
+                for (int s = cellStart.get(h); s < cellEnd.get(h); s++) {
+                    int j = order.get(s);
+                    if (j == i || !CpuSpatialGrid.inCell(pos(j), cx + dx, cy + dy, cz + dz)) continue;
+                    Float3 d = pos(j).sub(p);
+                    if (d.dot(d) < range * range) found.add(j);
+                }
+            }
+            assertEquals(expected, found, "槽位 " + i + " 的邻居");
+        }
+    }
+
+    @Test
+    void splitScatterMatchesSinglePass() {
+        populate(3, 100f);
+        int[] whole = order.array().clone();
+        IntBuffer split = IntBuffer.allocate(COUNT);
+        for (int from = 0; from < COUNT; from += 129) {
+            CpuSpatialGrid.scatter(cellOf, cellRank, COUNT, cellStart, split, from, from + 129);
+        }
+        assertArrayEquals(whole, split.array());
+    }
+}
@@ -0,0 +1,253 @@
+package com.gpuaccel.entitymod.gpu.cpu;
+
+import com.gpuaccel.entitymod.gpu.EntityRowStream;
+import com.gpuaccel.entitymod.gpu.EntitySlotTable;
+import com.gpuaccel.entitymod.gpu.SwarmOutputs;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 群体 AI 辅助内核的 CPU 参考实现。
+ */
+class CpuSwarmKernelsTest {
+    private static final int XZ = 8;
+    private static final int Y = 4;
+    private static final int VOLUME = XZ * XZ * Y;
+
+    @Test
+    void injectStimuliAccumulatesAndClamps() {
+        FloatBuffer phero = FloatBuffer.allocate(VOLUME * 8);
+        float[] pos = {2.5f, 1.2f, 3.9f, 2.1f, 1.0f, 3.0f, -1f, 0f, 0f, 2.0f, 1.0f, 3.0f};
+        int[] channel = {4, 4, 4, 1};
+        float[] value = {6f, 6f, 6f, 2f};
+        CpuSwarmKernels.injectStimuli(phero, pos, channel, value, 4, 0, 0, 0, XZ, Y, 0, 4);
+
+        int cell = 2 + 3 * XZ + XZ * XZ;
+        assertEquals(10f, phero.get(4 * VOLUME + cell), "同一格的刺激累加后限制在 10");
+        assertEquals(2f, phero.get(VOLUME + cell));
+        float total = 0f;
+        for (int i = 0; i < phero.capacity(); i++) total += phero.get(i);
+        assertEquals(12f, total, "越界的刺激源应被忽略");
+    }
+
+    @Test
+    void diffuseKeepsUniformFieldAndAppliesDecay() {
+        FloatBuffer in = FloatBuffer.allocate(VOLUME * 8);
+        FloatBuffer out = FloatBuffer.allocate(VOLUME * 8);
+        for (int i = 0; i < in.capacity(); i++) in.put(i, 2f);
+        CpuSwarmKernels.diffusePheromones(in, out, XZ, Y, XZ, 0.1f, 0.5f, 0.05f, 0, VOLUME * 8);
+
+        for (int c = 0; c < 8; c++) {
+            float expected = c == 7 ? 2f * 0.5f * 0.8f : 2f * 0.5f;
+            for (int v = 0; v < VOLUME; v++) assertEquals(expected, out.get(c * VOLUME + v), 1e-6f);
+        }
+    }
+
+    @Test
+    void diffuseSpreadsTowardNeighboursAndSplitsByRange() {
+        FloatBuffer in = FloatBuffer.allocate(VOLUME * 8);
+        int center = 3 + 3 * XZ + XZ * XZ;
+        in.put(2 * VOLUME + center, 6f);
+
+        FloatBuffer whole = FloatBuffer.allocate(VOLUME * 8);
+        CpuSwarmKernels.diffusePheromones(in, whole, XZ, Y, XZ, 0.1f, 1f, 0.05f, 0, VOLUME * 8);
+        // 分段执行 (CPU 后端按区间并行) 结果与一次执行相同
+        FloatBuffer split = FloatBuffer.allocate(VOLUME * 8);
+        for (int from = 0; from < VOLUME * 8; from += 37) {
+            CpuSwarmKernels.diffusePheromones(in, split, XZ, Y, XZ, 0.1f, 1f, 0.05f, from, from + 37);
+        }
+        for (int i = 0; i < VOLUME * 8; i++) assertEquals(whole.get(i), split.get(i));
+
+        assertTrue(whole.get(2 * VOLUME + center) < 6f);
+        assertTrue(whole.get(2 * VOLUME + center + 1) > 0f);
+        assertTrue(whole.get(2 * VOLUME + center + XZ * XZ) > 0f);
+        assertEquals(0f, whole.get(3 * VOLUME + center), "通道之间互不扩散");
+    }
+
+    @Test
+    void compactOutputsKeepsChangedSettledAndOverLimitSlots() {
+        float j = SwarmOutputs.JITTER, max = SwarmOutputs.MAX_SPEED;
+        float[][] current = {
+            {0.5f, 0f, 0f},      // 0: 变化低于抖动阈值
+            {0.0005f, 0f, 0f},   // 1: 残留的微小速度，应归零
+            {0f, 0f, 0f},        // 2: 已静止
+            {max + 0.0005f, 0f, 0f}, // 3: 超出限幅，变化虽小也要写回
+            {0f, 0f, 0f},        // 4: 空洞
+            {1f, 0f, 0f},        // 5: 新速度为 NaN
+            {0f, 0f, 0f},        // 6: 正常变化
+        };
+        float[][] next = {
+            {0.5f + j / 2, 0f, 0f},
+            {0.0002f, -0.0003f, 0f},
+            {0.0003f, 0f, 0f},
+            {3f, 0f, 0f},
+            {1f, 1f, 1f},
+            {Float.NaN, 0f, 0f},
+            {0.1f, 0.2f, -0.3f},
+        };
+        int count = current.length;
+        FloatBuffer velocities = FloatBuffer.allocate(count * 3);
+        FloatBuffer newVelocities = FloatBuffer.allocate(count * 3);
+        for (int i = 0; i < count; i++) {
+            velocities.put(i * 3, current[i]);
+            newVelocities.put(i * 3, next[i]);
+        }
+        IntBuffer types = IntBuffer.allocate(count);
+        types.put(4, -1);
+        IntBuffer records = IntBuffer.allocate(count * SwarmOutputs.WORDS);
+        IntBuffer recordCount = IntBuffer.allocate(1);
+        CpuSwarmKernels.compactOutputs(newVelocities, velocities, types, count, j, max, records, recordCount, 0, count);
+
+        assertEquals(4, recordCount.get(0));
+        int[] slots = {1, 3, 5, 6};
+        float[][] expected = {{0f, 0f, 0f}, {max, 0f, 0f}, {0f, 0f, 0f}, {0.1f, 0.2f, -0.3f}};
+        for (int i = 0; i < slots.length; i++) {
+            assertEquals(slots[i], SwarmOutputs.slot(records, i));
+            assertEquals(expected[i][0], SwarmOutputs.vx(records, i));
+            assertEquals(expected[i][1], SwarmOutputs.vy(records, i));
+            assertEquals(expected[i][2], SwarmOutputs.vz(records, i));
+        }
+    }
+
+    @Test
+    void compactOutputsAppendsAcrossRanges() {
+        int count = 10;
+        FloatBuffer velocities = FloatBuffer.allocate(count * 3);
+        FloatBuffer newVelocities = FloatBuffer.allocate(count * 3);
+        for (int i = 0; i < count; i++) newVelocities.put(i * 3 + 1, 0.1f * (i + 1));
+        IntBuffer records = IntBuffer.allocate(count * SwarmOutputs.WORDS);
+        IntBuffer recordCount = IntBuffer.allocate(1);
+        IntBuffer types = IntBuffer.allocate(count);
+        CpuSwarmKernels.compactOutputs(newVelocities, velocities, types, count,
+            SwarmOutputs.JITTER, SwarmOutputs.MAX_SPEED, records, recordCount, 0, 4);
+        CpuSwarmKernels.compactOutputs(newVelocities, velocities, types, count,
+            SwarmOutputs.JITTER, SwarmOutputs.MAX_SPEED, records, recordCount, 4, 64);
+
+        assertEquals(count, recordCount.get(0));
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, SwarmOutputs.slot(records, i));
+            assertEquals(0.1f * (i + 1), SwarmOutputs.vy(records, i));
+        }
+    }
+
+    @Test
+    void remapMovesAndResetsPerEntityState() {
+        int slots = 8;
+        FloatBuffer prev = FloatBuffer.allocate(slots * 3);
+        IntBuffer stuck = IntBuffer.allocate(slots);
+        IntBuffer bees = IntBuffer.allocate(slots);
+        for (int s = 0; s < slots; s++) {
+            for (int k = 0; k < 3; k++) prev.put(s * 3 + k, s * 10 + k);
+            stuck.put(s, s + 100);
+            bees.put(s, s + 200);
+        }
+        IntBuffer ops = IntBuffer.wrap(new int[]{EntitySlotTable.RESET, 2, 5, 0, 7, 1});
+        CpuSwarmKernels.remapEntitySlots(ops, 3, prev, stuck, bees, 0, 3);
+
+        assertEquals(0f, prev.get(2 * 3 + 1));
+        assertEquals(0, stuck.get(2));
+        assertEquals(0, bees.get(2));
+        assertEquals(50f, prev.get(0));
+        assertEquals(105, stuck.get(0));
+        assertEquals(207, bees.get(1));
+        assertEquals(72f, prev.get(1 * 3 + 2));
+        assertEquals(103, stuck.get(3), "未涉及的槽位保持不变");
+    }
+
+    /** 增量行经 scatter 写回后，设备端的逐槽位数据与 Host 上的完整状态一致 */
+    @Test
+    void scatteredRowsReproduceHostState() {
+        int slots = 64;
+        int paramCount = EntityRowStream.PARAM_COUNT;
+        Random random = new Random(5);
+        float[] pos = new float[slots * 3], vel = new float[slots * 3], params = new float[slots * paramCount];
+        int[] types = new int[slots];
+
+        FloatBuffer dPos = FloatBuffer.allocate(slots * 3), dVel = FloatBuffer.allocate(slots * 3);
+        FloatBuffer dParams = FloatBuffer.allocate(slots * paramCount);
+        IntBuffer dTypes = IntBuffer.allocate(slots);
+        IntBuffer motion = IntBuffer.allocate(slots * EntityRowStream.MOTION_WORDS);
+        IntBuffer desc = IntBuffer.allocate(slots * EntityRowStream.DESC_WORDS);
+        EntityRowStream rows = new EntityRowStream();
+        rows.ensureCapacity(slots);
+
+        for (int frame = 0; frame < 30; frame++) {
+            // 第一帧全部写入，之后每帧只改动一部分槽位
+            for (int s = 0; s < slots; s++) {
+                if (frame > 0 && random.nextInt(4) != 0) continue;
+                for (int k = 0; k < 3; k++) {
+                    pos[s * 3 + k] = random.nextFloat() * 100f;
+                    vel[s * 3 + k] = random.nextFloat() - 0.5f;
+                }
+                if (frame == 0 || random.nextInt(5) == 0) {
+                    types[s] = random.nextInt(7) - 1;
+                    for (int k = 0; k < paramCount; k++) params[s * paramCount + k] = random.nextFloat();
+                }
+            }
+            rows.begin(motion, desc);
+            for (int s = 0; s < slots; s++) {
+                rows.putMotion(s, pos[s * 3], pos[s * 3 + 1], pos[s * 3 + 2], vel[s * 3], vel[s * 3 + 1], vel[s * 3 + 2]);
+                float[] p = new float[paramCount];
+                System.arraycopy(params, s * paramCount, p, 0, paramCount);
+                rows.putDescriptor(s, types[s], p);
+            }
+            if (frame > 0) assertTrue(rows.getMotionCount() < slots, "未变化的槽位不应重新发送");
+            int total = rows.getMotionCount() + rows.getDescCount();
+            for (int from = 0; from < total; from += 13) {
+                CpuSwarmKernels.scatterEntityRows(motion, rows.getMotionCount(), desc, rows.getDescCount(),
+                    dPos, dVel, dTypes, dParams, from, from + 13);
+            }
+
+            for (int i = 0; i < slots * 3; i++) {
+                assertEquals(pos[i], dPos.get(i));
+                assertEquals(vel[i], dVel.get(i));
+            }
+            for (int s = 0; s < slots; s++) assertEquals(types[s], dTypes.get(s));
+            for (int i = 0; i < slots * paramCount; i++) assertEquals(params[i], dParams.get(i));
+        }
+    }
+
+    /** 两个维度交替提交时，另一维度的槽位只由活动掩码屏蔽，不重新发送描述行 */
+    @Test
+    void slotMaskHidesOtherDimensionWithoutDescriptorRows() {
+        int slots = 40;
+        int half = slots / 2;
+        IntBuffer motion = IntBuffer.allocate(slots * EntityRowStream.MOTION_WORDS);
+        IntBuffer desc = IntBuffer.allocate(slots * EntityRowStream.DESC_WORDS);
+        FloatBuffer dPos = FloatBuffer.allocate(slots * 3), dVel = FloatBuffer.allocate(slots * 3);
+        FloatBuffer dParams = FloatBuffer.allocate(slots * EntityRowStream.PARAM_COUNT);
+        IntBuffer baseTypes = IntBuffer.allocate(slots), entityTypes = IntBuffer.allocate(slots);
+        EntityRowStream rows = new EntityRowStream();
+        rows.ensureCapacity(slots);
+
+        for (int frame = 0; frame < 6; frame++) {
+            // 偶数帧处理维度 A (槽位 [0, half))，奇数帧处理维度 B (槽位 [half, slots))
+            int first = (frame & 1) == 0 ? 0 : half;
+            rows.begin(motion, desc);
+            rows.beginMask(slots);
+            for (int s = first; s < first + half; s++) {
+                rows.markActive(s);
+                rows.putDescriptor(s, s % 5, new float[]{s});
+            }
+            if (frame >= 2) assertEquals(0, rows.getDescCount(), "另一维度的槽位不应重新发送描述行");
+            int total = rows.getMotionCount() + rows.getDescCount();
+            CpuSwarmKernels.scatterEntityRows(motion, rows.getMotionCount(), desc, rows.getDescCount(),
+                dPos, dVel, baseTypes, dParams, 0, total);
+            IntBuffer mask = IntBuffer.wrap(rows.getActiveMask());
+            for (int from = 0; from < slots; from += 7) {
+                CpuSwarmKernels.applySlotMask(baseTypes, mask, slots, entityTypes, from, from + 7);
+            }
+
+            for (int s = 0; s < slots; s++) {
+                boolean active = s >= first && s < first + half;
+                assertEquals(active, rows.isActive(s));
+                assertEquals(active ? s % 5 : -1, entityTypes.get(s));
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.gpuaccel.entitymod.gpu.driver;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单生产者单消费者环形队列：容量取整、FIFO 顺序、满/空边界与跨线程可见性。
+ */
+class SpscRingTest {
+
+    @Test
+    void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(2, new SpscRing<Integer>(0).capacity());
+        assertEquals(8, new SpscRing<Integer>(5).capacity());
+        assertEquals(16, new SpscRing<Integer>(16).capacity());
+    }
+
+    @Test
+    void fifoOrderAndFullEmptyBoundaries() {
+        SpscRing<Integer> ring = new SpscRing<>(4);
+        assertNull(ring.poll());
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer(i));
+        assertFalse(ring.offer(4), "满时拒绝写入");
+        assertEquals(4, ring.size());
+
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        for (int i = 1; i <= 4; i++) assertEquals(Integer.valueOf(i), ring.poll());
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void wrapsAroundManyTimes() {
+        SpscRing<Integer> ring = new SpscRing<>(4);
+        int next = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ring.offer(i));
+            if (i % 3 == 2) {
+                while (!ring.isEmpty()) assertEquals(Integer.valueOf(next++), ring.poll());
+            }
+        }
+        while (!ring.isEmpty()) assertEquals(Integer.valueOf(next++), ring.poll());
+        assertEquals(1000, next);
+    }
+
+    @Test
+    void producerAndConsumerThreadsSeeEveryElementInOrder() throws InterruptedException {
+        SpscRing<int[]> ring = new SpscRing<>(64);
+        int total = 200_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                // 元素内容在发布前写入，消费者必须看到完整的值
+                int[] value = {i, i * 31};
+                while (!ring.offer(value)) Thread.onSpinWait();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < total; i++) {
+            int[] value;
+            while ((value = ring.poll()) == null) Thread.onSpinWait();
+            assertEquals(i, value[0]);
+            assertEquals(i * 31, value[1]);
+        }
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+}
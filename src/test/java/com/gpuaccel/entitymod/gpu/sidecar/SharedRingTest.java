@@ -0,0 +1,153 @@
+package com.gpuaccel.entitymod.gpu.sidecar;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 共享内存消息环：发布可见性、满/空边界、末尾填充与跨线程收发。
+ * 生产者与消费者各用一个实例访问同一块缓冲区，与跨进程使用时一致。
+ */
+class SharedRingTest {
+    private static final int HEAD = 0;
+    private static final int TAIL = 8;
+    private static final int DATA = 64;
+
+    private static ByteBuffer shared(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DATA + capacity).order(ByteOrder.nativeOrder());
+        SharedRing.reset(buffer, HEAD, TAIL);
+        return buffer;
+    }
+
+    private static SharedRing ring(ByteBuffer buffer, int capacity) {
+        return new SharedRing(buffer, HEAD, TAIL, DATA, capacity);
+    }
+
+    /** 写入一条载荷为 [seq, seq+1, ...] 的消息，返回是否成功 */
+    private static boolean send(SharedRing producer, int opcode, int ints, int seq) {
+        int offset = producer.reserve(opcode, ints * 4);
+        if (offset < 0) return false;
+        for (int i = 0; i < ints; i++) producer.buffer().putInt(offset + i * 4, seq + i);
+        return true;
+    }
+
+    private static void expect(SharedRing consumer, int opcode, int ints, int seq) {
+        assertEquals(opcode, consumer.poll());
+        int offset = consumer.payloadOffset();
+        for (int i = 0; i < ints; i++) assertEquals(seq + i, consumer.buffer().getInt(offset + i * 4));
+        consumer.release();
+    }
+
+    @Test
+    void messagesBecomeVisibleOnlyAfterPublish() {
+        ByteBuffer buffer = shared(256);
+        SharedRing producer = ring(buffer, 256), consumer = ring(buffer, 256);
+        assertEquals(Integer.MIN_VALUE, consumer.poll());
+
+        assertTrue(send(producer, 7, 3, 100));
+        assertTrue(send(producer, 8, 0, 0));
+        assertEquals(Integer.MIN_VALUE, consumer.poll(), "未发布的消息不可见");
+        producer.publish();
+        assertEquals(32, consumer.pendingBytes());
+
+        expect(consumer, 7, 3, 100);
+        expect(consumer, 8, 0, 0);
+        assertEquals(Integer.MIN_VALUE, consumer.poll());
+        assertEquals(0, consumer.pendingBytes());
+    }
+
+    @Test
+    void fullRingRejectsUntilConsumerReleases() {
+        ByteBuffer buffer = shared(128);
+        SharedRing producer = ring(buffer, 128), consumer = ring(buffer, 128);
+        assertEquals(56, producer.maxPayload());
+        assertThrows(IllegalArgumentException.class, () -> producer.reserve(1, 57));
+
+        // 每条 8 + 24 = 32 字节，正好放下 4 条
+        for (int i = 0; i < 4; i++) assertTrue(send(producer, i, 6, i * 10));
+        assertFalse(send(producer, 9, 6, 0));
+        assertFalse(producer.hasRoom(0));
+        producer.publish();
+
+        expect(consumer, 0, 6, 0);
+        assertTrue(send(producer, 4, 6, 40), "消费者归还空间后可以继续写入");
+        producer.publish();
+        for (int i = 1; i <= 4; i++) expect(consumer, i, 6, i * 10);
+    }
+
+    @Test
+    void wrapsWithPaddingWhenTailRunsOut() {
+        ByteBuffer buffer = shared(128);
+        SharedRing producer = ring(buffer, 128), consumer = ring(buffer, 128);
+        // 每条 48 字节：第三条在位置 96 只剩 32 字节，写入填充后从开头继续
+        assertTrue(send(producer, 1, 10, 0));
+        assertTrue(send(producer, 2, 10, 10));
+        producer.publish();
+        expect(consumer, 1, 10, 0);
+        expect(consumer, 2, 10, 10);
+
+        int offset = producer.reserve(3, 40);
+        assertEquals(DATA + SharedRing.HEADER, offset, "消息不跨越数据区末尾");
+        for (int i = 0; i < 10; i++) buffer.putInt(offset + i * 4, 20 + i);
+        producer.publish();
+        expect(consumer, 3, 10, 20);
+        assertEquals(0, consumer.pendingBytes());
+    }
+
+    @Test
+    void reattachingKeepsSequencePositions() {
+        ByteBuffer buffer = shared(256);
+        SharedRing producer = ring(buffer, 256);
+        assertTrue(send(producer, 5, 2, 1));
+        producer.publish();
+
+        // 另一端稍后才映射同一块内存
+        SharedRing consumer = ring(buffer, 256);
+        expect(consumer, 5, 2, 1);
+        SharedRing secondProducer = ring(buffer, 256);
+        assertTrue(send(secondProducer, 6, 1, 9));
+        secondProducer.publish();
+        expect(consumer, 6, 1, 9);
+    }
+
+    @Test
+    void producerAndConsumerThreadsExchangeVariableMessages() throws InterruptedException {
+        int capacity = 1024;
+        ByteBuffer buffer = shared(capacity);
+        SharedRing producer = ring(buffer, capacity), consumer = ring(buffer, capacity);
+        int messages = 20_000;
+        int maxInts = producer.maxPayload() / 4;
+
+        Thread thread = new Thread(() -> {
+            Random random = new Random(11);
+            for (int m = 0; m < messages; m++) {
+                int ints = random.nextInt(maxInts + 1);
+                while (!send(producer, m, ints, m * 7)) {
+                    // 空间被未发布的消息占满时先发布，否则消费者永远等不到
+                    producer.publish();
+                    Thread.yield();
+                }
+                if (random.nextInt(4) == 0 || m == messages - 1) producer.publish();
+            }
+        });
+        thread.start();
+
+        Random random = new Random(11);
+        for (int m = 0; m < messages; m++) {
+            int ints = random.nextInt(maxInts + 1);
+            random.nextInt(4);
+            int opcode;
+            while ((opcode = consumer.poll()) == Integer.MIN_VALUE) Thread.yield();
+            assertEquals(m, opcode);
+            int offset = consumer.payloadOffset();
+            for (int i = 0; i < ints; i++) assertEquals(m * 7 + i, buffer.getInt(offset + i * 4));
+            consumer.release();
+        }
+        thread.join();
+        assertEquals(Integer.MIN_VALUE, consumer.poll());
+    }
+}